@@ -0,0 +1,11 @@
+package game;
+
+// The seeded mazes the benchmarks run on; every benchmark with a size parameter uses 64, 256, 1024 and 4096 cells.
+public class BenchmarkMazes
+{
+    public static final long SEED         = 1;
+    public static final int  NUM_TEXTURES = 16;
+    public static final int  KEY_COUNT    = 8;
+
+    public static MazeGenerator Create(int size) { return new MazeGenerator(size, SEED, NUM_TEXTURES, KEY_COUNT); }
+}
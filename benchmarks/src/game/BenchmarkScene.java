@@ -0,0 +1,17 @@
+package game;
+
+import engine.core.*;
+import engine.ecs.*;
+
+// A scene that is never started, so entities and components can be created and changed without a window.
+public class BenchmarkScene extends Scene
+{
+    @Override
+    protected void OnSceneStart() { }
+
+    @Override
+    protected void OnSceneUpdate(InputDevice inputDevice, float delta) { }
+
+    @Override
+    protected void OnSceneExit() { }
+}
@@ -0,0 +1,116 @@
+package game;
+
+import jamJar.core.dataStructures.maps.HashMap;
+import jamJar.core.math.vectors.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Collision and pickup queries per second at random cells: "Grid" reads the CellGrid byte, "Maps" asks the wall bitset
+// and then the key and door maps through a Vector2f the way HandleCollision did before, and "Move" runs one sub-stepped
+// PlayerMotion move. Run with -prof gc to see the bytes allocated per query.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class CellGridBenchmark
+{
+    private static final int QUERY_COUNT = 4096;
+
+    @Param({ "256", "4096" })
+    public int size;
+
+    private LevelData                  m_levelData;
+    private CellGrid                   m_cells;
+    private HashMap<Vector2f, Integer> m_keys;
+    private HashMap<Vector2f, Integer> m_doors;
+    private PlayerMotion               m_motion;
+
+    private int[]   m_queryX;
+    private int[]   m_queryZ;
+    private float[] m_moveX;
+    private float[] m_moveZ;
+
+    @Setup
+    public void Setup()
+    {
+        m_levelData = BenchmarkMazes.Create(size).Decode();
+        m_cells     = new CellGrid(m_levelData);
+        m_keys      = new HashMap<>();
+        m_doors     = new HashMap<>();
+
+        int width = m_levelData.GetWidth();
+        for(int k = 0; k < m_levelData.GetKeyCount(); k++)
+        {
+            int cell = m_levelData.GetKeyCell(k);
+            m_cells.Set(cell % width, cell / width, CellGrid.KEY);
+            m_keys.Place(new Vector2f(cell % width, cell / width), k);
+        }
+
+        for(int d = 0; d < m_levelData.GetDoorCount(); d++)
+        {
+            int cell = m_levelData.GetDoorCell(d);
+            m_cells.Set(cell % width, cell / width, CellGrid.DOOR);
+            m_doors.Place(new Vector2f(cell % width, cell / width), d);
+        }
+
+        Random random = new Random(BenchmarkMazes.SEED);
+
+        m_queryX = new int[QUERY_COUNT];
+        m_queryZ = new int[QUERY_COUNT];
+        m_moveX  = new float[QUERY_COUNT];
+        m_moveZ  = new float[QUERY_COUNT];
+        for(int i = 0; i < QUERY_COUNT; i++)
+        {
+            m_queryX[i] = random.nextInt(width);
+            m_queryZ[i] = random.nextInt(m_levelData.GetHeight());
+
+            double angle = random.nextDouble() * 2.0 * Math.PI;
+            m_moveX[i] = (float)Math.cos(angle) * LevelRules.INITIAL_SPEED / PlayerMotion.TICK_RATE;
+            m_moveZ[i] = (float)Math.sin(angle) * LevelRules.INITIAL_SPEED / PlayerMotion.TICK_RATE;
+        }
+
+        m_motion = new PlayerMotion(m_cells, LevelRules.PLAYER_RADIUS, LevelRules.DOOR_HALF_THICKNESS, new Vector3f(1.5f, 0.3f, 1.5f));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public int Grid()
+    {
+        int result = 0;
+        for(int i = 0; i < QUERY_COUNT; i++)
+            result += m_cells.Get(m_queryX[i], m_queryZ[i]);
+
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public int Maps()
+    {
+        int result = 0;
+        for(int i = 0; i < QUERY_COUNT; i++)
+        {
+            if(m_levelData.IsWall(m_queryX[i], m_queryZ[i]))
+                continue;
+
+            Vector2f position = new Vector2f(m_queryX[i], m_queryZ[i]);
+            if(m_keys.Get(position) != null || m_doors.Get(position) != null)
+                ++result;
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public Vector3f Move()
+    {
+        for(int i = 0; i < QUERY_COUNT; i++)
+            m_motion.Move(m_moveX[i], m_moveZ[i]);
+
+        return m_motion.GetPosition();
+    }
+}
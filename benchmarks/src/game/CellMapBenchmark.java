@@ -0,0 +1,128 @@
+package game;
+
+import jamJar.core.dataStructures.maps.HashMap;
+import jamJar.core.math.vectors.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// A million lookups per operation in a 64x64 level with 600 occupied cells and 8 key colours: CellMap and ColorPalette
+// against the jamJar HashMaps keyed by Vector2f cells and Vector3f colours that Level used before them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellMapBenchmark
+{
+    private static final int SIZE           = 64;
+    private static final int OCCUPIED_COUNT = 600;
+    private static final int COLOR_COUNT    = 8;
+    private static final int LOOKUP_COUNT   = 1000000;
+    private static final int QUERY_MASK     = 4095;
+
+    private CellMap<Integer>           m_cellMap;
+    private HashMap<Vector2f, Integer> m_cellHashMap;
+    private ColorPalette               m_palette;
+    private HashMap<Vector3f, Integer> m_colorHashMap;
+
+    private int[]      m_queryX;
+    private int[]      m_queryZ;
+    private int[]      m_queryColors;
+    private Vector3f[] m_queryVectors;
+
+    @Setup
+    public void Setup()
+    {
+        Random random = new Random(BenchmarkMazes.SEED);
+
+        m_cellMap     = new CellMap<>(SIZE, SIZE);
+        m_cellHashMap = new HashMap<>();
+        while(m_cellMap.Count() < OCCUPIED_COUNT)
+        {
+            int x = random.nextInt(SIZE);
+            int z = random.nextInt(SIZE);
+            m_cellMap.Place(x, z, m_cellMap.Count());
+            m_cellHashMap.Place(new Vector2f(x, z), m_cellHashMap.Count());
+        }
+
+        m_palette      = new ColorPalette();
+        m_colorHashMap = new HashMap<>();
+        for(int c = 0; c < COLOR_COUNT; c++)
+        {
+            int color = MazeGenerator.GetKeyColor(c);
+            m_palette.Add(color);
+            m_colorHashMap.Place(ToVector(color), c);
+        }
+
+        m_queryX       = new int[QUERY_MASK + 1];
+        m_queryZ       = new int[QUERY_MASK + 1];
+        m_queryColors  = new int[QUERY_MASK + 1];
+        m_queryVectors = new Vector3f[QUERY_MASK + 1];
+        for(int i = 0; i <= QUERY_MASK; i++)
+        {
+            m_queryX[i]       = random.nextInt(SIZE);
+            m_queryZ[i]       = random.nextInt(SIZE);
+            m_queryColors[i]  = MazeGenerator.GetKeyColor(random.nextInt(COLOR_COUNT));
+            m_queryVectors[i] = ToVector(m_queryColors[i]);
+        }
+    }
+
+    @Benchmark
+    public int CellMapGet()
+    {
+        int result = 0;
+        for(int i = 0; i < LOOKUP_COUNT; i++)
+        {
+            if(m_cellMap.Get(m_queryX[i & QUERY_MASK], m_queryZ[i & QUERY_MASK]) != null)
+                ++result;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int CellHashMapGet()
+    {
+        int result = 0;
+        for(int i = 0; i < LOOKUP_COUNT; i++)
+        {
+            if(m_cellHashMap.Get(new Vector2f(m_queryX[i & QUERY_MASK], m_queryZ[i & QUERY_MASK])) != null)
+                ++result;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int PaletteIndexOf()
+    {
+        int result = 0;
+        for(int i = 0; i < LOOKUP_COUNT; i++)
+            result += m_palette.IndexOf(m_queryColors[i & QUERY_MASK]);
+
+        return result;
+    }
+
+    @Benchmark
+    public int PaletteIndexOfVector()
+    {
+        int result = 0;
+        for(int i = 0; i < LOOKUP_COUNT; i++)
+            result += m_palette.IndexOf(m_queryVectors[i & QUERY_MASK]);
+
+        return result;
+    }
+
+    @Benchmark
+    public int ColorHashMapGet()
+    {
+        int result = 0;
+        for(int i = 0; i < LOOKUP_COUNT; i++)
+            result += m_colorHashMap.Get(m_queryVectors[i & QUERY_MASK]);
+
+        return result;
+    }
+
+    private static Vector3f ToVector(int color) { return new Vector3f((color >> 16 & 0xFF) / 255.0f, (color >> 8 & 0xFF) / 255.0f, (color & 0xFF) / 255.0f); }
+}
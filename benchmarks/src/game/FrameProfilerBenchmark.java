@@ -0,0 +1,71 @@
+package game;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+// The cost of a thousand nested pairs of scopes around a few arithmetic operations, with no scopes at all, with the
+// profiler disabled as it ships, and with it recording.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameProfilerBenchmark
+{
+    private static final int SCOPES_PER_OPERATION = 1000;
+
+    private static final FrameProfiler.Scope OUTER_SCOPE = FrameProfiler.AddScope("FrameProfilerBenchmark.Outer");
+    private static final FrameProfiler.Scope INNER_SCOPE = FrameProfiler.AddScope("FrameProfilerBenchmark.Inner");
+
+    @Param({ "none", "disabled", "enabled" })
+    public String mode;
+
+    private long m_state;
+
+    @Setup
+    public void Setup()
+    {
+        m_state = BenchmarkMazes.SEED;
+        FrameProfiler.SetEnabled(mode.equals("enabled"));
+    }
+
+    @Benchmark
+    public long Scopes()
+    {
+        long state = m_state;
+        if(mode.equals("none"))
+        {
+            for(int i = 0; i < SCOPES_PER_OPERATION; i++)
+                state = Step(Step(state));
+        }
+        else
+        {
+            for(int i = 0; i < SCOPES_PER_OPERATION; i++)
+            {
+                OUTER_SCOPE.Start();
+                state = Step(state);
+
+                INNER_SCOPE.Start();
+                state = Step(state);
+                INNER_SCOPE.Stop();
+
+                OUTER_SCOPE.Stop();
+            }
+        }
+        m_state = state;
+        return state;
+    }
+
+    @TearDown
+    public void TearDown() { FrameProfiler.SetEnabled(false); }
+
+    private static long Step(long state)
+    {
+        state ^= state << 13;
+        state ^= state >>> 7;
+        state ^= state << 17;
+        return state;
+    }
+}
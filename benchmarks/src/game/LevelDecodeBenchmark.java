@@ -0,0 +1,71 @@
+package game;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+// Loading a level's cells: decoding the painted PNG maps, scanning already decoded bitmaps, or reading level.dat.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LevelDecodeBenchmark
+{
+    @Param({ "64", "256", "1024", "4096" })
+    public int size;
+
+    @Param({ "png", "bitmap", "compiled" })
+    public String source;
+
+    private MazeGenerator m_maze;
+    private Path          m_folder;
+
+    @Setup
+    public void Setup() throws IOException
+    {
+        m_maze   = BenchmarkMazes.Create(size);
+        m_folder = Files.createTempDirectory("LevelDecodeBenchmark");
+
+        switch(source)
+        {
+            case "png":
+                m_maze.Write(m_folder + File.separator);
+                break;
+            case "compiled":
+                m_maze.Decode().Write(m_folder + File.separator + LevelData.FILE_NAME);
+                break;
+        }
+    }
+
+    @Benchmark
+    public LevelData Decode()
+    {
+        switch(source)
+        {
+            case "png":
+                return LevelData.Decode(m_folder + File.separator, BenchmarkMazes.NUM_TEXTURES);
+            case "compiled":
+                return LevelData.Read(m_folder + File.separator + LevelData.FILE_NAME);
+            default:
+                return m_maze.Decode();
+        }
+    }
+
+    @TearDown
+    public void TearDown() throws IOException
+    {
+        File[] files = m_folder.toFile().listFiles();
+        if(files != null)
+        {
+            for(File file : files)
+                Files.delete(file.toPath());
+        }
+        Files.delete(m_folder);
+
+        m_maze = null;
+    }
+}
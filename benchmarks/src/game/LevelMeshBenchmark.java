@@ -0,0 +1,75 @@
+package game;
+
+import jamJar.core.math.Math;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+
+// Building the level's chunk meshes the way LevelLoader does: "quads" runs only the greedy merge, "vertices" also
+// writes every vertex with its texture coordinates, normals and tangents.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LevelMeshBenchmark
+{
+    @Param({ "64", "256", "1024", "4096" })
+    public int size;
+
+    @Param({ "quads", "vertices" })
+    public String stage;
+
+    private LevelData        m_levelData;
+    private LevelMesher      m_mesher;
+    private LevelMeshBuilder m_meshBuilder;
+
+    private int m_quadCount;
+
+    @Setup
+    public void Setup()
+    {
+        m_levelData   = BenchmarkMazes.Create(size).Decode();
+        m_mesher      = new LevelMesher(m_levelData);
+        m_meshBuilder = new LevelMeshBuilder(m_levelData);
+    }
+
+    @Benchmark
+    public int Build()
+    {
+        int width  = m_levelData.GetWidth();
+        int height = m_levelData.GetHeight();
+
+        boolean vertices = stage.equals("vertices");
+
+        LevelMesher.QuadHandler counter = new LevelMesher.QuadHandler()
+        {
+            @Override
+            public void OnQuad(int tile, int axis, boolean direction, int x, int z, int sizeX, int sizeZ) { ++m_quadCount; }
+        };
+
+        m_quadCount = 0;
+        for(int startZ = 0; startZ < height; startZ += LevelChunk.SIZE)
+        {
+            for(int startX = 0; startX < width; startX += LevelChunk.SIZE)
+            {
+                int chunkStartX = Math.Max(startX, 1);
+                int chunkStartZ = Math.Max(startZ, 1);
+                int chunkEndX   = Math.Min(startX + LevelChunk.SIZE, width - 1);
+                int chunkEndZ   = Math.Min(startZ + LevelChunk.SIZE, height - 1);
+
+                if(!vertices)
+                {
+                    m_mesher.Build(chunkStartX, chunkStartZ, chunkEndX, chunkEndZ, counter);
+                    continue;
+                }
+
+                m_meshBuilder.Build(chunkStartX, chunkStartZ, chunkEndX, chunkEndZ);
+                for(int tile = 0; tile < m_meshBuilder.GetTileCount(); tile++)
+                    m_quadCount += m_meshBuilder.GetQuadCount(tile);
+            }
+        }
+        return m_quadCount;
+    }
+}
@@ -0,0 +1,66 @@
+package game;
+
+import engine.core.*;
+import jamJar.core.math.*;
+import jamJar.core.math.vectors.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.*;
+
+// One second of play per operation: a seeded random walk through LevelSimulation, exercising movement, collision and
+// key/door pickup at 120 ticks a second. The sludge starts far below the floor so the walk never drowns.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LevelRulesBenchmark
+{
+    private static final int   FRAMES_PER_OPERATION = NightmareMaze.FRAME_RATE;
+    private static final int   FRAMES_PER_CHOICE    = 30;
+    private static final float SLUDGE_LEVEL         = -1000.0f;
+
+    @Param({ "64", "256", "1024", "4096" })
+    public int size;
+
+    private LevelData           m_levelData;
+    private LevelSimulation     m_simulation;
+    private ScriptedInputDevice m_inputDevice;
+    private Random              m_random;
+
+    @Setup
+    public void Setup()
+    {
+        m_levelData   = BenchmarkMazes.Create(size).Decode();
+        m_inputDevice = new ScriptedInputDevice();
+        m_random      = new Random(BenchmarkMazes.SEED);
+
+        Restart();
+    }
+
+    @Benchmark
+    public Vector3f Play()
+    {
+        for(int frame = 0; frame < FRAMES_PER_OPERATION; frame++)
+        {
+            if(m_simulation.GetFrameCount() % FRAMES_PER_CHOICE == 0)
+            {
+                m_inputDevice.SetKeyDown(InputDevice.Key.W, m_random.nextInt(4) != 0);
+                m_inputDevice.SetKeyDown(InputDevice.Key.O, m_random.nextInt(8) == 0);
+                m_inputDevice.MoveMouse(m_random.nextFloat() - 0.5f, 0);
+            }
+
+            m_simulation.Step(m_inputDevice);
+            if(m_simulation.IsFinished())
+                Restart();
+        }
+        return m_simulation.GetPosition();
+    }
+
+    private void Restart()
+    {
+        m_simulation = new LevelSimulation(m_levelData, new LevelSaveData(0, new Vector3f(1.5f, 0.3f, 1.5f), new Quaternion(), null, null, null, SLUDGE_LEVEL));
+    }
+}
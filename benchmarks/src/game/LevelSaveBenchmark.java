@@ -0,0 +1,101 @@
+package game;
+
+import jamJar.core.math.*;
+import jamJar.core.math.vectors.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// A snapshot written to disk and read back, with the given percentage of the maze's open cells explored. Explored
+// cells are taken in flood-fill order from the start, the way a player uncovers the minimap.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LevelSaveBenchmark
+{
+    @Param({ "64", "256", "1024", "4096" })
+    public int size;
+
+    @Param({ "1", "25", "100" })
+    public int explored;
+
+    private LevelSaveData m_saveData;
+
+    @Setup
+    public void Setup()
+    {
+        LevelData levelData = BenchmarkMazes.Create(size).Decode();
+
+        int[] openCells     = FloodFill(levelData, 1 + levelData.GetWidth());
+        int   exploredCount = (int)((long)openCells.length * explored / 100);
+
+        Vector2f[] passedLocations = new Vector2f[exploredCount];
+        for(int i = 0; i < exploredCount; i++)
+            passedLocations[i] = new Vector2f(openCells[i] % levelData.GetWidth(), openCells[i] / levelData.GetWidth());
+
+        Vector3f[] collectedKeys = new Vector3f[levelData.GetKeyCount() / 2];
+        for(int k = 0; k < collectedKeys.length; k++)
+            collectedKeys[k] = Level.ToColor(levelData.GetKeyColor(k));
+
+        Vector3f[] openedDoors = new Vector3f[levelData.GetDoorCount() / 2];
+        for(int d = 0; d < openedDoors.length; d++)
+            openedDoors[d] = Level.ToColor(levelData.GetDoorColor(levelData.GetDoorCount() - 1 - d));
+
+        m_saveData = new LevelSaveData(0, new Vector3f(1.5f, 0.3f, 1.5f), new Quaternion(), collectedKeys, openedDoors, passedLocations, Level.INITIAL_SLUDGE_LEVEL);
+
+        new File(NightmareMaze.FILE_PATH).mkdirs();
+    }
+
+    @Benchmark
+    public LevelSaveData RoundTrip()
+    {
+        if(!m_saveData.WriteSnapshot())
+            throw new IllegalStateException("Could not write " + LevelSaveData.FILE_NAME);
+
+        return LevelSaveData.ReadSnapshot();
+    }
+
+    @TearDown
+    public void TearDown() throws IOException
+    {
+        Files.deleteIfExists(Paths.get(LevelSaveData.FILE_NAME));
+        m_saveData = null;
+    }
+
+    private static int[] FloodFill(LevelData levelData, int start)
+    {
+        int width  = levelData.GetWidth();
+        int height = levelData.GetHeight();
+
+        boolean[] reached = new boolean[width * height];
+        int[]     queue   = new int[width * height];
+        int       head    = 0;
+        int       tail    = 0;
+
+        queue[tail++]  = start;
+        reached[start] = true;
+
+        while(head < tail)
+        {
+            int cell = queue[head++];
+
+            // The maze is walled all round, so an open cell's neighbours never wrap to another row.
+            int[] neighbours = new int[] { cell - 1, cell + 1, cell - width, cell + width };
+            for(int neighbour : neighbours)
+            {
+                if(reached[neighbour] || levelData.IsWall(neighbour % width, neighbour / width))
+                    continue;
+
+                reached[neighbour] = true;
+                queue[tail++]      = neighbour;
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+}
@@ -0,0 +1,148 @@
+package game;
+
+import engine.rendering.*;
+import executing.components.lights.*;
+import jamJar.core.math.vectors.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Culling 10k lights in a 1024 maze: building the grid at load, gathering candidates from a visible disk of radius 48
+// when the player changes cell, and ranking them every frame. "ScanLights" is the per-light range scan the grid replaced.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LightGridBenchmark
+{
+    private static final int VIEW_COUNT        = 16;
+    private static final int VIEW_RADIUS       = 48;
+    private static final int MAX_ACTIVE_LIGHTS = 8;
+
+    @Param({ "1024" })
+    public int size;
+
+    @Param({ "10000" })
+    public int lights;
+
+    private int          m_width;
+    private int          m_height;
+    private PointLight[] m_lights;
+    private long[][]     m_visibleCells;
+    private float[]      m_viewX;
+    private float[]      m_viewZ;
+    private LightGrid    m_lightGrid;
+    private int          m_view;
+
+    @Setup
+    public void Setup()
+    {
+        LevelData levelData = BenchmarkMazes.Create(size).Decode();
+        Random    random    = new Random(BenchmarkMazes.SEED);
+
+        m_width  = levelData.GetWidth();
+        m_height = levelData.GetHeight();
+
+        m_lights = new PointLight[lights];
+        for(int l = 0; l < lights; l++)
+        {
+            int cell = RandomOpenCell(levelData, random);
+            m_lights[l] = new PointLight(new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()), 0.2f, new Attenuation(4f, 6f, 1f),
+                                         new Vector3f(cell % m_width + 0.5f, 0.9f, cell / m_width + 0.5f));
+        }
+
+        m_visibleCells = new long[VIEW_COUNT][(m_width * m_height + 63) >> 6];
+        m_viewX        = new float[VIEW_COUNT];
+        m_viewZ        = new float[VIEW_COUNT];
+        for(int view = 0; view < VIEW_COUNT; view++)
+        {
+            int cell  = RandomOpenCell(levelData, random);
+            int viewX = cell % m_width;
+            int viewZ = cell / m_width;
+
+            for(int z = Math.max(viewZ - VIEW_RADIUS, 0); z <= Math.min(viewZ + VIEW_RADIUS, m_height - 1); z++)
+            {
+                for(int x = Math.max(viewX - VIEW_RADIUS, 0); x <= Math.min(viewX + VIEW_RADIUS, m_width - 1); x++)
+                {
+                    int visibleCell = x + z * m_width;
+                    if((x - viewX) * (x - viewX) + (z - viewZ) * (z - viewZ) <= VIEW_RADIUS * VIEW_RADIUS && !levelData.IsWall(x, z))
+                        m_visibleCells[view][visibleCell >> 6] |= 1L << visibleCell;
+                }
+            }
+
+            m_viewX[view] = viewX + 0.5f;
+            m_viewZ[view] = viewZ + 0.5f;
+        }
+
+        m_lightGrid = BuildGrid();
+        m_lightGrid.SetCandidates(m_visibleCells[0]);
+    }
+
+    @Benchmark
+    public LightGrid Build() { return BuildGrid(); }
+
+    @Benchmark
+    public LightGrid SetCandidates()
+    {
+        m_view = (m_view + 1) % VIEW_COUNT;
+        m_lightGrid.SetCandidates(m_visibleCells[m_view]);
+        return m_lightGrid;
+    }
+
+    @Benchmark
+    public int Update()
+    {
+        m_lightGrid.Update(m_viewX[0], m_viewZ[0]);
+        return m_lightGrid.GetActiveCount();
+    }
+
+    @Benchmark
+    public int ScanLights()
+    {
+        m_view = (m_view + 1) % VIEW_COUNT;
+        long[] visibleCells = m_visibleCells[m_view];
+
+        int visibleCount = 0;
+        for(PointLight light : m_lights)
+        {
+            int range  = (int)light.GetRange() + 1;
+            int lightX = (int)light.GetPosition().GetX();
+            int lightZ = (int)light.GetPosition().GetZ();
+
+            boolean visible = false;
+            for(int z = Math.max(lightZ - range, 0); z <= Math.min(lightZ + range, m_height - 1) && !visible; z++)
+            {
+                for(int x = Math.max(lightX - range, 0); x <= Math.min(lightX + range, m_width - 1) && !visible; x++)
+                    visible = LevelVisibility.IsCellVisible(visibleCells, x + z * m_width);
+            }
+
+            if(visible)
+                ++visibleCount;
+        }
+        return visibleCount;
+    }
+
+    private LightGrid BuildGrid()
+    {
+        LightGrid result = new LightGrid(m_width, m_height, MAX_ACTIVE_LIGHTS);
+        for(PointLight light : m_lights)
+            result.AddLight(light);
+
+        result.Build();
+        return result;
+    }
+
+    private static int RandomOpenCell(LevelData levelData, Random random)
+    {
+        while(true)
+        {
+            int x = random.nextInt(levelData.GetWidth());
+            int z = random.nextInt(levelData.GetHeight());
+            if(!levelData.IsWall(x, z))
+                return x + z * levelData.GetWidth();
+        }
+    }
+}
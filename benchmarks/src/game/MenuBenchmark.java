@@ -0,0 +1,46 @@
+package game;
+
+import engine.ecs.*;
+import engine.rendering.*;
+import jamJar.rendering.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+// Moving the selection of the level's confirmation and pause menus, which rewrites the text of every item.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MenuBenchmark
+{
+    @Param({ "2", "5" })
+    public int items;
+
+    private Menu m_menu;
+
+    @Setup
+    public void Setup() throws IOException
+    {
+        String    fontText = new String(Files.readAllBytes(Paths.get(NightmareMaze.TEXTURES_PATH + NightmareMaze.FONT_ATLAS + ".fnt")), StandardCharsets.UTF_8);
+        TextAtlas font     = new TextAtlas(NightmareMaze.FONT_ATLAS, new Bitmap(1, 1), fontText);
+
+        Scene scene = new BenchmarkScene();
+        if(items == 2)
+            m_menu = new Menu(scene, font, "Yes", "No");
+        else
+            m_menu = new Menu(scene, font, "Continue", "Restart Level", "Restart Game", "Main Menu", "Exit");
+    }
+
+    @Benchmark
+    public int NextItem()
+    {
+        m_menu.NextItem();
+        return m_menu.GetSelectedIndex();
+    }
+}
@@ -0,0 +1,72 @@
+package game;
+
+import engine.rendering.meshLoading.*;
+import engine.rendering.meshLoading.modelFormats.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+// Loading a model: parsing the OBJ text, MeshData building a missing .bin cache, or MeshData reading a current one.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshDataBenchmark
+{
+    private static final String MODEL_PATH = "res/nightmareMaze/models/";
+
+    @Param({ "key.obj", "trophie.obj" })
+    public String model;
+
+    @Param({ "obj", "cold", "warm" })
+    public String mode;
+
+    private Path   m_folder;
+    private String m_fileName;
+
+    @Setup
+    public void Setup() throws IOException
+    {
+        // Registered by every Scene, which the benchmark never creates.
+        ModelLoader.AddModelFormat("OBJ", OBJModel.class);
+
+        m_folder   = Files.createTempDirectory("MeshDataBenchmark");
+        m_fileName = m_folder + File.separator + model;
+
+        Files.copy(Paths.get(MODEL_PATH + model), Paths.get(m_fileName));
+        if(mode.equals("warm"))
+            MeshData.Load(m_fileName);
+    }
+
+    @Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void DeleteCache() throws IOException
+    {
+        if(mode.equals("cold"))
+            Files.deleteIfExists(Paths.get(m_fileName + MeshData.FILE_EXTENSION));
+    }
+
+    @Benchmark
+    public Object Load()
+    {
+        if(mode.equals("obj"))
+            return ModelLoader.LoadModel(m_fileName);
+
+        return MeshData.Load(m_fileName);
+    }
+
+    @TearDown
+    public void TearDown() throws IOException
+    {
+        File[] files = m_folder.toFile().listFiles();
+        if(files != null)
+        {
+            for(File file : files)
+                Files.delete(file.toPath());
+        }
+        Files.delete(m_folder);
+    }
+}
@@ -0,0 +1,197 @@
+package game;
+
+import engine.audio.*;
+import engine.ecs.*;
+import engine.rendering.*;
+import jamJar.rendering.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class AssetCache
+{
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    private static final LinkedHashMap<String, Asset> s_assets = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Game keeps one live instance per scene class and never calls OnSceneExit on ChangeScene,
+    // so references are owned by the scene class and dropped when that class starts again.
+    private static final HashMap<Class<?>, ArrayList<Asset>> s_owners = new HashMap<>();
+
+    private static long s_budget = DEFAULT_BUDGET;
+    private static long s_residentBytes;
+    private static long s_hitCount;
+    private static long s_missCount;
+
+    public static Texture AcquireTexture(Scene scene, String name)
+    {
+        String key = "texture:" + name + ":" + scene.GetSetting("SamplingMode") + ":" + scene.GetSetting("WrappingMode");
+
+        Texture result = Acquire(scene, key);
+        if(result != null)
+            return result;
+
+        Bitmap bitmap = new Bitmap(NightmareMaze.TEXTURES_PATH + name);
+        return Add(scene, key, scene.CreateTexture(bitmap), bitmap.GetWidth() * bitmap.GetHeight() * 4L);
+    }
+
+    public static Mesh AcquireMesh(Scene scene, String name) { return AcquireMesh(scene, name, null); }
+
+    public static Mesh AcquireMesh(Scene scene, String name, MeshData meshData)
+    {
+        String key = "mesh:" + name;
+
+        Mesh result = Acquire(scene, key);
+        if(result != null)
+            return result;
+
+        if(meshData == null)
+            meshData = MeshData.Load(NightmareMaze.MODELS_PATH + name);
+
+        return Add(scene, key, scene.CreateMesh(meshData.GetVertices(), meshData.GetIndices()), meshData.GetDataSize());
+    }
+
+    public static Sound AcquireSound(Scene scene, String name, boolean positional) { return AcquireSound(scene, name, positional, null); }
+
+    public static Sound AcquireSound(Scene scene, String name, boolean positional, WaveData waveData)
+    {
+        String key = GetSoundKey(name, positional);
+
+        Sound result = Acquire(scene, key);
+        if(result != null)
+            return result;
+
+        if(waveData == null)
+            waveData = new WaveData(NightmareMaze.SOUNDS_PATH + name);
+
+        result = new Sound(key);
+        if(!result.FoundResource())
+            result.SetResource(AudioDevice.CurrentDevice().CreateSound(waveData, positional));
+
+        return Add(scene, key, result, waveData.GetTotalBytes());
+    }
+
+    public static TextAtlas AcquireFont(Scene scene, String name)
+    {
+        String key = "font:" + name;
+
+        TextAtlas result = Acquire(scene, key);
+        if(result != null)
+            return result;
+
+        result = scene.LoadFont(name);
+        return Add(scene, key, result, result.GetAtlas().GetWidth() * result.GetAtlas().GetHeight() * 4L);
+    }
+
+    public static boolean IsSoundResident(String name, boolean positional) { return s_assets.containsKey(GetSoundKey(name, positional)); }
+
+    public static void Release(Scene scene)
+    {
+        ArrayList<Asset> assets = s_owners.remove(scene.getClass());
+        if(assets == null)
+            return;
+
+        for(Asset asset : assets)
+            --asset.m_referenceCount;
+
+        Evict();
+    }
+
+    public static long GetBudget() { return s_budget; }
+
+    public static void SetBudget(long budget)
+    {
+        s_budget = budget;
+        Evict();
+    }
+
+    public static long GetResidentBytes() { return s_residentBytes; }
+
+    public static int GetResidentCount() { return s_assets.size(); }
+
+    public static long GetHitCount()  { return s_hitCount;  }
+    public static long GetMissCount() { return s_missCount; }
+
+    private static String GetSoundKey(String name, boolean positional) { return "sound:" + name + ":" + positional; }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T Acquire(Scene scene, String key)
+    {
+        Asset asset = s_assets.get(key);
+        if(asset == null)
+        {
+            ++s_missCount;
+            return null;
+        }
+
+        ++s_hitCount;
+        AddReference(scene, asset);
+        return (T)asset.m_value;
+    }
+
+    private static <T> T Add(Scene scene, String key, T value, long size)
+    {
+        Asset asset = new Asset(value, size);
+        s_assets.put(key, asset);
+        s_residentBytes += size;
+
+        AddReference(scene, asset);
+        Evict();
+        return value;
+    }
+
+    private static void AddReference(Scene scene, Asset asset)
+    {
+        ArrayList<Asset> assets = s_owners.get(scene.getClass());
+        if(assets == null)
+        {
+            assets = new ArrayList<>();
+            s_owners.put(scene.getClass(), assets);
+        }
+
+        assets.add(asset);
+        ++asset.m_referenceCount;
+    }
+
+    private static void Evict()
+    {
+        Iterator<Asset> iterator = s_assets.values().iterator();
+        while(s_residentBytes > s_budget && iterator.hasNext())
+        {
+            Asset asset = iterator.next();
+            if(asset.m_referenceCount > 0)
+                continue;
+
+            iterator.remove();
+            s_residentBytes -= asset.m_size;
+
+            Free(asset.m_value);
+        }
+    }
+
+    // The engine's finalizers delete GL objects on a thread without the GL context, so textures and meshes are deleted
+    // here. A sound's buffer is deleted by its own finalizer, since OpenAL is not bound to a thread, and a font is only
+    // its atlas bitmap; both go with their last reference.
+    private static void Free(Object value)
+    {
+        if(value instanceof Texture)
+            RenderDevice.CurrentDevice().DeleteTexture(((Texture)value).GetData());
+        else if(value instanceof Mesh)
+            RenderDevice.CurrentDevice().DeleteMesh(((Mesh)value).GetData());
+    }
+
+    private static class Asset
+    {
+        private final Object m_value;
+        private final long   m_size;
+        private       int    m_referenceCount;
+
+        public Asset(Object value, long size)
+        {
+            m_value = value;
+            m_size  = size;
+        }
+    }
+}
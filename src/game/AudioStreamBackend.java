@@ -0,0 +1,23 @@
+package game;
+
+import javax.sound.sampled.*;
+import java.nio.*;
+
+public interface AudioStreamBackend
+{
+    void Open(AudioFormat format, int bufferCount);
+
+    int Reclaim();
+
+    void Queue(ByteBuffer data);
+
+    void Play();
+    void Pause();
+    void Stop();
+
+    boolean IsPlaying();
+
+    void SetVolume(float volume);
+
+    void Close();
+}
@@ -0,0 +1,45 @@
+package game;
+
+public class CellGrid
+{
+    public static final byte WALL  = 0;
+    public static final byte FLOOR = 1;
+    public static final byte KEY   = 2;
+    public static final byte DOOR  = 3;
+    public static final byte WIN   = 4;
+
+    private final int    m_width;
+    private final int    m_height;
+    private final byte[] m_cells;
+
+    public CellGrid(LevelData levelData)
+    {
+        m_width  = levelData.GetWidth();
+        m_height = levelData.GetHeight();
+        m_cells  = new byte[m_width * m_height];
+
+        for(int z = 0; z < m_height; z++)
+        {
+            for(int x = 0; x < m_width; x++)
+                m_cells[x + z * m_width] = levelData.IsWall(x, z) ? WALL : FLOOR;
+        }
+
+        if(levelData.GetWinX() > 0 || levelData.GetWinZ() > 0)
+            Set(levelData.GetWinX(), levelData.GetWinZ(), WIN);
+    }
+
+    public int GetWidth()  { return m_width;  }
+    public int GetHeight() { return m_height; }
+
+    public byte Get(int x, int z)
+    {
+        if(x < 0 || z < 0 || x >= m_width || z >= m_height)
+            return WALL;
+
+        return m_cells[x + z * m_width];
+    }
+
+    public void Set(int x, int z, byte type) { m_cells[x + z * m_width] = type; }
+
+    public boolean IsWall(int x, int z) { return Get(x, z) == WALL; }
+}
@@ -0,0 +1,87 @@
+package game;
+
+import java.util.*;
+
+public class CellMap<T>
+{
+    private final int   m_width;
+    private final int[] m_slots;
+
+    private int[]    m_cells;
+    private Object[] m_values;
+    private int      m_count;
+
+    public CellMap(int width, int height)
+    {
+        m_width = width;
+        m_slots = new int[width * height];
+
+        m_cells  = new int[16];
+        m_values = new Object[16];
+    }
+
+    public int GetCell(int x, int z) { return x + z * m_width; }
+
+    public int GetX(int cell) { return cell % m_width; }
+    public int GetZ(int cell) { return cell / m_width; }
+
+    public T Get(int x, int z) { return Get(GetCell(x, z)); }
+
+    @SuppressWarnings("unchecked")
+    public T Get(int cell)
+    {
+        int slot = m_slots[cell];
+        return slot == 0 ? null : (T)m_values[slot - 1];
+    }
+
+    public void Place(int x, int z, T value) { Place(GetCell(x, z), value); }
+
+    public void Place(int cell, T value)
+    {
+        int slot = m_slots[cell];
+        if(slot != 0)
+        {
+            m_values[slot - 1] = value;
+            return;
+        }
+
+        if(m_count == m_cells.length)
+        {
+            m_cells  = Arrays.copyOf(m_cells,  m_count * 2);
+            m_values = Arrays.copyOf(m_values, m_count * 2);
+        }
+
+        m_cells[m_count]  = cell;
+        m_values[m_count] = value;
+        m_slots[cell]     = ++m_count;
+    }
+
+    public T Remove(int x, int z) { return Remove(GetCell(x, z)); }
+
+    @SuppressWarnings("unchecked")
+    public T Remove(int cell)
+    {
+        int slot = m_slots[cell];
+        if(slot == 0)
+            return null;
+
+        T result = (T)m_values[slot - 1];
+
+        --m_count;
+        m_cells[slot - 1]  = m_cells[m_count];
+        m_values[slot - 1] = m_values[m_count];
+        m_values[m_count]  = null;
+
+        m_slots[m_cells[slot - 1]] = slot;
+        m_slots[cell]              = 0;
+
+        return result;
+    }
+
+    public int Count() { return m_count; }
+
+    public int GetCellAt(int index) { return m_cells[index]; }
+
+    @SuppressWarnings("unchecked")
+    public T GetValueAt(int index) { return (T)m_values[index]; }
+}
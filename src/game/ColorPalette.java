@@ -0,0 +1,74 @@
+package game;
+
+import jamJar.core.math.Math;
+import jamJar.core.math.vectors.*;
+
+import java.util.*;
+
+public class ColorPalette
+{
+    private int[] m_colors;
+    private int   m_count;
+
+    // Open addressing from colour to index, probed linearly: a slot holds its colour's index plus one, or zero when
+    // empty, and stays at most half full.
+    private int[] m_slots;
+
+    public ColorPalette()
+    {
+        m_colors = new int[16];
+        m_slots  = new int[32];
+    }
+
+    public int Add(int color)
+    {
+        color &= 0xFFFFFF;
+
+        int index = IndexOf(color);
+        if(index >= 0)
+            return index;
+
+        if(m_count == m_colors.length)
+            m_colors = Arrays.copyOf(m_colors, m_count * 2);
+
+        m_colors[m_count] = color;
+        ++m_count;
+
+        if(m_count * 2 > m_slots.length)
+        {
+            m_slots = new int[m_slots.length * 2];
+            for(int i = 0; i < m_count; i++)
+                m_slots[FindSlot(m_colors[i])] = i + 1;
+        }
+        else
+            m_slots[FindSlot(color)] = m_count;
+
+        return m_count - 1;
+    }
+
+    public int IndexOf(int color) { return m_slots[FindSlot(color & 0xFFFFFF)] - 1; }
+
+    public int IndexOf(Vector3f color) { return IndexOf(ToNumber(color)); }
+
+    public int Count() { return m_count; }
+
+    public int GetColor(int index) { return m_colors[index]; }
+
+    static int ToNumber(Vector3f color)
+    {
+        return ToChannel(color.GetX()) << 16 | ToChannel(color.GetY()) << 8 | ToChannel(color.GetZ());
+    }
+
+    // The slot holding the colour, or the empty slot it would go in.
+    private int FindSlot(int color)
+    {
+        int mask = m_slots.length - 1;
+        int slot = color * 0x9E3779B9 >>> 8 & mask;
+        while(m_slots[slot] != 0 && m_colors[m_slots[slot] - 1] != color)
+            slot = slot + 1 & mask;
+
+        return slot;
+    }
+
+    private static int ToChannel(float value) { return Math.Clamp((int)(value * 255.0f + 0.5f), 0, 255); }
+}
@@ -0,0 +1,364 @@
+package game;
+
+import jamJar.core.Console;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Named, nestable timing scopes for the phases of a frame and the threads working beside it. Every thread records into
+// its own ring of recent samples, which only that thread writes, so recording takes no locks and readers never stall
+// it. While the profiler is disabled a scope costs a single flag check.
+public class FrameProfiler
+{
+    private static final int BUFFER_SIZE = 1 << 14;
+    private static final int MAX_DEPTH   = 32;
+
+    private static final ArrayList<Scope>               s_scopes    = new ArrayList<>();
+    private static final CopyOnWriteArrayList<Recorder> s_recorders = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<Recorder> s_recorder = new ThreadLocal<Recorder>()
+    {
+        @Override
+        protected Recorder initialValue()
+        {
+            Recorder result = new Recorder(Thread.currentThread().getName());
+            s_recorders.add(result);
+            return result;
+        }
+    };
+
+    private static volatile boolean s_isEnabled  = Boolean.getBoolean("nightmareMaze.profile");
+    private static volatile int     s_generation;
+
+    public static boolean IsEnabled() { return s_isEnabled; }
+
+    public static void SetEnabled(boolean isEnabled)
+    {
+        // Scopes left open when the profiler was turned off are forgotten rather than closed with a wrong time.
+        if(isEnabled && !s_isEnabled)
+            ++s_generation;
+
+        s_isEnabled = isEnabled;
+    }
+
+    public static synchronized Scope AddScope(String name)
+    {
+        for(Scope scope : s_scopes)
+        {
+            if(scope.GetName().equals(name))
+                return scope;
+        }
+
+        Scope result = new Scope(name, s_scopes.size());
+        s_scopes.add(result);
+        return result;
+    }
+
+    public static boolean HasSamples()
+    {
+        for(Recorder recorder : s_recorders)
+        {
+            if(recorder.m_count > 0)
+                return true;
+        }
+        return false;
+    }
+
+    // p50, p99 and max of every scope over the samples still held, in the order the scopes were added.
+    public static List<Statistics> GetStatistics()
+    {
+        Scope[] scopes;
+        synchronized(FrameProfiler.class)
+        {
+            scopes = s_scopes.toArray(new Scope[s_scopes.size()]);
+        }
+
+        long[][] durations = new long[scopes.length][];
+        int[]    counts    = new int[scopes.length];
+        int[]    depths    = new int[scopes.length];
+
+        for(Recorder recorder : s_recorders)
+        {
+            Recorder.Snapshot snapshot = recorder.GetSnapshot();
+            for(int i = 0; i < snapshot.m_count; i++)
+            {
+                int scope = snapshot.m_scopes[i];
+                if(scope >= scopes.length)
+                    continue;
+
+                if(durations[scope] == null)
+                    durations[scope] = new long[64];
+                else if(counts[scope] == durations[scope].length)
+                    durations[scope] = Arrays.copyOf(durations[scope], counts[scope] * 2);
+
+                durations[scope][counts[scope]++] = snapshot.m_durations[i];
+                depths[scope] = snapshot.m_depths[i];
+            }
+        }
+
+        List<Statistics> result = new ArrayList<>();
+        for(int scope = 0; scope < scopes.length; scope++)
+        {
+            if(counts[scope] == 0)
+                continue;
+
+            long[] scopeDurations = durations[scope];
+            Arrays.sort(scopeDurations, 0, counts[scope]);
+
+            result.add(new Statistics(scopes[scope].GetName(), depths[scope], counts[scope],
+                                      scopeDurations[Percentile(counts[scope], 0.5)],
+                                      scopeDurations[Percentile(counts[scope], 0.99)],
+                                      scopeDurations[counts[scope] - 1]));
+        }
+        return result;
+    }
+
+    // Writes every sample still held to a CSV file and the statistics of each scope to a JSON file.
+    public static void Write(String csvFileName, String jsonFileName) throws IOException
+    {
+        Scope[] scopes;
+        synchronized(FrameProfiler.class)
+        {
+            scopes = s_scopes.toArray(new Scope[s_scopes.size()]);
+        }
+
+        Files.createDirectories(Paths.get(csvFileName).toAbsolutePath().getParent());
+
+        try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(csvFileName), StandardCharsets.UTF_8)))
+        {
+            writer.println("thread,scope,depth,start_ns,duration_ns");
+            for(Recorder recorder : s_recorders)
+            {
+                Recorder.Snapshot snapshot = recorder.GetSnapshot();
+                for(int i = 0; i < snapshot.m_count; i++)
+                {
+                    if(snapshot.m_scopes[i] >= scopes.length)
+                        continue;
+
+                    writer.println(recorder.m_threadName + "," + scopes[snapshot.m_scopes[i]].GetName() + "," + snapshot.m_depths[i] + ","
+                                   + snapshot.m_startTimes[i] + "," + snapshot.m_durations[i]);
+                }
+            }
+        }
+
+        StringBuilder json = new StringBuilder("[\n");
+        List<Statistics> statistics = GetStatistics();
+        for(int i = 0; i < statistics.size(); i++)
+        {
+            Statistics scope = statistics.get(i);
+            json.append("    { \"scope\" : \"").append(scope.GetName()).append("\", \"depth\" : ").append(scope.GetDepth())
+                .append(", \"count\" : ").append(scope.GetCount())
+                .append(", \"p50Ms\" : ").append(scope.GetP50() / 1e6)
+                .append(", \"p99Ms\" : ").append(scope.GetP99() / 1e6)
+                .append(", \"maxMs\" : ").append(scope.GetMax() / 1e6)
+                .append(i < statistics.size() - 1 ? " },\n" : " }\n");
+        }
+        json.append("]\n");
+
+        Files.write(Paths.get(jsonFileName), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Writes the profile next to the save if anything was recorded; used when the game exits.
+    public static void WriteIfRecorded()
+    {
+        if(!HasSamples())
+            return;
+
+        String csvFileName  = NightmareMaze.FILE_PATH + "profile.csv";
+        String jsonFileName = NightmareMaze.FILE_PATH + "profile.json";
+        try
+        {
+            Write(csvFileName, jsonFileName);
+            Console.PrintLine("Profile written to " + csvFileName + " and " + jsonFileName);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not write profile: " + e.getMessage());
+        }
+    }
+
+    private static int Percentile(int count, double fraction) { return Math.min(count - 1, (int)(count * fraction)); }
+
+    public static class Scope
+    {
+        private final String m_name;
+        private final int    m_index;
+
+        private Scope(String name, int index)
+        {
+            m_name  = name;
+            m_index = index;
+        }
+
+        public String GetName() { return m_name; }
+
+        public void Start()
+        {
+            if(s_isEnabled)
+                s_recorder.get().Start(m_index);
+        }
+
+        public void Stop()
+        {
+            if(s_isEnabled)
+                s_recorder.get().Stop(m_index);
+        }
+    }
+
+    public static class Statistics
+    {
+        private final String m_name;
+        private final int    m_depth;
+        private final int    m_count;
+        private final long   m_p50;
+        private final long   m_p99;
+        private final long   m_max;
+
+        private Statistics(String name, int depth, int count, long p50, long p99, long max)
+        {
+            m_name  = name;
+            m_depth = depth;
+            m_count = count;
+            m_p50   = p50;
+            m_p99   = p99;
+            m_max   = max;
+        }
+
+        public String GetName()  { return m_name;  }
+        public int    GetDepth() { return m_depth; }
+        public int    GetCount() { return m_count; }
+
+        // Durations are in nanoseconds.
+        public long GetP50() { return m_p50; }
+        public long GetP99() { return m_p99; }
+        public long GetMax() { return m_max; }
+    }
+
+    // One thread's open scopes and its ring of finished samples. Only the owning thread writes; m_count is published
+    // after each sample, and a reader drops whatever the writer may have overwritten while it was copying.
+    private static class Recorder
+    {
+        private final String m_threadName;
+
+        private final int[]  m_scopes;
+        private final byte[] m_depths;
+        private final long[] m_startTimes;
+        private final long[] m_durations;
+
+        private volatile long m_count;
+
+        private final int[]  m_openScopes;
+        private final long[] m_openTimes;
+        private       int    m_depth;
+        private       int    m_generation;
+
+        public Recorder(String threadName)
+        {
+            m_threadName = threadName;
+
+            m_scopes     = new int[BUFFER_SIZE];
+            m_depths     = new byte[BUFFER_SIZE];
+            m_startTimes = new long[BUFFER_SIZE];
+            m_durations  = new long[BUFFER_SIZE];
+
+            m_openScopes = new int[MAX_DEPTH];
+            m_openTimes  = new long[MAX_DEPTH];
+            m_generation = s_generation;
+        }
+
+        public void Start(int scope)
+        {
+            if(m_generation != s_generation)
+            {
+                m_generation = s_generation;
+                m_depth      = 0;
+            }
+
+            if(m_depth == MAX_DEPTH)
+                return;
+
+            m_openScopes[m_depth] = scope;
+            m_openTimes[m_depth]  = System.nanoTime();
+            ++m_depth;
+        }
+
+        public void Stop(int scope)
+        {
+            long endTime = System.nanoTime();
+
+            if(m_depth == 0 || m_openScopes[m_depth - 1] != scope || m_generation != s_generation)
+                return;
+
+            --m_depth;
+
+            long count = m_count;
+            int  index = (int)(count & (BUFFER_SIZE - 1));
+
+            m_scopes[index]     = scope;
+            m_depths[index]     = (byte)m_depth;
+            m_startTimes[index] = m_openTimes[m_depth];
+            m_durations[index]  = endTime - m_openTimes[m_depth];
+
+            m_count = count + 1;
+        }
+
+        public Snapshot GetSnapshot()
+        {
+            long end   = m_count;
+            long start = Math.max(0, end - BUFFER_SIZE);
+
+            Snapshot result = new Snapshot((int)(end - start));
+            for(long i = start; i < end; i++)
+            {
+                int index  = (int)(i & (BUFFER_SIZE - 1));
+                int target = (int)(i - start);
+
+                result.m_scopes[target]     = m_scopes[index];
+                result.m_depths[target]     = m_depths[index];
+                result.m_startTimes[target] = m_startTimes[index];
+                result.m_durations[target]  = m_durations[index];
+            }
+
+            // Samples the writer lapped during the copy are torn, and so is the one in the slot it may be writing now; keep
+            // only the ones it cannot have reached yet.
+            long valid = Math.max(start, m_count - BUFFER_SIZE + 1);
+            result.Drop((int)(valid - start));
+            return result;
+        }
+
+        private static class Snapshot
+        {
+            private int[]  m_scopes;
+            private byte[] m_depths;
+            private long[] m_startTimes;
+            private long[] m_durations;
+            private int    m_count;
+
+            public Snapshot(int count)
+            {
+                m_scopes     = new int[count];
+                m_depths     = new byte[count];
+                m_startTimes = new long[count];
+                m_durations  = new long[count];
+                m_count      = count;
+            }
+
+            public void Drop(int count)
+            {
+                if(count <= 0)
+                    return;
+
+                count = Math.min(count, m_count);
+
+                m_scopes     = Arrays.copyOfRange(m_scopes,     count, m_count);
+                m_depths     = Arrays.copyOfRange(m_depths,     count, m_count);
+                m_startTimes = Arrays.copyOfRange(m_startTimes, count, m_count);
+                m_durations  = Arrays.copyOfRange(m_durations,  count, m_count);
+                m_count     -= count;
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package game;
+
+import engine.ecs.*;
+import executing.components.*;
+import jamJar.core.*;
+import jamJar.core.math.vectors.*;
+
+import java.util.*;
+
+// The profiler's statistics drawn over the top left of the screen, refreshed a few times a second.
+public class FrameProfilerHud
+{
+    private static final double REFRESH_TIME = 0.5;
+
+    private final Entity m_text;
+
+    private double m_refreshTime;
+
+    public FrameProfilerHud(Scene scene)
+    {
+        m_text = scene.CreateEntity(new TextComponent("", AssetCache.AcquireFont(scene, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.TOP_LEFT, new Vector2f(), new Vector2f(0.5f)));
+    }
+
+    public void Update()
+    {
+        double currentTime = Clock.GetSeconds();
+        if(currentTime - m_refreshTime < REFRESH_TIME)
+            return;
+
+        m_refreshTime = currentTime;
+
+        StringBuilder text = new StringBuilder("Scope  p50 / p99 / max ms\n");
+        for(FrameProfiler.Statistics scope : FrameProfiler.GetStatistics())
+        {
+            for(int i = 0; i < scope.GetDepth(); i++)
+                text.append("  ");
+
+            text.append(String.format(Locale.ROOT, "%s  %.2f / %.2f / %.2f\n", scope.GetName(), scope.GetP50() / 1e6, scope.GetP99() / 1e6, scope.GetMax() / 1e6));
+        }
+
+        text.append(String.format(Locale.ROOT, "\nAssets  %d resident, %.1f / %.1f MB, %d hits / %d misses\n", AssetCache.GetResidentCount(),
+                                  AssetCache.GetResidentBytes() / 1048576.0, AssetCache.GetBudget() / 1048576.0, AssetCache.GetHitCount(), AssetCache.GetMissCount()));
+
+        m_text.GetComponent(TextComponent.class).SetText(text.toString());
+    }
+
+    public void Free() { m_text.Free(); }
+}
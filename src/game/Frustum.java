@@ -0,0 +1,110 @@
+package game;
+
+import jamJar.core.math.Math;
+import jamJar.core.math.Quaternion;
+import jamJar.core.math.matrices.*;
+import jamJar.core.math.vectors.*;
+
+public class Frustum
+{
+    private static final int PLANE_COUNT = 6;
+
+    private final float[] m_planes;
+    private final float[] m_viewProjection;
+    private final float[] m_view;
+
+    public Frustum()
+    {
+        m_planes         = new float[PLANE_COUNT * 4];
+        m_viewProjection = new float[16];
+        m_view           = new float[16];
+    }
+
+    public void Update(Matrix viewProjection)
+    {
+        for(int row = 0; row < 4; row++)
+        {
+            for(int column = 0; column < 4; column++)
+                m_viewProjection[row * 4 + column] = viewProjection.GetValue(row, column);
+        }
+
+        UpdatePlanes();
+    }
+
+    // The same matrix as Camera.GetViewProjection, built in place instead of through four temporary matrices a frame.
+    public void Update(Matrix projection, Vector3f position, Quaternion rotation)
+    {
+        float x = rotation.GetX();
+        float y = rotation.GetY();
+        float z = rotation.GetZ();
+        float w = rotation.GetW();
+
+        // The inverse rotation is the transpose of the rotation, so its rows are the rotation's right, up and front columns.
+        SetViewRow(0, 1.0f - 2.0f * (y * y + z * z), 2.0f * (x * y + w * z),        2.0f * (x * z - w * y),        position);
+        SetViewRow(1, 2.0f * (x * y - w * z),        1.0f - 2.0f * (x * x + z * z), 2.0f * (y * z + w * x),        position);
+        SetViewRow(2, 2.0f * (x * z + w * y),        2.0f * (y * z - w * x),        1.0f - 2.0f * (x * x + y * y), position);
+        m_view[12] = 0.0f;
+        m_view[13] = 0.0f;
+        m_view[14] = 0.0f;
+        m_view[15] = 1.0f;
+
+        for(int row = 0; row < 4; row++)
+        {
+            for(int column = 0; column < 4; column++)
+            {
+                m_viewProjection[row * 4 + column] = projection.GetValue(row, 0) * m_view[column]     + projection.GetValue(row, 1) * m_view[4 + column] +
+                                                     projection.GetValue(row, 2) * m_view[8 + column] + projection.GetValue(row, 3) * m_view[12 + column];
+            }
+        }
+
+        UpdatePlanes();
+    }
+
+    private void SetViewRow(int row, float x, float y, float z, Vector3f position)
+    {
+        m_view[row * 4    ] = x;
+        m_view[row * 4 + 1] = y;
+        m_view[row * 4 + 2] = z;
+        m_view[row * 4 + 3] = -(x * position.GetX() + y * position.GetY() + z * position.GetZ());
+    }
+
+    private void UpdatePlanes()
+    {
+        for(int plane = 0; plane < PLANE_COUNT; plane++)
+        {
+            int   row  = plane / 2;
+            float sign = plane % 2 == 0 ? 1.0f : -1.0f;
+
+            float a = m_viewProjection[12] + sign * m_viewProjection[row * 4    ];
+            float b = m_viewProjection[13] + sign * m_viewProjection[row * 4 + 1];
+            float c = m_viewProjection[14] + sign * m_viewProjection[row * 4 + 2];
+            float d = m_viewProjection[15] + sign * m_viewProjection[row * 4 + 3];
+
+            float length = Math.Sqrt(a * a + b * b + c * c);
+
+            m_planes[plane * 4    ] = a / length;
+            m_planes[plane * 4 + 1] = b / length;
+            m_planes[plane * 4 + 2] = c / length;
+            m_planes[plane * 4 + 3] = d / length;
+        }
+    }
+
+    public boolean Intersects(float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        for(int plane = 0; plane < PLANE_COUNT; plane++)
+        {
+            float a = m_planes[plane * 4    ];
+            float b = m_planes[plane * 4 + 1];
+            float c = m_planes[plane * 4 + 2];
+            float d = m_planes[plane * 4 + 3];
+
+            float x = a >= 0 ? maxX : minX;
+            float y = b >= 0 ? maxY : minY;
+            float z = c >= 0 ? maxZ : minZ;
+
+            if(a * x + b * y + c * z + d < 0)
+                return false;
+        }
+        return true;
+    }
+}
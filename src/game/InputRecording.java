@@ -0,0 +1,379 @@
+package game;
+
+import engine.core.*;
+import jamJar.core.Console;
+import jamJar.core.math.*;
+import jamJar.core.math.vectors.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+// A level's input recorded from its start, one record per frame with the checksum of the rules after it.
+public class InputRecording
+{
+    private static final int MAGIC   = 0x4E4D4952;
+    private static final int VERSION = 2;
+
+    private static final int KEYS    = 1;
+    private static final int BUTTONS = 1 << 1;
+    private static final int MOUSE   = 1 << 2;
+    private static final int SCROLL  = 1 << 3;
+    private static final int DELTA   = 1 << 4;
+    private static final int PLAYED  = 1 << 5;
+    private static final int GRABBED = 1 << 6;
+    private static final int END     = 0xFF;
+
+    private static final InputDevice.Key[]         ALL_KEYS    = InputDevice.Key.values();
+    private static final InputDevice.MouseButton[] ALL_BUTTONS = InputDevice.MouseButton.values();
+
+    private static void WriteColors(DataOutputStream stream, Vector3f[] colors) throws IOException
+    {
+        stream.writeShort(colors.length);
+        for(Vector3f color : colors)
+        {
+            stream.writeFloat(color.GetX());
+            stream.writeFloat(color.GetY());
+            stream.writeFloat(color.GetZ());
+        }
+    }
+
+    private static Vector3f[] ReadColors(DataInputStream stream) throws IOException
+    {
+        Vector3f[] result = new Vector3f[stream.readUnsignedShort()];
+        for(int i = 0; i < result.length; i++)
+            result[i] = new Vector3f(stream.readFloat(), stream.readFloat(), stream.readFloat());
+
+        return result;
+    }
+
+    // Records the frames of one level, which reads its input from GetInputDevice().
+    public static class Recorder implements Closeable
+    {
+        private final DataOutputStream    m_stream;
+        private final ScriptedInputDevice m_inputDevice;
+
+        private final byte[] m_changedKeys;
+        private       int    m_changedKeyCount;
+        private       int    m_changedButtons;
+        private       float  m_moveX;
+        private       float  m_moveY;
+        private       int    m_scroll;
+        private       float  m_delta;
+        private       float  m_lastDelta;
+        private       int    m_flags;
+
+        private int m_frameCount;
+
+        // Levels left for the menu end without a scene exit, so the recording is also finished when the game quits.
+        private final Thread  m_shutdownHook;
+        private       boolean m_isClosed;
+
+        public Recorder(String fileName, int levelIndex, long laughSeed, LevelSaveData saveData, InputDevice window) throws IOException
+        {
+            Path path = Paths.get(fileName).toAbsolutePath();
+            Files.createDirectories(path.getParent());
+
+            m_stream      = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(path))));
+            m_inputDevice = new ScriptedInputDevice();
+            m_changedKeys = new byte[ALL_KEYS.length];
+
+            m_inputDevice.SetMouseGrabbed(window.IsMouseGrabbed());
+
+            Vector3f   position = saveData.GetCameraPosition();
+            Quaternion rotation = saveData.GetCameraRotation();
+
+            m_stream.writeInt(MAGIC);
+            m_stream.writeInt(VERSION);
+            m_stream.writeInt(levelIndex);
+            m_stream.writeLong(laughSeed);
+            m_stream.writeFloat(position.GetX());
+            m_stream.writeFloat(position.GetY());
+            m_stream.writeFloat(position.GetZ());
+            m_stream.writeFloat(rotation.GetX());
+            m_stream.writeFloat(rotation.GetY());
+            m_stream.writeFloat(rotation.GetZ());
+            m_stream.writeFloat(rotation.GetW());
+            m_stream.writeFloat(saveData.GetSludgeLevel());
+            WriteColors(m_stream, saveData.GetCollectedKeys());
+            WriteColors(m_stream, saveData.GetOpenedDoors());
+            m_stream.writeBoolean(window.IsMouseGrabbed());
+
+            m_shutdownHook = new Thread("InputRecording shutdown")
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        close();
+                    }
+                    catch(IOException e)
+                    {
+                        Console.PrintError("Could not finish input recording: " + e.getMessage());
+                    }
+                }
+            };
+            Runtime.getRuntime().addShutdownHook(m_shutdownHook);
+        }
+
+        public ScriptedInputDevice GetInputDevice() { return m_inputDevice; }
+
+        public int GetFrameCount() { return m_frameCount; }
+
+        public void Capture(InputDevice window, float delta)
+        {
+            m_flags           = 0;
+            m_changedKeyCount = 0;
+            m_changedButtons  = 0;
+
+            for(InputDevice.Key key : ALL_KEYS)
+            {
+                boolean isDown = window.IsKeyDown(key);
+                if(isDown != m_inputDevice.IsKeyDown(key))
+                {
+                    m_changedKeys[m_changedKeyCount++] = (byte)key.ordinal();
+                    m_inputDevice.SetKeyDown(key, isDown);
+                }
+            }
+            if(m_changedKeyCount > 0)
+                m_flags |= KEYS;
+
+            for(InputDevice.MouseButton button : ALL_BUTTONS)
+            {
+                boolean isDown = window.IsMouseDown(button);
+                if(isDown != m_inputDevice.IsMouseDown(button))
+                {
+                    m_changedButtons |= 1 << button.ordinal();
+                    m_inputDevice.SetMouseDown(button, isDown);
+                }
+            }
+            if(m_changedButtons != 0)
+                m_flags |= BUTTONS;
+
+            // The movement is recorded rather than the position, so a replay that adds it up lands on the same floats.
+            m_moveX = window.GetMouseX() - m_inputDevice.GetMouseX();
+            m_moveY = window.GetMouseY() - m_inputDevice.GetMouseY();
+            if(m_moveX != 0 || m_moveY != 0)
+            {
+                m_inputDevice.MoveMouse(m_moveX, m_moveY);
+                m_flags |= MOUSE;
+            }
+
+            m_scroll = window.GetMouseScroll();
+            if(m_scroll != 0)
+            {
+                m_inputDevice.SetMouseScroll(m_scroll);
+                m_flags |= SCROLL;
+            }
+
+            m_delta = delta;
+            if(Float.floatToIntBits(m_delta) != Float.floatToIntBits(m_lastDelta))
+            {
+                m_lastDelta = m_delta;
+                m_flags |= DELTA;
+            }
+        }
+
+        // Writes the frame captured last with the state the level reached, then ends the recorded device's frame.
+        public synchronized void EndFrame(InputDevice window, boolean isPlayed, int checksum) throws IOException
+        {
+            if(m_isClosed)
+                return;
+
+            if(isPlayed)
+                m_flags |= PLAYED;
+            if(m_inputDevice.IsMouseGrabbed())
+                m_flags |= GRABBED;
+
+            m_stream.writeByte(m_flags);
+
+            if((m_flags & KEYS) != 0)
+            {
+                m_stream.writeByte(m_changedKeyCount);
+                m_stream.write(m_changedKeys, 0, m_changedKeyCount);
+            }
+
+            if((m_flags & BUTTONS) != 0)
+                m_stream.writeByte(m_changedButtons);
+
+            if((m_flags & MOUSE) != 0)
+            {
+                m_stream.writeFloat(m_moveX);
+                m_stream.writeFloat(m_moveY);
+            }
+
+            if((m_flags & SCROLL) != 0)
+                m_stream.writeInt(m_scroll);
+
+            if((m_flags & DELTA) != 0)
+                m_stream.writeFloat(m_delta);
+
+            m_stream.writeInt(checksum);
+            ++m_frameCount;
+
+            if(window.IsMouseGrabbed() != m_inputDevice.IsMouseGrabbed())
+                window.SetMouseGrabbed(m_inputDevice.IsMouseGrabbed());
+
+            if(m_inputDevice.IsMouseGrabbed() && (window.GetMouseX() != 0 || window.GetMouseY() != 0))
+                window.SetMousePosition(new Vector2f());
+
+            m_inputDevice.Update();
+        }
+
+        @Override
+        public synchronized void close() throws IOException
+        {
+            if(m_isClosed)
+                return;
+
+            m_isClosed = true;
+            if(Thread.currentThread() != m_shutdownHook)
+                Runtime.getRuntime().removeShutdownHook(m_shutdownHook);
+
+            m_stream.writeByte(END);
+            m_stream.close();
+        }
+    }
+
+    // Reads a recording back a frame at a time into GetInputDevice(), checking every frame's checksum.
+    public static class Player implements Closeable
+    {
+        private final DataInputStream     m_stream;
+        private final ScriptedInputDevice m_inputDevice;
+
+        private final int           m_levelIndex;
+        private final long          m_laughSeed;
+        private final LevelSaveData m_saveData;
+
+        private int     m_flags;
+        private float   m_delta;
+        private int     m_checksum;
+        private int     m_frameCount;
+        private int     m_divergedFrame;
+        private boolean m_isFinished;
+
+        public Player(String fileName) throws IOException
+        {
+            m_stream      = new DataInputStream(new InflaterInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName)))));
+            m_inputDevice = new ScriptedInputDevice();
+
+            if(m_stream.readInt() != MAGIC || m_stream.readInt() != VERSION)
+            {
+                m_stream.close();
+                throw new IOException(fileName + " is not an input recording of this version");
+            }
+
+            m_levelIndex = m_stream.readInt();
+            m_laughSeed  = m_stream.readLong();
+
+            Vector3f   position = new Vector3f(m_stream.readFloat(), m_stream.readFloat(), m_stream.readFloat());
+            Quaternion rotation = new Quaternion(m_stream.readFloat(), m_stream.readFloat(), m_stream.readFloat(), m_stream.readFloat());
+
+            float      sludgeLevel   = m_stream.readFloat();
+            Vector3f[] collectedKeys = ReadColors(m_stream);
+            Vector3f[] openedDoors   = ReadColors(m_stream);
+
+            m_saveData = new LevelSaveData(m_levelIndex, position, rotation, collectedKeys, openedDoors, null, sludgeLevel);
+
+            m_inputDevice.SetMouseGrabbed(m_stream.readBoolean());
+            m_divergedFrame = -1;
+        }
+
+        public ScriptedInputDevice GetInputDevice() { return m_inputDevice; }
+
+        public int           GetLevelIndex() { return m_levelIndex; }
+        public long          GetLaughSeed()  { return m_laughSeed;  }
+        public LevelSaveData GetSaveData()   { return m_saveData;   }
+
+        public float   GetDelta()    { return m_delta;                 }
+        public boolean IsPlayed()    { return (m_flags & PLAYED) != 0; }
+        public int     GetChecksum() { return m_checksum;              }
+
+        public int GetFrameCount() { return m_frameCount; }
+
+        // The first frame whose state differed from the recorded one, or -1 while every frame has matched.
+        public int GetDivergedFrame() { return m_divergedFrame; }
+
+        public boolean IsFinished() { return m_isFinished; }
+
+        // Loads the next frame's input into the input device; false once the recording has ended. A recording cut off
+        // by a crash ends at its last whole frame.
+        public boolean NextFrame() throws IOException
+        {
+            if(m_isFinished)
+                return false;
+
+            try
+            {
+                m_flags = m_stream.readUnsignedByte();
+                if(m_flags != END)
+                {
+                    ReadFrame();
+                    return true;
+                }
+            }
+            catch(EOFException e)
+            {
+                Console.PrintWarning("Input recording ends without its end marker after frame " + m_frameCount);
+            }
+
+            m_isFinished = true;
+            return false;
+        }
+
+        private void ReadFrame() throws IOException
+        {
+            if((m_flags & KEYS) != 0)
+            {
+                int count = m_stream.readUnsignedByte();
+                for(int i = 0; i < count; i++)
+                {
+                    InputDevice.Key key = ALL_KEYS[m_stream.readUnsignedByte()];
+                    m_inputDevice.SetKeyDown(key, !m_inputDevice.IsKeyDown(key));
+                }
+            }
+
+            if((m_flags & BUTTONS) != 0)
+            {
+                int changedButtons = m_stream.readUnsignedByte();
+                for(InputDevice.MouseButton button : ALL_BUTTONS)
+                {
+                    if((changedButtons & (1 << button.ordinal())) != 0)
+                        m_inputDevice.SetMouseDown(button, !m_inputDevice.IsMouseDown(button));
+                }
+            }
+
+            if((m_flags & MOUSE) != 0)
+                m_inputDevice.MoveMouse(m_stream.readFloat(), m_stream.readFloat());
+
+            if((m_flags & SCROLL) != 0)
+                m_inputDevice.SetMouseScroll(m_stream.readInt());
+
+            if((m_flags & DELTA) != 0)
+                m_delta = m_stream.readFloat();
+
+            m_checksum = m_stream.readInt();
+        }
+
+        // Compares the state the frame reached with the recorded one, then ends the input device's frame.
+        public boolean EndFrame(boolean isPlayed, int checksum)
+        {
+            boolean isMatching = isPlayed == IsPlayed() && checksum == m_checksum;
+            if(!isMatching && m_divergedFrame < 0)
+            {
+                m_divergedFrame = m_frameCount;
+                Console.PrintError("Replay diverged from the recording at frame " + m_frameCount);
+            }
+
+            ++m_frameCount;
+
+            m_inputDevice.SetMouseGrabbed((m_flags & GRABBED) != 0);
+            m_inputDevice.Update();
+            return isMatching;
+        }
+
+        @Override
+        public void close() throws IOException { m_stream.close(); }
+    }
+}
@@ -0,0 +1,94 @@
+package game;
+
+import jamJar.core.*;
+import jamJar.core.Console;
+import jamJar.core.math.vectors.*;
+import jamJar.rendering.*;
+
+import java.io.*;
+
+// Replays an input recording without a window through LevelSimulation, as many times as asked, checking every frame
+// against the recorded checksums and every run's final state against the first. Exits with 1 on any difference.
+// Usage: InputReplay <recording> [levels folder] [runs]
+public class InputReplay
+{
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1)
+        {
+            Console.PrintLine("Usage: InputReplay <recording> [levels folder] [runs]");
+            return;
+        }
+
+        String fileName = args[0];
+        String levels   = args.length > 1 ? args[1] : NightmareMaze.LEVELS_PATH;
+        int    runCount = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        if(!levels.endsWith("/") && !levels.endsWith(File.separator))
+            levels += "/";
+
+        int levelIndex;
+        try(InputRecording.Player player = new InputRecording.Player(fileName))
+        {
+            levelIndex = player.GetLevelIndex();
+        }
+
+        String    folder      = levels + levelIndex + "/";
+        int       numTextures = Level.CalcNumTextures(new Bitmap(folder + "Textures.png").GetWidth());
+        LevelData levelData   = LevelData.Load(folder, numTextures);
+
+        boolean isMatching    = true;
+        int     firstChecksum = 0;
+        for(int run = 0; run < runCount; run++)
+        {
+            int checksum = Replay(fileName, levelData, run);
+            if(run == 0)
+                firstChecksum = checksum;
+            else if(checksum != firstChecksum)
+                isMatching = false;
+        }
+
+        if(!isMatching)
+        {
+            Console.PrintError("Runs ended in different states");
+            System.exit(1);
+        }
+    }
+
+    // Returns the checksum of the final state, or exits if the replay left the recording.
+    private static int Replay(String fileName, LevelData levelData, int run) throws IOException
+    {
+        try(InputRecording.Player player = new InputRecording.Player(fileName))
+        {
+            LevelSimulation simulation = new LevelSimulation(levelData, player.GetSaveData());
+
+            double startTime = Clock.GetMilliSeconds();
+            while(player.NextFrame())
+            {
+                // Frames the recorded game spent in its menus only turned the camera.
+                simulation.Look(player.GetInputDevice());
+                if(player.IsPlayed())
+                    simulation.Play(player.GetInputDevice(), player.GetDelta());
+
+                player.EndFrame(player.IsPlayed(), simulation.GetChecksum());
+            }
+            double time = Clock.GetMilliSeconds() - startTime;
+
+            LevelRules rules    = simulation.GetRules();
+            Vector3f   position = rules.GetPosition();
+
+            Console.PrintLine("Run " + (run + 1) + ": " + player.GetFrameCount() + " frames of level " + (player.GetLevelIndex() + 1) + " in "
+                              + (int)time + "ms (" + (int)(time * 1000 / Math.max(1, player.GetFrameCount())) + "us/frame), "
+                              + (player.GetDivergedFrame() < 0 ? "every frame matched" : "diverged at frame " + player.GetDivergedFrame()));
+            Console.PrintLine("    " + (simulation.IsWon() ? "won" : simulation.IsLost() ? "lost" : "playing") + " at ("
+                              + position.GetX() + ", " + position.GetZ() + "), sludge " + rules.GetSludgeLevel() + ", "
+                              + rules.GetCollectedKeyCount() + " keys held, " + rules.GetOpenedDoorCount() + " doors opened, checksum "
+                              + Integer.toHexString(simulation.GetChecksum()));
+
+            if(player.GetDivergedFrame() >= 0)
+                System.exit(1);
+
+            return simulation.GetChecksum();
+        }
+    }
+}
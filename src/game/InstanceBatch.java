@@ -0,0 +1,258 @@
+package game;
+
+import engine.ecs.*;
+import engine.rendering.*;
+import executing.components.*;
+import jamJar.core.dataStructures.lists.ArrayList;
+import jamJar.core.math.Math;
+import jamJar.core.math.Quaternion;
+import jamJar.core.math.vectors.*;
+
+import java.util.*;
+
+public class InstanceBatch
+{
+    public static final int INSTANCE_SIZE = 15;
+
+    private static final int POSITION = 0;
+    private static final int COLOR    = 3;
+    private static final int NORMAL   = 8;
+    private static final int TANGENT  = 11;
+
+    private final Scene    m_scene;
+    private final Material m_material;
+
+    private final float[] m_vertices;
+    private final int[]   m_indices;
+
+    private final ArrayList<Entity> m_instances;
+
+    private float[] m_instanceData;
+    private int     m_instanceCount;
+
+    private final float[] m_normalMatrix;
+
+    private float[] m_batchVertices;
+    private int[]   m_batchIndices;
+
+    private Entity m_entity;
+    private Mesh   m_mesh;
+
+    public InstanceBatch(Scene scene, VertexList vertices, int[] indices, Material material)
+    {
+        m_scene    = scene;
+        m_material = material;
+
+        m_vertices = vertices.ToFloatArray();
+        m_indices  = indices;
+
+        m_instances = new ArrayList<>();
+
+        m_instanceData  = new float[16 * INSTANCE_SIZE];
+        m_normalMatrix  = new float[9];
+        m_batchVertices = new float[0];
+        m_batchIndices  = new int[0];
+    }
+
+    public void Add(Entity instance) { m_instances.Add(instance); }
+
+    public void Remove(Entity instance) { m_instances.Remove(instance); }
+
+    public Entity GetEntity() { return m_entity; }
+
+    public void Update()
+    {
+        if(m_instanceData.length < m_instances.Count() * INSTANCE_SIZE)
+            m_instanceData = Arrays.copyOf(m_instanceData, m_instances.Count() * 2 * INSTANCE_SIZE);
+
+        int     count   = 0;
+        boolean changed = false;
+
+        for(int i = 0; i < m_instances.Count(); i++)
+        {
+            Entity instance = m_instances.Get(i);
+            if(instance.IsFreed())
+            {
+                m_instances.RemoveAt(i--);
+                continue;
+            }
+
+            if(instance.IsVisible())
+                changed |= Pack(count++, instance);
+        }
+
+        if(!changed && count == m_instanceCount)
+            return;
+
+        m_instanceCount = count;
+        Rebuild();
+    }
+
+    private boolean Pack(int index, Entity instance)
+    {
+        Transformation transformation = instance.GetComponent(Transformation.class);
+        Vector3f       color          = instance.GetComponent(InstanceComponent.class).GetColor();
+
+        Vector3f   position = transformation.GetPosition();
+        Quaternion rotation = transformation.GetRotation();
+        Vector3f   scale    = transformation.GetScale();
+
+        float x = rotation.GetX();
+        float y = rotation.GetY();
+        float z = rotation.GetZ();
+        float w = rotation.GetW();
+
+        int     offset  = index * INSTANCE_SIZE;
+        boolean changed = false;
+
+        // Same layout as Transformation.ToMatrix (translation * rotation * scale), built without the temporary matrices.
+        changed |= Store(offset,      (1 - 2 * (y * y + z * z)) * scale.GetX());
+        changed |= Store(offset +  1, (    2 * (x * y - z * w)) * scale.GetY());
+        changed |= Store(offset +  2, (    2 * (x * z + y * w)) * scale.GetZ());
+        changed |= Store(offset +  3, position.GetX());
+        changed |= Store(offset +  4, (    2 * (x * y + z * w)) * scale.GetX());
+        changed |= Store(offset +  5, (1 - 2 * (x * x + z * z)) * scale.GetY());
+        changed |= Store(offset +  6, (    2 * (y * z - x * w)) * scale.GetZ());
+        changed |= Store(offset +  7, position.GetY());
+        changed |= Store(offset +  8, (    2 * (x * z - y * w)) * scale.GetX());
+        changed |= Store(offset +  9, (    2 * (y * z + x * w)) * scale.GetY());
+        changed |= Store(offset + 10, (1 - 2 * (x * x + y * y)) * scale.GetZ());
+        changed |= Store(offset + 11, position.GetZ());
+
+        changed |= Store(offset + 12, color.GetX());
+        changed |= Store(offset + 13, color.GetY());
+        changed |= Store(offset + 14, color.GetZ());
+
+        return changed;
+    }
+
+    private boolean Store(int index, float value)
+    {
+        if(m_instanceData[index] == value)
+            return false;
+
+        m_instanceData[index] = value;
+        return true;
+    }
+
+    // The engine can only create and delete whole meshes, so a rebuild still uploads a new one; the CPU side reuses its
+    // arrays for as long as the instance count stays the same.
+    private void Rebuild()
+    {
+        Mesh oldMesh = m_mesh;
+
+        m_mesh = null;
+        if(m_instanceCount > 0)
+        {
+            int vertexCount = m_vertices.length / LevelMeshBuilder.VERTEX_SIZE;
+
+            if(m_batchIndices.length != m_instanceCount * m_indices.length)
+            {
+                m_batchVertices = new float[m_instanceCount * m_vertices.length];
+                m_batchIndices  = new int[m_instanceCount * m_indices.length];
+
+                for(int instance = 0; instance < m_instanceCount; instance++)
+                {
+                    for(int index = 0; index < m_indices.length; index++)
+                        m_batchIndices[instance * m_indices.length + index] = m_indices[index] + instance * vertexCount;
+                }
+            }
+
+            for(int instance = 0; instance < m_instanceCount; instance++)
+            {
+                int offset = instance * INSTANCE_SIZE;
+                CalcNormalMatrix(offset);
+
+                for(int vertex = 0; vertex < vertexCount; vertex++)
+                {
+                    int source = vertex * LevelMeshBuilder.VERTEX_SIZE;
+                    int target = (instance * vertexCount + vertex) * LevelMeshBuilder.VERTEX_SIZE;
+
+                    System.arraycopy(m_vertices, source, m_batchVertices, target, LevelMeshBuilder.VERTEX_SIZE);
+
+                    Transform(m_batchVertices, target + POSITION, offset, 1.0f);
+                    Transform(m_batchVertices, target + TANGENT,  offset, 0.0f);
+                    TransformNormal(m_batchVertices, target + NORMAL);
+
+                    Normalize(m_batchVertices, target + NORMAL);
+                    Normalize(m_batchVertices, target + TANGENT);
+
+                    for(int component = 0; component < 3; component++)
+                        m_batchVertices[target + COLOR + component] *= m_instanceData[offset + 12 + component];
+                }
+            }
+
+            m_mesh = m_scene.CreateMesh(new PackedVertexList(m_batchVertices, LevelMeshBuilder.VECTOR_DIMENSIONS), m_batchIndices);
+
+            if(m_entity == null)
+                m_entity = m_scene.CreateEntity(new Transformation(), new MeshComponent(m_mesh), m_material);
+            else
+                m_entity.SetComponent(new MeshComponent(m_mesh));
+        }
+
+        if(m_entity != null)
+            Level.SetVisible(m_entity, m_mesh != null);
+
+        if(oldMesh != null)
+            RenderDevice.CurrentDevice().DeleteMesh(oldMesh.GetData());
+    }
+
+    private void Transform(float[] vertices, int index, int offset, float w)
+    {
+        float x = vertices[index];
+        float y = vertices[index + 1];
+        float z = vertices[index + 2];
+
+        for(int row = 0; row < 3; row++)
+        {
+            int matrix = offset + row * 4;
+            vertices[index + row] = m_instanceData[matrix] * x + m_instanceData[matrix + 1] * y + m_instanceData[matrix + 2] * z + m_instanceData[matrix + 3] * w;
+        }
+    }
+
+    // The inverse-transpose of the instance's rotation and scale, left unscaled by the determinant since normals are
+    // normalized afterwards; a door scaled flatter than it is wide keeps its normals perpendicular to its faces.
+    private void CalcNormalMatrix(int offset)
+    {
+        float a = m_instanceData[offset    ], b = m_instanceData[offset + 1], c = m_instanceData[offset +  2];
+        float d = m_instanceData[offset + 4], e = m_instanceData[offset + 5], f = m_instanceData[offset +  6];
+        float g = m_instanceData[offset + 8], h = m_instanceData[offset + 9], i = m_instanceData[offset + 10];
+
+        m_normalMatrix[0] = e * i - f * h;
+        m_normalMatrix[1] = f * g - d * i;
+        m_normalMatrix[2] = d * h - e * g;
+        m_normalMatrix[3] = c * h - b * i;
+        m_normalMatrix[4] = a * i - c * g;
+        m_normalMatrix[5] = b * g - a * h;
+        m_normalMatrix[6] = b * f - c * e;
+        m_normalMatrix[7] = c * d - a * f;
+        m_normalMatrix[8] = a * e - b * d;
+
+        if(a * m_normalMatrix[0] + b * m_normalMatrix[1] + c * m_normalMatrix[2] < 0)
+        {
+            for(int element = 0; element < m_normalMatrix.length; element++)
+                m_normalMatrix[element] = -m_normalMatrix[element];
+        }
+    }
+
+    private void TransformNormal(float[] vertices, int index)
+    {
+        float x = vertices[index];
+        float y = vertices[index + 1];
+        float z = vertices[index + 2];
+
+        for(int row = 0; row < 3; row++)
+            vertices[index + row] = m_normalMatrix[row * 3] * x + m_normalMatrix[row * 3 + 1] * y + m_normalMatrix[row * 3 + 2] * z;
+    }
+
+    private static void Normalize(float[] vertices, int index)
+    {
+        float length = Math.Sqrt(vertices[index] * vertices[index] + vertices[index + 1] * vertices[index + 1] + vertices[index + 2] * vertices[index + 2]);
+        if(length == 0.0f)
+            return;
+
+        vertices[index    ] /= length;
+        vertices[index + 1] /= length;
+        vertices[index + 2] /= length;
+    }
+}
@@ -0,0 +1,18 @@
+package game;
+
+import engine.ecs.*;
+import jamJar.core.math.vectors.*;
+
+public class InstanceComponent extends Component
+{
+    private final Vector3f m_color;
+
+    public InstanceComponent(Vector3f color) { m_color = color; }
+
+    public InstanceComponent(InstanceComponent other) { m_color = new Vector3f(other.m_color); }
+
+    public Vector3f GetColor() { return m_color; }
+
+    @Override
+    protected Component Clone() { return new InstanceComponent(this); }
+}
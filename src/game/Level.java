@@ -10,49 +10,80 @@ import executing.systems.updaterSystems.*;
 import jamJar.core.*;
 import jamJar.core.dataStructures.*;
 import jamJar.core.dataStructures.lists.ArrayList;
-import jamJar.core.dataStructures.maps.HashMap;
-import jamJar.core.dataStructures.sets.*;
 import jamJar.core.math.*;
 import jamJar.core.math.Math;
 import jamJar.core.math.vectors.*;
 import jamJar.rendering.*;
 
+import java.util.Arrays;
+import java.util.Random;
+
 public class Level
 {
-    private static final float PLAYER_RADIUS        = 0.2f;
-    private static final float INITIAL_SPEED        = 2.3f;
     public  static final float INITIAL_SLUDGE_LEVEL = -0.02f;
-    private static final float DOOR_FLASH_TIME      = 0.4f;
+    private static final float VIEW_DISTANCE        = 48.0f;
+    private static final int   MAX_ACTIVE_LIGHTS    = 8;
 
-    private static final int TEXTURE_SIZE = 224;
+    private static final float    KEY_SPIN_SPEED = 80.0f;
+    private static final Vector3f KEY_SPIN_AXIS  = Vector3f.UP.Add(Vector3f.LEFT).Normalize();
 
-    private final HashMap<Vector2f, Pair<Entity, Entity>> m_keys;
-    private final HashMap<Vector3f, Entity>               m_collectedKeys;
+    private static final int[] DOOR_INDICES = new int[] { 0, 2, 3,
+                                                          3, 1, 0,
+                                                          6, 4, 5,
+                                                          7, 6, 5,
+                                                          1, 3, 7,
+                                                          7, 5, 1,
+                                                          4, 6, 2,
+                                                          0, 4, 2 };
 
-    private final HashMap<Vector2f, Entity>   m_doors;
-    private final HashMap<Vector3f, Vector2f> m_doorLocations;
-    private final HashSet<Vector3f>           m_openedDoors;
+    static final int TEXTURE_SIZE = 224;
 
-    private final int m_index;
+    private static final FrameProfiler.Scope CULL_SCOPE      = FrameProfiler.AddScope("Level.CullChunks");
+    private static final FrameProfiler.Scope LIGHTS_SCOPE    = FrameProfiler.AddScope("Level.UpdateLights");
+    private static final FrameProfiler.Scope BATCHES_SCOPE   = FrameProfiler.AddScope("Level.UpdateBatches");
+    private static final FrameProfiler.Scope COLLISION_SCOPE = FrameProfiler.AddScope("LevelRules.Update");
+    private static final FrameProfiler.Scope MINIMAP_SCOPE   = FrameProfiler.AddScope("MinimapTexture.Upload");
+    private static final FrameProfiler.Scope AUDIO_SCOPE     = FrameProfiler.AddScope("Level.Audio");
+    private static final FrameProfiler.Scope SAVE_SCOPE      = FrameProfiler.AddScope("Level.Save");
 
-    private final Scene  m_scene;
-    private final Bitmap m_map;
-    private final Bitmap m_keyMap;
-    private final Bitmap m_lightMap;
-    private final Bitmap m_doorMap;
-    private final Entity m_entity;
+    private final LevelRules   m_rules;
+    private final ColorPalette m_palette;
 
-    private int m_numTexturesExp;
-    private int m_numTextures;
+    private final CellMap<Pair<Entity, Entity>> m_keys;
+    private final Entity[]                      m_collectedKeys;
+    private       int                           m_collectedKeyCount;
 
-    private int m_winXLocation;
-    private int m_winZLocation;
+    private final CellMap<Entity> m_doors;
 
-    private final KeyboardControl m_keyboardControl;
+    private final int m_index;
 
-    private float m_speed;
+    private final Scene                 m_scene;
+    private final LevelData             m_levelData;
+    private final LevelVisibility       m_visibility;
+    private final LevelLightmap         m_lightmap;
+    private final ArrayList<LevelChunk> m_chunks;
+    private final Frustum               m_frustum;
+    private final Entity[]              m_lights;
+    private final LightGrid             m_lightGrid;
+    private final Mesh                  m_keyMesh;
+    private final Material[]            m_keyMaterials;
+    private final Quaternion            m_keySpin;
+    private       float                 m_keySpinAngle;
+    private final Mesh                  m_doorMesh;
+    private final Material              m_doorMaterial;
+    private final InstanceBatch         m_doorBatch;
+    private final int[]                 m_shownLights;
+    private       int                   m_shownLightCount;
+
+    private final long[]    m_visibleCells;
+    private final boolean[] m_visibleChunks;
+    private final boolean[] m_addedDoors;
+    private       int       m_visibleCell;
 
-    private final AudioSource m_music;
+    private int m_numTextures;
+
+    private final MusicStream m_music;
+    private final SaveJournal m_journal;
 
     private final AudioSource m_leftFootStepSource;
     private final AudioSource m_rightFootStepSource;
@@ -65,23 +96,21 @@ public class Level
     private final AudioSource m_doorLockedSource;
     private final AudioSource m_doorSplashSource;
 
-    private Vector3f    m_oldPosition;
+    private final Vector3f m_leftStepPosition;
+    private final Vector3f m_rightStepPosition;
+    private final Vector3f m_laughPosition;
+    private final Random   m_laughRandom;
     private double      m_stepStartTime;
     private double      m_lastLaughTime;
     private boolean     m_rightStep;
     private boolean     m_playSplash = false;
 
-    private Entity   m_collidingDoor;
     private Vector3f m_collidingDoorColor;
 
-    private double   m_doorFlashStartTime;
-    private Entity   m_flashingDoor;
-
-    private final Entity m_playerOnMap;
-    private final Entity m_passedLocation;
-    private       Entity m_lastSpot;
+    private Entity m_flashingDoor;
 
-    private final HashMap<Vector2f, Entity> m_passedLocations;
+    private final MinimapTexture m_minimap;
+    private final Entity         m_playerOnMap;
 
     private final Entity m_sludge;
 
@@ -105,48 +134,94 @@ public class Level
 
     private boolean m_wasMouseGrabbed;
 
-    public Level(Scene scene, int index, KeyboardControl keyboardControl, LevelSaveData saveData)
+    // A level that is not saved, such as a replayed one, leaves the player's save untouched.
+    public Level(Scene scene, LevelLoader loader, LevelSaveData saveData, long laughSeed, boolean isSaved)
     {
-        m_index = index;
+        m_index   = loader.GetIndex();
+        m_journal = isSaved ? new SaveJournal(m_index, saveData.GetGeneration()) : null;
+
+        m_scene = scene;
+
+        loader.Finish(m_scene);
+
+        m_numTextures = loader.GetTileCount();
+
+        m_levelData = loader.GetLevelData();
+
+        m_rules = new LevelRules(m_levelData, saveData, new LevelRules.Listener()
+        {
+            @Override
+            public void OnCellEntered(int x, int z)
+            {
+                int cell = x + z * m_levelData.GetWidth();
+                if(cell != m_visibleCell)
+                    UpdateVisibility(cell);
 
-        m_keys          = new HashMap<>();
-        m_collectedKeys = new HashMap<>();
+                MovePlayerOnMap(x, z);
+            }
+
+            @Override
+            public void OnKeyCollected(int x, int z, int colorIndex)
+            {
+                Pair<Entity, Entity> keyPair = m_keys.Remove(x, z);
+                keyPair.GetSecond().Free();
+
+                Entity key = keyPair.GetFirst();
+
+                if(m_journal != null)
+                    m_journal.AppendKey(m_palette.GetColor(colorIndex));
+                CollectKey(key, colorIndex);
+
+                Save();
+                m_keySource.Play();
+            }
+        });
 
-        m_doors         = new HashMap<>();
-        m_doorLocations = new HashMap<>();
-        m_openedDoors   = new HashSet<>();
+        m_palette = m_rules.GetPalette();
 
-        m_openedDoors.AddRange(saveData.GetOpenedDoors());
+        m_keys          = new CellMap<>(m_levelData.GetWidth(), m_levelData.GetHeight());
+        m_collectedKeys = new Entity[m_palette.Count()];
 
-        HashSet<Vector3f> collectedKeys = new HashSet<>();
-        collectedKeys.AddRange(saveData.GetCollectedKeys());
+        m_doors = new CellMap<>(m_levelData.GetWidth(), m_levelData.GetHeight());
 
-        m_scene    = scene;
-        m_map      = new Bitmap("./res/nightmareMaze/textures/Levels/" + index + "/levelMap.png");
-        m_keyMap   = new Bitmap("./res/nightmareMaze/textures/Levels/" + index + "/keyMap.png");
-        m_lightMap = new Bitmap("./res/nightmareMaze/textures/Levels/" + index + "/lightMap.png");
-        m_doorMap  = new Bitmap("./res/nightmareMaze/textures/Levels/" + index + "/doorMap.png");
-        m_entity   = BuildLevel(m_scene.LoadTexture("Levels/" + index + "/Textures.png"),
-                                m_scene.LoadTexture("Levels/" + index + "/NormalMaps.png"),
-                                m_scene.LoadTexture("door.png"),
-                                m_scene.LoadTexture("doorNormals.png"), collectedKeys);
+        m_visibility  = loader.GetVisibility();
+        m_lightmap    = loader.GetLightmap();
+        m_lights      = new Entity[m_lightmap == null ? m_levelData.GetLightCount() : 0];
+        m_lightGrid   = new LightGrid(m_levelData.GetWidth(), m_levelData.GetHeight(), m_scene.GetSetting("MaxActiveLights", MAX_ACTIVE_LIGHTS));
+        m_shownLights = new int[m_scene.GetSetting("MaxActiveLights", MAX_ACTIVE_LIGHTS)];
+        m_keyMesh      = loader.GetKeyMesh();
+        m_keyMaterials = new Material[m_palette.Count()];
+        m_keySpin      = new Quaternion();
+
+        VertexList doorVertices = CreateDoorVertices();
+
+        m_doorMaterial = CreateDoorMaterial(AssetCache.AcquireTexture(m_scene, "door.png"), AssetCache.AcquireTexture(m_scene, "doorNormals.png"));
+        m_doorMesh     = m_scene.CreateMesh(doorVertices, DOOR_INDICES);
+        m_doorBatch    = new InstanceBatch(m_scene, doorVertices, DOOR_INDICES, m_doorMaterial);
+        m_chunks       = BuildLevel(loader);
+        m_frustum      = new Frustum();
+
+        m_visibleCells  = new long[(m_levelData.GetWidth() * m_levelData.GetHeight() + 63) >> 6];
+        m_visibleChunks = new boolean[GetChunkIndex(m_levelData.GetWidth() - 1, m_levelData.GetHeight() - 1) + 1];
+        m_addedDoors    = new boolean[m_levelData.GetDoorCount()];
+        m_visibleCell   = -1;
 
 
         m_scene.SetSetting("SamplingMode", RenderDevice.SamplingMode.NEAREST);
 
 
-        Bitmap mapBitmap = new Bitmap(1, 1);
-        mapBitmap.SetPixel(0, 0, Color.GREY);
-        GUIComponent mapGUI = new GUIComponent(m_scene.CreateTexture(mapBitmap), GUIComponent.GUIAlignment.TOP_RIGHT, new Vector2f(), new Vector2f(0.5f));
+        m_minimap = new MinimapTexture(m_scene, m_levelData.GetWidth(), m_levelData.GetHeight(), Color.GREY, Color.BLACK);
+        for(Vector2f location : saveData.GetPassedLocations())
+            m_minimap.Visit((int)location.GetX(), (int)location.GetY());
+        m_minimap.Upload();
+
+        GUIComponent mapGUI = new GUIComponent(m_minimap.GetTexture(), GUIComponent.GUIAlignment.TOP_RIGHT, new Vector2f(), new Vector2f(0.5f));
         m_scene.CreateEntity(mapGUI);
 
         Bitmap playerBitmap = new Bitmap(1, 1);
         playerBitmap.SetPixel(0, 0, Color.RED);
 
-        Bitmap uncoveredBitmap = new Bitmap(1, 1);
-        uncoveredBitmap.SetPixel(0, 0, Color.BLACK);
-
-        Vector2f mapSize = new Vector2f(m_map.GetWidth(), m_map.GetHeight());
+        Vector2f mapSize = new Vector2f(m_levelData.GetWidth(), m_levelData.GetHeight());
 
         Vector2f pixelSize = mapGUI.GetScale().Divide(mapSize);
 
@@ -157,47 +232,23 @@ public class Level
                 playerPosition.Multiply(pixelSize),
                 pixelSize));
 
-        m_passedLocation = m_scene.CreateEntity(new GUIComponent(m_scene.CreateTexture(uncoveredBitmap),
-                GUIComponent.GUIAlignment.TOP_RIGHT,
-                pixelSize,
-                pixelSize));
-
-        m_passedLocation.Hide();
-
-        m_passedLocations = new HashMap<>();
-        for(Vector2f location : saveData.GetPassedLocations())
-        {
-            Entity copiedEntity = m_scene.CopyEntity(m_passedLocation);
-            GUIComponent component = copiedEntity.GetComponent(GUIComponent.class);
-            component.SetPosition(location.Multiply(pixelSize));
-
-            if(location.Equals(playerPosition))
-                copiedEntity.Hide();
-
-            m_passedLocations.Place(location, copiedEntity);
-        }
-
         m_scene.SetSetting("SamplingMode", RenderDevice.SamplingMode.LINEAR);
 
-        m_keyboardControl = keyboardControl;
-
-        m_speed = INITIAL_SPEED;
-
         Material sludgeMaterial = new Material();
         sludgeMaterial.SetProperty("Color", new Vector3f(0.15f, 0.2f, 0.1f));
         m_sludge = m_scene.CreateEntity(
                 new Transformation(
-                        new Vector3f(m_map.GetWidth() / 2.0f, INITIAL_SLUDGE_LEVEL, m_map.GetHeight() / 2.0f),
-                        new Quaternion(), new Vector3f(m_map.GetWidth(), 1, m_map.GetHeight())),
+                        new Vector3f(m_levelData.GetWidth() / 2.0f, INITIAL_SLUDGE_LEVEL, m_levelData.GetHeight() / 2.0f),
+                        new Quaternion(), new Vector3f(m_levelData.GetWidth(), 1, m_levelData.GetHeight())),
                 new MeshComponent(m_scene.CreateQuad()), sludgeMaterial);
 
-        m_music = m_scene.CreateAudioSource(m_scene.LoadSound("music.wav"));
+        m_music = new MusicStream(NightmareMaze.SOUNDS_PATH + "music.wav");
         m_music.SetVolume(0.5f);
-        m_music.Loop();
+        m_music.SetLooping(true);
         m_music.Play();
 
-        Sound footStepSound = m_scene.LoadSound("footStep.wav", true);
-        Sound splashSound   = m_scene.LoadSound("splash.wav", true);
+        Sound footStepSound = loader.GetSound("footStep.wav");
+        Sound splashSound   = loader.GetSound("splash.wav");
 
         m_leftFootStepSource  = m_scene.CreateAudioSource(footStepSound);
         m_rightFootStepSource = m_scene.CreateAudioSource(footStepSound);
@@ -205,46 +256,51 @@ public class Level
         m_leftSplashSource  = m_scene.CreateAudioSource(splashSound);
         m_rightSplashSource = m_scene.CreateAudioSource(splashSound);
 
-        m_evilLaughSource = m_scene.CreateAudioSource(m_scene.LoadSound("monsterLaughing.wav", true));
-        m_lastLaughTime = Clock.GetSeconds();
+        m_evilLaughSource = m_scene.CreateAudioSource(loader.GetSound("monsterLaughing.wav"));
+        m_laughRandom     = new Random(laughSeed);
 
-        m_keySource        = m_scene.CreateAudioSource(m_scene.LoadSound("keyPickup.wav"));
-        m_unlockSource     = m_scene.CreateAudioSource(m_scene.LoadSound("doorUnlocked.wav"));
-        m_doorOpenedSource = m_scene.CreateAudioSource(m_scene.LoadSound("doorOpened.wav"));
-        m_doorLockedSource = m_scene.CreateAudioSource(m_scene.LoadSound("doorLocked.wav"));
-        m_doorSplashSource = m_scene.CreateAudioSource(m_scene.LoadSound("doorSplash.wav"));
+        m_keySource        = m_scene.CreateAudioSource(loader.GetSound("keyPickup.wav"));
+        m_unlockSource     = m_scene.CreateAudioSource(loader.GetSound("doorUnlocked.wav"));
+        m_doorOpenedSource = m_scene.CreateAudioSource(loader.GetSound("doorOpened.wav"));
+        m_doorLockedSource = m_scene.CreateAudioSource(loader.GetSound("doorLocked.wav"));
+        m_doorSplashSource = m_scene.CreateAudioSource(loader.GetSound("doorSplash.wav"));
 
         GetCameraTransformation().SetPosition(saveData.GetCameraPosition());
         GetCameraTransformation().SetRotation(saveData.GetCameraRotation());
         m_sludge.GetComponent(Transformation.class).GetPosition().SetY(saveData.GetSludgeLevel());
 
         m_scene.CreateEntity(new PointLight(new Vector3f(1, 1, 0.9f), 0.4f, new Attenuation(0, 0, 2), m_scene.GetCamera().GetTransformation().GetPosition()));
-        m_oldPosition = GetCameraPosition();
+        m_leftStepPosition  = new Vector3f();
+        m_rightStepPosition = new Vector3f();
+        m_laughPosition     = new Vector3f();
 
         m_flashingDoor = null;
 
-        m_messageGUI = m_scene.CreateEntity(new TextComponent("", m_scene.LoadFont(NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.MIDDLE_CENTER, new Vector2f(), new Vector2f(1.5f)));
+        m_messageGUI = m_scene.CreateEntity(new TextComponent("", AssetCache.AcquireFont(m_scene, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.MIDDLE_CENTER, new Vector2f(), new Vector2f(1.5f)));
         m_messageGUI.Hide();
 
         m_oldMessage = null;
         m_isShownMessageTimed = false;
 
-        m_escapeText = m_scene.CreateEntity(new TextComponent("Press Esc to unlock mouse.", m_scene.LoadFont(NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.BOTTOM_RIGHT, new Vector2f(), new Vector2f(0.5f)));
+        m_escapeText = m_scene.CreateEntity(new TextComponent("Press Esc to unlock mouse.", AssetCache.AcquireFont(m_scene, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.BOTTOM_RIGHT, new Vector2f(), new Vector2f(0.5f)));
         m_escapeText.Hide();
 
-        m_pauseMenu = new Menu(m_scene, scene.LoadFont(NightmareMaze.FONT_ATLAS), "Continue", "Restart Level", "Restart Game", "Main Menu", "Exit");
+        m_pauseMenu = new Menu(m_scene, AssetCache.AcquireFont(m_scene, NightmareMaze.FONT_ATLAS), "Continue", "Restart Level", "Restart Game", "Main Menu", "Exit");
         m_pauseMenu.Hide();
 
-        m_loseMenu = new Menu(m_scene, scene.LoadFont(NightmareMaze.FONT_ATLAS), "Restart Level", "Restart Game", "Main Menu", "Exit");
+        m_loseMenu = new Menu(m_scene, AssetCache.AcquireFont(m_scene, NightmareMaze.FONT_ATLAS), "Restart Level", "Restart Game", "Main Menu", "Exit");
         m_loseMenu.Hide();
 
-        m_confirmationMenu = new Menu(m_scene, scene.LoadFont(NightmareMaze.FONT_ATLAS), "Yes", "No");
+        m_confirmationMenu = new Menu(m_scene, AssetCache.AcquireFont(m_scene, NightmareMaze.FONT_ATLAS), "Yes", "No");
         m_confirmationMenu.Hide();
 
         m_restartLevel = false;
         m_restartGame  = false;
 
         m_wasMouseGrabbed = true;
+
+        Vector3f cameraPosition = GetCameraPosition();
+        UpdateVisibility((int)cameraPosition.GetX() + (int)cameraPosition.GetZ() * m_levelData.GetWidth());
     }
 
     private void ShowMessage(String message) { ShowMessage(message, TextComponent.TextAlignment.MIDDLE_CENTER); }
@@ -303,10 +359,18 @@ public class Level
 
     private Vector3f GetCameraPosition() { return GetCameraTransformation().GetPosition(); }
 
-    private Entity BuildLevel(Texture textures, Texture normalMaps, Texture doorTexture, Texture doorNormalMap, HashSet<Vector3f> collectedKeys)
+    private static Material CreateKeyMaterial(Vector3f color)
     {
-        Mesh keyMesh = m_scene.LoadMesh("key.obj");
+        Material keyMaterial = new Material();
+        keyMaterial.SetProperty("Color", color);
+        keyMaterial.SetProperty("Reflectivity", 4f);
+        keyMaterial.SetProperty("Damping", 32f);
+
+        return keyMaterial;
+    }
 
+    private static VertexList CreateDoorVertices()
+    {
         VertexList doorVertices = new VertexList();
         doorVertices.AddVertex(new Vertex(new Vector3f(-1, -1, -1), new Vector3f(1), new Vector2f(0, 1), new Vector3f(0,  0, -1), new Vector3f()));
         doorVertices.AddVertex(new Vertex(new Vector3f( 1, -1, -1), new Vector3f(1), new Vector2f(1, 1), new Vector3f(0,  0, -1), new Vector3f()));
@@ -317,406 +381,355 @@ public class Level
         doorVertices.AddVertex(new Vertex(new Vector3f(-1,  1,  1), new Vector3f(1), new Vector2f(0, 0), new Vector3f(0,  0,  1), new Vector3f()));
         doorVertices.AddVertex(new Vertex(new Vector3f( 1,  1,  1), new Vector3f(1), new Vector2f(1, 0), new Vector3f(0,  0,  1), new Vector3f()));
 
-        int[] doorIndices = new int[] { 0, 2, 3,
-                                        3, 1, 0,
-                                        6, 4, 5,
-                                        7, 6, 5,
-                                        1, 3, 7,
-                                        7, 5, 1,
-                                        4, 6, 2,
-                                        0, 4, 2 };
-
-        doorVertices.CalculateTangents(0, 2, 4, doorIndices);
-
-        Mesh doorMesh = m_scene.CreateMesh(doorVertices, doorIndices);
-
-        m_numTexturesExp = textures.GetData().GetWidth() / TEXTURE_SIZE;
-        m_numTextures    = m_numTexturesExp * m_numTexturesExp;
+        doorVertices.CalculateTangents(0, 2, 4, DOOR_INDICES);
 
-        VertexList         vertexList = new VertexList();
-        ArrayList<Integer> indexList  = new ArrayList<>();
-
-        for(int i = 1; i < m_map.GetWidth() - 1; i++)
-        {
-            for(int j = 1; j < m_map.GetHeight() - 1; j++)
-            {
-                Color levelPixel = m_map.GetPixel(i, j);
-
-                float[] wallTexCoords    = CalcTexCoords(m_map.GetPixel(i, j).GetRed());
-                float[] floorTexCoords   = CalcTexCoords(m_map.GetPixel(i, j).GetGreen());
-                float[] ceilingTexCoords = CalcTexCoords(m_map.GetPixel(i, j).GetBlue());
-
-                if(levelPixel.Equals(Color.BLACK))
-                    continue;
+        return doorVertices;
+    }
 
-                if(m_map.GetPixel(i - 1, j).Equals(Color.BLACK))
-                    AddFace(vertexList, indexList, i, j, false, 0, wallTexCoords);
+    private static Material CreateDoorMaterial(Texture doorTexture, Texture doorNormalMap)
+    {
+        Material doorMaterial = new Material();
+        doorMaterial.SetProperty("Texture", doorTexture);
+        doorMaterial.SetProperty("NormalMap", doorNormalMap);
+        doorMaterial.SetProperty("Reflectivity", 1f);
+        doorMaterial.SetProperty("Damping", 8f);
 
-                if(m_map.GetPixel(i, j - 1).Equals(Color.BLACK))
-                    AddFace(vertexList, indexList, i, j, false, 2, wallTexCoords);
+        return doorMaterial;
+    }
 
-                if(m_map.GetPixel(i + 1, j).Equals(Color.BLACK))
-                    AddFace(vertexList, indexList, i, j, true, 0, wallTexCoords);
+    // Doors are batched while they stand still. One that slides open or flashes draws on its own until it is done,
+    // so the batch is only rebuilt when a door leaves or rejoins it.
+    private void DetachDoor(Entity door)
+    {
+        m_doorBatch.Remove(door);
 
-                if(m_map.GetPixel(i, j + 1).Equals(Color.BLACK))
-                    AddFace(vertexList, indexList, i, j, true, 2, wallTexCoords);
+        Material doorMaterial = new Material(m_doorMaterial);
+        doorMaterial.SetProperty("Color", door.GetComponent(InstanceComponent.class).GetColor());
 
-                AddFace(vertexList, indexList, i, j, false, 1, floorTexCoords);
-                AddFace(vertexList, indexList, i, j, true, 1, ceilingTexCoords);
+        door.AddComponent(new MeshComponent(m_doorMesh));
+        door.AddComponent(doorMaterial);
+    }
 
-                Color lightMapPixel = m_lightMap.GetPixel(i, j);
-                Color keyMapPixel   = m_keyMap.GetPixel(i, j);
-                Color doorMapPixel  = m_doorMap.GetPixel(i, j);
+    private void AttachDoor(Entity door)
+    {
+        door.RemoveComponent(MeshComponent.class);
+        door.RemoveComponent(Material.class);
 
-                if(lightMapPixel.GetRed() >= 1.0f || lightMapPixel.GetGreen() >= 1.0f || lightMapPixel.GetBlue() >= 1.0f)
-                {
-                    Vector3f lightColor = new Vector3f(lightMapPixel.GetRed(), lightMapPixel.GetGreen(), lightMapPixel.GetBlue());
+        m_doorBatch.Add(door);
+    }
 
-                    int texIndex = (int)(levelPixel.GetRed() * m_numTextures);
+    private ArrayList<LevelChunk> BuildLevel(LevelLoader loader)
+    {
+        int width = m_levelData.GetWidth();
 
-                    if(texIndex == 5)
-                    {
-                        m_scene.CreateEntity(new PointLight(lightColor, 0.2f, new Attenuation(0f, 0f, 1f), new Vector3f(i + 0.5f, 0.5f, j + 0.5f)));
+        for(int l = 0; l < m_lights.length; l++)
+        {
+            PointLight light = LevelLightmap.CreateLight(m_levelData, l);
 
-                        m_winXLocation = i;
-                        m_winZLocation = j;
-                    }
-                    else
-                        m_scene.CreateEntity(new PointLight(lightColor, 0.2f, new Attenuation(4f, 6f, 1f), new Vector3f(i + 0.5f, 0.9f, j + 0.5f)));
-                }
+            m_lights[l] = m_scene.CreateEntity(light);
+            m_lights[l].Hide();
+            m_lightGrid.AddLight(light);
+        }
 
-                if(keyMapPixel.GetRed() >= 1.0f || keyMapPixel.GetGreen() >= 1.0f || keyMapPixel.GetBlue() >= 1.0f)
-                {
-                    Vector3f keyColor    = new Vector3f(keyMapPixel.GetRed(), keyMapPixel.GetGreen(), keyMapPixel.GetBlue());
-                    Vector3f keyPosition = new Vector3f(i + 0.5f, 0.2f, j + 0.5f);
+        m_lightGrid.Build();
 
-                    if(m_openedDoors.Contains(keyColor))
-                        continue;
+        for(int k = 0; k < m_levelData.GetKeyCount(); k++)
+        {
+            int i = m_levelData.GetKeyCell(k) % width;
+            int j = m_levelData.GetKeyCell(k) / width;
 
-                    Material keyMaterial = new Material();
-                    keyMaterial.SetProperty("Color", keyColor);
-                    keyMaterial.SetProperty("Reflectivity", 4f);
-                    keyMaterial.SetProperty("Damping", 32f);
+            int      colorIndex  = m_palette.IndexOf(m_levelData.GetKeyColor(k));
+            Vector3f keyColor    = ToColor(m_levelData.GetKeyColor(k));
+            Vector3f keyPosition = new Vector3f(i + 0.5f, 0.2f, j + 0.5f);
 
+            if(m_rules.IsDoorOpened(colorIndex))
+                continue;
 
-                    Entity key = m_scene.CreateEntity(new Transformation(keyPosition),
-                                                      new MeshComponent(keyMesh),
-                                                      keyMaterial);
+            Entity key = m_scene.CreateEntity(new Transformation(keyPosition), new MeshComponent(m_keyMesh));
 
+            if(m_rules.HasKey(colorIndex))
+                CollectKey(key, colorIndex);
+            else
+            {
+                Entity light = m_scene.CreateEntity(new PointLight(keyColor, 0.2f, new Attenuation(0f, 0f, 2f), keyPosition));
+                m_keys.Place(i, j, new Pair<>(key, light));
 
-                    if(collectedKeys.Contains(keyColor))
-                    {
-                        float offset = 0.02f * m_collectedKeys.Count();
-                        m_collectedKeys.Place(new Vector3f(keyColor), key);
+                if(m_keyMaterials[colorIndex] == null)
+                    m_keyMaterials[colorIndex] = CreateKeyMaterial(keyColor);
 
-                        float xOffset = m_scene.GraphicsAspectRatio() * 0.1f + 0.03f;
+                key.AddComponent(m_keyMaterials[colorIndex]);
+            }
+        }
 
-                        Transformation keyTransformation = key.GetComponent(Transformation.class);
-                        keyTransformation.SetParent(GetCameraTransformation());
-                        keyTransformation.SetPosition(offset - xOffset, 0.125f, 0.2f);
-                        keyTransformation.SetRotation(new Vector3f(-0.5f, 0, 1f), 45f);
-                        keyTransformation.SetScale(0.05f);
+        for(int d = 0; d < m_levelData.GetDoorCount(); d++)
+        {
+            int i = m_levelData.GetDoorCell(d) % width;
+            int j = m_levelData.GetDoorCell(d) / width;
 
-                        keyColor.DivideEquals(4f);
-                    }
-                    else
-                    {
-                        Entity light = m_scene.CreateEntity(new PointLight(keyColor, 0.2f, new Attenuation(0f, 0f, 2f), keyPosition));
-                        m_keys.Place(new Vector2f(i, j), new Pair<>(key, light));
+            Vector3f doorColor = ToColor(m_levelData.GetDoorColor(d));
 
-                        key.AddComponent(new RotaterComponent(Vector3f.UP.Add(Vector3f.LEFT), 80f));
-                    }
-                }
+            if(m_rules.IsDoorOpened(m_rules.GetDoorColorIndex(d)))
+                continue;
 
-                if(doorMapPixel.GetRed() >= 1.0f || doorMapPixel.GetGreen() >= 1.0f || doorMapPixel.GetBlue() >= 1.0f)
-                {
-                    Vector3f doorColor = new Vector3f(doorMapPixel.GetRed(), doorMapPixel.GetGreen(), doorMapPixel.GetBlue());
+            Vector3f   doorPosition = new Vector3f(i + 0.5f, 0.5f, j + 0.5f);
+            Quaternion doorRotation = new Quaternion();
+            Vector3f   doorScale    = new Vector3f(0.5f, 0.5f, 0.05f);
 
-                    if(m_openedDoors.Contains(doorColor))
-                        continue;
+            boolean rotateDoor = m_levelData.IsWall(i, j - 1) && m_levelData.IsWall(i, j + 1);
 
-                    Material doorMaterial = new Material();
-                    doorMaterial.SetProperty("Texture", doorTexture);
-                    doorMaterial.SetProperty("NormalMap", doorNormalMap);
-                    doorMaterial.SetProperty("Color", doorColor);
-                    doorMaterial.SetProperty("Reflectivity", 1f);
-                    doorMaterial.SetProperty("Damping", 8f);
+            if(rotateDoor)
+                doorRotation = doorRotation.Turn(new Vector3f(0, 1, 0), 90f);
 
-                    Vector3f   doorPosition = new Vector3f(i + 0.5f, 0.5f, j + 0.5f);
-                    Quaternion doorRotation = new Quaternion();
-                    Vector3f   doorScale    = new Vector3f(0.5f, 0.5f, 0.05f);
+            Animation animation = new Animation();
+            animation.AddFrame(1f, new Transformation(new Vector3f(doorPosition), new Quaternion(doorRotation), new Vector3f(doorScale)));
 
-                    boolean rotateDoor = m_map.GetPixel(i, j - 1).Equals(Color.BLACK) && m_map.GetPixel(i, j + 1).Equals(Color.BLACK);
+            Vector3f subtraction = new Vector3f(1, 0, 0);
+            if(rotateDoor)
+                subtraction = new Vector3f(0, 0, -1);
 
-                    if(rotateDoor)
-                        doorRotation = doorRotation.Turn(new Vector3f(0, 1, 0), 90f);
 
-                    Animation animation = new Animation();
-                    animation.AddFrame(1f, new Transformation(new Vector3f(doorPosition), new Quaternion(doorRotation), new Vector3f(doorScale)));
+            animation.AddFrame(0f, new Transformation(doorPosition.Subtract(subtraction), new Quaternion(doorRotation), new Vector3f(doorScale)));
 
-                    Vector3f subtraction = new Vector3f(1, 0, 0);
-                    if(rotateDoor)
-                        subtraction = new Vector3f(0, 0, -1);
+            animation.SetDuration(1.0f);
 
+            Entity door = m_scene.CreateEntity(new Transformation(new Vector3f(doorPosition), new Quaternion(doorRotation), new Vector3f(doorScale)),
+                                               new InstanceComponent(doorColor),
+                                               animation);
 
-                    animation.AddFrame(0f, new Transformation(doorPosition.Subtract(subtraction), new Quaternion(doorRotation), new Vector3f(doorScale)));
+            door.AddHandler("OnAnimationFinish", new EventHandler()
+            {
+                @Override
+                public void OnRaise(Entity entity, Object... args)
+                {
+                    m_doorOpenedSource.SetPosition(entity.GetComponent(Transformation.class).GetPosition());
+                    m_doorOpenedSource.Play();
+                    entity.Free();
+                }
+            });
 
-                    animation.SetDuration(1.0f);
+            m_doors.Place(i, j, door);
 
-                    Entity door = m_scene.CreateEntity(new Transformation(new Vector3f(doorPosition), new Quaternion(doorRotation), new Vector3f(doorScale)),
-                                                       new MeshComponent(doorMesh),
-                                                       doorMaterial,
-                                                       animation);
+            m_doorBatch.Add(door);
+        }
 
-                    door.AddHandler("OnAnimationFinish", new EventHandler()
-                    {
-                        @Override
-                        public void OnRaise(Entity entity, Object... args)
-                        {
-                            m_doorOpenedSource.SetPosition(entity.GetComponent(Transformation.class).GetPosition());
-                            m_doorOpenedSource.Play();
-                            entity.Free();
-                        }
-                    });
+        Material[] materials         = new Material[m_numTextures];
+        Material[] lightmapMaterials = new Material[m_numTextures];
 
-                    Vector2f location = new Vector2f(i, j);
+        for(LevelLoader.ChunkMesh chunkMesh : loader.GetChunkMeshes())
+        {
+            int tile = chunkMesh.GetTile();
 
-                    m_doors.Place(location, door);
-                    m_doorLocations.Place(doorColor, location);
+            Material material;
+            if(chunkMesh.IsLightmap())
+            {
+                if(lightmapMaterials[tile] == null)
+                {
+                    lightmapMaterials[tile] = new Material();
+                    lightmapMaterials[tile].SetProperty("Texture", loader.GetTileTexture(tile));
+                    lightmapMaterials[tile].SetProperty("AmbientLight", new Vector3f(1));
+                    lightmapMaterials[tile].SetProperty("Reflectivity", 0f);
                 }
+                material = lightmapMaterials[tile];
             }
-        }
-
-        int[] indices = Array.ToIntArray(indexList.ToArray());
-
-        vertexList.CalculateNormals(0, 3, indices);
-        vertexList.CalculateTangents(0, 2, 4, indices);
-
-        Mesh mesh = m_scene.CreateMesh(vertexList, indices);
+            else
+            {
+                if(materials[tile] == null)
+                {
+                    materials[tile] = new Material();
+                    materials[tile].SetProperty("Texture", loader.GetTileTexture(tile));
+                    materials[tile].SetProperty("NormalMap", loader.GetNormalTexture(tile));
 
-        Material material = new Material();
-        material.SetProperty("Texture", textures);
-        material.SetProperty("NormalMap", normalMaps);
+                    materials[tile].SetProperty("Reflectivity", 0.5f);
+                    materials[tile].SetProperty("Damping", 4f);
+                }
+                material = materials[tile];
+            }
 
-        material.SetProperty("Reflectivity", 0.5f);
-        material.SetProperty("Damping", 4f);
+            chunkMesh.GetChunk().AddEntity(m_scene.CreateEntity(new Transformation(), new MeshComponent(chunkMesh.GetMesh()), material));
+        }
 
-        return m_scene.CreateEntity(new Transformation(), new MeshComponent(mesh), material);
+        return loader.GetChunks();
     }
 
-    private void AddFace(VertexList vertices, ArrayList<Integer> indices, int i, int j, boolean direction, int axis, float[] texCoords)
+    private void CullChunks()
     {
-        int offset = vertices.GetVertexCount();
+        Transformation cameraTransformation = GetCameraTransformation();
+        Vector3f       cameraPosition       = cameraTransformation.GetPosition();
 
-        float side = direction ? 1.0f : 0.0f;
+        m_frustum.Update(m_scene.GetCamera().GetProjection().GetMatrix(), cameraPosition, cameraTransformation.GetRotation());
 
-        int axis1 = (axis + 1) % 3;
-        int axis2 = (axis + 2) % 3;
+        for(int i = 0; i < m_chunks.Count(); i++)
+        {
+            LevelChunk chunk = m_chunks.Get(i);
+            chunk.SetVisible(m_visibleChunks[GetChunkIndex(chunk.GetStartX(), chunk.GetStartZ())] &&
+                             chunk.IsInRange(cameraPosition.GetX(), cameraPosition.GetZ(), VIEW_DISTANCE) && chunk.IsInside(m_frustum));
+        }
+    }
 
-        Vector3f pos1 = new Vector3f(0.0f);
-        Vector3f pos2 = new Vector3f(0.0f);
-        Vector3f pos3 = new Vector3f(0.0f);
-        Vector3f pos4 = new Vector3f(0.0f);
+    private int GetChunkIndex(int x, int z) { return x / LevelChunk.SIZE + (z / LevelChunk.SIZE) * ((m_levelData.GetWidth() + LevelChunk.SIZE - 1) / LevelChunk.SIZE); }
 
-        pos1.SetValue(axis, side);
-        pos2.SetValue(axis, side);
-        pos3.SetValue(axis, side);
-        pos4.SetValue(axis, side);
+    private void UpdateVisibility(int cell)
+    {
+        int width = m_levelData.GetWidth();
 
-        pos2.SetValue(axis1, 1.0f);
-        pos3.SetValue(axis2, 1.0f);
+        m_visibleCell = cell;
 
-        pos4.SetValue(axis1, 1.0f);
-        pos4.SetValue(axis2, 1.0f);
+        Arrays.fill(m_visibleCells, 0);
+        m_visibility.AddVisibleCells(cell, m_visibleCells);
 
-        Vector2f texCoords1 = new Vector2f();
-        Vector2f texCoords2 = new Vector2f();
-        Vector2f texCoords3 = new Vector2f();
-        Vector2f texCoords4 = new Vector2f();
+        Arrays.fill(m_addedDoors, false);
 
-        if(axis == 0)
+        boolean addedDoor = true;
+        while(addedDoor)
         {
-            texCoords1 = new Vector2f(texCoords[0], texCoords[2]);
-            texCoords2 = new Vector2f(texCoords[0], texCoords[3]);
-            texCoords3 = new Vector2f(texCoords[1], texCoords[2]);
-            texCoords4 = new Vector2f(texCoords[1], texCoords[3]);
+            addedDoor = false;
+
+            for(int d = 0; d < m_levelData.GetDoorCount(); d++)
+            {
+                int doorCell = m_levelData.GetDoorCell(d);
+                if(m_addedDoors[d] || !LevelVisibility.IsCellVisible(m_visibleCells, doorCell) || !m_rules.IsDoorOpened(m_rules.GetDoorColorIndex(d)))
+                    continue;
+
+                m_visibility.AddVisibleCells(doorCell, m_visibleCells);
+                m_addedDoors[d] = true;
+                addedDoor       = true;
+            }
         }
-        else if(axis == 1)
+
+        Arrays.fill(m_visibleChunks, false);
+        for(int word = 0; word < m_visibleCells.length; word++)
         {
-            texCoords1 = new Vector2f(texCoords[0], texCoords[2]);
-            texCoords2 = new Vector2f(texCoords[0], texCoords[3]);
-            texCoords3 = new Vector2f(texCoords[1], texCoords[2]);
-            texCoords4 = new Vector2f(texCoords[1], texCoords[3]);
+            long bits = m_visibleCells[word];
+            while(bits != 0)
+            {
+                int visibleCell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                m_visibleChunks[GetChunkIndex(visibleCell % width, visibleCell / width)] = true;
+            }
         }
-        else if(axis == 2)
+
+        for(int i = 0; i < m_keys.Count(); i++)
         {
-            texCoords1 = new Vector2f(texCoords[0], texCoords[2]);
-            texCoords2 = new Vector2f(texCoords[1], texCoords[2]);
-            texCoords3 = new Vector2f(texCoords[0], texCoords[3]);
-            texCoords4 = new Vector2f(texCoords[1], texCoords[3]);
+            boolean visible = LevelVisibility.IsCellVisible(m_visibleCells, m_keys.GetCellAt(i));
+            SetVisible(m_keys.GetValueAt(i).GetFirst(),  visible);
+            SetVisible(m_keys.GetValueAt(i).GetSecond(), visible);
         }
 
-        vertices.AddVertex(new Vertex(pos1.Add(new Vector3f(i, 0, j)), new Vector3f(1), texCoords1, new Vector3f(), new Vector3f()));
-        vertices.AddVertex(new Vertex(pos2.Add(new Vector3f(i, 0, j)), new Vector3f(1), texCoords2, new Vector3f(), new Vector3f()));
-        vertices.AddVertex(new Vertex(pos3.Add(new Vector3f(i, 0, j)), new Vector3f(1), texCoords3, new Vector3f(), new Vector3f()));
-        vertices.AddVertex(new Vertex(pos4.Add(new Vector3f(i, 0, j)), new Vector3f(1), texCoords4, new Vector3f(), new Vector3f()));
+        for(int i = 0; i < m_doors.Count(); i++)
+            SetVisible(m_doors.GetValueAt(i), LevelVisibility.IsCellVisible(m_visibleCells, m_doors.GetCellAt(i)));
+
+        m_lightGrid.SetCandidates(m_visibleCells);
+    }
 
-        if(direction)
+    private void UpdateLights()
+    {
+        Vector3f cameraPosition = GetCameraPosition();
+        m_lightGrid.Update(cameraPosition.GetX(), cameraPosition.GetZ());
+
+        for(int i = 0; i < m_shownLightCount; i++)
         {
-            indices.Add(offset + 2);
-            indices.Add(offset + 1);
-            indices.Add(offset    );
-            indices.Add(offset + 1);
-            indices.Add(offset + 2);
-            indices.Add(offset + 3);
+            if(!m_lightGrid.IsActive(m_shownLights[i]))
+                m_lights[m_shownLights[i]].Hide();
         }
-        else
+
+        m_shownLightCount = m_lightGrid.GetActiveCount();
+        for(int i = 0; i < m_shownLightCount; i++)
         {
-            indices.Add(offset    );
-            indices.Add(offset + 1);
-            indices.Add(offset + 2);
-            indices.Add(offset + 3);
-            indices.Add(offset + 2);
-            indices.Add(offset + 1);
+            m_shownLights[i] = m_lightGrid.GetActiveLight(i);
+            if(!m_lights[m_shownLights[i]].IsVisible())
+                m_lights[m_shownLights[i]].Show();
         }
     }
 
-    private float[] CalcTexCoords(float value)
+    // Every key on the floor turns with one shared rotation, copied into the shown keys instead of turned per key.
+    private void SpinKeys(float delta)
     {
-        int index = (int)(value * m_numTextures);
-
-        int texX = index % m_numTexturesExp;
-        int texY = index / m_numTexturesExp;
+        m_keySpinAngle = (m_keySpinAngle + KEY_SPIN_SPEED * delta) % 360.0f;
 
-        float[] result = new float[4];
+        float halfAngle = Math.ToRadians(m_keySpinAngle) / 2.0f;
+        float sin       = Math.Sin(halfAngle);
 
-        result[1] = (texX + 0.002f) / (float)m_numTexturesExp;
-        result[0] = (texX + 0.998f) / (float)m_numTexturesExp;
-        result[3] = (texY + 0.002f) / (float)m_numTexturesExp;
-        result[2] = (texY + 0.998f) / (float)m_numTexturesExp;
+        m_keySpin.SetX(KEY_SPIN_AXIS.GetX() * sin);
+        m_keySpin.SetY(KEY_SPIN_AXIS.GetY() * sin);
+        m_keySpin.SetZ(KEY_SPIN_AXIS.GetZ() * sin);
+        m_keySpin.SetW(Math.Cos(halfAngle));
 
-        return result;
+        for(int i = 0; i < m_keys.Count(); i++)
+        {
+            Entity key = m_keys.GetValueAt(i).GetFirst();
+            if(key.IsVisible())
+                key.GetComponent(Transformation.class).SetRotation(m_keySpin);
+        }
     }
 
-    private void HandleCollision(Vector3f movement, boolean xWall, boolean zWall)
+    static void SetVisible(Entity entity, boolean visible)
     {
-        float x = xWall ? movement.GetX() : 0;
-        float z = zWall ? movement.GetZ() : 0;
-
-        GetCameraPosition().SubtractEquals(x, 0, z);
+        if(visible)
+            entity.Show();
+        else
+            entity.Hide();
     }
 
-    private boolean HandleCollision(Vector3f oldPosition, Vector3f newPosition)
-    {
-        int oldX = (int)oldPosition.GetX();
-        int oldY = (int)oldPosition.GetZ();
+    static Vector3f ToColor(int color) { return new Vector3f(((color >> 16) & 0xFF) / 255.0f, ((color >> 8) & 0xFF) / 255.0f, (color & 0xFF) / 255.0f); }
 
-        float offsetX = (newPosition.GetX() - oldPosition.GetX()) < 0 ? -PLAYER_RADIUS : PLAYER_RADIUS;
-        float offsetZ = (newPosition.GetZ() - oldPosition.GetZ()) < 0 ? -PLAYER_RADIUS : PLAYER_RADIUS;
+    public static int CalcNumTextures(int atlasWidth)
+    {
+        int numTexturesExp = atlasWidth / TEXTURE_SIZE;
+        return numTexturesExp * numTexturesExp;
+    }
 
-        int x = (int)(newPosition.GetX() + offsetX);
-        int y = (int)(newPosition.GetZ() + offsetZ);
+    private static void SetInvertedColor(Vector3f result, Vector3f color, float amount)
+    {
+        Set(result, color.GetX() + (1 - 2 * color.GetX()) * amount,
+                    color.GetY() + (1 - 2 * color.GetY()) * amount,
+                    color.GetZ() + (1 - 2 * color.GetZ()) * amount);
+    }
 
-        if(x == m_winXLocation && y == m_winZLocation)
-            return true;
+    // Vector3f.Set(x, y, z) packs its arguments into a new array; setting the components one by one allocates nothing.
+    private static void Set(Vector3f result, float x, float y, float z)
+    {
+        result.SetX(x);
+        result.SetY(y);
+        result.SetZ(z);
+    }
 
-        Vector2f playerLocation = new Vector2f(Math.Floor(newPosition.GetX()), Math.Floor(newPosition.GetZ()));
+    private void MovePlayerOnMap(int x, int z)
+    {
+        Vector2f playerLocation = new Vector2f(x, z);
 
         GUIComponent playerGUI = m_playerOnMap.GetComponent(GUIComponent.class);
         playerGUI.SetPosition(playerGUI.GetScale().Multiply(playerLocation));
 
-        Entity foundSpot = m_passedLocations.Get(playerLocation);
-
-        if(foundSpot == null)
-        {
-            Entity copiedEntity = m_scene.CopyEntity(m_passedLocation);
-            m_passedLocations.Place(playerLocation, copiedEntity);
-
-            GUIComponent passedGUI = copiedEntity.GetComponent(GUIComponent.class);
-            passedGUI.SetPosition(passedGUI.GetScale().Multiply(playerLocation));
-        }
-        else
-        {
-            if(m_lastSpot != null)
-                m_lastSpot.Show();
-
-            foundSpot.Hide();
-
-            m_lastSpot = foundSpot;
-        }
-
-        if(m_map.GetPixel(x, y).Equals(Color.BLACK) || m_map.GetPixel(oldX, y).Equals(Color.BLACK) || m_map.GetPixel(x, oldY).Equals(Color.BLACK))
-        {
-            boolean xWall = m_map.GetPixel(x, oldY).Equals(Color.BLACK);
-            boolean zWall = m_map.GetPixel(oldX, y).Equals(Color.BLACK);
-            HandleCollision(newPosition.Subtract(oldPosition), xWall, zWall);
-        }
-
-        Vector2f position = new Vector2f(oldX, oldY);
-
-        Pair<Entity, Entity> keyPair = m_keys.Get(position);
-        if(keyPair != null)
-        {
-            m_keys.Remove(position);
-            keyPair.GetSecond().Free();
-
-            Entity key = keyPair.GetFirst();
-            Vector3f keyColor = key.GetComponent(Material.class).GetProperty("Color");
-
-            float offset = 0.02f * m_collectedKeys.Count();
-            m_collectedKeys.Place(new Vector3f(keyColor), key);
-
-            key.RemoveComponent(RotaterComponent.class);
-
-            float xOffset = m_scene.GraphicsAspectRatio() * 0.1f + 0.03f;
-
-            Transformation keyTransformation = key.GetComponent(Transformation.class);
-            keyTransformation.SetParent(GetCameraTransformation());
-            keyTransformation.SetPosition(offset - xOffset, 0.125f, 0.2f);
-            keyTransformation.SetRotation(new Vector3f(-0.5f, 0, 1f), 45f);
-            keyTransformation.SetScale(0.05f);
-
-            keyColor.DivideEquals(4f);
+        if(m_minimap.Visit(x, z) && m_journal != null)
+            m_journal.AppendVisit(x, z);
+    }
 
-            Save();
-            m_keySource.Play();
-        }
+    private void CollectKey(Entity key, int colorIndex)
+    {
+        key.RemoveComponent(Material.class);
+        key.AddComponent(CreateKeyMaterial(ToColor(m_palette.GetColor(colorIndex)).Divide(4f)));
 
-        Entity door = m_doors.Get(position);
-        if(door != null)
-        {
-            Transformation transformation = door.GetComponent(Transformation.class);
+        float offset = 0.02f * m_collectedKeyCount++;
+        m_collectedKeys[colorIndex] = key;
 
-            if(!transformation.GetRotation().Equals(new Quaternion()))
-            {
-                if(newPosition.GetX() - oldX > transformation.GetScale().GetZ() * 0.5f && (oldX + 1) - newPosition.GetX() > transformation.GetScale().GetZ() * 0.5f)
-                    GetCameraPosition().SetX(oldPosition.GetX());
-            }
-            else
-            {
-                if(newPosition.GetZ() - oldY > transformation.GetScale().GetZ() * 0.5f && (oldY + 1) - newPosition.GetZ() > transformation.GetScale().GetZ() * 0.5f)
-                    GetCameraPosition().SetZ(oldPosition.GetZ());
-            }
+        float xOffset = m_scene.GraphicsAspectRatio() * 0.1f + 0.03f;
 
-            ShowMessage("Press O to try\nopening the door.");
-            m_collidingDoor = door;
-        }
-        else
-        {
-            HideMessage();
-            m_collidingDoor = null;
-        }
-
-        return false;
+        Transformation keyTransformation = key.GetComponent(Transformation.class);
+        keyTransformation.SetParent(GetCameraTransformation());
+        keyTransformation.SetPosition(offset - xOffset, 0.125f, 0.2f);
+        keyTransformation.SetRotation(new Vector3f(-0.5f, 0, 1f), 45f);
+        keyTransformation.SetScale(0.05f);
     }
 
-    private void ChangeSludgeLevel(float amount) { m_sludge.GetComponent(Transformation.class).Move(0, amount, 0); }
-
-    private float GetSludgeLevel() { return m_sludge.GetComponent(Transformation.class).GetPosition().GetY(); }
-
     public void Save()
     {
-        new LevelSaveData(m_index, GetCameraPosition(), GetCameraTransformation().GetRotation(), m_collectedKeys.GetKeys().ToArray(), m_openedDoors.ToArray(), m_passedLocations.GetKeys().ToArray(), GetSludgeLevel()).Save();
+        if(m_journal == null)
+            return;
+
+        SAVE_SCOPE.Start();
+        m_journal.AppendPose(m_rules.GetPosition(), GetCameraTransformation().GetRotation(), m_rules.GetSludgeLevel());
+        SAVE_SCOPE.Stop();
     }
 
     private void ShowConfirmation(String message, Event yesEvent, Event noEvent)
@@ -732,7 +745,6 @@ public class Level
         ShowMessage("You Lost!", TextComponent.TextAlignment.TOP_CENTER);
         m_music.Stop();
         m_loseMenu.Show();
-        m_scene.DisableSystem(KeyboardControlSystem.class);
         m_scene.DisableSystem(MouseLookSystem.class);
 
         inputDevice.SetMouseGrabbed(false);
@@ -744,7 +756,6 @@ public class Level
 
         ShowMessage("Paused.", TextComponent.TextAlignment.TOP_CENTER);
         m_pauseMenu.Show();
-        m_scene.DisableSystem(KeyboardControlSystem.class);
         m_scene.DisableSystem(MouseLookSystem.class);
 
         inputDevice.SetMouseGrabbed(false);
@@ -754,14 +765,35 @@ public class Level
     {
         HideMessage();
         m_pauseMenu.Hide();
-        m_scene.UseSystem(KeyboardControlSystem.class);
         m_scene.UseSystem(MouseLookSystem.class);
     }
 
     public boolean IsLost() { return m_loseMenu.IsVisible(); }
 
+    public LevelRules GetRules() { return m_rules; }
+
+    public void Free()
+    {
+        m_music.Close();
+        if(m_journal != null)
+            m_journal.Close();
+    }
+
     public LevelScene.LevelEvent Update(InputDevice inputDevice, float delta)
     {
+        CULL_SCOPE.Start();
+        CullChunks();
+        CULL_SCOPE.Stop();
+
+        LIGHTS_SCOPE.Start();
+        UpdateLights();
+        LIGHTS_SCOPE.Stop();
+
+        BATCHES_SCOPE.Start();
+        m_doorBatch.Update();
+        SpinKeys(delta);
+        BATCHES_SCOPE.Stop();
+
         if(m_restartGame)
             return LevelScene.LevelEvent.RESTART_GAME;
 
@@ -837,6 +869,7 @@ public class Level
                         });
                         break;
                     case 2:
+                        Free();
                         m_scene.ClearScene();
                         m_scene.ResetScene(MenuScene.class);
                         m_scene.ChangeScene(MenuScene.class);
@@ -926,6 +959,7 @@ public class Level
                         break;
                     case 3:
                         Save();
+                        Free();
                         m_scene.ClearScene();
                         m_scene.ResetScene(MenuScene.class);
                         m_scene.ChangeScene(MenuScene.class);
@@ -966,55 +1000,67 @@ public class Level
             }
         }
 
-        ChangeSludgeLevel(0.002f * delta);
+        COLLISION_SCOPE.Start();
+        boolean isWon = m_rules.Update(delta, LevelRules.GetWalkDirection(inputDevice), GetCameraTransformation().GetRotation());
+        COLLISION_SCOPE.Stop();
 
-        float sludgeLevel = GetSludgeLevel();
+        if(isWon)
+            return LevelScene.LevelEvent.NEXT_LEVEL;
 
-        m_keyboardControl.SetKeyControl(InputDevice.Key.W, new Vector3f(0, 0,  1), m_speed);
-        m_keyboardControl.SetKeyControl(InputDevice.Key.S, new Vector3f(0, 0, -1), m_speed);
+        m_sludge.GetComponent(Transformation.class).GetPosition().SetY(m_rules.GetSludgeLevel());
 
-        if(sludgeLevel > 0.0f)
+        if(m_rules.GetSludgeLevel() > 0.0f)
         {
-            float maxSludgeLevel = newPosition.GetY() - 0.05f;
-
-            float sludgeDist = 1.0f - (sludgeLevel / maxSludgeLevel);
-
-            m_speed = (INITIAL_SPEED * (sludgeDist * 0.8f + 0.2f));
+            float sludgeDist = m_rules.GetSludgeDistance();
+            float speed      = m_rules.GetSpeed();
 
             m_leftSplashSource.SetVolume((1.0f - sludgeDist) * 0.8f + 0.2f);
-            m_leftSplashSource.SetPitch(m_speed / INITIAL_SPEED);
+            m_leftSplashSource.SetPitch(speed / LevelRules.INITIAL_SPEED);
 
             m_rightSplashSource.SetVolume((1.0f - sludgeDist) * 0.8f + 0.2f);
-            m_rightSplashSource.SetPitch(m_speed / INITIAL_SPEED);
+            m_rightSplashSource.SetPitch(speed / LevelRules.INITIAL_SPEED);
 
             m_leftFootStepSource.SetVolume(sludgeDist * 0.8f + 0.2f);
             m_rightFootStepSource.SetVolume(sludgeDist * 0.8f + 0.2f);
 
             m_playSplash = true;
-            if(sludgeLevel > newPosition.GetY() - 0.05f)
+            if(m_rules.IsDrowned())
             {
                 Lose(inputDevice);
                 return LevelScene.LevelEvent.NONE;
             }
         }
 
-        if(!newPosition.Equals(m_oldPosition))
+        m_rules.Interpolate(newPosition);
+
+        MINIMAP_SCOPE.Start();
+        m_minimap.Upload();
+        MINIMAP_SCOPE.Stop();
+
+        if(m_rules.HasMoved())
         {
-            if(HandleCollision(m_oldPosition, newPosition))
-                return LevelScene.LevelEvent.NEXT_LEVEL;
+            if(m_rules.GetTouchedDoor() >= 0)
+                ShowMessage("Press O to try\nopening the door.");
+            else
+                HideMessage();
+        }
 
-            if(Clock.GetSeconds() > m_stepStartTime + 0.6 / m_speed)
+        AUDIO_SCOPE.Start();
+
+        if(m_rules.HasMoved())
+        {
+            if(Clock.GetSeconds() > m_stepStartTime + 0.6 / m_rules.GetSpeed())
             {
                 m_stepStartTime = Clock.GetSeconds();
 
-                Vector3f leftPosition  = newPosition.Add(new Vector3f(-1, 0, 0));
-                Vector3f rightPosition = newPosition.Add(new Vector3f( 1, 0, 0));
+                Set(m_leftStepPosition, newPosition.GetX() - 1, newPosition.GetY(), newPosition.GetZ());
+                Set(m_rightStepPosition, newPosition.GetX() + 1, newPosition.GetY(), newPosition.GetZ());
 
-                m_leftFootStepSource.SetPosition(leftPosition);
-                m_rightFootStepSource.SetPosition(rightPosition);
+                m_leftFootStepSource.SetPosition(m_leftStepPosition);
+                m_rightFootStepSource.SetPosition(m_rightStepPosition);
 
-                m_leftSplashSource.SetPosition(leftPosition);
-                m_rightSplashSource.SetPosition(rightPosition);
+                m_leftSplashSource.SetPosition(m_leftStepPosition);
+                m_rightSplashSource.SetPosition(m_rightStepPosition);
 
                 if(m_rightStep)
                 {
@@ -1034,51 +1080,84 @@ public class Level
             }
         }
 
-        if(Clock.GetSeconds() > m_lastLaughTime + 15.0f + Math.Random(0f, 5f))
+        if(m_rules.GetTime() > m_lastLaughTime + 15.0f + m_laughRandom.nextFloat() * 5.0f)
         {
-            m_evilLaughSource.SetPosition(GetCameraPosition().Add(new Vector3f(Math.Random(-2, 2), 0, Math.Random(-2, 2))));
+            Vector3f cameraPosition = GetCameraPosition();
+            Set(m_laughPosition, cameraPosition.GetX() + m_laughRandom.nextInt(5) - 2, cameraPosition.GetY(), cameraPosition.GetZ() + m_laughRandom.nextInt(5) - 2);
+
+            m_evilLaughSource.SetPosition(m_laughPosition);
             m_evilLaughSource.Play();
-            m_lastLaughTime = Clock.GetSeconds();
+            m_lastLaughTime = m_rules.GetTime();
+        }
+
+        AUDIO_SCOPE.Stop();
+
+        // The rules ignore tries at a flashing door, so the flash ends here before the next try may start another.
+        if(m_flashingDoor != null)
+        {
+            Vector3f doorColor = m_flashingDoor.GetComponent(InstanceComponent.class).GetColor();
+
+            if(m_rules.IsDoorFlashing())
+            {
+                double secondTime = m_rules.GetDoorFlashTime() % 0.2f;
+
+                if(secondTime < 0.1f)
+                    SetInvertedColor(doorColor, m_collidingDoorColor, (float)secondTime * 10f);
+                else
+                    SetInvertedColor(doorColor, m_collidingDoorColor, 1.0f - (((float)secondTime - 0.1f) * 10f));
+            }
+            else
+            {
+                doorColor.Set(m_collidingDoorColor);
+                AttachDoor(m_flashingDoor);
+                m_flashingDoor = null;
+            }
         }
 
-        if(inputDevice.IsKeyPressed(InputDevice.Key.O) && m_collidingDoor != null)
+        if(inputDevice.IsKeyPressed(InputDevice.Key.O) && m_rules.GetTouchedDoor() >= 0)
         {
-            Material  doorMaterial  = m_collidingDoor.GetComponent(Material.class);
-            Animation doorAnimation = m_collidingDoor.GetComponent(Animation.class);
+            int    doorCell      = m_rules.GetTouchedDoor();
+            Entity collidingDoor = m_doors.Get(doorCell);
 
-            if(m_flashingDoor == null)
+            Animation doorAnimation = collidingDoor.GetComponent(Animation.class);
+
+            if(!m_rules.IsDoorFlashing())
             {
-                Vector3f doorColor = doorMaterial.GetProperty("Color");
+                Vector3f doorColor = collidingDoor.GetComponent(InstanceComponent.class).GetColor();
 
-                Entity key = m_collectedKeys.Get(doorColor);
-                if(key == null)
+                int    colorIndex = m_rules.GetDoorColorIndexAt(doorCell);
+                Entity key        = m_collectedKeys[colorIndex];
+                if(!m_rules.OpenDoor())
                 {
-                    m_doorFlashStartTime = Clock.GetSeconds();
-                    m_flashingDoor       = m_collidingDoor;
+                    m_flashingDoor       = collidingDoor;
                     m_collidingDoorColor = new Vector3f(doorColor);
+                    DetachDoor(collidingDoor);
 
-                    ShowMessage("Door Locked!\nFind the key!", DOOR_FLASH_TIME);
+                    ShowMessage("Door Locked!\nFind the key!", LevelRules.DOOR_FLASH_TIME);
 
-                    m_doorLockedSource.SetPosition(m_collidingDoor.GetComponent(Transformation.class).GetPosition());
+                    m_doorLockedSource.SetPosition(collidingDoor.GetComponent(Transformation.class).GetPosition());
                     m_doorLockedSource.Play();
                 }
                 else
                 {
-                    m_collidingDoor = null;
-
                     m_unlockSource.Play();
+                    DetachDoor(collidingDoor);
                     doorAnimation.Play();
 
-                    Vector2f doorPosition = m_doorLocations.Get(doorColor);
-                    m_doorLocations.Remove(doorColor);
-                    m_doors.Remove(doorPosition);
-                    m_openedDoors.Add(doorColor);
+                    m_doors.Remove(doorCell);
+                    if(m_journal != null)
+                        m_journal.AppendDoor(m_palette.GetColor(colorIndex));
+                    UpdateVisibility(m_visibleCell);
 
-                    m_collectedKeys.Remove(doorColor);
+                    m_collectedKeys[colorIndex] = null;
+                    --m_collectedKeyCount;
 
                     int index = 0;
-                    for(Entity entity : m_collectedKeys.GetValues())
+                    for(Entity entity : m_collectedKeys)
                     {
+                        if(entity == null)
+                            continue;
+
                         float offset = 0.02f * index;
                         Transformation keyTransformation = entity.GetComponent(Transformation.class);
                         keyTransformation.SetPosition(-0.17f + offset, 0.125f, 0.2f);
@@ -1087,11 +1166,7 @@ public class Level
 
                     key.Free();
 
-                    ChangeSludgeLevel(-0.1f);
-                    Transformation sludgeTransformation = m_sludge.GetComponent(Transformation.class);
-
-                    if(sludgeTransformation.GetPosition().GetY() < 0)
-                        sludgeTransformation.GetPosition().SetY(0);
+                    m_sludge.GetComponent(Transformation.class).GetPosition().SetY(m_rules.GetSludgeLevel());
 
                     Save();
                     m_doorSplashSource.Play();
@@ -1099,30 +1174,6 @@ public class Level
             }
         }
 
-        if(m_flashingDoor != null)
-        {
-            Vector3f doorColor = m_flashingDoor.GetComponent(Material.class).GetProperty("Color");
-
-            double timePassed = Clock.GetSeconds() - m_doorFlashStartTime;
-
-            double secondTime = timePassed % 0.2f;
-
-            Vector3f invertColor = new Vector3f(1).Subtract(m_collidingDoorColor);
-
-            if(secondTime < 0.1f)
-                doorColor.Set(m_collidingDoorColor.Lerp(invertColor, (float)secondTime * 10f));
-            else if(secondTime >= 0.1f)
-                doorColor.Set(m_collidingDoorColor.Lerp(invertColor, 1.0f - (((float)secondTime - 0.1f) * 10f)));
-
-            if(timePassed >= DOOR_FLASH_TIME)
-            {
-                m_flashingDoor = null;
-                doorColor.Set(m_collidingDoorColor);
-            }
-        }
-
-        m_oldPosition = new Vector3f(newPosition);
-
         return LevelScene.LevelEvent.NONE;
     }
 }
@@ -0,0 +1,68 @@
+package game;
+
+import engine.ecs.*;
+import jamJar.core.dataStructures.lists.ArrayList;
+import jamJar.core.math.Math;
+
+public class LevelChunk
+{
+    public static final int SIZE = 16;
+
+    private final int m_startX;
+    private final int m_startZ;
+    private final int m_endX;
+    private final int m_endZ;
+
+    private final ArrayList<Entity> m_entities;
+
+    private boolean m_isVisible;
+
+    public LevelChunk(int startX, int startZ, int endX, int endZ)
+    {
+        m_startX = startX;
+        m_startZ = startZ;
+        m_endX   = endX;
+        m_endZ   = endZ;
+
+        m_entities = new ArrayList<>();
+
+        m_isVisible = true;
+    }
+
+    public int GetStartX() { return m_startX; }
+    public int GetStartZ() { return m_startZ; }
+    public int GetEndX()   { return m_endX;   }
+    public int GetEndZ()   { return m_endZ;   }
+
+    public void AddEntity(Entity entity) { m_entities.Add(entity); }
+
+    public ArrayList<Entity> GetEntities() { return m_entities; }
+
+    public boolean IsVisible() { return m_isVisible; }
+
+    public boolean IsInside(Frustum frustum) { return frustum.Intersects(m_startX, 0, m_startZ, m_endX, 1, m_endZ); }
+
+    public boolean IsInRange(float x, float z, float distance)
+    {
+        float offsetX = Math.Max(Math.Max(m_startX - x, x - m_endX), 0.0f);
+        float offsetZ = Math.Max(Math.Max(m_startZ - z, z - m_endZ), 0.0f);
+
+        return offsetX * offsetX + offsetZ * offsetZ <= distance * distance;
+    }
+
+    public void SetVisible(boolean visible)
+    {
+        if(visible == m_isVisible)
+            return;
+
+        for(Entity entity : m_entities)
+        {
+            if(visible)
+                entity.Show();
+            else
+                entity.Hide();
+        }
+
+        m_isVisible = visible;
+    }
+}
@@ -0,0 +1,46 @@
+package game;
+
+import jamJar.core.*;
+import jamJar.core.Console;
+import jamJar.rendering.*;
+
+import java.io.*;
+
+public class LevelCompiler
+{
+    public static void main(String[] args) throws IOException
+    {
+        String levelsPath = args.length > 0 ? args[0] : NightmareMaze.LEVELS_PATH;
+
+        for(int index = 0; new File(levelsPath + index).isDirectory(); index++)
+            Compile(levelsPath + index + "/");
+    }
+
+    public static void Compile(String folder) throws IOException
+    {
+        double startTime = Clock.GetMilliSeconds();
+
+        LevelData levelData = LevelData.Decode(folder, Level.CalcNumTextures(new Bitmap(folder + "Textures.png").GetWidth()));
+        levelData.Write(folder + LevelData.FILE_NAME);
+
+        Console.PrintLine(folder + LevelData.FILE_NAME + ": " + levelData.GetWidth() + "x" + levelData.GetHeight() + " cells, "
+                          + levelData.GetKeyCount() + " keys, " + levelData.GetDoorCount() + " doors, " + levelData.GetLightCount() + " lights ("
+                          + (int)(Clock.GetMilliSeconds() - startTime) + "ms)");
+
+        startTime = Clock.GetMilliSeconds();
+
+        LevelVisibility visibility = LevelVisibility.Build(levelData);
+        visibility.Write(folder + LevelVisibility.FILE_NAME);
+
+        Console.PrintLine(folder + LevelVisibility.FILE_NAME + ": " + visibility.GetDataSize() + " bytes ("
+                          + (int)(Clock.GetMilliSeconds() - startTime) + "ms)");
+
+        startTime = Clock.GetMilliSeconds();
+
+        LevelLightmap lightmap = LevelLightmap.Bake(levelData);
+        lightmap.Write(folder + LevelLightmap.FILE_NAME);
+
+        Console.PrintLine(folder + LevelLightmap.FILE_NAME + ": " + lightmap.GetDataSize() + " bytes ("
+                          + (int)(Clock.GetMilliSeconds() - startTime) + "ms)");
+    }
+}
@@ -0,0 +1,353 @@
+package game;
+
+import jamJar.core.Console;
+import jamJar.core.fileManagement.FileSystem;
+import jamJar.rendering.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class LevelData
+{
+    public static final String FILE_NAME = "level.dat";
+
+    public static final String CACHE_PATH = NightmareMaze.FILE_PATH + "levels" + File.separator;
+
+    private static final String[] SOURCE_NAMES = { "levelMap.png", "keyMap.png", "lightMap.png", "doorMap.png" };
+
+    private static final int MAGIC   = 0x4E4D4C56;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 9 * 4;
+
+    private final int m_width;
+    private final int m_height;
+
+    private final long[] m_openCells;
+    private final byte[] m_cellColors;
+
+    private final int m_numTextures;
+    private final int m_winCell;
+
+    private final int[] m_lightCells;
+    private final int[] m_lightColors;
+    private final int[] m_keyCells;
+    private final int[] m_keyColors;
+    private final int[] m_doorCells;
+    private final int[] m_doorColors;
+
+    private LevelData(int width, int height, long[] openCells, byte[] cellColors, int numTextures, int winCell,
+                      int[] lightCells, int[] lightColors, int[] keyCells, int[] keyColors, int[] doorCells, int[] doorColors)
+    {
+        m_width  = width;
+        m_height = height;
+
+        m_openCells  = openCells;
+        m_cellColors = cellColors;
+
+        m_numTextures = numTextures;
+        m_winCell     = winCell;
+
+        m_lightCells  = lightCells;
+        m_lightColors = lightColors;
+        m_keyCells    = keyCells;
+        m_keyColors   = keyColors;
+        m_doorCells   = doorCells;
+        m_doorColors  = doorColors;
+    }
+
+    // Reads the level.dat LevelCompiler writes next to the images. The level folder is never written at run time: a
+    // missing or stale level.dat is decoded once and cached under the player's files instead.
+    public static LevelData Load(String folder, int numTextures)
+    {
+        long sourceTime = CalcSourceTime(folder);
+
+        LevelData result = ReadIfCurrent(folder + FILE_NAME, sourceTime, numTextures);
+        if(result != null)
+            return result;
+
+        String cacheName = GetCacheName(folder);
+
+        result = ReadIfCurrent(cacheName, sourceTime, numTextures);
+        if(result != null)
+            return result;
+
+        result = Decode(folder, numTextures);
+        try
+        {
+            FileSystem.CreateDirectory(NightmareMaze.FILE_PATH);
+            FileSystem.CreateDirectory(CACHE_PATH);
+            result.Write(cacheName);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not write level cache " + cacheName + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    // The cached level.dat of a level folder, named after the folder's absolute path.
+    public static String GetCacheName(String folder) { return CACHE_PATH + Integer.toHexString(new File(folder).getAbsolutePath().hashCode()) + ".dat"; }
+
+    private static LevelData ReadIfCurrent(String fileName, long sourceTime, int numTextures)
+    {
+        if(!FileSystem.PathExists(fileName) || new File(fileName).lastModified() < sourceTime)
+            return null;
+
+        LevelData result = Read(fileName);
+        return result != null && result.m_numTextures == numTextures ? result : null;
+    }
+
+    public static LevelData Decode(String folder, int numTextures)
+    {
+        return Decode(new Bitmap(folder + SOURCE_NAMES[0]),
+                      new Bitmap(folder + SOURCE_NAMES[1]),
+                      new Bitmap(folder + SOURCE_NAMES[2]),
+                      new Bitmap(folder + SOURCE_NAMES[3]), numTextures);
+    }
+
+    // The newest modification time of the images a level is decoded from; a level.dat older than this is stale.
+    private static long CalcSourceTime(String folder)
+    {
+        long result = 0;
+        for(String sourceName : SOURCE_NAMES)
+            result = Math.max(result, new File(folder + sourceName).lastModified());
+
+        return result;
+    }
+
+    public static LevelData Decode(Bitmap map, Bitmap keyMap, Bitmap lightMap, Bitmap doorMap, int numTextures)
+    {
+        int width  = map.GetWidth();
+        int height = map.GetHeight();
+
+        int[] mapPixels   = map.GetPixels();
+        int[] keyPixels   = keyMap.GetPixels();
+        int[] lightPixels = lightMap.GetPixels();
+        int[] doorPixels  = doorMap.GetPixels();
+
+        long[] openCells  = new long[(width * height + 63) >> 6];
+        byte[] cellColors = new byte[width * height * 3];
+
+        int wallPixel = Color.BLACK.ToNumber();
+        for(int cell = 0; cell < width * height; cell++)
+        {
+            int pixel = mapPixels[cell];
+            if(pixel != wallPixel)
+                openCells[cell >> 6] |= 1L << cell;
+
+            cellColors[cell * 3    ] = (byte)(pixel >> 16);
+            cellColors[cell * 3 + 1] = (byte)(pixel >>  8);
+            cellColors[cell * 3 + 2] = (byte)(pixel      );
+        }
+
+        CellTable lights = new CellTable();
+        CellTable keys   = new CellTable();
+        CellTable doors  = new CellTable();
+
+        int winCell = -1;
+
+        for(int i = 1; i < width - 1; i++)
+        {
+            for(int j = 1; j < height - 1; j++)
+            {
+                int cell = i + j * width;
+                if((openCells[cell >> 6] & (1L << cell)) == 0)
+                    continue;
+
+                if(IsMarked(lightPixels[cell]))
+                {
+                    lights.Add(cell, lightPixels[cell]);
+
+                    if(TextureIndex(mapPixels[cell] >> 16, numTextures) == 5)
+                        winCell = cell;
+                }
+
+                if(IsMarked(keyPixels[cell]))
+                    keys.Add(cell, keyPixels[cell]);
+
+                if(IsMarked(doorPixels[cell]))
+                    doors.Add(cell, doorPixels[cell]);
+            }
+        }
+
+        return new LevelData(width, height, openCells, cellColors, numTextures, winCell,
+                             lights.GetCells(), lights.GetColors(),
+                             keys.GetCells(),   keys.GetColors(),
+                             doors.GetCells(),  doors.GetColors());
+    }
+
+    public static LevelData Read(String fileName)
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            int width       = buffer.getInt();
+            int height      = buffer.getInt();
+            int numTextures = buffer.getInt();
+            int winCell     = buffer.getInt();
+            int lightCount  = buffer.getInt();
+            int keyCount    = buffer.getInt();
+            int doorCount   = buffer.getInt();
+
+            long cellCount = (long)width * height;
+            if(width <= 0 || height <= 0 || cellCount > Integer.MAX_VALUE / 3 || winCell < -1 || winCell >= cellCount ||
+               lightCount < 0 || keyCount < 0 || doorCount < 0 ||
+               buffer.remaining() != ((cellCount + 63) >> 6) * 8 + cellCount * 3 + ((long)lightCount + keyCount + doorCount) * 8)
+            {
+                Console.PrintError("Level file " + fileName + " is corrupt");
+                return null;
+            }
+
+            long[] openCells  = new long[(int)((cellCount + 63) >> 6)];
+            byte[] cellColors = new byte[(int)cellCount * 3];
+
+            buffer.asLongBuffer().get(openCells);
+            buffer.position(buffer.position() + openCells.length * 8);
+            buffer.get(cellColors);
+
+            int[] lightCells  = ReadInts(buffer, lightCount);
+            int[] lightColors = ReadInts(buffer, lightCount);
+            int[] keyCells    = ReadInts(buffer, keyCount);
+            int[] keyColors   = ReadInts(buffer, keyCount);
+            int[] doorCells   = ReadInts(buffer, doorCount);
+            int[] doorColors  = ReadInts(buffer, doorCount);
+
+            if(!AreCellsValid(lightCells, cellCount) || !AreCellsValid(keyCells, cellCount) || !AreCellsValid(doorCells, cellCount))
+            {
+                Console.PrintError("Level file " + fileName + " is corrupt");
+                return null;
+            }
+
+            return new LevelData(width, height, openCells, cellColors, numTextures, winCell,
+                                 lightCells, lightColors, keyCells, keyColors, doorCells, doorColors);
+        }
+        catch(IOException | BufferUnderflowException e)
+        {
+            Console.PrintError("Could not read level file " + fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void Write(String fileName) throws IOException
+    {
+        try(DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName))))
+        {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+
+            stream.writeInt(m_width);
+            stream.writeInt(m_height);
+            stream.writeInt(m_numTextures);
+            stream.writeInt(m_winCell);
+            stream.writeInt(m_lightCells.length);
+            stream.writeInt(m_keyCells.length);
+            stream.writeInt(m_doorCells.length);
+
+            for(long openCells : m_openCells)
+                stream.writeLong(openCells);
+
+            stream.write(m_cellColors);
+
+            WriteInts(stream, m_lightCells);
+            WriteInts(stream, m_lightColors);
+            WriteInts(stream, m_keyCells);
+            WriteInts(stream, m_keyColors);
+            WriteInts(stream, m_doorCells);
+            WriteInts(stream, m_doorColors);
+        }
+    }
+
+    private static int[] ReadInts(ByteBuffer buffer, int count)
+    {
+        int[] result = new int[count];
+        buffer.asIntBuffer().get(result);
+        buffer.position(buffer.position() + count * 4);
+        return result;
+    }
+
+    private static boolean AreCellsValid(int[] cells, long cellCount)
+    {
+        for(int cell : cells)
+        {
+            if(cell < 0 || cell >= cellCount)
+                return false;
+        }
+        return true;
+    }
+
+    private static void WriteInts(DataOutputStream stream, int[] values) throws IOException
+    {
+        for(int value : values)
+            stream.writeInt(value);
+    }
+
+    private static boolean IsMarked(int pixel)
+    {
+        return (pixel & 0xFF0000) == 0xFF0000 || (pixel & 0xFF00) == 0xFF00 || (pixel & 0xFF) == 0xFF;
+    }
+
+    public static int TextureIndex(int channel, int numTextures) { return (int)(((channel & 0xFF) / 255.0f) * numTextures); }
+
+    public int GetWidth()  { return m_width;  }
+    public int GetHeight() { return m_height; }
+
+    public int GetNumTextures() { return m_numTextures; }
+
+    public boolean IsWall(int x, int z)
+    {
+        int cell = x + z * m_width;
+        return (m_openCells[cell >> 6] & (1L << cell)) == 0;
+    }
+
+    public int GetCellColor(int x, int z)
+    {
+        int cell = (x + z * m_width) * 3;
+        return (m_cellColors[cell] & 0xFF) << 16 | (m_cellColors[cell + 1] & 0xFF) << 8 | (m_cellColors[cell + 2] & 0xFF);
+    }
+
+    public int GetWinX() { return m_winCell < 0 ? 0 : m_winCell % m_width; }
+    public int GetWinZ() { return m_winCell < 0 ? 0 : m_winCell / m_width; }
+
+    public int GetLightCount()          { return m_lightCells.length; }
+    public int GetLightCell(int index)  { return m_lightCells[index];  }
+    public int GetLightColor(int index) { return m_lightColors[index]; }
+
+    public int GetKeyCount()          { return m_keyCells.length; }
+    public int GetKeyCell(int index)  { return m_keyCells[index];  }
+    public int GetKeyColor(int index) { return m_keyColors[index]; }
+
+    public int GetDoorCount()          { return m_doorCells.length; }
+    public int GetDoorCell(int index)  { return m_doorCells[index];  }
+    public int GetDoorColor(int index) { return m_doorColors[index]; }
+
+    private static class CellTable
+    {
+        private int[] m_cells  = new int[16];
+        private int[] m_colors = new int[16];
+        private int   m_count;
+
+        public void Add(int cell, int color)
+        {
+            if(m_count == m_cells.length)
+            {
+                m_cells  = Arrays.copyOf(m_cells,  m_count * 2);
+                m_colors = Arrays.copyOf(m_colors, m_count * 2);
+            }
+
+            m_cells[m_count]  = cell;
+            m_colors[m_count] = color & 0xFFFFFF;
+            ++m_count;
+        }
+
+        public int[] GetCells()  { return Arrays.copyOf(m_cells,  m_count); }
+        public int[] GetColors() { return Arrays.copyOf(m_colors, m_count); }
+    }
+}
@@ -0,0 +1,53 @@
+package game;
+
+import java.nio.*;
+import java.security.*;
+
+// The SHA-1 a cached level file is keyed by, fed a row of cells at a time instead of a byte per call.
+public class LevelDigest
+{
+    private final MessageDigest m_digest;
+    private final ByteBuffer    m_row;
+
+    public LevelDigest(int rowSize)
+    {
+        try
+        {
+            m_digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        m_row = ByteBuffer.allocate(Math.max(rowSize, 64));
+    }
+
+    public void AddByte(int value)
+    {
+        if(!m_row.hasRemaining())
+            Flush();
+
+        m_row.put((byte)value);
+    }
+
+    public void AddInt(int value)
+    {
+        if(m_row.remaining() < 4)
+            Flush();
+
+        m_row.putInt(value);
+    }
+
+    public byte[] Finish()
+    {
+        Flush();
+        return m_digest.digest();
+    }
+
+    private void Flush()
+    {
+        m_digest.update(m_row.array(), 0, m_row.position());
+        m_row.clear();
+    }
+}
@@ -0,0 +1,333 @@
+package game;
+
+import engine.rendering.*;
+import executing.components.lights.*;
+import jamJar.core.Console;
+import jamJar.core.fileManagement.FileSystem;
+import jamJar.core.math.vectors.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+public class LevelLightmap
+{
+    public static final String FILE_NAME = "level.lmp";
+
+    // A baked level keeps 30 bytes per cell in memory; larger levels are lit by their point lights instead.
+    public static final int MAX_BAKE_CELLS = 1 << 22;
+
+    private static final int MAGIC   = 0x4E4D4C4D;
+    private static final int VERSION = 1;
+
+    private static final int LAYER_COUNT = 10;
+
+    private static final float OCCLUSION_OFFSET = 0.01f;
+
+    private static final int ROWS_PER_TASK = 4;
+
+    private final int m_width;
+    private final int m_height;
+
+    private final byte[] m_digest;
+    private final byte[] m_texels;
+
+    private LevelLightmap(int width, int height, byte[] digest, byte[] texels)
+    {
+        m_width  = width;
+        m_height = height;
+
+        m_digest = digest;
+        m_texels = texels;
+    }
+
+    public static PointLight CreateLight(LevelData levelData, int light)
+    {
+        int width = levelData.GetWidth();
+
+        int i = levelData.GetLightCell(light) % width;
+        int j = levelData.GetLightCell(light) / width;
+
+        Vector3f lightColor = Level.ToColor(levelData.GetLightColor(light));
+
+        if(LevelData.TextureIndex(levelData.GetCellColor(i, j) >> 16, levelData.GetNumTextures()) == 5)
+            return new PointLight(lightColor, 0.2f, new Attenuation(0f, 0f, 1f), new Vector3f(i + 0.5f, 0.5f, j + 0.5f));
+
+        return new PointLight(lightColor, 0.2f, new Attenuation(4f, 6f, 1f), new Vector3f(i + 0.5f, 0.9f, j + 0.5f));
+    }
+
+    // Returns null for a level too large to bake.
+    public static LevelLightmap Load(String folder, LevelData levelData)
+    {
+        if((long)levelData.GetWidth() * levelData.GetHeight() > MAX_BAKE_CELLS)
+            return null;
+
+        String fileName = folder + FILE_NAME;
+        byte[] digest   = CalcDigest(levelData);
+
+        if(FileSystem.PathExists(fileName))
+        {
+            LevelLightmap result = Read(fileName);
+            if(result != null && Arrays.equals(result.m_digest, digest))
+                return result;
+        }
+
+        LevelLightmap result = Bake(levelData);
+        try
+        {
+            result.Write(fileName);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not write lightmap file " + fileName + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    public static LevelLightmap Bake(LevelData levelData)
+    {
+        int width  = levelData.GetWidth();
+        int height = levelData.GetHeight();
+
+        PointLight[] lights = new PointLight[levelData.GetLightCount()];
+
+        LightGrid lightGrid = new LightGrid(width, height, 0);
+        for(int l = 0; l < lights.length; l++)
+        {
+            lights[l] = CreateLight(levelData, l);
+            lightGrid.AddLight(lights[l]);
+        }
+        lightGrid.Build();
+
+        byte[] texels = new byte[LAYER_COUNT * (width + 1) * (height + 1) * 3];
+        ForkJoinPool.commonPool().invoke(new BakeTask(levelData, lights, lightGrid, texels, 0, height + 1));
+
+        return new LevelLightmap(width + 1, height + 1, CalcDigest(levelData), texels);
+    }
+
+    public static LevelLightmap Read(String fileName)
+    {
+        try(DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName))))
+        {
+            if(stream.readInt() != MAGIC || stream.readInt() != VERSION)
+                return null;
+
+            int width  = stream.readInt();
+            int height = stream.readInt();
+
+            byte[] digest = new byte[stream.readInt()];
+            stream.readFully(digest);
+
+            byte[] texels = new byte[LAYER_COUNT * width * height * 3];
+            new DataInputStream(new InflaterInputStream(stream)).readFully(texels);
+
+            return new LevelLightmap(width, height, digest, texels);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not read lightmap file " + fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void Write(String fileName) throws IOException
+    {
+        try(DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName))))
+        {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+
+            stream.writeInt(m_width);
+            stream.writeInt(m_height);
+
+            stream.writeInt(m_digest.length);
+            stream.write(m_digest);
+
+            DeflaterOutputStream texelStream = new DeflaterOutputStream(stream);
+            texelStream.write(m_texels);
+            texelStream.finish();
+        }
+    }
+
+    public int GetDataSize() { return m_texels.length; }
+
+    public int GetLight(int axis, boolean direction, int x, int y, int z)
+    {
+        int texel = (GetLayer(axis, direction, y) * m_width * m_height + x + z * m_width) * 3;
+
+        return (m_texels[texel] & 0xFF) << 16 | (m_texels[texel + 1] & 0xFF) << 8 | (m_texels[texel + 2] & 0xFF);
+    }
+
+    private static int GetLayer(int axis, boolean direction, int y)
+    {
+        if(axis == 1)
+            return direction ? 1 : 0;
+
+        return (axis == 0 ? 2 : 6) + (direction ? 2 : 0) + y;
+    }
+
+    private static byte[] CalcDigest(LevelData levelData)
+    {
+        LevelDigest digest = new LevelDigest(levelData.GetWidth() * 4);
+
+        digest.AddInt(VERSION);
+        digest.AddInt(levelData.GetWidth());
+        digest.AddInt(levelData.GetHeight());
+        digest.AddInt(levelData.GetNumTextures());
+
+        for(int z = 0; z < levelData.GetHeight(); z++)
+        {
+            for(int x = 0; x < levelData.GetWidth(); x++)
+                digest.AddInt(levelData.IsWall(x, z) ? -1 : levelData.GetCellColor(x, z));
+        }
+
+        for(int l = 0; l < levelData.GetLightCount(); l++)
+        {
+            digest.AddInt(levelData.GetLightCell(l));
+            digest.AddInt(levelData.GetLightColor(l));
+        }
+
+        return digest.Finish();
+    }
+
+    private static void BakeRow(LevelData levelData, PointLight[] lights, LightGrid lightGrid, byte[] texels, int z)
+    {
+        int width  = levelData.GetWidth();
+        int height = levelData.GetHeight();
+
+        float[] light = new float[3];
+
+        for(int layer = 0; layer < LAYER_COUNT; layer++)
+        {
+            int     axis      = layer < 2 ? 1 : (layer < 6 ? 0 : 2);
+            boolean direction = layer < 2 ? layer == 1 : ((layer - 2) & 2) != 0;
+
+            float y = layer < 2 ? (direction ? 1.0f : 0.0f) : (layer & 1);
+
+            float normalX = axis == 0 ? (direction ? -1.0f : 1.0f) : 0.0f;
+            float normalY = axis == 1 ? (direction ? -1.0f : 1.0f) : 0.0f;
+            float normalZ = axis == 2 ? (direction ? -1.0f : 1.0f) : 0.0f;
+
+            for(int x = 0; x <= width; x++)
+            {
+                int cell = Math.min(x, width - 1) + Math.min(z, height - 1) * width;
+                if(lightGrid.GetCellStart(cell) == lightGrid.GetCellEnd(cell))
+                    continue;
+
+                Arrays.fill(light, 0.0f);
+
+                for(int i = lightGrid.GetCellStart(cell); i < lightGrid.GetCellEnd(cell); i++)
+                    AddLight(levelData, lights[lightGrid.GetCellLight(i)], x, y, z, normalX, normalY, normalZ, light);
+
+                int texel = (layer * (width + 1) * (height + 1) + x + z * (width + 1)) * 3;
+                for(int component = 0; component < 3; component++)
+                    texels[texel + component] = (byte)Math.min(Math.round(light[component] * 255.0f), 255);
+            }
+        }
+    }
+
+    private static void AddLight(LevelData levelData, PointLight light, float x, float y, float z, float normalX, float normalY, float normalZ, float[] result)
+    {
+        Vector3f position = light.GetPosition();
+
+        float offsetX = position.GetX() - x;
+        float offsetY = position.GetY() - y;
+        float offsetZ = position.GetZ() - z;
+
+        float distance = (float)Math.sqrt(offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ);
+        if(distance > light.GetRange())
+            return;
+
+        float diffuse = (offsetX * normalX + offsetY * normalY + offsetZ * normalZ) / distance;
+        if(diffuse <= 0.0f)
+            return;
+
+        if(IsOccluded(levelData, position.GetX(), position.GetZ(), x + normalX * OCCLUSION_OFFSET, z + normalZ * OCCLUSION_OFFSET))
+            return;
+
+        Attenuation attenuation = light.GetAttenuation();
+
+        float factor = diffuse * light.GetIntensity() / (attenuation.GetConstant() + attenuation.GetLinear() * distance +
+                                                         attenuation.GetExponent() * distance * distance + 0.0001f);
+
+        result[0] += light.GetColor().GetX() * factor;
+        result[1] += light.GetColor().GetY() * factor;
+        result[2] += light.GetColor().GetZ() * factor;
+    }
+
+    private static boolean IsOccluded(LevelData levelData, float startX, float startZ, float endX, float endZ)
+    {
+        float directionX = endX - startX;
+        float directionZ = endZ - startZ;
+
+        int x = (int)Math.floor(startX);
+        int z = (int)Math.floor(startZ);
+
+        int stepX = directionX < 0 ? -1 : 1;
+        int stepZ = directionZ < 0 ? -1 : 1;
+
+        float deltaX = directionX == 0 ? Float.MAX_VALUE : Math.abs(1.0f / directionX);
+        float deltaZ = directionZ == 0 ? Float.MAX_VALUE : Math.abs(1.0f / directionZ);
+
+        float nextX = directionX == 0 ? Float.MAX_VALUE : (directionX < 0 ? startX - x : x + 1 - startX) * deltaX;
+        float nextZ = directionZ == 0 ? Float.MAX_VALUE : (directionZ < 0 ? startZ - z : z + 1 - startZ) * deltaZ;
+
+        while(Math.min(nextX, nextZ) < 1.0f - OCCLUSION_OFFSET)
+        {
+            if(nextX < nextZ)
+            {
+                x += stepX;
+                nextX += deltaX;
+            }
+            else
+            {
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+
+            if(levelData.IsWall(x, z))
+                return true;
+        }
+        return false;
+    }
+
+    private static class BakeTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final LevelData    m_levelData;
+        private final PointLight[] m_lights;
+        private final LightGrid    m_lightGrid;
+        private final byte[]       m_texels;
+
+        private final int m_start;
+        private final int m_end;
+
+        public BakeTask(LevelData levelData, PointLight[] lights, LightGrid lightGrid, byte[] texels, int start, int end)
+        {
+            m_levelData = levelData;
+            m_lights    = lights;
+            m_lightGrid = lightGrid;
+            m_texels    = texels;
+
+            m_start = start;
+            m_end   = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(m_end - m_start <= ROWS_PER_TASK)
+            {
+                for(int z = m_start; z < m_end; z++)
+                    BakeRow(m_levelData, m_lights, m_lightGrid, m_texels, z);
+                return;
+            }
+
+            int middle = (m_start + m_end) >>> 1;
+            invokeAll(new BakeTask(m_levelData, m_lights, m_lightGrid, m_texels, m_start, middle),
+                      new BakeTask(m_levelData, m_lights, m_lightGrid, m_texels, middle, m_end));
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package game;
+
+import engine.audio.*;
+import engine.ecs.*;
+import engine.rendering.*;
+import jamJar.core.*;
+import jamJar.core.dataStructures.lists.ArrayList;
+import jamJar.core.math.Math;
+import jamJar.rendering.*;
+
+import java.util.concurrent.*;
+
+public class LevelLoader
+{
+    public static final double UPLOAD_TIME_PER_FRAME = 0.004;
+
+    private static final String[]  SOUND_NAMES      = new String[] { "footStep.wav", "splash.wav", "monsterLaughing.wav", "keyPickup.wav",
+                                                                     "doorUnlocked.wav", "doorOpened.wav", "doorLocked.wav", "doorSplash.wav" };
+    private static final boolean[] SOUND_POSITIONAL = new boolean[] { true, true, true, false, false, false, false, false };
+
+    private static final FrameProfiler.Scope LOAD_SCOPE = FrameProfiler.AddScope("LevelLoader.Load");
+
+    private static final ExecutorService s_executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread result = new Thread(runnable, "LevelLoader");
+            result.setDaemon(true);
+            return result;
+        }
+    });
+
+    private static MeshData s_keyModel;
+
+    private final int     m_index;
+    private final String  m_folder;
+    private final boolean m_bakedLighting;
+
+    private final Future<?> m_task;
+
+    private LevelData       m_levelData;
+    private LevelVisibility m_visibility;
+    private LevelLightmap   m_lightmap;
+
+    private int      m_tileCount;
+    private Bitmap[] m_tiles;
+    private Bitmap[] m_normalTiles;
+
+    private MeshData m_keyModel;
+
+    private final boolean[] m_preloadSounds;
+    private       WaveData[] m_waves;
+
+    private ArrayList<LevelChunk> m_chunks;
+    private ArrayList<ChunkMesh>  m_chunkMeshes;
+
+    private Texture[] m_tileTextures;
+    private Texture[] m_normalTextures;
+    private Sound[]   m_sounds;
+    private Mesh      m_keyMesh;
+    private int       m_uploaded;
+
+    public LevelLoader(Scene scene, int index) { this(scene, index, NightmareMaze.LEVELS_PATH + index + "/"); }
+
+    LevelLoader(Scene scene, int index, String folder)
+    {
+        m_index         = index;
+        m_folder        = folder;
+        m_bakedLighting = scene.GetSetting("BakedLighting", true);
+
+        m_preloadSounds = new boolean[SOUND_NAMES.length];
+        for(int s = 0; s < SOUND_NAMES.length; s++)
+            m_preloadSounds[s] = !AssetCache.IsSoundResident(SOUND_NAMES[s], SOUND_POSITIONAL[s]);
+
+        m_task = s_executor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                LOAD_SCOPE.Start();
+                try
+                {
+                    Load();
+                }
+                finally
+                {
+                    LOAD_SCOPE.Stop();
+                }
+            }
+        });
+    }
+
+    public int GetIndex() { return m_index; }
+
+    public boolean IsLoaded() { return m_task.isDone(); }
+
+    public void Cancel() { m_task.cancel(true); }
+
+    public boolean Upload(Scene scene, double seconds)
+    {
+        if(!IsLoaded())
+            return false;
+
+        Await();
+
+        double startTime = Clock.GetSeconds();
+        while(m_uploaded < GetUploadCount())
+        {
+            if(Clock.GetSeconds() - startTime >= seconds)
+                return false;
+
+            Upload(scene, m_uploaded++);
+        }
+        return true;
+    }
+
+    public void Finish(Scene scene)
+    {
+        Await();
+
+        while(m_uploaded < GetUploadCount())
+            Upload(scene, m_uploaded++);
+    }
+
+    public LevelData       GetLevelData()  { return m_levelData;  }
+    public LevelVisibility GetVisibility() { return m_visibility; }
+    public LevelLightmap   GetLightmap()   { return m_lightmap;   }
+
+    public int GetTileCount() { return m_tileCount; }
+
+    public Texture GetTileTexture(int tile)   { return m_tileTextures[tile];   }
+    public Texture GetNormalTexture(int tile) { return m_normalTextures[tile]; }
+
+    public Mesh GetKeyMesh() { return m_keyMesh; }
+
+    public Sound GetSound(String name)
+    {
+        for(int s = 0; s < SOUND_NAMES.length; s++)
+        {
+            if(SOUND_NAMES[s].equals(name))
+                return m_sounds[s];
+        }
+        throw new IllegalArgumentException("Sound " + name + " is not preloaded.");
+    }
+
+    public ArrayList<LevelChunk> GetChunks() { return m_chunks; }
+
+    public ArrayList<ChunkMesh> GetChunkMeshes() { return m_chunkMeshes; }
+
+    private void Await()
+    {
+        try
+        {
+            m_task.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch(ExecutionException e)
+        {
+            throw new IllegalStateException("Could not load level " + m_index, e.getCause());
+        }
+    }
+
+    private void Load()
+    {
+        TextureAtlas textures   = new TextureAtlas(new Bitmap(m_folder + "Textures.png"), Level.TEXTURE_SIZE);
+        TextureAtlas normalMaps = new TextureAtlas(new Bitmap(m_folder + "NormalMaps.png"), Level.TEXTURE_SIZE);
+
+        m_tileCount = textures.GetTileCount();
+
+        m_levelData  = LevelData.Load(m_folder, m_tileCount);
+        m_visibility = LevelVisibility.Load(m_folder, m_levelData);
+        m_lightmap   = m_bakedLighting ? LevelLightmap.Load(m_folder, m_levelData) : null;
+
+        BuildChunks();
+
+        m_tiles       = new Bitmap[m_tileCount];
+        m_normalTiles = new Bitmap[m_tileCount];
+
+        for(ChunkMesh chunkMesh : m_chunkMeshes)
+        {
+            int tile = chunkMesh.GetTile();
+            if(m_tiles[tile] == null)
+                m_tiles[tile] = textures.GetTile(tile);
+
+            if(!chunkMesh.IsLightmap() && m_normalTiles[tile] == null)
+                m_normalTiles[tile] = normalMaps.GetTile(tile);
+        }
+
+        if(s_keyModel == null)
+            s_keyModel = MeshData.Load(NightmareMaze.MODELS_PATH + "key.obj");
+
+        m_keyModel = s_keyModel;
+
+        m_waves = new WaveData[SOUND_NAMES.length];
+        for(int s = 0; s < SOUND_NAMES.length; s++)
+        {
+            if(!m_preloadSounds[s])
+                continue;
+
+            try
+            {
+                m_waves[s] = new WaveData(NightmareMaze.SOUNDS_PATH + SOUND_NAMES[s]);
+            }
+            catch(RuntimeException | AssertionError e)
+            {
+                Console.PrintError("Could not preload sound " + SOUND_NAMES[s] + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void BuildChunks()
+    {
+        int width  = m_levelData.GetWidth();
+        int height = m_levelData.GetHeight();
+
+        LevelMeshBuilder meshBuilder = new LevelMeshBuilder(m_levelData);
+
+        m_chunks      = new ArrayList<>();
+        m_chunkMeshes = new ArrayList<>();
+
+        for(int startZ = 0; startZ < height; startZ += LevelChunk.SIZE)
+        {
+            for(int startX = 0; startX < width; startX += LevelChunk.SIZE)
+            {
+                LevelChunk chunk = new LevelChunk(startX, startZ, Math.Min(startX + LevelChunk.SIZE, width), Math.Min(startZ + LevelChunk.SIZE, height));
+
+                int meshCount = m_chunkMeshes.Count();
+
+                if(m_lightmap != null)
+                {
+                    meshBuilder.BuildLightmap(Math.Max(chunk.GetStartX(), 1), Math.Max(chunk.GetStartZ(), 1),
+                                              Math.Min(chunk.GetEndX(), width - 1), Math.Min(chunk.GetEndZ(), height - 1), m_lightmap);
+                    AddChunkMeshes(meshBuilder, chunk, true);
+                }
+
+                meshBuilder.Build(Math.Max(chunk.GetStartX(), 1), Math.Max(chunk.GetStartZ(), 1),
+                                  Math.Min(chunk.GetEndX(), width - 1), Math.Min(chunk.GetEndZ(), height - 1));
+                AddChunkMeshes(meshBuilder, chunk, false);
+
+                if(m_chunkMeshes.Count() > meshCount)
+                    m_chunks.Add(chunk);
+            }
+        }
+    }
+
+    private void AddChunkMeshes(LevelMeshBuilder meshBuilder, LevelChunk chunk, boolean lightmap)
+    {
+        for(int tile = 0; tile < meshBuilder.GetTileCount(); tile++)
+        {
+            if(meshBuilder.GetQuadCount(tile) > 0)
+                m_chunkMeshes.Add(new ChunkMesh(chunk, tile, lightmap, meshBuilder.GetVertices(tile), meshBuilder.GetIndices(tile)));
+        }
+    }
+
+    private int GetUploadCount() { return SOUND_NAMES.length + 1 + m_tileCount + m_chunkMeshes.Count(); }
+
+    private void Upload(Scene scene, int step)
+    {
+        if(step < SOUND_NAMES.length)
+        {
+            if(m_sounds == null)
+                m_sounds = new Sound[SOUND_NAMES.length];
+
+            m_sounds[step] = AssetCache.AcquireSound(scene, SOUND_NAMES[step], SOUND_POSITIONAL[step], m_waves[step]);
+            m_waves[step]  = null;
+            return;
+        }
+        step -= SOUND_NAMES.length;
+
+        if(step == 0)
+        {
+            m_keyMesh = AssetCache.AcquireMesh(scene, "key.obj", m_keyModel);
+            return;
+        }
+        step -= 1;
+
+        if(step < m_tileCount)
+        {
+            if(m_tileTextures == null)
+            {
+                m_tileTextures   = new Texture[m_tileCount];
+                m_normalTextures = new Texture[m_tileCount];
+            }
+
+            if(m_tiles[step] != null)
+                m_tileTextures[step] = scene.CreateTexture(m_tiles[step]);
+
+            if(m_normalTiles[step] != null)
+                m_normalTextures[step] = scene.CreateTexture(m_normalTiles[step]);
+            return;
+        }
+        step -= m_tileCount;
+
+        m_chunkMeshes.Get(step).Upload(scene);
+    }
+
+    public static class ChunkMesh
+    {
+        private final LevelChunk m_chunk;
+        private final int        m_tile;
+        private final boolean    m_isLightmap;
+
+        private VertexList m_vertices;
+        private int[]      m_indices;
+        private Mesh       m_mesh;
+
+        public ChunkMesh(LevelChunk chunk, int tile, boolean lightmap, VertexList vertices, int[] indices)
+        {
+            m_chunk      = chunk;
+            m_tile       = tile;
+            m_isLightmap = lightmap;
+
+            m_vertices = vertices;
+            m_indices  = indices;
+        }
+
+        public LevelChunk GetChunk() { return m_chunk; }
+
+        public int GetTile() { return m_tile; }
+
+        public boolean IsLightmap() { return m_isLightmap; }
+
+        public Mesh GetMesh() { return m_mesh; }
+
+        private void Upload(Scene scene)
+        {
+            m_mesh = scene.CreateMesh(m_vertices, m_indices);
+
+            m_vertices = null;
+            m_indices  = null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package game;
+
+import engine.rendering.*;
+
+import java.util.*;
+
+public class LevelMeshBuilder
+{
+    public static final int[] VECTOR_DIMENSIONS = new int[] { 3, 3, 2, 3, 3 };
+
+    public static final int VERTEX_SIZE = 14;
+
+    private static final int POSITION  = 0;
+    private static final int COLOR     = 3;
+    private static final int TEXCOORDS = 6;
+    private static final int NORMAL    = 8;
+    private static final int TANGENT   = 11;
+
+    private final LevelData   m_levelData;
+    private final LevelMesher m_mesher;
+
+    private final int[] m_quadCounts;
+
+    private final float[][] m_vertices;
+    private final int[][]   m_indices;
+
+    public LevelMeshBuilder(LevelData levelData)
+    {
+        m_levelData = levelData;
+        m_mesher    = new LevelMesher(levelData);
+
+        m_quadCounts = new int[levelData.GetNumTextures()];
+
+        m_vertices = new float[levelData.GetNumTextures()][];
+        m_indices  = new int[levelData.GetNumTextures()][];
+    }
+
+    public void Build() { Build(1, 1, m_levelData.GetWidth() - 1, m_levelData.GetHeight() - 1); }
+
+    public void Build(int startX, int startZ, int endX, int endZ) { Build(startX, startZ, endX, endZ, null); }
+
+    public void BuildLightmap(int startX, int startZ, int endX, int endZ, LevelLightmap lightmap) { Build(startX, startZ, endX, endZ, lightmap); }
+
+    private void Build(int startX, int startZ, int endX, int endZ, final LevelLightmap lightmap)
+    {
+        Arrays.fill(m_quadCounts, 0);
+
+        m_mesher.Build(startX, startZ, endX, endZ, new LevelMesher.QuadHandler()
+        {
+            @Override
+            public void OnQuad(int tile, int axis, boolean direction, int x, int z, int sizeX, int sizeZ)
+            {
+                if(lightmap == null)
+                {
+                    ++m_quadCounts[tile];
+                    return;
+                }
+
+                for(int j = 0; j < sizeZ; j++)
+                {
+                    for(int i = 0; i < sizeX; i++)
+                    {
+                        if(IsLit(lightmap, axis, direction, x + i, z + j))
+                            ++m_quadCounts[tile];
+                    }
+                }
+            }
+        });
+
+        for(int tile = 0; tile < m_quadCounts.length; tile++)
+        {
+            m_vertices[tile] = new float[m_quadCounts[tile] * 4 * VERTEX_SIZE];
+            m_indices[tile]  = new int[m_quadCounts[tile] * 6];
+        }
+
+        Arrays.fill(m_quadCounts, 0);
+
+        m_mesher.Build(startX, startZ, endX, endZ, new LevelMesher.QuadHandler()
+        {
+            @Override
+            public void OnQuad(int tile, int axis, boolean direction, int x, int z, int sizeX, int sizeZ)
+            {
+                if(lightmap == null)
+                {
+                    AddQuad(tile, axis, direction, x, z, sizeX, sizeZ, null);
+                    return;
+                }
+
+                for(int j = 0; j < sizeZ; j++)
+                {
+                    for(int i = 0; i < sizeX; i++)
+                    {
+                        if(IsLit(lightmap, axis, direction, x + i, z + j))
+                            AddQuad(tile, axis, direction, x + i, z + j, 1, 1, lightmap);
+                    }
+                }
+            }
+        });
+    }
+
+    public int GetTileCount() { return m_quadCounts.length; }
+
+    public int GetQuadCount(int tile) { return m_quadCounts[tile]; }
+
+    public VertexList GetVertices(int tile) { return new PackedVertexList(m_vertices[tile], VECTOR_DIMENSIONS); }
+
+    public int[] GetIndices(int tile) { return m_indices[tile]; }
+
+    private static int GetCornerOffset(int axis, boolean direction, int component, int corner)
+    {
+        if(component == axis)
+            return direction ? 1 : 0;
+
+        return component == (axis + 1) % 3 ? corner & 1 : corner >> 1;
+    }
+
+    private static int GetCornerLight(LevelLightmap lightmap, int axis, boolean direction, int x, int z, int corner)
+    {
+        return lightmap.GetLight(axis, direction, x + GetCornerOffset(axis, direction, 0, corner),
+                                 GetCornerOffset(axis, direction, 1, corner), z + GetCornerOffset(axis, direction, 2, corner));
+    }
+
+    private static boolean IsLit(LevelLightmap lightmap, int axis, boolean direction, int x, int z)
+    {
+        for(int corner = 0; corner < 4; corner++)
+        {
+            if(GetCornerLight(lightmap, axis, direction, x, z, corner) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    private void AddQuad(int tile, int axis, boolean direction, int x, int z, int sizeX, int sizeZ, LevelLightmap lightmap)
+    {
+        float[] vertices = m_vertices[tile];
+        int[]   indices  = m_indices[tile];
+
+        int quad   = m_quadCounts[tile]++;
+        int offset = quad * 4;
+
+        for(int corner = 0; corner < 4; corner++)
+        {
+            int vertex = (offset + corner) * VERTEX_SIZE;
+
+            vertices[vertex + POSITION    ] = x + GetCornerOffset(axis, direction, 0, corner) * sizeX;
+            vertices[vertex + POSITION + 1] = GetCornerOffset(axis, direction, 1, corner);
+            vertices[vertex + POSITION + 2] = z + GetCornerOffset(axis, direction, 2, corner) * sizeZ;
+
+            float positionX = vertices[vertex + POSITION];
+            float positionY = vertices[vertex + POSITION + 1];
+            float positionZ = vertices[vertex + POSITION + 2];
+
+            int light = lightmap == null ? 0xFFFFFF : GetCornerLight(lightmap, axis, direction, x, z, corner);
+
+            vertices[vertex + COLOR    ] = ((light >> 16) & 0xFF) / 255.0f;
+            vertices[vertex + COLOR + 1] = ((light >>  8) & 0xFF) / 255.0f;
+            vertices[vertex + COLOR + 2] = ( light        & 0xFF) / 255.0f;
+
+            vertices[vertex + TEXCOORDS    ] = axis == 0 ? -positionZ : -positionX;
+            vertices[vertex + TEXCOORDS + 1] = axis == 1 ? -positionZ : 1.0f - positionY;
+
+            vertices[vertex + NORMAL + axis] = direction ? -1.0f : 1.0f;
+
+            if(axis == 0)
+                vertices[vertex + TANGENT + 2] = 1.0f;
+            else
+                vertices[vertex + TANGENT] = 1.0f;
+        }
+
+        int index = quad * 6;
+
+        if(direction)
+        {
+            indices[index    ] = offset + 2;
+            indices[index + 1] = offset + 1;
+            indices[index + 2] = offset;
+            indices[index + 3] = offset + 1;
+            indices[index + 4] = offset + 2;
+            indices[index + 5] = offset + 3;
+        }
+        else
+        {
+            indices[index    ] = offset;
+            indices[index + 1] = offset + 1;
+            indices[index + 2] = offset + 2;
+            indices[index + 3] = offset + 3;
+            indices[index + 4] = offset + 2;
+            indices[index + 5] = offset + 1;
+        }
+    }
+}
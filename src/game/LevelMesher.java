@@ -0,0 +1,134 @@
+package game;
+
+import java.util.*;
+
+public class LevelMesher
+{
+    public interface QuadHandler
+    {
+        void OnQuad(int tile, int axis, boolean direction, int x, int z, int sizeX, int sizeZ);
+    }
+
+    private final LevelData m_levelData;
+
+    private final int m_numTextures;
+
+    public LevelMesher(LevelData levelData)
+    {
+        m_levelData   = levelData;
+        m_numTextures = levelData.GetNumTextures();
+    }
+
+    public int GetTile(int x, int z, int channel)
+    {
+        return LevelData.TextureIndex(m_levelData.GetCellColor(x, z) >> (16 - channel * 8), m_numTextures) % m_numTextures;
+    }
+
+    public void Build(QuadHandler handler) { Build(1, 1, m_levelData.GetWidth() - 1, m_levelData.GetHeight() - 1, handler); }
+
+    public void Build(int startX, int startZ, int endX, int endZ, QuadHandler handler)
+    {
+        int sizeX = endX - startX;
+        int sizeZ = endZ - startZ;
+
+        int[] mask = new int[sizeX * sizeZ];
+
+        FillPlaneMask(mask, startX, startZ, sizeX, sizeZ, 1);
+        MergePlane(mask, startX, startZ, sizeX, sizeZ, false, handler);
+
+        FillPlaneMask(mask, startX, startZ, sizeX, sizeZ, 2);
+        MergePlane(mask, startX, startZ, sizeX, sizeZ, true, handler);
+
+        for(int z = startZ; z < endZ; z++)
+        {
+            MergeWalls(startX, endX, z, 0, -1, false, handler);
+            MergeWalls(startX, endX, z, 0,  1, true,  handler);
+        }
+
+        for(int x = startX; x < endX; x++)
+        {
+            MergeWalls(startZ, endZ, x, -1, 0, false, handler);
+            MergeWalls(startZ, endZ, x,  1, 0, true,  handler);
+        }
+    }
+
+    private void FillPlaneMask(int[] mask, int startX, int startZ, int sizeX, int sizeZ, int channel)
+    {
+        for(int z = 0; z < sizeZ; z++)
+        {
+            for(int x = 0; x < sizeX; x++)
+                mask[x + z * sizeX] = m_levelData.IsWall(startX + x, startZ + z) ? -1 : GetTile(startX + x, startZ + z, channel);
+        }
+    }
+
+    private static void MergePlane(int[] mask, int startX, int startZ, int sizeX, int sizeZ, boolean direction, QuadHandler handler)
+    {
+        for(int z = 0; z < sizeZ; z++)
+        {
+            for(int x = 0; x < sizeX; x++)
+            {
+                int tile = mask[x + z * sizeX];
+                if(tile < 0)
+                    continue;
+
+                int width = 1;
+                while(x + width < sizeX && mask[x + width + z * sizeX] == tile)
+                    ++width;
+
+                int height = 1;
+                while(z + height < sizeZ && IsRowFilled(mask, x, z + height, width, sizeX, tile))
+                    ++height;
+
+                for(int row = z; row < z + height; row++)
+                    Arrays.fill(mask, x + row * sizeX, x + width + row * sizeX, -1);
+
+                handler.OnQuad(tile, 1, direction, startX + x, startZ + z, width, height);
+            }
+        }
+    }
+
+    private static boolean IsRowFilled(int[] mask, int x, int z, int width, int sizeX, int tile)
+    {
+        for(int i = x + z * sizeX; i < x + width + z * sizeX; i++)
+        {
+            if(mask[i] != tile)
+                return false;
+        }
+        return true;
+    }
+
+    private void MergeWalls(int start, int end, int line, int wallX, int wallZ, boolean direction, QuadHandler handler)
+    {
+        boolean alongX = wallX == 0;
+
+        int runStart = 0;
+        int runTile  = -1;
+
+        for(int i = start; i <= end; i++)
+        {
+            int tile = -1;
+            if(i < end)
+            {
+                int x = alongX ? i : line;
+                int z = alongX ? line : i;
+
+                if(!m_levelData.IsWall(x, z) && m_levelData.IsWall(x + wallX, z + wallZ))
+                    tile = GetTile(x, z, 0);
+            }
+
+            if(tile == runTile)
+                continue;
+
+            if(runTile >= 0)
+            {
+                if(alongX)
+                    handler.OnQuad(runTile, 2, direction, runStart, line, i - runStart, 1);
+                else
+                    handler.OnQuad(runTile, 0, direction, line, runStart, 1, i - runStart);
+            }
+
+            runStart = i;
+            runTile  = tile;
+        }
+    }
+}
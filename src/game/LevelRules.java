@@ -0,0 +1,298 @@
+package game;
+
+import engine.core.*;
+import jamJar.core.math.*;
+import jamJar.core.math.Math;
+import jamJar.core.math.vectors.*;
+
+import java.nio.*;
+import java.util.zip.*;
+
+public class LevelRules
+{
+    public  static final float PLAYER_RADIUS       = 0.2f;
+    public  static final float INITIAL_SPEED       = 2.3f;
+    public  static final float DOOR_FLASH_TIME     = 0.4f;
+            static final float DOOR_HALF_THICKNESS = 0.025f;
+    private static final float SLUDGE_RISE_SPEED   = 0.002f;
+    private static final float SLUDGE_DRAIN        = 0.1f;
+    private static final float DROWN_DEPTH         = 0.05f;
+
+    public interface Listener
+    {
+        void OnCellEntered(int x, int z);
+        void OnKeyCollected(int x, int z, int colorIndex);
+    }
+
+    private final LevelData    m_levelData;
+    private final CellGrid     m_cells;
+    private final ColorPalette m_palette;
+    private final int[]        m_doorColorIndices;
+
+    private final CellMap<Integer> m_keyColors;
+    private final CellMap<Integer> m_doorColors;
+    private final boolean[]        m_collectedKeys;
+    private final boolean[]        m_openedDoors;
+
+    private final PlayerMotion m_motion;
+    private final Listener     m_listener;
+
+    private float   m_speed;
+    private float   m_sludgeLevel;
+    private double  m_tickTime;
+    private boolean m_moved;
+    private int     m_playerCell;
+    private int     m_doorCell;
+    private int     m_updateCount;
+
+    // Seconds of play, advanced by the frame delta only while the rules run, so that replays time doors and laughs alike.
+    private double m_time;
+    private double m_doorFlashStartTime;
+
+    public LevelRules(LevelData levelData, LevelSaveData saveData, Listener listener)
+    {
+        m_levelData = levelData;
+        m_cells     = new CellGrid(levelData);
+        m_listener  = listener;
+
+        m_palette          = new ColorPalette();
+        m_doorColorIndices = new int[levelData.GetDoorCount()];
+
+        for(int k = 0; k < levelData.GetKeyCount(); k++)
+            m_palette.Add(levelData.GetKeyColor(k));
+
+        for(int d = 0; d < levelData.GetDoorCount(); d++)
+            m_doorColorIndices[d] = m_palette.Add(levelData.GetDoorColor(d));
+
+        m_keyColors     = new CellMap<>(levelData.GetWidth(), levelData.GetHeight());
+        m_doorColors    = new CellMap<>(levelData.GetWidth(), levelData.GetHeight());
+        m_collectedKeys = new boolean[m_palette.Count()];
+        m_openedDoors   = new boolean[m_palette.Count()];
+
+        for(Vector3f doorColor : saveData.GetOpenedDoors())
+        {
+            int colorIndex = m_palette.IndexOf(doorColor);
+            if(colorIndex >= 0)
+                m_openedDoors[colorIndex] = true;
+        }
+
+        for(Vector3f keyColor : saveData.GetCollectedKeys())
+        {
+            int colorIndex = m_palette.IndexOf(keyColor);
+            if(colorIndex >= 0 && !m_openedDoors[colorIndex])
+                m_collectedKeys[colorIndex] = true;
+        }
+
+        int width = levelData.GetWidth();
+
+        for(int k = 0; k < levelData.GetKeyCount(); k++)
+        {
+            int colorIndex = m_palette.IndexOf(levelData.GetKeyColor(k));
+            if(m_openedDoors[colorIndex] || m_collectedKeys[colorIndex])
+                continue;
+
+            int cell = levelData.GetKeyCell(k);
+            m_keyColors.Place(cell, colorIndex);
+            m_cells.Set(cell % width, cell / width, CellGrid.KEY);
+        }
+
+        for(int d = 0; d < levelData.GetDoorCount(); d++)
+        {
+            if(m_openedDoors[m_doorColorIndices[d]])
+                continue;
+
+            int cell = levelData.GetDoorCell(d);
+            m_doorColors.Place(cell, m_doorColorIndices[d]);
+            m_cells.Set(cell % width, cell / width, CellGrid.DOOR);
+        }
+
+        m_motion = new PlayerMotion(m_cells, PLAYER_RADIUS, DOOR_HALF_THICKNESS, saveData.GetCameraPosition());
+
+        m_speed       = INITIAL_SPEED;
+        m_sludgeLevel = saveData.GetSludgeLevel();
+        m_playerCell  = -1;
+        m_doorCell    = -1;
+
+        m_doorFlashStartTime = -DOOR_FLASH_TIME;
+    }
+
+    public ColorPalette GetPalette() { return m_palette; }
+
+    public int GetDoorColorIndex(int door) { return m_doorColorIndices[door]; }
+
+    public boolean HasKey(int colorIndex)       { return m_collectedKeys[colorIndex]; }
+    public boolean IsDoorOpened(int colorIndex) { return m_openedDoors[colorIndex];   }
+
+    public int GetCollectedKeyCount() { return Count(m_collectedKeys); }
+    public int GetOpenedDoorCount()   { return Count(m_openedDoors);   }
+
+    public Vector3f GetPosition() { return m_motion.GetPosition(); }
+
+    public float GetSpeed()       { return m_speed;       }
+    public float GetSludgeLevel() { return m_sludgeLevel; }
+
+    // 1 while the sludge is at the floor, falling to 0 as it reaches the player's drowning depth.
+    public float GetSludgeDistance() { return 1.0f - m_sludgeLevel / (m_motion.GetPosition().GetY() - DROWN_DEPTH); }
+
+    public boolean IsDrowned() { return m_sludgeLevel > m_motion.GetPosition().GetY() - DROWN_DEPTH; }
+
+    public boolean HasMoved() { return m_moved; }
+
+    public int GetUpdateCount() { return m_updateCount; }
+
+    public double GetTime() { return m_time; }
+
+    // A locked door flashes for DOOR_FLASH_TIME after a try at opening it, during which further tries are ignored.
+    public boolean IsDoorFlashing()   { return GetDoorFlashTime() < DOOR_FLASH_TIME; }
+    public double  GetDoorFlashTime() { return m_time - m_doorFlashStartTime;         }
+
+    // The cell of the door the player was last standing at, or -1 when it is not at a closed door.
+    public int GetTouchedDoor() { return m_doorCell; }
+
+    public int GetDoorColorIndexAt(int cell) { return m_doorColors.Get(cell); }
+
+    public static float GetWalkDirection(InputDevice inputDevice)
+    {
+        float direction = 0;
+        if(inputDevice.IsKeyDown(InputDevice.Key.W))
+            direction += 1;
+        if(inputDevice.IsKeyDown(InputDevice.Key.S))
+            direction -= 1;
+
+        return direction;
+    }
+
+    // Raises the sludge and runs the movement ticks that fit in delta. Returns true once the player reaches the exit;
+    // a drowned player does not move.
+    public boolean Update(float delta, float direction, Quaternion rotation)
+    {
+        m_moved = false;
+        ++m_updateCount;
+
+        m_time += delta;
+
+        m_sludgeLevel += SLUDGE_RISE_SPEED * delta;
+        if(m_sludgeLevel > 0.0f)
+        {
+            m_speed = INITIAL_SPEED * (GetSludgeDistance() * 0.8f + 0.2f);
+            if(IsDrowned())
+                return false;
+        }
+
+        m_tickTime += delta;
+        while(m_tickTime >= PlayerMotion.TICK_TIME)
+        {
+            m_tickTime -= PlayerMotion.TICK_TIME;
+            if(Tick(direction, rotation))
+                return true;
+        }
+        return false;
+    }
+
+    public void Interpolate(Vector3f result) { m_motion.Interpolate(result, (float)(m_tickTime / PlayerMotion.TICK_TIME)); }
+
+    // Opens the door the player is standing at if its key has been collected, draining some of the sludge. A locked
+    // door starts flashing instead.
+    public boolean OpenDoor()
+    {
+        if(m_doorCell < 0 || IsDoorFlashing())
+            return false;
+
+        int colorIndex = m_doorColors.Get(m_doorCell);
+        if(!m_collectedKeys[colorIndex])
+        {
+            m_doorFlashStartTime = m_time;
+            return false;
+        }
+
+        m_doorColors.Remove(m_doorCell);
+        m_cells.Set(m_doorColors.GetX(m_doorCell), m_doorColors.GetZ(m_doorCell), CellGrid.FLOOR);
+        m_doorCell = -1;
+
+        m_openedDoors[colorIndex]   = true;
+        m_collectedKeys[colorIndex] = false;
+
+        m_sludgeLevel = Math.Max(0.0f, m_sludgeLevel - SLUDGE_DRAIN);
+        return true;
+    }
+
+    private boolean Tick(float direction, Quaternion rotation)
+    {
+        float distance = direction * m_speed * PlayerMotion.TICK_TIME;
+        float forwardX = 2 * (rotation.GetX() * rotation.GetZ() + rotation.GetY() * rotation.GetW());
+        float forwardZ = 1 - 2 * (rotation.GetX() * rotation.GetX() + rotation.GetY() * rotation.GetY());
+
+        m_motion.Move(forwardX * distance, forwardZ * distance);
+        if(!m_motion.IsMoving())
+            return false;
+
+        m_moved = true;
+
+        Vector3f position = m_motion.GetPosition();
+
+        float offsetX = m_motion.GetMoveX() < 0 ? -PLAYER_RADIUS : PLAYER_RADIUS;
+        float offsetZ = m_motion.GetMoveZ() < 0 ? -PLAYER_RADIUS : PLAYER_RADIUS;
+
+        if(m_cells.Get((int)Math.Floor(position.GetX() + offsetX), (int)Math.Floor(position.GetZ() + offsetZ)) == CellGrid.WIN)
+            return true;
+
+        int playerX    = (int)Math.Floor(position.GetX());
+        int playerZ    = (int)Math.Floor(position.GetZ());
+        int playerCell = playerX + playerZ * m_levelData.GetWidth();
+
+        if(playerCell != m_playerCell)
+        {
+            m_playerCell = playerCell;
+            m_listener.OnCellEntered(playerX, playerZ);
+        }
+
+        byte cellType = m_cells.Get(playerX, playerZ);
+
+        if(cellType == CellGrid.KEY)
+        {
+            int colorIndex = m_keyColors.Remove(playerCell);
+            m_cells.Set(playerX, playerZ, CellGrid.FLOOR);
+            m_collectedKeys[colorIndex] = true;
+
+            m_listener.OnKeyCollected(playerX, playerZ, colorIndex);
+        }
+
+        m_doorCell = cellType == CellGrid.DOOR ? playerCell : -1;
+        return false;
+    }
+
+    // A CRC of everything the rules carry from one update to the next and of the rotation steering them; two runs of
+    // the same level on the same input have the same checksum after every frame.
+    public int GetChecksum(Quaternion rotation)
+    {
+        Vector3f position = m_motion.GetPosition();
+
+        ByteBuffer state = ByteBuffer.allocate(4 * 13 + 8 + m_collectedKeys.length + m_openedDoors.length);
+        state.putInt(m_updateCount).putInt(m_doorCell).putInt(m_playerCell);
+        state.putFloat(position.GetX()).putFloat(position.GetY()).putFloat(position.GetZ());
+        state.putFloat(rotation.GetX()).putFloat(rotation.GetY()).putFloat(rotation.GetZ()).putFloat(rotation.GetW());
+        state.putFloat(m_speed).putFloat(m_sludgeLevel).putDouble(m_tickTime);
+        state.putInt(m_moved ? 1 : 0);
+
+        for(boolean isCollected : m_collectedKeys)
+            state.put((byte)(isCollected ? 1 : 0));
+
+        for(boolean isOpened : m_openedDoors)
+            state.put((byte)(isOpened ? 1 : 0));
+
+        CRC32 checksum = new CRC32();
+        checksum.update(state.array());
+        return (int)checksum.getValue();
+    }
+
+    private static int Count(boolean[] flags)
+    {
+        int count = 0;
+        for(boolean flag : flags)
+        {
+            if(flag)
+                ++count;
+        }
+        return count;
+    }
+}
@@ -1,18 +1,32 @@
 package game;
 
-import jamJar.core.fileManagement.*;
+import jamJar.core.Console;
 import jamJar.core.fileManagement.FileReader;
-import jamJar.core.fileManagement.FileWriter;
+import jamJar.core.fileManagement.FileSystem;
 import jamJar.core.math.*;
+import jamJar.core.math.Math;
 import jamJar.core.math.vectors.*;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
 import static game.NightmareMaze.*;
 
 public class LevelSaveData
 {
     public static final String FILE_NAME = FILE_PATH + "data.properties";
 
-    private final int m_index;
+    private static final int MAGIC   = 0x4E4D5356;
+    private static final int VERSION = 2;
+
+    private static final byte CELLS_RUNS = 0;
+    private static final byte CELLS_BITS = 1;
+
+    private final int  m_index;
+    private final long m_generation;
 
     private final Vector3f   m_cameraPosition;
     private final Quaternion m_cameraRotation;
@@ -24,7 +38,13 @@ public class LevelSaveData
 
     public LevelSaveData(int index, Vector3f cameraPosition, Quaternion cameraRotation, Vector3f[] collectedKeys, Vector3f[] openedDoors, Vector2f[] passedLocations, float sludgeLevel)
     {
-        m_index = index;
+        this(index, new Random().nextLong(), cameraPosition, cameraRotation, collectedKeys, openedDoors, passedLocations, sludgeLevel);
+    }
+
+    LevelSaveData(int index, long generation, Vector3f cameraPosition, Quaternion cameraRotation, Vector3f[] collectedKeys, Vector3f[] openedDoors, Vector2f[] passedLocations, float sludgeLevel)
+    {
+        m_index      = index;
+        m_generation = generation;
 
         m_cameraPosition  = cameraPosition;
         m_cameraRotation  = cameraRotation;
@@ -35,42 +55,99 @@ public class LevelSaveData
         m_sludgeLevel = sludgeLevel;
     }
 
-    public LevelSaveData()
+    public LevelSaveData() { this(Load()); }
+
+    private LevelSaveData(LevelSaveData other)
+    {
+        this(other.m_index, other.m_generation, other.m_cameraPosition, other.m_cameraRotation, other.m_collectedKeys, other.m_openedDoors, other.m_passedLocations, other.m_sludgeLevel);
+    }
+
+    private static LevelSaveData Load()
+    {
+        synchronized(SaveJournal.s_lock)
+        {
+            return SaveJournal.Replay(ReadSnapshot(), SaveJournal.OLD_FILE_NAME, SaveJournal.FILE_NAME);
+        }
+    }
+
+    static LevelSaveData ReadSnapshot()
     {
         if(!FileSystem.PathExists(FILE_NAME))
+            return CreateSnapshot();
+
+        byte[] data;
+        try
+        {
+            data = Files.readAllBytes(Paths.get(FILE_NAME));
+        }
+        catch(IOException e)
         {
-            m_index = 0;
+            Console.PrintError("Could not read save " + FILE_NAME + ": " + e.getMessage());
+            return CreateSnapshot();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if(buffer.remaining() < 4 || buffer.getInt(0) != MAGIC)
+            return ReadLegacySnapshot();
 
-            m_cameraPosition  = new Vector3f(1.5f, 0.3f, 1.5f);
-            m_cameraRotation  = new Quaternion();
-            m_collectedKeys   = new Vector3f[0];
-            m_openedDoors     = new Vector3f[0];
-            m_passedLocations = new Vector2f[0];
+        try
+        {
+            buffer.position(4);
+            int version  = buffer.getInt();
+            int checksum = buffer.getInt();
+            int length   = buffer.getInt();
 
-            m_sludgeLevel = Level.INITIAL_SLUDGE_LEVEL;
+            if(version != VERSION || length != buffer.remaining())
+                throw new IOException("unsupported version " + version + " or length " + length);
 
-            FileSystem.CreateDirectory(FILE_PATH);
-            FileSystem.CreateFile(FILE_NAME);
+            CRC32 crc = new CRC32();
+            crc.update(data, buffer.position(), length);
+            if((int)crc.getValue() != checksum)
+                throw new IOException("checksum mismatch");
 
-            Save();
-            return;
+            return Decode(buffer);
         }
+        catch(IOException | BufferUnderflowException | IllegalArgumentException e)
+        {
+            Console.PrintError("Could not read save " + FILE_NAME + ": " + e.getMessage());
+            return CreateSnapshot();
+        }
+    }
+
+    private static LevelSaveData CreateSnapshot()
+    {
+        LevelSaveData result = new LevelSaveData(0, new Vector3f(1.5f, 0.3f, 1.5f), new Quaternion(), null, null, null, Level.INITIAL_SLUDGE_LEVEL);
+
+        FileSystem.CreateDirectory(FILE_PATH);
+        result.WriteSnapshot();
+        return result;
+    }
 
+    // Saves from before the binary format are read once through the reflective reader and rewritten at the next snapshot.
+    private static LevelSaveData ReadLegacySnapshot()
+    {
         FileReader reader = new FileReader(FILE_NAME);
 
-        m_index = reader.Read(Integer.class);
+        int index = reader.Read(Integer.class);
+
+        Vector3f   cameraPosition  = reader.Read(Vector3f.class);
+        Quaternion cameraRotation  = reader.Read(Quaternion.class);
+        Vector3f[] collectedKeys   = reader.Read(Vector3f[].class);
+        Vector3f[] openedDoors     = reader.Read(Vector3f[].class);
+        Vector2f[] passedLocations = reader.Read(Vector2f[].class);
 
-        m_cameraPosition  = reader.Read(Vector3f.class);
-        m_cameraRotation  = reader.Read(Quaternion.class);
-        m_collectedKeys   = reader.Read(Vector3f[].class);
-        m_openedDoors     = reader.Read(Vector3f[].class);
-        m_passedLocations = reader.Read(Vector2f[].class);
+        float sludgeLevel = reader.Read(Float.class);
 
-        m_sludgeLevel = reader.Read(Float.class);
+        // Saves from before the journal end here; their generation is 0, and so is that of any journal left with them.
+        long generation = reader.IsEndOfFile() ? 0 : reader.Read(Long.class);
+
+        return new LevelSaveData(index, generation, cameraPosition, cameraRotation, collectedKeys, openedDoors, passedLocations, sludgeLevel);
     }
 
     public int GetIndex() { return m_index; }
 
+    public long GetGeneration() { return m_generation; }
+
     public Vector3f   GetCameraPosition()  { return m_cameraPosition;  }
     public Quaternion GetCameraRotation()  { return m_cameraRotation;  }
     public Vector3f[] GetCollectedKeys()   { return m_collectedKeys;   }
@@ -79,17 +156,236 @@ public class LevelSaveData
 
     public float GetSludgeLevel() { return m_sludgeLevel; }
 
+    // Replaces the whole save, so the journal of the previous state is dropped once the new snapshot is on disk.
     public void Save()
     {
-        FileWriter writer = new FileWriter(FILE_NAME);
-        writer.Write(m_index);
+        synchronized(SaveJournal.s_lock)
+        {
+            if(WriteSnapshot())
+                SaveJournal.Delete();
+        }
+    }
+
+    boolean WriteSnapshot()
+    {
+        Path path          = Paths.get(FILE_NAME);
+        Path temporaryPath = Paths.get(FILE_NAME + ".tmp");
+
+        try
+        {
+            byte[] payload = Encode();
+
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            try(FileOutputStream file = new FileOutputStream(temporaryPath.toFile()))
+            {
+                DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(file));
+                stream.writeInt(MAGIC);
+                stream.writeInt(VERSION);
+                stream.writeInt((int)crc.getValue());
+                stream.writeInt(payload.length);
+                stream.write(payload);
+                stream.flush();
+
+                file.getFD().sync();
+            }
+
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not write save " + FILE_NAME + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private byte[] Encode() throws IOException
+    {
+        ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+        DataOutputStream      stream = new DataOutputStream(bytes);
+
+        stream.writeInt(m_index);
+        stream.writeLong(m_generation);
+
+        stream.writeFloat(m_cameraPosition.GetX());
+        stream.writeFloat(m_cameraPosition.GetY());
+        stream.writeFloat(m_cameraPosition.GetZ());
+        stream.writeFloat(m_cameraRotation.GetX());
+        stream.writeFloat(m_cameraRotation.GetY());
+        stream.writeFloat(m_cameraRotation.GetZ());
+        stream.writeFloat(m_cameraRotation.GetW());
+        stream.writeFloat(m_sludgeLevel);
+
+        // Keys and doors are indices into a palette of the colours this save uses.
+        ColorPalette palette = new ColorPalette();
+        for(Vector3f color : m_collectedKeys)
+            palette.Add(ColorPalette.ToNumber(color));
+        for(Vector3f color : m_openedDoors)
+            palette.Add(ColorPalette.ToNumber(color));
+
+        stream.writeShort(palette.Count());
+        for(int i = 0; i < palette.Count(); i++)
+        {
+            int color = palette.GetColor(i);
+            stream.writeByte(color >> 16);
+            stream.writeByte(color >> 8);
+            stream.writeByte(color);
+        }
+
+        WriteColorIndices(stream, palette, m_collectedKeys);
+        WriteColorIndices(stream, palette, m_openedDoors);
+
+        int width  = 0;
+        int height = 0;
+        for(Vector2f location : m_passedLocations)
+        {
+            width  = Math.Max(width,  (int)location.GetX() + 1);
+            height = Math.Max(height, (int)location.GetY() + 1);
+        }
+
+        BitSet visited = new BitSet(width * height);
+        for(Vector2f location : m_passedLocations)
+            visited.set((int)location.GetX() + (int)location.GetY() * width);
+
+        stream.writeInt(width);
+        stream.writeInt(height);
+        WriteCells(stream, visited, width * height);
+
+        stream.flush();
+        return bytes.toByteArray();
+    }
+
+    private static LevelSaveData Decode(ByteBuffer buffer)
+    {
+        int  index      = buffer.getInt();
+        long generation = buffer.getLong();
+
+        Vector3f   cameraPosition = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        Quaternion cameraRotation = new Quaternion(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        float      sludgeLevel    = buffer.getFloat();
+
+        int[] palette = new int[buffer.getShort() & 0xFFFF];
+        for(int i = 0; i < palette.length; i++)
+            palette[i] = (buffer.get() & 0xFF) << 16 | (buffer.get() & 0xFF) << 8 | (buffer.get() & 0xFF);
+
+        Vector3f[] collectedKeys = ReadColorIndices(buffer, palette);
+        Vector3f[] openedDoors   = ReadColorIndices(buffer, palette);
+
+        int    width   = buffer.getInt();
+        int    height  = buffer.getInt();
+        BitSet visited = ReadCells(buffer, width * height);
+
+        Vector2f[] passedLocations = new Vector2f[visited.cardinality()];
+
+        int location = 0;
+        for(int cell = visited.nextSetBit(0); cell >= 0; cell = visited.nextSetBit(cell + 1))
+            passedLocations[location++] = new Vector2f(cell % width, cell / width);
+
+        return new LevelSaveData(index, generation, cameraPosition, cameraRotation, collectedKeys, openedDoors, passedLocations, sludgeLevel);
+    }
+
+    private static void WriteColorIndices(DataOutputStream stream, ColorPalette palette, Vector3f[] colors) throws IOException
+    {
+        stream.writeShort(colors.length);
+        for(Vector3f color : colors)
+            stream.writeShort(palette.IndexOf(color));
+    }
+
+    private static Vector3f[] ReadColorIndices(ByteBuffer buffer, int[] palette)
+    {
+        Vector3f[] result = new Vector3f[buffer.getShort() & 0xFFFF];
+        for(int i = 0; i < result.length; i++)
+            result[i] = Level.ToColor(palette[buffer.getShort() & 0xFFFF]);
+
+        return result;
+    }
 
-        writer.Write(m_cameraPosition);
-        writer.Write(m_cameraRotation);
-        writer.Write(m_collectedKeys);
-        writer.Write(m_openedDoors);
-        writer.Write(m_passedLocations);
+    // Visited cells are stored as alternating runs of unvisited and visited cells, or as a plain bitset when that is smaller.
+    private static void WriteCells(DataOutputStream stream, BitSet cells, int cellCount) throws IOException
+    {
+        ByteArrayOutputStream runs = new ByteArrayOutputStream();
+
+        int     start = 0;
+        boolean value = false;
+        while(start < cellCount)
+        {
+            int end = value ? cells.nextClearBit(start) : cells.nextSetBit(start);
+            if(end < 0 || end > cellCount)
+                end = cellCount;
 
-        writer.Write(m_sludgeLevel);
+            WriteVarInt(runs, end - start);
+            start = end;
+            value = !value;
+        }
+
+        byte[] bits = cells.toByteArray();
+        if(runs.size() <= bits.length)
+        {
+            stream.writeByte(CELLS_RUNS);
+            stream.writeInt(runs.size());
+            runs.writeTo(stream);
+        }
+        else
+        {
+            stream.writeByte(CELLS_BITS);
+            stream.writeInt(bits.length);
+            stream.write(bits);
+        }
+    }
+
+    private static BitSet ReadCells(ByteBuffer buffer, int cellCount)
+    {
+        byte encoding = buffer.get();
+        byte[] data   = new byte[buffer.getInt()];
+        buffer.get(data);
+
+        if(encoding == CELLS_BITS)
+            return BitSet.valueOf(data);
+
+        if(encoding != CELLS_RUNS)
+            throw new IllegalArgumentException("unknown cell encoding " + encoding);
+
+        BitSet     result = new BitSet(cellCount);
+        ByteBuffer runs   = ByteBuffer.wrap(data);
+
+        int     start = 0;
+        boolean value = false;
+        while(runs.hasRemaining())
+        {
+            int end = start + ReadVarInt(runs);
+            if(end > cellCount)
+                throw new IllegalArgumentException("cell run past the end of the grid");
+
+            if(value)
+                result.set(start, end);
+
+            start = end;
+            value = !value;
+        }
+        return result;
+    }
+
+    private static void WriteVarInt(OutputStream stream, int value) throws IOException
+    {
+        while((value & ~0x7F) != 0)
+        {
+            stream.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        stream.write(value);
+    }
+
+    private static int ReadVarInt(ByteBuffer buffer)
+    {
+        int result = 0;
+        for(int shift = 0; ; shift += 7)
+        {
+            byte value = buffer.get();
+            result |= (value & 0x7F) << shift;
+            if(value >= 0)
+                return result;
+        }
     }
 }
@@ -10,21 +10,39 @@ import jamJar.core.fileManagement.*;
 import jamJar.core.math.*;
 import jamJar.core.math.vectors.*;
 
+import java.io.IOException;
+import java.util.Random;
+
 public class LevelScene extends Scene
 {
     private static final double LEVEL_DISPLAY_TIME = 2;
+    static final float          MOUSE_SENSITIVITY  = 0.5f;
+
+    private static final FrameProfiler.Scope UPDATE_SCOPE = FrameProfiler.AddScope("Level.Update");
+    private static final FrameProfiler.Scope UPLOAD_SCOPE = FrameProfiler.AddScope("LevelLoader.Upload");
+
+    // -DnightmareMaze.record=<file> records every level started into the file, which keeps the last one;
+    // -DnightmareMaze.replay=<file> plays a recorded level back and exits.
+    private static final String RECORD_FILE_NAME = System.getProperty("nightmareMaze.record");
+    private static final String REPLAY_FILE_NAME = System.getProperty("nightmareMaze.replay");
 
     private LevelSaveData m_levelSaveData;
 
-    KeyboardControl  m_keyboardControl;
     MouseLookControl m_mouseLookControl;
 
-    Level m_level;
-    int   m_levelIndex;
+    Level       m_level;
+    int         m_levelIndex;
+    LevelLoader m_levelLoader;
+    LevelLoader m_nextLevelLoader;
 
     double m_levelDisplayStartTime;
     Entity m_levelDisplayText;
 
+    FrameProfilerHud m_profilerHud;
+
+    InputRecording.Recorder m_recorder;
+    InputRecording.Player   m_player;
+
     @Override
     protected void OnSceneStart()
     {
@@ -39,26 +57,44 @@ public class LevelScene extends Scene
 
         AddToFilePath("nightmareMaze/");
 
-        m_mouseLookControl = new MouseLookControl(InputDevice.Key.ESCAPE, 0.5f);
+        m_mouseLookControl = new MouseLookControl(InputDevice.Key.ESCAPE, MOUSE_SENSITIVITY);
         m_mouseLookControl.DisablePitchRotation();
 
-        m_keyboardControl = new KeyboardControl();
-
-        GetCamera().AddComponent(m_mouseLookControl);
-        GetCamera().AddComponent(m_keyboardControl);
-
         SetSetting("AmbientLight", new Vector3f());
 
         m_levelSaveData = new LevelSaveData();
         m_levelIndex = m_levelSaveData.GetIndex();
+
+        if(REPLAY_FILE_NAME != null)
+        {
+            try
+            {
+                m_player        = new InputRecording.Player(REPLAY_FILE_NAME);
+                m_levelIndex    = m_player.GetLevelIndex();
+                m_levelSaveData = m_player.GetSaveData();
+            }
+            catch(IOException e)
+            {
+                Console.PrintError("Could not read input recording: " + e.getMessage());
+            }
+        }
+
+        // While input is recorded or replayed the camera is turned from the recorded input device instead of by
+        // MouseLookSystem.
+        if(m_player == null && RECORD_FILE_NAME == null)
+            GetCamera().AddComponent(m_mouseLookControl);
+
         StartLevel();
     }
 
     private void StartLevel()
     {
         ClearScene();
+        AssetCache.Release(this);
+
+        m_profilerHud = null;
 
-        if(!FileSystem.PathExists("./res/nightmareMaze/textures/Levels/" + m_levelIndex))
+        if(!FileSystem.PathExists(NightmareMaze.LEVELS_PATH + m_levelIndex))
         {
             ResetScene(WinScene.class);
             ChangeScene(WinScene.class);
@@ -70,18 +106,40 @@ public class LevelScene extends Scene
             return;
         }
 
-        DisableSystem(KeyboardControlSystem.class);
         DisableSystem(MouseLookSystem.class);
 
+        if(m_nextLevelLoader != null && m_nextLevelLoader.GetIndex() == m_levelIndex)
+        {
+            m_levelLoader     = m_nextLevelLoader;
+            m_nextLevelLoader = null;
+        }
+        else
+        {
+            // A restarted level keeps the next level loading for when it is finished.
+            if(m_nextLevelLoader != null && m_nextLevelLoader.GetIndex() != m_levelIndex + 1)
+            {
+                m_nextLevelLoader.Cancel();
+                m_nextLevelLoader = null;
+            }
+
+            m_levelLoader = new LevelLoader(this, m_levelIndex);
+        }
+
         m_levelDisplayStartTime = Clock.GetSeconds();
-        m_levelDisplayText      = CreateEntity(new TextComponent("Level " + (m_levelIndex + 1), LoadFont(NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.MIDDLE_CENTER, new Vector2f(), new Vector2f(2)));
+        m_levelDisplayText      = CreateEntity(new TextComponent("Level " + (m_levelIndex + 1), AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.MIDDLE_CENTER, new Vector2f(), new Vector2f(2)));
     }
 
     @Override
     protected void OnSceneUpdate(InputDevice inputDevice, float delta)
     {
+        UpdateProfiler(inputDevice);
+
         if(m_levelDisplayText != null)
         {
+            UPLOAD_SCOPE.Start();
+            m_levelLoader.Upload(this, LevelLoader.UPLOAD_TIME_PER_FRAME);
+            UPLOAD_SCOPE.Stop();
+
             double currentTime = Clock.GetSeconds();
             if(currentTime - m_levelDisplayStartTime >= LEVEL_DISPLAY_TIME)
             {
@@ -89,9 +147,17 @@ public class LevelScene extends Scene
                 m_levelDisplayText = null;
 
                 UseSystem(MouseLookSystem.class);
-                UseSystem(KeyboardControlSystem.class);
 
-                m_level = new Level(this, m_levelIndex++, m_keyboardControl, m_levelSaveData);
+                long laughSeed = m_player != null ? m_player.GetLaughSeed() : new Random().nextLong();
+
+                m_level       = new Level(this, m_levelLoader, m_levelSaveData, laughSeed, m_player == null);
+                m_levelLoader = null;
+
+                if(RECORD_FILE_NAME != null && m_player == null)
+                    StartRecording(inputDevice, laughSeed);
+
+                if(FileSystem.PathExists(NightmareMaze.LEVELS_PATH + ++m_levelIndex) && m_nextLevelLoader == null)
+                    m_nextLevelLoader = new LevelLoader(this, m_levelIndex);
             }
             return;
         }
@@ -99,17 +165,54 @@ public class LevelScene extends Scene
         if(m_level == null)
             return;
 
-        LevelEvent event = m_level.Update(inputDevice, delta);
+        InputDevice levelInputDevice = inputDevice;
+        if(m_recorder != null)
+        {
+            m_recorder.Capture(inputDevice, delta);
+            levelInputDevice = m_recorder.GetInputDevice();
+        }
+        else if(m_player != null)
+        {
+            if(!NextReplayFrame())
+                return;
+
+            delta            = m_player.GetDelta();
+            levelInputDevice = m_player.GetInputDevice();
+        }
+
+        if(levelInputDevice != inputDevice)
+        {
+            Transformation camera = GetCamera().GetTransformation();
+            camera.SetRotation(LevelSimulation.Look(levelInputDevice, camera.GetRotation()));
+        }
+
+        int updateCount = m_level.GetRules().GetUpdateCount();
+
+        UPDATE_SCOPE.Start();
+        LevelEvent event = m_level.Update(levelInputDevice, delta);
+        UPDATE_SCOPE.Stop();
+
+        if(levelInputDevice != inputDevice)
+            EndInputFrame(inputDevice, m_level.GetRules().GetUpdateCount() != updateCount, event);
+
+        if(m_player != null && event != LevelEvent.NONE)
+        {
+            FinishReplay();
+            return;
+        }
+
         switch(event)
         {
             case NEXT_LEVEL:
                 inputDevice.SetMouseGrabbed(false);
+                FreeLevel();
                 m_levelSaveData = new LevelSaveData(m_levelIndex, new Vector3f(1.5f, 0.3f, 1.5f), new Quaternion(), null, null, null, Level.INITIAL_SLUDGE_LEVEL);
                 m_levelSaveData.Save();
                 StartLevel();
                 break;
             case RESTART_LEVEL:
                 inputDevice.SetMouseGrabbed(false);
+                FreeLevel();
                 m_levelIndex--;
                 m_levelSaveData = new LevelSaveData(m_levelIndex, new Vector3f(1.5f, 0.3f, 1.5f), new Quaternion(), null, null, null, Level.INITIAL_SLUDGE_LEVEL);
                 m_levelSaveData.Save();
@@ -117,6 +220,7 @@ public class LevelScene extends Scene
                 break;
             case RESTART_GAME:
                 inputDevice.SetMouseGrabbed(false);
+                FreeLevel();
                 m_levelIndex = 0;
                 m_levelSaveData = new LevelSaveData(m_levelIndex, new Vector3f(1.5f, 0.3f, 1.5f), new Quaternion(), null, null, null, Level.INITIAL_SLUDGE_LEVEL);
                 m_levelSaveData.Save();
@@ -125,11 +229,161 @@ public class LevelScene extends Scene
         }
     }
 
+    private void StartRecording(InputDevice inputDevice, long laughSeed)
+    {
+        StopRecording();
+        try
+        {
+            m_recorder = new InputRecording.Recorder(RECORD_FILE_NAME, m_levelIndex, laughSeed, m_levelSaveData, inputDevice);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not start input recording: " + e.getMessage());
+            RestoreMouseLook();
+        }
+    }
+
+    private void StopRecording()
+    {
+        if(m_recorder == null)
+            return;
+
+        try
+        {
+            m_recorder.close();
+            Console.PrintLine("Recorded " + m_recorder.GetFrameCount() + " frames to " + RECORD_FILE_NAME);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not finish input recording: " + e.getMessage());
+        }
+        m_recorder = null;
+    }
+
+    private boolean NextReplayFrame()
+    {
+        try
+        {
+            if(m_player.NextFrame())
+                return true;
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not read input recording: " + e.getMessage());
+        }
+
+        FinishReplay();
+        return false;
+    }
+
+    private void FinishReplay()
+    {
+        LevelRules rules    = m_level.GetRules();
+        Vector3f   position = rules.GetPosition();
+
+        Console.PrintLine("Replayed " + m_player.GetFrameCount() + " frames of level " + (m_player.GetLevelIndex() + 1) + ": "
+                          + (m_player.GetDivergedFrame() < 0 ? "every frame matched" : "diverged at frame " + m_player.GetDivergedFrame())
+                          + ", ended at (" + position.GetX() + ", " + position.GetZ() + ") with sludge " + rules.GetSludgeLevel()
+                          + ", checksum " + Integer.toHexString(rules.GetChecksum(GetCamera().GetTransformation().GetRotation())));
+
+        try
+        {
+            m_player.close();
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not close input recording: " + e.getMessage());
+        }
+        m_player = null;
+
+        Exit();
+    }
+
+    // Ends a frame the level played on recorded input: records it or checks it against the recording.
+    private void EndInputFrame(InputDevice inputDevice, boolean isPlayed, LevelEvent event)
+    {
+        int checksum = m_level.GetRules().GetChecksum(GetCamera().GetTransformation().GetRotation());
+
+        if(m_player != null)
+        {
+            m_player.EndFrame(isPlayed, checksum);
+            return;
+        }
+
+        try
+        {
+            m_recorder.EndFrame(inputDevice, isPlayed, checksum);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not write input recording: " + e.getMessage());
+            m_recorder = null;
+            RestoreMouseLook();
+            return;
+        }
+
+        if(event != LevelEvent.NONE)
+            StopRecording();
+    }
+
+    // Hands the camera back to MouseLookSystem once recording has failed.
+    private void RestoreMouseLook()
+    {
+        if(GetCamera().GetComponent(MouseLookControl.class) == null)
+            GetCamera().AddComponent(m_mouseLookControl);
+    }
+
+    // F3 turns the profiler and its statistics overlay on and off.
+    private void UpdateProfiler(InputDevice inputDevice)
+    {
+        if(inputDevice.IsKeyPressed(InputDevice.Key.F3))
+            FrameProfiler.SetEnabled(!FrameProfiler.IsEnabled());
+
+        if(FrameProfiler.IsEnabled())
+        {
+            if(m_profilerHud == null)
+                m_profilerHud = new FrameProfilerHud(this);
+
+            m_profilerHud.Update();
+        }
+        else if(m_profilerHud != null)
+        {
+            m_profilerHud.Free();
+            m_profilerHud = null;
+        }
+    }
+
     @Override
     protected void OnSceneExit()
     {
+        StopRecording();
+
+        // Neither the title card's load nor a speculative load of the next level is of use once the scene is left.
+        if(m_levelLoader != null)
+        {
+            m_levelLoader.Cancel();
+            m_levelLoader = null;
+        }
+
+        if(m_nextLevelLoader != null)
+        {
+            m_nextLevelLoader.Cancel();
+            m_nextLevelLoader = null;
+        }
+
+        // Leaving during a title card finds the previous level already freed.
+        if(m_level == null)
+            return;
+
         if(!m_level.IsLost())
             m_level.Save();
+        FreeLevel();
+    }
+
+    private void FreeLevel()
+    {
+        m_level.Free();
+        m_level = null;
     }
 
     public enum LevelEvent
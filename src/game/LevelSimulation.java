@@ -0,0 +1,122 @@
+package game;
+
+import engine.core.*;
+import jamJar.core.math.*;
+import jamJar.core.math.vectors.*;
+
+// Plays a level's LevelRules without a window, renderer or audio device.
+public class LevelSimulation
+{
+    public static final float FRAME_TIME = 1.0f / NightmareMaze.FRAME_RATE;
+
+    private static final Vector3f YAW_AXIS = new Vector3f(0, 1, 0);
+
+    private final LevelRules m_rules;
+    private       Quaternion m_rotation;
+
+    private LevelScene.LevelEvent m_event;
+
+    private int m_frameCount;
+    private int m_enteredCellCount;
+
+    public LevelSimulation(LevelData levelData, LevelSaveData saveData)
+    {
+        m_rules = new LevelRules(levelData, saveData, new LevelRules.Listener()
+        {
+            @Override
+            public void OnCellEntered(int x, int z) { ++m_enteredCellCount; }
+
+            @Override
+            public void OnKeyCollected(int x, int z, int colorIndex) { }
+        });
+
+        m_rotation = new Quaternion(saveData.GetCameraRotation());
+        m_event    = LevelScene.LevelEvent.NONE;
+    }
+
+    public LevelRules GetRules() { return m_rules; }
+
+    public Vector3f   GetPosition() { return m_rules.GetPosition(); }
+    public Quaternion GetRotation() { return m_rotation; }
+
+    public void SetRotation(Quaternion rotation) { m_rotation = new Quaternion(rotation); }
+
+    public int GetFrameCount()       { return m_frameCount;       }
+    public int GetEnteredCellCount() { return m_enteredCellCount; }
+
+    public boolean IsWon()  { return m_event == LevelScene.LevelEvent.NEXT_LEVEL; }
+    public boolean IsLost() { return m_rules.IsDrowned(); }
+
+    public boolean IsFinished() { return IsWon() || IsLost(); }
+
+    public int GetChecksum() { return m_rules.GetChecksum(m_rotation); }
+
+    // One game frame at the game's fixed frame rate, ending the input device's frame afterwards.
+    public LevelScene.LevelEvent Step(InputDevice inputDevice)
+    {
+        LevelScene.LevelEvent event = Update(inputDevice, FRAME_TIME);
+        inputDevice.Update();
+        return event;
+    }
+
+    // Mirrors the game-play part of Level.Update; once the level is won or lost further updates change nothing.
+    public LevelScene.LevelEvent Update(InputDevice inputDevice, float delta)
+    {
+        if(IsFinished())
+            return m_event;
+
+        Look(inputDevice);
+        return Play(inputDevice, delta);
+    }
+
+    public void Look(InputDevice inputDevice) { m_rotation = Look(inputDevice, m_rotation); }
+
+    // Moves the player and opens doors without turning, as Level does on a frame its menus leave to the rules.
+    public LevelScene.LevelEvent Play(InputDevice inputDevice, float delta)
+    {
+        if(IsFinished())
+            return m_event;
+
+        ++m_frameCount;
+
+        if(m_rules.Update(delta, LevelRules.GetWalkDirection(inputDevice), m_rotation))
+        {
+            m_event = LevelScene.LevelEvent.NEXT_LEVEL;
+            return m_event;
+        }
+
+        if(m_rules.IsDrowned())
+            return LevelScene.LevelEvent.NONE;
+
+        if(inputDevice.IsKeyPressed(InputDevice.Key.O) && m_rules.GetTouchedDoor() >= 0)
+            m_rules.OpenDoor();
+
+        return LevelScene.LevelEvent.NONE;
+    }
+
+    // The yaw-only turn MouseLookSystem applies to the camera, which LevelScene also uses while recording or replaying.
+    static Quaternion Look(InputDevice inputDevice, Quaternion rotation)
+    {
+        if(inputDevice.IsKeyDown(InputDevice.Key.ESCAPE))
+            inputDevice.SetMouseGrabbed(false);
+
+        if(inputDevice.IsMouseDown(InputDevice.MouseButton.LEFT))
+        {
+            inputDevice.SetMousePosition(new Vector2f());
+            inputDevice.SetMouseGrabbed(true);
+        }
+
+        if(!inputDevice.IsMouseGrabbed())
+            return rotation;
+
+        float mouseX = inputDevice.GetMouseX();
+        if(mouseX == 0 && inputDevice.GetMouseY() == 0)
+            return rotation;
+
+        if(mouseX != 0)
+            rotation = rotation.Turn(YAW_AXIS, mouseX * LevelScene.MOUSE_SENSITIVITY * 180.0f);
+
+        inputDevice.SetMousePosition(new Vector2f());
+        return rotation;
+    }
+}
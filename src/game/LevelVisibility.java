@@ -0,0 +1,408 @@
+package game;
+
+import jamJar.core.Console;
+import jamJar.core.fileManagement.FileSystem;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LevelVisibility
+{
+    public static final String FILE_NAME = "level.pvs";
+
+    public static final int MAX_DISTANCE = 48;
+
+    // Building takes about 0.2 ms of ray casting per cell on one core, so larger levels are left unoccluded.
+    public static final int MAX_BUILD_CELLS = 1 << 20;
+
+    private static final int MAGIC   = 0x4E4D5056;
+    private static final int VERSION = 2;
+
+    private static final float[] SAMPLES = new float[] { 0.1f, 0.5f, 0.9f };
+
+    private static final int RAY_COUNT = (int)Math.ceil(2.0 * Math.PI * MAX_DISTANCE / 0.25);
+
+    private static final float[] RAY_DIRECTIONS = new float[RAY_COUNT * 2];
+
+    private static final int CELLS_PER_TASK = 64;
+
+    static
+    {
+        for(int ray = 0; ray < RAY_COUNT; ray++)
+        {
+            double angle = ray * 2.0 * Math.PI / RAY_COUNT;
+
+            RAY_DIRECTIONS[ray * 2    ] = (float)Math.cos(angle);
+            RAY_DIRECTIONS[ray * 2 + 1] = (float)Math.sin(angle);
+        }
+    }
+
+    private final int m_width;
+    private final int m_height;
+
+    private final byte[] m_digest;
+    private final int[]  m_offsets;
+    private final byte[] m_data;
+
+    private LevelVisibility(int width, int height, byte[] digest, int[] offsets, byte[] data)
+    {
+        m_width  = width;
+        m_height = height;
+
+        m_digest  = digest;
+        m_offsets = offsets;
+        m_data    = data;
+    }
+
+    public static LevelVisibility Load(String folder, LevelData levelData)
+    {
+        if((long)levelData.GetWidth() * levelData.GetHeight() > MAX_BUILD_CELLS)
+            return CreateUnoccluded(levelData);
+
+        String fileName = folder + FILE_NAME;
+        byte[] digest   = CalcDigest(levelData);
+
+        if(FileSystem.PathExists(fileName))
+        {
+            LevelVisibility result = Read(fileName);
+            if(result != null && Arrays.equals(result.m_digest, digest))
+                return result;
+        }
+
+        LevelVisibility result = Build(levelData);
+        try
+        {
+            result.Write(fileName);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not write visibility file " + fileName + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    public static LevelVisibility Build(LevelData levelData)
+    {
+        int width  = levelData.GetWidth();
+        int height = levelData.GetHeight();
+
+        boolean[] blockers = new boolean[width * height];
+        for(int z = 0; z < height; z++)
+        {
+            for(int x = 0; x < width; x++)
+                blockers[x + z * width] = levelData.IsWall(x, z);
+        }
+
+        for(int d = 0; d < levelData.GetDoorCount(); d++)
+            blockers[levelData.GetDoorCell(d)] = true;
+
+        byte[][] cellData = new byte[width * height][];
+        ForkJoinPool.commonPool().invoke(new BuildTask(levelData, blockers, cellData, 0, width * height));
+
+        int[] offsets = new int[width * height + 1];
+        for(int cell = 0; cell < cellData.length; cell++)
+            offsets[cell + 1] = offsets[cell] + cellData[cell].length;
+
+        byte[] data = new byte[offsets[cellData.length]];
+        for(int cell = 0; cell < cellData.length; cell++)
+            System.arraycopy(cellData[cell], 0, data, offsets[cell], cellData[cell].length);
+
+        return new LevelVisibility(width, height, CalcDigest(levelData), offsets, data);
+    }
+
+    // Sees every cell within MAX_DISTANCE, through walls, without any stored data.
+    public static LevelVisibility CreateUnoccluded(LevelData levelData) { return new LevelVisibility(levelData.GetWidth(), levelData.GetHeight(), null, null, null); }
+
+    public static LevelVisibility Read(String fileName)
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.remaining() < 5 * 4 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            int width  = buffer.getInt();
+            int height = buffer.getInt();
+
+            byte[] digest = new byte[buffer.getInt()];
+            buffer.get(digest);
+
+            int dataSize = buffer.getInt();
+
+            int[] offsets = new int[width * height + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * 4);
+
+            byte[] data = new byte[dataSize];
+            buffer.get(data);
+
+            return new LevelVisibility(width, height, digest, offsets, data);
+        }
+        catch(IOException | BufferUnderflowException | IllegalArgumentException e)
+        {
+            Console.PrintError("Could not read visibility file " + fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void Write(String fileName) throws IOException
+    {
+        try(DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName))))
+        {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+
+            stream.writeInt(m_width);
+            stream.writeInt(m_height);
+
+            stream.writeInt(m_digest.length);
+            stream.write(m_digest);
+
+            stream.writeInt(m_data.length);
+
+            for(int offset : m_offsets)
+                stream.writeInt(offset);
+
+            stream.write(m_data);
+        }
+    }
+
+    public int GetWidth()  { return m_width;  }
+    public int GetHeight() { return m_height; }
+
+    public int GetDataSize() { return m_data == null ? 0 : m_data.length; }
+
+    public boolean IsOccluded() { return m_data != null; }
+
+    public void AddVisibleCells(int cell, long[] visibleCells)
+    {
+        if(m_data == null)
+        {
+            AddCellsInRange(cell, visibleCells);
+            return;
+        }
+
+        int position = m_offsets[cell];
+        int end      = m_offsets[cell + 1];
+
+        int     current = 0;
+        boolean visible = false;
+
+        while(position < end)
+        {
+            int run = 0;
+            int shift = 0;
+
+            byte value;
+            do
+            {
+                value = m_data[position++];
+                run |= (value & 0x7F) << shift;
+                shift += 7;
+            }
+            while((value & 0x80) != 0);
+
+            if(visible)
+            {
+                for(int visibleCell = current; visibleCell < current + run; visibleCell++)
+                    visibleCells[visibleCell >> 6] |= 1L << visibleCell;
+            }
+
+            current += run;
+            visible = !visible;
+        }
+    }
+
+    private void AddCellsInRange(int cell, long[] visibleCells)
+    {
+        int sourceX = cell % m_width;
+        int sourceZ = cell / m_width;
+
+        int startX = Math.max(sourceX - MAX_DISTANCE, 0);
+        int endX   = Math.min(sourceX + MAX_DISTANCE, m_width - 1);
+
+        for(int z = Math.max(sourceZ - MAX_DISTANCE, 0); z <= Math.min(sourceZ + MAX_DISTANCE, m_height - 1); z++)
+        {
+            for(int visibleCell = startX + z * m_width; visibleCell <= endX + z * m_width; visibleCell++)
+                visibleCells[visibleCell >> 6] |= 1L << visibleCell;
+        }
+    }
+
+    public static boolean IsCellVisible(long[] visibleCells, int cell) { return (visibleCells[cell >> 6] & (1L << cell)) != 0; }
+
+    private static byte[] BuildCell(LevelData levelData, boolean[] blockers, boolean[] visibleCells, int cell)
+    {
+        int width  = levelData.GetWidth();
+        int height = levelData.GetHeight();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        if(levelData.IsWall(cell % width, cell / width))
+            return stream.toByteArray();
+
+        int sourceX = cell % width;
+        int sourceZ = cell / width;
+
+        int startX = Math.max(sourceX - MAX_DISTANCE, 0);
+        int startZ = Math.max(sourceZ - MAX_DISTANCE, 0);
+        int endX   = Math.min(sourceX + MAX_DISTANCE, width  - 1);
+        int endZ   = Math.min(sourceZ + MAX_DISTANCE, height - 1);
+
+        Arrays.fill(visibleCells, false);
+
+        for(float offsetX : SAMPLES)
+        {
+            for(float offsetZ : SAMPLES)
+            {
+                for(int ray = 0; ray < RAY_COUNT; ray++)
+                    CastRay(blockers, levelData, visibleCells, sourceX, sourceZ, sourceX + offsetX, sourceZ + offsetZ, RAY_DIRECTIONS[ray * 2], RAY_DIRECTIONS[ray * 2 + 1]);
+            }
+        }
+
+        int     runStart = 0;
+        boolean visible  = false;
+
+        for(int z = startZ; z <= endZ; z++)
+        {
+            for(int x = 0; x < width; x++)
+            {
+                boolean targetVisible = x >= startX && x <= endX && visibleCells[LocalIndex(sourceX, sourceZ, x, z)];
+                if(targetVisible == visible)
+                    continue;
+
+                WriteRun(stream, x + z * width - runStart);
+                runStart = x + z * width;
+                visible  = targetVisible;
+            }
+        }
+
+        if(visible)
+            WriteRun(stream, (endZ + 1) * width - runStart);
+
+        return stream.toByteArray();
+    }
+
+    private static void WriteRun(ByteArrayOutputStream stream, int run)
+    {
+        while(run >= 0x80)
+        {
+            stream.write((run & 0x7F) | 0x80);
+            run >>>= 7;
+        }
+        stream.write(run);
+    }
+
+    private static int LocalIndex(int sourceX, int sourceZ, int x, int z) { return (x - sourceX + MAX_DISTANCE) + (z - sourceZ + MAX_DISTANCE) * (MAX_DISTANCE * 2 + 1); }
+
+    private static void CastRay(boolean[] blockers, LevelData levelData, boolean[] visibleCells, int sourceX, int sourceZ, float startX, float startZ, float directionX, float directionZ)
+    {
+        int width = levelData.GetWidth();
+
+        int x = sourceX;
+        int z = sourceZ;
+
+        int stepX = directionX < 0 ? -1 : 1;
+        int stepZ = directionZ < 0 ? -1 : 1;
+
+        float deltaX = directionX == 0 ? Float.MAX_VALUE : Math.abs(1.0f / directionX);
+        float deltaZ = directionZ == 0 ? Float.MAX_VALUE : Math.abs(1.0f / directionZ);
+
+        float nextX = directionX == 0 ? Float.MAX_VALUE : (directionX < 0 ? startX - x : x + 1 - startX) * deltaX;
+        float nextZ = directionZ == 0 ? Float.MAX_VALUE : (directionZ < 0 ? startZ - z : z + 1 - startZ) * deltaZ;
+
+        visibleCells[LocalIndex(sourceX, sourceZ, x, z)] = true;
+
+        while(true)
+        {
+            if(nextX < nextZ)
+            {
+                if(nextX > MAX_DISTANCE)
+                    return;
+
+                x += stepX;
+                nextX += deltaX;
+            }
+            else
+            {
+                if(nextZ > MAX_DISTANCE)
+                    return;
+
+                z += stepZ;
+                nextZ += deltaZ;
+            }
+
+            if(x < 0 || z < 0 || x >= width || z >= levelData.GetHeight() || levelData.IsWall(x, z))
+                return;
+
+            visibleCells[LocalIndex(sourceX, sourceZ, x, z)] = true;
+
+            if(blockers[x + z * width])
+                return;
+        }
+    }
+
+    // Visibility only depends on the walls and where the doors stand.
+    private static byte[] CalcDigest(LevelData levelData)
+    {
+        LevelDigest digest = new LevelDigest(levelData.GetWidth());
+
+        digest.AddInt(VERSION);
+        digest.AddInt(MAX_DISTANCE);
+        digest.AddInt(levelData.GetWidth());
+        digest.AddInt(levelData.GetHeight());
+
+        for(int z = 0; z < levelData.GetHeight(); z++)
+        {
+            for(int x = 0; x < levelData.GetWidth(); x++)
+                digest.AddByte(levelData.IsWall(x, z) ? 1 : 0);
+        }
+
+        for(int d = 0; d < levelData.GetDoorCount(); d++)
+            digest.AddInt(levelData.GetDoorCell(d));
+
+        return digest.Finish();
+    }
+
+    private static class BuildTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final LevelData m_levelData;
+        private final boolean[] m_blockers;
+        private final byte[][]  m_cellData;
+
+        private final int m_start;
+        private final int m_end;
+
+        public BuildTask(LevelData levelData, boolean[] blockers, byte[][] cellData, int start, int end)
+        {
+            m_levelData = levelData;
+            m_blockers  = blockers;
+            m_cellData  = cellData;
+
+            m_start = start;
+            m_end   = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(m_end - m_start <= CELLS_PER_TASK)
+            {
+                boolean[] visibleCells = new boolean[(MAX_DISTANCE * 2 + 1) * (MAX_DISTANCE * 2 + 1)];
+
+                for(int cell = m_start; cell < m_end; cell++)
+                    m_cellData[cell] = BuildCell(m_levelData, m_blockers, visibleCells, cell);
+                return;
+            }
+
+            int middle = (m_start + m_end) >>> 1;
+            invokeAll(new BuildTask(m_levelData, m_blockers, m_cellData, m_start, middle),
+                      new BuildTask(m_levelData, m_blockers, m_cellData, middle, m_end));
+        }
+    }
+}
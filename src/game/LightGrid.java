@@ -0,0 +1,216 @@
+package game;
+
+import engine.rendering.*;
+import executing.components.lights.*;
+import jamJar.core.math.Math;
+
+import java.util.*;
+
+public class LightGrid
+{
+    private final int m_width;
+    private final int m_height;
+
+    private int m_lightCount;
+
+    private float[] m_lightX;
+    private float[] m_lightZ;
+    private float[] m_lightRanges;
+    private float[] m_lightStrengths;
+    private float[] m_attenuations;
+
+    private int[] m_cellOffsets;
+    private int[] m_cellLights;
+
+    private int[] m_candidates;
+    private int   m_candidateCount;
+    private int[] m_candidateStamps;
+    private int   m_stamp;
+
+    private final int[]     m_activeLights;
+    private final float[]   m_activeContributions;
+    private       int       m_activeCount;
+    private       boolean[] m_isActive;
+
+    public LightGrid(int width, int height, int maxActiveLights)
+    {
+        m_width  = width;
+        m_height = height;
+
+        m_lightX         = new float[16];
+        m_lightZ         = new float[16];
+        m_lightRanges    = new float[16];
+        m_lightStrengths = new float[16];
+        m_attenuations   = new float[16 * 3];
+
+        m_activeLights        = new int[maxActiveLights];
+        m_activeContributions = new float[maxActiveLights];
+    }
+
+    public int AddLight(PointLight light)
+    {
+        Attenuation attenuation = light.GetAttenuation();
+
+        return AddLight(light.GetPosition().GetX(), light.GetPosition().GetZ(), light.GetRange(), light.GetIntensity() * light.GetColor().MaxAxis(),
+                        attenuation.GetConstant(), attenuation.GetLinear(), attenuation.GetExponent());
+    }
+
+    public int AddLight(float x, float z, float range, float strength, float constant, float linear, float exponent)
+    {
+        if(m_lightCount == m_lightX.length)
+        {
+            m_lightX         = Arrays.copyOf(m_lightX,         m_lightCount * 2);
+            m_lightZ         = Arrays.copyOf(m_lightZ,         m_lightCount * 2);
+            m_lightRanges    = Arrays.copyOf(m_lightRanges,    m_lightCount * 2);
+            m_lightStrengths = Arrays.copyOf(m_lightStrengths, m_lightCount * 2);
+            m_attenuations   = Arrays.copyOf(m_attenuations,   m_lightCount * 2 * 3);
+        }
+
+        m_lightX[m_lightCount]         = x;
+        m_lightZ[m_lightCount]         = z;
+        m_lightRanges[m_lightCount]    = range;
+        m_lightStrengths[m_lightCount] = strength;
+
+        m_attenuations[m_lightCount * 3    ] = constant;
+        m_attenuations[m_lightCount * 3 + 1] = linear;
+        m_attenuations[m_lightCount * 3 + 2] = exponent;
+
+        return m_lightCount++;
+    }
+
+    public void Build()
+    {
+        m_cellOffsets = new int[m_width * m_height + 1];
+
+        for(int pass = 0; pass < 2; pass++)
+        {
+            int[] cursors = pass == 0 ? m_cellOffsets : Arrays.copyOf(m_cellOffsets, m_cellOffsets.length);
+
+            for(int light = 0; light < m_lightCount; light++)
+            {
+                float range = m_lightRanges[light];
+
+                int startX = Math.Max((int)Math.Floor(m_lightX[light] - range), 0);
+                int startZ = Math.Max((int)Math.Floor(m_lightZ[light] - range), 0);
+                int endX   = Math.Min((int)Math.Floor(m_lightX[light] + range), m_width  - 1);
+                int endZ   = Math.Min((int)Math.Floor(m_lightZ[light] + range), m_height - 1);
+
+                for(int z = startZ; z <= endZ; z++)
+                {
+                    for(int x = startX; x <= endX; x++)
+                    {
+                        float offsetX = Math.Max(Math.Max(x - m_lightX[light], m_lightX[light] - (x + 1)), 0.0f);
+                        float offsetZ = Math.Max(Math.Max(z - m_lightZ[light], m_lightZ[light] - (z + 1)), 0.0f);
+
+                        if(offsetX * offsetX + offsetZ * offsetZ > range * range)
+                            continue;
+
+                        if(pass == 0)
+                            ++cursors[x + z * m_width + 1];
+                        else
+                            m_cellLights[cursors[x + z * m_width]++] = light;
+                    }
+                }
+            }
+
+            if(pass == 0)
+            {
+                for(int cell = 0; cell < m_width * m_height; cell++)
+                    m_cellOffsets[cell + 1] += m_cellOffsets[cell];
+
+                m_cellLights = new int[m_cellOffsets[m_width * m_height]];
+            }
+        }
+
+        m_candidates      = new int[m_lightCount];
+        m_candidateStamps = new int[m_lightCount];
+        m_isActive        = new boolean[m_lightCount];
+    }
+
+    public int GetLightCount() { return m_lightCount; }
+
+    public int GetCellStart(int cell) { return m_cellOffsets[cell];     }
+    public int GetCellEnd(int cell)   { return m_cellOffsets[cell + 1]; }
+
+    public int GetCellLight(int index) { return m_cellLights[index]; }
+
+    public void SetCandidates(long[] visibleCells)
+    {
+        ++m_stamp;
+        m_candidateCount = 0;
+
+        for(int word = 0; word < visibleCells.length; word++)
+        {
+            long bits = visibleCells[word];
+            while(bits != 0)
+            {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                for(int i = m_cellOffsets[cell]; i < m_cellOffsets[cell + 1]; i++)
+                {
+                    int light = m_cellLights[i];
+                    if(m_candidateStamps[light] == m_stamp)
+                        continue;
+
+                    m_candidateStamps[light] = m_stamp;
+                    m_candidates[m_candidateCount++] = light;
+                }
+            }
+        }
+    }
+
+    public void Update(float x, float z)
+    {
+        for(int i = 0; i < m_activeCount; i++)
+            m_isActive[m_activeLights[i]] = false;
+
+        m_activeCount = 0;
+
+        for(int i = 0; i < m_candidateCount; i++)
+        {
+            int   light        = m_candidates[i];
+            float contribution = CalcContribution(light, x, z);
+
+            if(m_activeCount == m_activeLights.length && contribution <= m_activeContributions[m_activeCount - 1])
+                continue;
+
+            int index = Math.Min(m_activeCount, m_activeLights.length - 1);
+            while(index > 0 && m_activeContributions[index - 1] < contribution)
+            {
+                m_activeLights[index]        = m_activeLights[index - 1];
+                m_activeContributions[index] = m_activeContributions[index - 1];
+                --index;
+            }
+
+            m_activeLights[index]        = light;
+            m_activeContributions[index] = contribution;
+
+            if(m_activeCount < m_activeLights.length)
+                ++m_activeCount;
+        }
+
+        for(int i = 0; i < m_activeCount; i++)
+            m_isActive[m_activeLights[i]] = true;
+    }
+
+    public boolean IsActive(int light) { return m_isActive[light]; }
+
+    public int GetActiveCount() { return m_activeCount; }
+
+    public int GetActiveLight(int index) { return m_activeLights[index]; }
+
+    private float CalcContribution(int light, float x, float z)
+    {
+        float offsetX = m_lightX[light] - x;
+        float offsetZ = m_lightZ[light] - z;
+
+        float distance = Math.Sqrt(offsetX * offsetX + offsetZ * offsetZ);
+
+        float constant = m_attenuations[light * 3];
+        float linear   = m_attenuations[light * 3 + 1];
+        float exponent = m_attenuations[light * 3 + 2];
+
+        return m_lightStrengths[light] / (constant + linear * distance + exponent * distance * distance + 0.0001f);
+    }
+}
@@ -0,0 +1,523 @@
+package game;
+
+import jamJar.core.*;
+import jamJar.core.Console;
+import jamJar.rendering.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Generates a seeded perfect maze level. Usage: MazeGenerator <size> [seed] [key count] [output folder]
+public class MazeGenerator
+{
+    // Tiles of this many cells a side are carved in parallel and then joined into a single tree.
+    public static final int TILE_CELLS = 256;
+
+    private static final int WALL_PIXEL      = 0xFF000000;
+    private static final int UNMARKED_PIXEL  = 0xFF808080;
+    private static final int LIGHT_PIXEL     = 0xFFFFFF80;
+    private static final int WIN_LIGHT_PIXEL = 0xFFFFFFFF;
+
+    private static final int LIGHT_SPACING = 4;
+    private static final int MAX_KEYS      = 192;
+
+    private static final int WALL_TEXTURE    = 0;
+    private static final int WALL_TEXTURE_2  = 2;
+    private static final int WALL_TEXTURE_3  = 4;
+    private static final int WIN_TEXTURE     = 5;
+    private static final int FLOOR_TEXTURE   = 1;
+    private static final int FLOOR_TEXTURE_2 = 6;
+    private static final int CEILING_TEXTURE = 3;
+
+    private static final byte ROOT = 4;
+
+    private final int  m_size;
+    private final long m_seed;
+    private final int  m_numTextures;
+    private final int  m_cellsX;
+    private final int  m_cellsZ;
+
+    private final Bitmap m_map;
+    private final Bitmap m_keyMap;
+    private final Bitmap m_lightMap;
+    private final Bitmap m_doorMap;
+
+    private int m_keyCount;
+
+    public MazeGenerator(int size, long seed, int numTextures, int keyCount)
+    {
+        if(size < 5)
+            throw new IllegalArgumentException("A maze needs to be at least 5 pixels wide, not " + size);
+
+        if(numTextures <= Math.max(WIN_TEXTURE, FLOOR_TEXTURE_2))
+            throw new IllegalArgumentException("A maze needs at least " + (Math.max(WIN_TEXTURE, FLOOR_TEXTURE_2) + 1) + " textures, not " + numTextures);
+
+        m_size        = size;
+        m_seed        = seed;
+        m_numTextures = numTextures;
+        m_cellsX      = (size - 1) / 2;
+        m_cellsZ      = (size - 1) / 2;
+        m_keyCount    = Math.min(keyCount, MAX_KEYS);
+
+        m_map      = new Bitmap(size, size);
+        m_keyMap   = new Bitmap(size, size);
+        m_lightMap = new Bitmap(size, size);
+        m_doorMap  = new Bitmap(size, size);
+
+        int tilesX = (m_cellsX + TILE_CELLS - 1) / TILE_CELLS;
+        int tilesZ = (m_cellsZ + TILE_CELLS - 1) / TILE_CELLS;
+
+        ForkJoinPool.commonPool().invoke(new CarveTask(this, tilesX, 0, tilesX * tilesZ));
+        Stitch(tilesX, tilesZ);
+
+        int exit = GetPixel(m_cellsX - 1, m_cellsZ - 1);
+        m_map.GetPixels()[exit]      = EncodeCell(WIN_TEXTURE, FLOOR_TEXTURE, CEILING_TEXTURE);
+        m_lightMap.GetPixels()[exit] = WIN_LIGHT_PIXEL;
+
+        PlaceDoorsAndKeys();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1)
+        {
+            Console.PrintLine("Usage: MazeGenerator <size> [seed] [key count] [output folder]");
+            return;
+        }
+
+        int  size     = Integer.parseInt(args[0]);
+        long seed     = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        int  keyCount = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        String folder = args.length > 3 ? args[3] : null;
+        if(folder == null)
+        {
+            int index = 0;
+            while(new File(NightmareMaze.LEVELS_PATH + index).exists())
+                ++index;
+
+            folder = NightmareMaze.LEVELS_PATH + index;
+        }
+        if(!folder.endsWith("/") && !folder.endsWith(File.separator))
+            folder += "/";
+
+        Generate(folder, NightmareMaze.LEVELS_PATH + "0/", size, seed, keyCount);
+    }
+
+    // Writes a complete level folder, borrowing the texture atlases of the template level. The visibility and lightmap
+    // files are built here too, unless the level is over their size caps, so that loading it builds nothing.
+    public static void Generate(String folder, String templateFolder, int size, long seed, int keyCount) throws IOException
+    {
+        double startTime = Clock.GetMilliSeconds();
+
+        Files.createDirectories(Paths.get(folder));
+        CopyFile(templateFolder, "Textures.png",   folder);
+        CopyFile(templateFolder, "NormalMaps.png", folder);
+
+        int numTextures = Level.CalcNumTextures(new Bitmap(folder + "Textures.png").GetWidth());
+
+        MazeGenerator generator = new MazeGenerator(size, seed, numTextures, keyCount);
+
+        Console.PrintLine(folder + ": " + size + "x" + size + " maze, seed " + seed + ", " + generator.GetKeyCount() + " keys ("
+                          + (int)(Clock.GetMilliSeconds() - startTime) + "ms)");
+
+        startTime = Clock.GetMilliSeconds();
+
+        LevelData levelData = generator.Decode();
+        generator.Write(folder);
+        levelData.Write(folder + LevelData.FILE_NAME);
+
+        Console.PrintLine(folder + ": level maps and " + LevelData.FILE_NAME + " written (" + (int)(Clock.GetMilliSeconds() - startTime) + "ms)");
+
+        startTime = Clock.GetMilliSeconds();
+
+        boolean isOccluded = LevelVisibility.Load(folder, levelData).IsOccluded();
+        boolean isBaked    = LevelLightmap.Load(folder, levelData) != null;
+
+        Console.PrintLine(folder + ": " + (isOccluded ? LevelVisibility.FILE_NAME : "no " + LevelVisibility.FILE_NAME) + " and "
+                          + (isBaked ? LevelLightmap.FILE_NAME : "no " + LevelLightmap.FILE_NAME) + " (" + (int)(Clock.GetMilliSeconds() - startTime) + "ms)");
+    }
+
+    public int GetSize()     { return m_size;     }
+    public int GetKeyCount() { return m_keyCount; }
+
+    public Bitmap GetMap()      { return m_map;      }
+    public Bitmap GetKeyMap()   { return m_keyMap;   }
+    public Bitmap GetLightMap() { return m_lightMap; }
+    public Bitmap GetDoorMap()  { return m_doorMap;  }
+
+    public LevelData Decode() { return LevelData.Decode(m_map, m_keyMap, m_lightMap, m_doorMap, m_numTextures); }
+
+    // Writes the bitmaps, side by side, under the file names LevelData.Decode(String, int) reads.
+    public void Write(String folder) throws IOException
+    {
+        List<Callable<Void>> writes = new ArrayList<>();
+        writes.add(CreateWrite(m_map,      folder + "levelMap.png"));
+        writes.add(CreateWrite(m_keyMap,   folder + "keyMap.png"));
+        writes.add(CreateWrite(m_lightMap, folder + "lightMap.png"));
+        writes.add(CreateWrite(m_doorMap,  folder + "doorMap.png"));
+
+        try
+        {
+            for(Future<Void> write : ForkJoinPool.commonPool().invokeAll(writes))
+                write.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + folder);
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // The key of a door's colour, so that any number of pairs get distinct colours LevelData recognises as marked.
+    public static int GetKeyColor(int index)
+    {
+        int fullChannel = index % 3;
+        int first       = ((index / 3) & 7) * 0x24;
+        int second      = ((index / 24) & 7) * 0x24;
+
+        int[] channels = new int[3];
+        channels[fullChannel]           = 0xFF;
+        channels[(fullChannel + 1) % 3] = first;
+        channels[(fullChannel + 2) % 3] = second;
+
+        return 0xFF000000 | channels[0] << 16 | channels[1] << 8 | channels[2];
+    }
+
+    private int GetPixel(int cellX, int cellZ) { return (cellX * 2 + 1) + (cellZ * 2 + 1) * m_size; }
+
+    // The pixel range a tile owns along one axis; the first and last tiles also own the outer walls.
+    private int GetTileStart(int tile)          { return tile == 0 ? 0 : tile * TILE_CELLS * 2 + 1; }
+    private int GetTileEnd(int tile, int tiles) { return tile == tiles - 1 ? m_size : GetTileStart(tile + 1); }
+
+    private void CarveTile(int tileX, int tileZ, int tilesX, int tilesZ)
+    {
+        int[] map    = m_map.GetPixels();
+        int[] keys   = m_keyMap.GetPixels();
+        int[] lights = m_lightMap.GetPixels();
+        int[] doors  = m_doorMap.GetPixels();
+
+        for(int z = GetTileStart(tileZ); z < GetTileEnd(tileZ, tilesZ); z++)
+        {
+            int start = GetTileStart(tileX) + z * m_size;
+            int end   = GetTileEnd(tileX, tilesX) + z * m_size;
+
+            Arrays.fill(map,    start, end, WALL_PIXEL);
+            Arrays.fill(keys,   start, end, WALL_PIXEL);
+            Arrays.fill(lights, start, end, WALL_PIXEL);
+            Arrays.fill(doors,  start, end, WALL_PIXEL);
+        }
+
+        int startX = tileX * TILE_CELLS;
+        int startZ = tileZ * TILE_CELLS;
+        int sizeX  = Math.min(TILE_CELLS, m_cellsX - startX);
+        int sizeZ  = Math.min(TILE_CELLS, m_cellsZ - startZ);
+
+        Random random = new Random(m_seed ^ (tileX + (long)tileZ * tilesX + 1) * 0x9E3779B97F4A7C15L);
+
+        boolean[] visited = new boolean[sizeX * sizeZ];
+        int[]     stack   = new int[sizeX * sizeZ];
+        int[]     options = new int[4];
+        int       top     = 0;
+
+        int first = random.nextInt(sizeX * sizeZ);
+        stack[top++]   = first;
+        visited[first] = true;
+        Open(startX + first % sizeX, startZ + first / sizeX, random);
+
+        // Depth-first carving with an explicit stack, so no tile needs deep recursion.
+        while(top > 0)
+        {
+            int cell = stack[top - 1];
+            int x    = cell % sizeX;
+            int z    = cell / sizeX;
+
+            int count = 0;
+            if(x > 0         && !visited[cell - 1])     options[count++] = cell - 1;
+            if(x < sizeX - 1 && !visited[cell + 1])     options[count++] = cell + 1;
+            if(z > 0         && !visited[cell - sizeX]) options[count++] = cell - sizeX;
+            if(z < sizeZ - 1 && !visited[cell + sizeX]) options[count++] = cell + sizeX;
+
+            if(count == 0)
+            {
+                --top;
+                continue;
+            }
+
+            int next  = options[random.nextInt(count)];
+            int nextX = next % sizeX;
+            int nextZ = next / sizeX;
+
+            OpenGap(startX + x, startZ + z, startX + nextX, startZ + nextZ, random);
+            Open(startX + nextX, startZ + nextZ, random);
+
+            visited[next] = true;
+            stack[top++]  = next;
+        }
+
+        for(int z = 0; z < sizeZ; z++)
+        {
+            for(int x = 0; x < sizeX; x++)
+            {
+                if((startX + x) % LIGHT_SPACING == LIGHT_SPACING / 2 && (startZ + z) % LIGHT_SPACING == LIGHT_SPACING / 2)
+                    lights[GetPixel(startX + x, startZ + z)] = LIGHT_PIXEL;
+            }
+        }
+    }
+
+    // Joins the tiles along a random spanning tree of the tile grid, so the whole maze stays a tree.
+    private void Stitch(int tilesX, int tilesZ)
+    {
+        Random random = new Random(m_seed);
+
+        boolean[] visited = new boolean[tilesX * tilesZ];
+        int[]     stack   = new int[tilesX * tilesZ];
+        int[]     options = new int[4];
+        int       top     = 0;
+
+        stack[top++] = 0;
+        visited[0]   = true;
+
+        while(top > 0)
+        {
+            int tile  = stack[top - 1];
+            int tileX = tile % tilesX;
+            int tileZ = tile / tilesX;
+
+            int count = 0;
+            if(tileX > 0          && !visited[tile - 1])      options[count++] = tile - 1;
+            if(tileX < tilesX - 1 && !visited[tile + 1])      options[count++] = tile + 1;
+            if(tileZ > 0          && !visited[tile - tilesX]) options[count++] = tile - tilesX;
+            if(tileZ < tilesZ - 1 && !visited[tile + tilesX]) options[count++] = tile + tilesX;
+
+            if(count == 0)
+            {
+                --top;
+                continue;
+            }
+
+            int next  = options[random.nextInt(count)];
+            int nextX = next % tilesX;
+            int nextZ = next / tilesX;
+
+            if(nextZ == tileZ)
+            {
+                int cellX = Math.max(tileX, nextX) * TILE_CELLS;
+                int cellZ = tileZ * TILE_CELLS + random.nextInt(Math.min(TILE_CELLS, m_cellsZ - tileZ * TILE_CELLS));
+                OpenGap(cellX - 1, cellZ, cellX, cellZ, random);
+            }
+            else
+            {
+                int cellZ = Math.max(tileZ, nextZ) * TILE_CELLS;
+                int cellX = tileX * TILE_CELLS + random.nextInt(Math.min(TILE_CELLS, m_cellsX - tileX * TILE_CELLS));
+                OpenGap(cellX, cellZ - 1, cellX, cellZ, random);
+            }
+
+            visited[next] = true;
+            stack[top++]  = next;
+        }
+    }
+
+    // Spaces the doors along the path to the exit and puts each key where the doors before its own one let the player in.
+    private void PlaceDoorsAndKeys()
+    {
+        int[] map = m_map.GetPixels();
+
+        int    cellCount = m_cellsX * m_cellsZ;
+        byte[] parents   = new byte[cellCount];
+        int[]  order     = new int[cellCount];
+        int    tail      = 0;
+
+        Arrays.fill(parents, (byte)-1);
+        parents[0]    = ROOT;
+        order[tail++] = 0;
+
+        for(int head = 0; head < tail; head++)
+        {
+            int cell  = order[head];
+            int x     = cell % m_cellsX;
+            int z     = cell / m_cellsX;
+            int pixel = GetPixel(x, z);
+
+            // A neighbour's parent direction points back towards this cell: 0 -x, 1 +x, 2 -z, 3 +z.
+            if(x > 0            && parents[cell - 1]        < 0 && map[pixel - 1]      != WALL_PIXEL) { parents[cell - 1]        = 1; order[tail++] = cell - 1;        }
+            if(x < m_cellsX - 1 && parents[cell + 1]        < 0 && map[pixel + 1]      != WALL_PIXEL) { parents[cell + 1]        = 0; order[tail++] = cell + 1;        }
+            if(z > 0            && parents[cell - m_cellsX] < 0 && map[pixel - m_size] != WALL_PIXEL) { parents[cell - m_cellsX] = 3; order[tail++] = cell - m_cellsX; }
+            if(z < m_cellsZ - 1 && parents[cell + m_cellsX] < 0 && map[pixel + m_size] != WALL_PIXEL) { parents[cell + m_cellsX] = 2; order[tail++] = cell + m_cellsX; }
+        }
+
+        int exit       = cellCount - 1;
+        int pathLength = 0;
+        for(int cell = exit; parents[cell] != ROOT; cell = GetParent(cell, parents[cell]))
+            ++pathLength;
+
+        m_keyCount = Math.max(0, Math.min(m_keyCount, pathLength - 1));
+        if(m_keyCount == 0)
+            return;
+
+        // Each cell's gate is the number of the first door on its way from the start, 0 for cells behind no door.
+        byte[] gates = new byte[cellCount];
+
+        int door     = m_keyCount;
+        int distance = pathLength;
+        for(int cell = exit; parents[cell] != ROOT; cell = GetParent(cell, parents[cell]), --distance)
+        {
+            if(door == 0 || distance != (int)((long)door * pathLength / (m_keyCount + 1)))
+                continue;
+
+            int parent = GetParent(cell, parents[cell]);
+            int pixel  = (GetPixel(cell % m_cellsX, cell / m_cellsX) + GetPixel(parent % m_cellsX, parent / m_cellsX)) / 2;
+
+            m_doorMap.GetPixels()[pixel] = GetKeyColor(door - 1);
+            gates[cell] = (byte)door--;
+        }
+
+        int[] candidates = new int[m_keyCount];
+        for(int i = 1; i < tail; i++)
+        {
+            int cell = order[i];
+            if(gates[cell] == 0)
+                gates[cell] = gates[GetParent(cell, parents[cell])];
+
+            if((gates[cell] & 0xFF) < m_keyCount)
+                ++candidates[gates[cell] & 0xFF];
+        }
+        ++candidates[0];
+
+        Random random = new Random(m_seed);
+        for(int gate = 0; gate < m_keyCount; gate++)
+            candidates[gate] = random.nextInt(candidates[gate]);
+
+        for(int i = 0; i < tail; i++)
+        {
+            int cell = order[i];
+            int gate = gates[cell] & 0xFF;
+            if(gate >= m_keyCount || candidates[gate]-- != 0)
+                continue;
+
+            m_keyMap.GetPixels()[GetPixel(cell % m_cellsX, cell / m_cellsX)] = GetKeyColor(gate);
+        }
+    }
+
+    private int GetParent(int cell, byte direction)
+    {
+        switch(direction)
+        {
+            case 0:  return cell - 1;
+            case 1:  return cell + 1;
+            case 2:  return cell - m_cellsX;
+            default: return cell + m_cellsX;
+        }
+    }
+
+    private void Open(int cellX, int cellZ, Random random) { OpenPixel(GetPixel(cellX, cellZ), random); }
+
+    private void OpenGap(int cellX, int cellZ, int nextX, int nextZ, Random random)
+    {
+        OpenPixel((GetPixel(cellX, cellZ) + GetPixel(nextX, nextZ)) / 2, random);
+    }
+
+    private void OpenPixel(int pixel, Random random)
+    {
+        int choice = random.nextInt(32);
+
+        int wall  = choice == 0 ? WALL_TEXTURE_3 : (choice < 4 ? WALL_TEXTURE_2 : WALL_TEXTURE);
+        int floor = choice >= 28 ? FLOOR_TEXTURE_2 : FLOOR_TEXTURE;
+
+        m_map.GetPixels()[pixel]      = EncodeCell(wall, floor, CEILING_TEXTURE);
+        m_keyMap.GetPixels()[pixel]   = UNMARKED_PIXEL;
+        m_lightMap.GetPixels()[pixel] = UNMARKED_PIXEL;
+        m_doorMap.GetPixels()[pixel]  = UNMARKED_PIXEL;
+    }
+
+    // The level map's red, green and blue channels hold the wall, floor and ceiling texture the way LevelMesher reads them.
+    private int EncodeCell(int wall, int floor, int ceiling)
+    {
+        return 0xFF000000 | EncodeTexture(wall) << 16 | EncodeTexture(floor) << 8 | EncodeTexture(ceiling);
+    }
+
+    private int EncodeTexture(int index)
+    {
+        int channel = (index * 255 + m_numTextures - 1) / m_numTextures;
+        while(LevelData.TextureIndex(channel, m_numTextures) < index)
+            ++channel;
+
+        return channel;
+    }
+
+    private static void CopyFile(String sourceFolder, String fileName, String targetFolder) throws IOException
+    {
+        // The shipped levels were painted on a case-insensitive file system, so match the name the same way.
+        File[] files = new File(sourceFolder).listFiles();
+        if(files != null)
+        {
+            for(File file : files)
+            {
+                if(file.getName().equalsIgnoreCase(fileName))
+                {
+                    Files.copy(file.toPath(), Paths.get(targetFolder + fileName), StandardCopyOption.REPLACE_EXISTING);
+                    return;
+                }
+            }
+        }
+        throw new FileNotFoundException(sourceFolder + fileName);
+    }
+
+    private static Callable<Void> CreateWrite(final Bitmap bitmap, final String fileName)
+    {
+        return new Callable<Void>()
+        {
+            @Override
+            public Void call() throws IOException
+            {
+                PngWriter.Write(bitmap, fileName);
+                return null;
+            }
+        };
+    }
+
+    private static class CarveTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final MazeGenerator m_generator;
+        private final int           m_tilesX;
+
+        private final int m_start;
+        private final int m_end;
+
+        public CarveTask(MazeGenerator generator, int tilesX, int start, int end)
+        {
+            m_generator = generator;
+            m_tilesX    = tilesX;
+
+            m_start = start;
+            m_end   = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(m_end - m_start <= 1)
+            {
+                int tilesZ = (m_generator.m_cellsZ + TILE_CELLS - 1) / TILE_CELLS;
+                for(int tile = m_start; tile < m_end; tile++)
+                    m_generator.CarveTile(tile % m_tilesX, tile / m_tilesX, m_tilesX, tilesZ);
+                return;
+            }
+
+            int middle = (m_start + m_end) >>> 1;
+            invokeAll(new CarveTask(m_generator, m_tilesX, m_start, middle),
+                      new CarveTask(m_generator, m_tilesX, middle, m_end));
+        }
+    }
+}
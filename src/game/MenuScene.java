@@ -56,17 +56,19 @@ public class MenuScene extends Scene
 
         AddToFilePath("nightmareMaze/");
 
+        AssetCache.Release(this);
+
         Material ceilingMaterial = new Material();
         Material wallMaterial    = new Material();
         Material floorMaterial   = new Material();
 
-        ceilingMaterial.SetProperty("Texture", LoadTexture("ceiling.png"));
-        wallMaterial.SetProperty("Texture", LoadTexture("bricks.png"));
-        floorMaterial.SetProperty("Texture", LoadTexture("tiles.png"));
+        ceilingMaterial.SetProperty("Texture", AssetCache.AcquireTexture(this, "ceiling.png"));
+        wallMaterial.SetProperty("Texture", AssetCache.AcquireTexture(this, "bricks.png"));
+        floorMaterial.SetProperty("Texture", AssetCache.AcquireTexture(this, "tiles.png"));
 
-        ceilingMaterial.SetProperty("NormalMap", LoadTexture("ceilingNormal.png"));
-        wallMaterial.SetProperty("NormalMap", LoadTexture("bricksNormal.png"));
-        floorMaterial.SetProperty("NormalMap", LoadTexture("tilesNormal.png"));
+        ceilingMaterial.SetProperty("NormalMap", AssetCache.AcquireTexture(this, "ceilingNormal.png"));
+        wallMaterial.SetProperty("NormalMap", AssetCache.AcquireTexture(this, "bricksNormal.png"));
+        floorMaterial.SetProperty("NormalMap", AssetCache.AcquireTexture(this, "tilesNormal.png"));
 
         ceilingMaterial.SetProperty("Reflectivity", 1f);
         wallMaterial.SetProperty("Reflectivity", 1f);
@@ -89,7 +91,7 @@ public class MenuScene extends Scene
         keyMaterial.SetProperty("Reflectivity", 4f);
         keyMaterial.SetProperty("Damping", 32f);
 
-        CreateEntity(new Transformation(new Vector3f(0.0f, -0.4f, 1.0f), new Quaternion(), new Vector3f(2.0f)), new MeshComponent(LoadMesh("key.obj")), keyMaterial, new RotaterComponent(new Vector3f(0, 1, 1), 80f));
+        CreateEntity(new Transformation(new Vector3f(0.0f, -0.4f, 1.0f), new Quaternion(), new Vector3f(2.0f)), new MeshComponent(AssetCache.AcquireMesh(this, "key.obj")), keyMaterial, new RotaterComponent(new Vector3f(0, 1, 1), 80f));
 
         GetCamera().GetTransformation().Move(0, -0.2f, 0);
 
@@ -99,7 +101,7 @@ public class MenuScene extends Scene
 
         SetSetting("AmbientLight", new Vector3f());
 
-        m_mainMenu = new Menu(this, LoadFont(NightmareMaze.FONT_ATLAS), "Start", "Help", "Options", "Exit");
+        m_mainMenu = new Menu(this, AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), "Start", "Help", "Options", "Exit");
 
         m_graphicsModes = GetAvailableGraphicsModes();
         String[] menuItems = new String[m_graphicsModes.length];
@@ -115,17 +117,17 @@ public class MenuScene extends Scene
 
         m_oldIndex = selectedIndex;
 
-        m_optionsMenu = new Menu(this, LoadFont(NightmareMaze.FONT_ATLAS), menuItems);
+        m_optionsMenu = new Menu(this, AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), menuItems);
         m_optionsMenu.SetSelectedIndex(selectedIndex);
         m_optionsMenu.Hide();
 
-        m_backText = CreateEntity(new TextComponent("Press B to go Back.", LoadFont(NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.BOTTOM_LEFT));
+        m_backText = CreateEntity(new TextComponent("Press B to go Back.", AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.BOTTOM_LEFT));
         m_backText.Hide();
 
-        m_enterToApplyText = CreateEntity(new TextComponent("Press Enter to apply.", LoadFont(NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.BOTTOM_RIGHT));
+        m_enterToApplyText = CreateEntity(new TextComponent("Press Enter to apply.", AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.BOTTOM_RIGHT));
         m_enterToApplyText.Hide();
 
-        m_fullScreenText = CreateEntity(new TextComponent("Press F to toggle fullscreen.\n", LoadFont(NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.TOP_LEFT));
+        m_fullScreenText = CreateEntity(new TextComponent("Press F to toggle fullscreen.\n", AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.TOP_LEFT));
         m_fullScreenText.Hide();
 
         m_helpText = CreateEntity(new TextComponent("-W key move forward\n" +
@@ -134,11 +136,11 @@ public class MenuScene extends Scene
                                                     "-Esc key to unlock mouse\n" +
                                                     "-P key to pause\n\n" +
                                                     "-Click in game to enable mouse control\n" +
-                                                    "-Mouse controls player direction\n\n", LoadFont(NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.TOP_LEFT));
+                                                    "-Mouse controls player direction\n\n", AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.TOP_LEFT));
 
         m_helpText.Hide();
 
-        m_title = CreateEntity(new TextComponent("NIGHTMARE MAZE!", LoadFont("chiller"), TextComponent.TextAlignment.TOP_CENTER, new Vector2f(), new Vector2f(2)));
+        m_title = CreateEntity(new TextComponent("NIGHTMARE MAZE!", AssetCache.AcquireFont(this, "chiller"), TextComponent.TextAlignment.TOP_CENTER, new Vector2f(), new Vector2f(2)));
     }
 
     private void Save()
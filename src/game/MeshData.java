@@ -0,0 +1,174 @@
+package game;
+
+import engine.rendering.*;
+import engine.rendering.meshLoading.*;
+import jamJar.core.Console;
+import jamJar.core.fileManagement.FileSystem;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+public class MeshData
+{
+    public static final String FILE_EXTENSION = ".bin";
+
+    private static final int MAGIC   = 0x4E4D4D53;
+    private static final int VERSION = 1;
+
+    private final byte[]  m_digest;
+    private final int[]   m_vectorDimensions;
+    private final float[] m_vertices;
+    private final int[]   m_indices;
+
+    private MeshData(byte[] digest, int[] vectorDimensions, float[] vertices, int[] indices)
+    {
+        m_digest           = digest;
+        m_vectorDimensions = vectorDimensions;
+        m_vertices         = vertices;
+        m_indices          = indices;
+    }
+
+    public static MeshData Load(String fileName)
+    {
+        byte[] digest;
+        try
+        {
+            digest = CalcDigest(Files.readAllBytes(Paths.get(fileName)));
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        String cacheName = fileName + FILE_EXTENSION;
+        if(FileSystem.PathExists(cacheName))
+        {
+            MeshData result = Read(cacheName);
+            if(result != null && Arrays.equals(result.m_digest, digest))
+                return result;
+        }
+
+        MeshData result = Parse(fileName, digest);
+        try
+        {
+            result.Write(cacheName);
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not write mesh cache " + cacheName + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    private static MeshData Parse(String fileName, byte[] digest)
+    {
+        IndexedModel model = ModelLoader.LoadModel(fileName);
+
+        int[] indices = new int[model.GetIndices().Count()];
+        for(int i = 0; i < indices.length; i++)
+            indices[i] = model.GetIndices().Get(i);
+
+        VertexList vertices = model.GetVertexList();
+        return new MeshData(digest, vertices.GetVectorDimensions(), vertices.ToFloatArray(), indices);
+    }
+
+    public static MeshData Read(String fileName)
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.remaining() < 3 * 4 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+                return null;
+
+            byte[] digest = new byte[buffer.getInt()];
+            buffer.get(digest);
+
+            int[] vectorDimensions = new int[buffer.getInt()];
+            int   vertexCount      = buffer.getInt();
+            int   indexCount       = buffer.getInt();
+
+            for(int vector = 0; vector < vectorDimensions.length; vector++)
+                vectorDimensions[vector] = buffer.getInt();
+
+            int vertexSize = 0;
+            for(int dimensions : vectorDimensions)
+                vertexSize += dimensions;
+
+            float[] vertices = new float[vertexCount * vertexSize];
+            buffer.asFloatBuffer().get(vertices);
+            buffer.position(buffer.position() + vertices.length * 4);
+
+            int[] indices = new int[indexCount];
+            buffer.asIntBuffer().get(indices);
+
+            return new MeshData(digest, vectorDimensions, vertices, indices);
+        }
+        catch(IOException | BufferUnderflowException e)
+        {
+            Console.PrintError("Could not read mesh cache " + fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void Write(String fileName) throws IOException
+    {
+        Path path          = Paths.get(fileName);
+        Path temporaryPath = Paths.get(fileName + ".tmp");
+
+        try(DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryPath.toFile()))))
+        {
+            stream.writeInt(MAGIC);
+            stream.writeInt(VERSION);
+
+            stream.writeInt(m_digest.length);
+            stream.write(m_digest);
+
+            stream.writeInt(m_vectorDimensions.length);
+            stream.writeInt(GetVertexCount());
+            stream.writeInt(m_indices.length);
+
+            for(int dimensions : m_vectorDimensions)
+                stream.writeInt(dimensions);
+
+            for(float value : m_vertices)
+                stream.writeFloat(value);
+
+            for(int index : m_indices)
+                stream.writeInt(index);
+        }
+
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int GetVertexCount()
+    {
+        int vertexSize = 0;
+        for(int dimensions : m_vectorDimensions)
+            vertexSize += dimensions;
+
+        return m_vertices.length / vertexSize;
+    }
+
+    public VertexList GetVertices() { return new PackedVertexList(m_vertices, m_vectorDimensions); }
+
+    public int[] GetIndices() { return m_indices; }
+
+    public int GetDataSize() { return (m_vertices.length + m_indices.length) * 4; }
+
+    private static byte[] CalcDigest(byte[] data)
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package game;
+
+import engine.ecs.*;
+import engine.rendering.*;
+import jamJar.rendering.*;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import java.nio.*;
+
+public class MinimapTexture
+{
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int m_width;
+    private final int m_height;
+
+    private final byte[]     m_visitedColor;
+    private final ByteBuffer m_pixels;
+    private final Texture    m_texture;
+
+    private final boolean[] m_visited;
+
+    private int m_dirtyStartRow;
+    private int m_dirtyEndRow;
+
+    public MinimapTexture(Scene scene, int width, int height, Color unexploredColor, Color visitedColor)
+    {
+        m_width  = width;
+        m_height = height;
+
+        m_visitedColor = ToRGBA(visitedColor);
+
+        Bitmap bitmap = new Bitmap(width, height);
+        for(int z = 0; z < height; z++)
+        {
+            for(int x = 0; x < width; x++)
+                bitmap.SetPixel(x, z, unexploredColor);
+        }
+
+        byte[] unexplored = ToRGBA(unexploredColor);
+
+        m_pixels = BufferUtils.createByteBuffer(width * height * BYTES_PER_PIXEL);
+        for(int i = 0; i < width * height; i++)
+            m_pixels.put(unexplored);
+        m_pixels.flip();
+
+        m_texture = scene.CreateTexture(bitmap);
+
+        m_visited = new boolean[width * height];
+
+        m_dirtyStartRow = height;
+        m_dirtyEndRow   = 0;
+    }
+
+    public Texture GetTexture() { return m_texture; }
+
+    public boolean IsVisited(int x, int z) { return m_visited[x + z * m_width]; }
+
+    public boolean Visit(int x, int z)
+    {
+        int cell = x + z * m_width;
+        if(m_visited[cell])
+            return false;
+
+        m_visited[cell] = true;
+
+        m_pixels.position(cell * BYTES_PER_PIXEL);
+        m_pixels.put(m_visitedColor);
+        m_pixels.clear();
+
+        m_dirtyStartRow = Math.min(m_dirtyStartRow, z);
+        m_dirtyEndRow   = Math.max(m_dirtyEndRow, z + 1);
+        return true;
+    }
+
+    // Sends the rows touched since the last upload; row z of the texture is row z of the maze, matching the GUI quad's texture coordinates.
+    public void Upload()
+    {
+        if(m_dirtyStartRow >= m_dirtyEndRow)
+            return;
+
+        m_pixels.position(m_dirtyStartRow * m_width * BYTES_PER_PIXEL);
+        m_pixels.limit(m_dirtyEndRow * m_width * BYTES_PER_PIXEL);
+
+        // A device that creates no texture data, such as the tests' headless one, has no texture to send the rows to.
+        if(m_texture.GetData() != null)
+        {
+            GL11.glBindTexture(GL11.GL_TEXTURE_2D, m_texture.GetData().GetBufferID());
+            GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, m_dirtyStartRow, m_width, m_dirtyEndRow - m_dirtyStartRow, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, m_pixels);
+        }
+
+        m_pixels.clear();
+
+        m_dirtyStartRow = m_height;
+        m_dirtyEndRow   = 0;
+    }
+
+    private static byte[] ToRGBA(Color color)
+    {
+        Bitmap bitmap = new Bitmap(1, 1);
+        bitmap.SetPixel(0, 0, color);
+        return bitmap.ToRGBAByteArray();
+    }
+}
@@ -0,0 +1,263 @@
+package game;
+
+import jamJar.core.Console;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.openal.AL;
+
+import javax.sound.sampled.*;
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.*;
+
+public class MusicStream
+{
+    public static final int BUFFER_COUNT = 4;
+    public static final int BUFFER_SIZE  = 32 * 1024;
+
+    private static final long FEED_INTERVAL = 20;
+
+    private static final FrameProfiler.Scope FEED_SCOPE = FrameProfiler.AddScope("MusicStream.Feed");
+
+    private static final CopyOnWriteArrayList<MusicStream> s_streams = new CopyOnWriteArrayList<>();
+
+    private static final ScheduledExecutorService s_feeder = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread result = new Thread(runnable, "MusicStream");
+            result.setDaemon(true);
+            return result;
+        }
+    });
+
+    static
+    {
+        s_feeder.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                FEED_SCOPE.Start();
+                for(MusicStream stream : s_streams)
+                    stream.Feed();
+                FEED_SCOPE.Stop();
+            }
+        }, FEED_INTERVAL, FEED_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private final String             m_fileName;
+    private final AudioStreamBackend m_backend;
+
+    private AudioInputStream m_stream;
+    private byte[]           m_chunk;
+    private ByteBuffer       m_staging;
+
+    private boolean m_isPlaying;
+    private boolean m_isLooping;
+    private boolean m_isClosed;
+
+    public MusicStream(String fileName) { this(fileName, IsOpenALCreated() ? new OpenALStreamBackend() : new NullStreamBackend()); }
+
+    public MusicStream(String fileName, AudioStreamBackend backend)
+    {
+        m_fileName = fileName;
+        m_backend  = backend;
+
+        m_stream = OpenStream();
+        if(m_stream == null)
+            return;
+
+        int frameSize = m_stream.getFormat().getFrameSize();
+        m_chunk   = new byte[BUFFER_SIZE / frameSize * frameSize];
+        m_staging = BufferUtils.createByteBuffer(m_chunk.length);
+
+        m_backend.Open(m_stream.getFormat(), BUFFER_COUNT);
+        s_streams.add(this);
+    }
+
+    // Without LWJGL's native library, as in tests, there is no OpenAL context to stream to either.
+    private static boolean IsOpenALCreated()
+    {
+        try
+        {
+            return AL.isCreated();
+        }
+        catch(LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    public synchronized void Play()
+    {
+        m_isPlaying = true;
+        if(!IsOpen())
+            return;
+
+        if(m_stream == null)
+            Rewind();
+
+        Fill();
+        m_backend.Play();
+    }
+
+    public synchronized void Pause()
+    {
+        m_isPlaying = false;
+        if(IsOpen())
+            m_backend.Pause();
+    }
+
+    public synchronized void Stop()
+    {
+        m_isPlaying = false;
+        if(!IsOpen())
+            return;
+
+        m_backend.Stop();
+        Rewind();
+    }
+
+    public synchronized boolean IsPlaying() { return m_isPlaying; }
+
+    public synchronized void SetLooping(boolean looping) { m_isLooping = looping; }
+
+    public synchronized void SetVolume(float volume)
+    {
+        if(IsOpen())
+            m_backend.SetVolume(volume);
+    }
+
+    public synchronized void Close()
+    {
+        if(m_isClosed)
+            return;
+
+        m_isPlaying = false;
+        s_streams.remove(this);
+
+        if(IsOpen())
+        {
+            m_backend.Close();
+            CloseStream();
+        }
+        m_isClosed = true;
+    }
+
+    public int GetBufferedBytes() { return m_chunk == null ? 0 : m_chunk.length * (BUFFER_COUNT + 1); }
+
+    private boolean IsOpen() { return m_chunk != null && !m_isClosed; }
+
+    private synchronized void Feed()
+    {
+        if(!m_isPlaying || !IsOpen())
+            return;
+
+        int queuedCount = Fill();
+        if(m_backend.IsPlaying())
+            return;
+
+        // The source stops by itself when it runs dry: restart it after an underrun, or finish once the track has ended
+        // and rewind so the next Play starts it over.
+        if(queuedCount > 0)
+            m_backend.Play();
+        else
+        {
+            m_isPlaying = false;
+            Rewind();
+        }
+    }
+
+    private int Fill()
+    {
+        int queuedCount = 0;
+        int freeCount   = m_backend.Reclaim();
+        while(freeCount-- > 0 && m_stream != null)
+        {
+            int length = ReadChunk();
+            if(length <= 0)
+                break;
+
+            m_staging.clear();
+            m_staging.put(m_chunk, 0, length);
+            m_staging.flip();
+            m_backend.Queue(m_staging);
+            ++queuedCount;
+        }
+        return queuedCount;
+    }
+
+    private int ReadChunk()
+    {
+        int length = 0;
+        while(length < m_chunk.length)
+        {
+            int read;
+            try
+            {
+                read = m_stream.read(m_chunk, length, m_chunk.length - length);
+            }
+            catch(IOException e)
+            {
+                Console.PrintError("Could not read " + m_fileName + ": " + e.getMessage());
+                read = -1;
+            }
+
+            if(read > 0)
+            {
+                length += read;
+                continue;
+            }
+
+            if(!m_isLooping || !Rewind())
+                break;
+        }
+        return length;
+    }
+
+    private boolean Rewind()
+    {
+        CloseStream();
+        m_stream = OpenStream();
+        return m_stream != null;
+    }
+
+    private AudioInputStream OpenStream()
+    {
+        try
+        {
+            AudioInputStream stream = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(m_fileName)));
+            AudioFormat      format = stream.getFormat();
+
+            if(format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED && format.getSampleSizeInBits() == 16 && !format.isBigEndian())
+                return stream;
+
+            if(format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED && format.getSampleSizeInBits() == 8)
+                return stream;
+
+            AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16, format.getChannels(),
+                                                    format.getChannels() * 2, format.getSampleRate(), false);
+            return AudioSystem.getAudioInputStream(pcmFormat, stream);
+        }
+        catch(IOException | UnsupportedAudioFileException e)
+        {
+            Console.PrintError("Could not open music " + m_fileName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void CloseStream()
+    {
+        if(m_stream == null)
+            return;
+
+        try
+        {
+            m_stream.close();
+        }
+        catch(IOException ignored) { }
+
+        m_stream = null;
+    }
+}
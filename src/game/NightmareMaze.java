@@ -9,9 +9,19 @@ public class NightmareMaze extends Game
 {
     public static final String FILE_PATH     = System.getProperty("user.home") + File.separator+ "Game.NightmareMaze" + File.separator;
 
+    public static final String TEXTURES_PATH = "./res/nightmareMaze/textures/";
+    public static final String LEVELS_PATH   = "./res/nightmareMaze/textures/Levels/";
+    public static final String MODELS_PATH   = "./res/nightmareMaze/models/";
+    public static final String SOUNDS_PATH   = "./res/nightmareMaze/sounds/";
+
     public static final String FONT_ATLAS = "arialClear";
 
-    public NightmareMaze() { super(new OpenGLDisplay(1024, 768, 32, false, "Nightmare Maze!"), 60); }
+    public static final int FRAME_RATE = 60;
+
+    private static final FrameProfiler.Scope UPDATE_SCOPE = FrameProfiler.AddScope("Game.Update");
+    private static final FrameProfiler.Scope RENDER_SCOPE = FrameProfiler.AddScope("Game.Render");
+
+    public NightmareMaze() { super(new OpenGLDisplay(1024, 768, 32, false, "Nightmare Maze!"), FRAME_RATE); }
 
     @Override
     protected void OnGameStart()
@@ -30,6 +40,24 @@ public class NightmareMaze extends Game
     @Override
     protected void OnGameExit()
     {
+        FrameProfiler.WriteIfRecorded();
+    }
+
+    // The scene's updater systems and OnSceneUpdate.
+    @Override
+    public void Update(float delta)
+    {
+        UPDATE_SCOPE.Start();
+        super.Update(delta);
+        UPDATE_SCOPE.Stop();
+    }
 
+    // The scene's renderer systems, which the engine runs one after another in ECS.Render.
+    @Override
+    public void Render()
+    {
+        RENDER_SCOPE.Start();
+        super.Render();
+        RENDER_SCOPE.Stop();
     }
 }
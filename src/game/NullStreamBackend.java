@@ -0,0 +1,101 @@
+package game;
+
+import javax.sound.sampled.*;
+import java.nio.*;
+
+public class NullStreamBackend implements AudioStreamBackend
+{
+    private double m_bytesPerSecond;
+    private int    m_bufferCount;
+
+    private final long[] m_queuedSizes;
+    private       int    m_queueStart;
+    private       int    m_queueCount;
+
+    private boolean m_isPlaying;
+    private long    m_lastTime;
+    private double  m_playedBytes;
+
+    private long m_totalQueuedBytes;
+
+    public NullStreamBackend() { m_queuedSizes = new long[64]; }
+
+    @Override
+    public void Open(AudioFormat format, int bufferCount)
+    {
+        m_bytesPerSecond = format.getSampleRate() * format.getFrameSize();
+        m_bufferCount    = bufferCount;
+    }
+
+    @Override
+    public int Reclaim()
+    {
+        Advance();
+
+        while(m_queueCount > 0 && m_playedBytes >= m_queuedSizes[m_queueStart])
+        {
+            m_playedBytes -= m_queuedSizes[m_queueStart];
+            m_queueStart = (m_queueStart + 1) % m_queuedSizes.length;
+            --m_queueCount;
+        }
+
+        if(m_queueCount == 0)
+        {
+            m_playedBytes = 0;
+            m_isPlaying   = false;
+        }
+
+        return m_bufferCount - m_queueCount;
+    }
+
+    @Override
+    public void Queue(ByteBuffer data)
+    {
+        m_queuedSizes[(m_queueStart + m_queueCount++) % m_queuedSizes.length] = data.remaining();
+        m_totalQueuedBytes += data.remaining();
+    }
+
+    @Override
+    public void Play()
+    {
+        Advance();
+        m_isPlaying = m_queueCount > 0;
+    }
+
+    @Override
+    public void Pause()
+    {
+        Advance();
+        m_isPlaying = false;
+    }
+
+    @Override
+    public void Stop()
+    {
+        m_isPlaying   = false;
+        m_queueCount  = 0;
+        m_playedBytes = 0;
+    }
+
+    @Override
+    public boolean IsPlaying() { return m_isPlaying; }
+
+    @Override
+    public void SetVolume(float volume) { }
+
+    @Override
+    public void Close() { Stop(); }
+
+    public long GetTotalQueuedBytes() { return m_totalQueuedBytes; }
+
+    public int GetQueuedCount() { return m_queueCount; }
+
+    private void Advance()
+    {
+        long time = System.nanoTime();
+        if(m_isPlaying)
+            m_playedBytes += (time - m_lastTime) / 1e9 * m_bytesPerSecond;
+
+        m_lastTime = time;
+    }
+}
@@ -0,0 +1,84 @@
+package game;
+
+import org.lwjgl.openal.*;
+
+import javax.sound.sampled.*;
+import java.nio.*;
+
+public class OpenALStreamBackend implements AudioStreamBackend
+{
+    private int m_source;
+    private int m_format;
+    private int m_sampleRate;
+
+    private int[] m_freeBuffers;
+    private int   m_freeCount;
+
+    @Override
+    public void Open(AudioFormat format, int bufferCount)
+    {
+        if(format.getChannels() == 1)
+            m_format = format.getSampleSizeInBits() == 8 ? AL10.AL_FORMAT_MONO8 : AL10.AL_FORMAT_MONO16;
+        else
+            m_format = format.getSampleSizeInBits() == 8 ? AL10.AL_FORMAT_STEREO8 : AL10.AL_FORMAT_STEREO16;
+
+        m_sampleRate = (int)format.getSampleRate();
+
+        m_source = AL10.alGenSources();
+        AL10.alSourcei(m_source, AL10.AL_SOURCE_RELATIVE, AL10.AL_TRUE);
+
+        m_freeBuffers = new int[bufferCount];
+        for(m_freeCount = 0; m_freeCount < bufferCount; m_freeCount++)
+            m_freeBuffers[m_freeCount] = AL10.alGenBuffers();
+    }
+
+    @Override
+    public int Reclaim()
+    {
+        int processed = AL10.alGetSourcei(m_source, AL10.AL_BUFFERS_PROCESSED);
+        for(int i = 0; i < processed; i++)
+            m_freeBuffers[m_freeCount++] = AL10.alSourceUnqueueBuffers(m_source);
+
+        return m_freeCount;
+    }
+
+    @Override
+    public void Queue(ByteBuffer data)
+    {
+        int buffer = m_freeBuffers[--m_freeCount];
+
+        AL10.alBufferData(buffer, m_format, data, m_sampleRate);
+        AL10.alSourceQueueBuffers(m_source, buffer);
+    }
+
+    @Override
+    public void Play() { AL10.alSourcePlay(m_source); }
+
+    @Override
+    public void Pause() { AL10.alSourcePause(m_source); }
+
+    @Override
+    public void Stop()
+    {
+        AL10.alSourceStop(m_source);
+        Reclaim();
+    }
+
+    @Override
+    public boolean IsPlaying() { return AL10.alGetSourcei(m_source, AL10.AL_SOURCE_STATE) == AL10.AL_PLAYING; }
+
+    @Override
+    public void SetVolume(float volume) { AL10.alSourcef(m_source, AL10.AL_GAIN, volume); }
+
+    @Override
+    public void Close()
+    {
+        Stop();
+        AL10.alDeleteSources(m_source);
+
+        for(int i = 0; i < m_freeCount; i++)
+            AL10.alDeleteBuffers(m_freeBuffers[i]);
+
+        m_freeCount = 0;
+    }
+}
@@ -0,0 +1,37 @@
+package game;
+
+import engine.rendering.*;
+
+public class PackedVertexList extends VertexList
+{
+    private final float[] m_data;
+    private final int[]   m_vectorDimensions;
+    private final int     m_vertexSize;
+
+    public PackedVertexList(float[] data, int... vectorDimensions)
+    {
+        m_data             = data;
+        m_vectorDimensions = vectorDimensions;
+
+        int vertexSize = 0;
+        for(int dimensions : vectorDimensions)
+            vertexSize += dimensions;
+
+        m_vertexSize = vertexSize;
+    }
+
+    @Override
+    public int GetVertexCount() { return m_data.length / m_vertexSize; }
+
+    @Override
+    public int GetVertexSize() { return m_vertexSize; }
+
+    @Override
+    public int GetVectorCount() { return m_vectorDimensions.length; }
+
+    @Override
+    public int[] GetVectorDimensions() { return m_vectorDimensions; }
+
+    @Override
+    public float[] ToFloatArray() { return m_data; }
+}
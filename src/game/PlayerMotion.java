@@ -0,0 +1,159 @@
+package game;
+
+import jamJar.core.math.Math;
+import jamJar.core.math.vectors.*;
+
+public class PlayerMotion
+{
+    public static final float TICK_RATE = 120.0f;
+    public static final float TICK_TIME = 1.0f / TICK_RATE;
+
+    private final CellGrid m_cells;
+    private final float    m_radius;
+    private final float    m_doorHalfThickness;
+
+    private final Vector3f m_position;
+    private final Vector3f m_previousPosition;
+
+    private float m_moveX;
+    private float m_moveZ;
+
+    public PlayerMotion(CellGrid cells, float radius, float doorHalfThickness, Vector3f position)
+    {
+        m_cells             = cells;
+        m_radius            = radius;
+        m_doorHalfThickness = doorHalfThickness;
+
+        m_position         = new Vector3f(position);
+        m_previousPosition = new Vector3f(position);
+    }
+
+    public Vector3f GetPosition() { return m_position; }
+
+    public float GetMoveX() { return m_moveX; }
+    public float GetMoveZ() { return m_moveZ; }
+
+    public boolean IsMoving() { return m_moveX != 0 || m_moveZ != 0; }
+
+    public void Move(float x, float z)
+    {
+        m_previousPosition.Set(m_position);
+
+        // Sub-step so no step is longer than half the radius: walls are a whole cell thick and doors block
+        // almost a whole cell, so the circle can never skip past either between two steps.
+        int stepCount = Math.Max(1, (int)Math.Ceiling(Math.Max(Math.Abs(x), Math.Abs(z)) / (m_radius * 0.5f)));
+
+        float stepX = x / stepCount;
+        float stepZ = z / stepCount;
+
+        for(int step = 0; step < stepCount; step++)
+        {
+            MoveX(stepX);
+            MoveZ(stepZ);
+        }
+
+        m_moveX = m_position.GetX() - m_previousPosition.GetX();
+        m_moveZ = m_position.GetZ() - m_previousPosition.GetZ();
+    }
+
+    public void Interpolate(Vector3f result, float alpha)
+    {
+        result.SetX(m_previousPosition.GetX() + (m_position.GetX() - m_previousPosition.GetX()) * alpha);
+        result.SetZ(m_previousPosition.GetZ() + (m_position.GetZ() - m_previousPosition.GetZ()) * alpha);
+    }
+
+    private void MoveX(float distance)
+    {
+        if(distance == 0)
+            return;
+
+        float start = m_position.GetX();
+        float x     = start + distance;
+        float z     = m_position.GetZ();
+
+        int minZ  = (int)Math.Floor(z - m_radius);
+        int maxZ  = (int)Math.Floor(z + m_radius);
+        int cellX = (int)Math.Floor(x + (distance > 0 ? m_radius : -m_radius));
+
+        // A wall column the centre has already reached is beside the circle rather than ahead of it.
+        if(distance > 0 ? cellX > start : cellX + 1 < start)
+        {
+            for(int cellZ = minZ; cellZ <= maxZ; cellZ++)
+            {
+                if(!m_cells.IsWall(cellX, cellZ))
+                    continue;
+
+                float offset = GetContactOffset(z, cellZ);
+                if(offset < 0)
+                    continue;
+
+                x = distance > 0 ? Math.Max(start, Math.Min(x, cellX - offset)) : Math.Min(start, Math.Max(x, cellX + 1 + offset));
+            }
+        }
+
+        m_position.SetX(ClampToDoor(x, z, true, distance));
+    }
+
+    private void MoveZ(float distance)
+    {
+        if(distance == 0)
+            return;
+
+        float start = m_position.GetZ();
+        float x     = m_position.GetX();
+        float z     = start + distance;
+
+        int minX  = (int)Math.Floor(x - m_radius);
+        int maxX  = (int)Math.Floor(x + m_radius);
+        int cellZ = (int)Math.Floor(z + (distance > 0 ? m_radius : -m_radius));
+
+        if(distance > 0 ? cellZ > start : cellZ + 1 < start)
+        {
+            for(int cellX = minX; cellX <= maxX; cellX++)
+            {
+                if(!m_cells.IsWall(cellX, cellZ))
+                    continue;
+
+                float offset = GetContactOffset(x, cellX);
+                if(offset < 0)
+                    continue;
+
+                z = distance > 0 ? Math.Max(start, Math.Min(z, cellZ - offset)) : Math.Min(start, Math.Max(z, cellZ + 1 + offset));
+            }
+        }
+
+        m_position.SetZ(ClampToDoor(x, z, false, distance));
+    }
+
+    // How far the circle's centre must stay from a wall face, given its distance from that face's extent on the other axis.
+    private float GetContactOffset(float centre, int cell)
+    {
+        float distance = centre < cell ? cell - centre : centre > cell + 1 ? centre - (cell + 1) : 0;
+        if(distance >= m_radius)
+            return -1;
+
+        return Math.Sqrt(m_radius * m_radius - distance * distance);
+    }
+
+    private float ClampToDoor(float x, float z, boolean alongX, float distance)
+    {
+        int cellX = (int)Math.Floor(x);
+        int cellZ = (int)Math.Floor(z);
+
+        float value = alongX ? x : z;
+        if(m_cells.Get(cellX, cellZ) != CellGrid.DOOR)
+            return value;
+
+        // A door between walls on its north and south sides is turned to block the X axis, otherwise it blocks Z.
+        boolean blocksX = m_cells.IsWall(cellX, cellZ - 1) && m_cells.IsWall(cellX, cellZ + 1);
+        if(blocksX != alongX)
+            return value;
+
+        // The player may stand just inside the door's cell, which is what lets it try to open the door.
+        int start = alongX ? cellX : cellZ;
+        if(value - start <= m_doorHalfThickness || start + 1 - value <= m_doorHalfThickness)
+            return value;
+
+        return distance > 0 ? start + m_doorHalfThickness : start + 1 - m_doorHalfThickness;
+    }
+}
@@ -0,0 +1,132 @@
+package game;
+
+import jamJar.rendering.*;
+
+import java.io.*;
+import java.util.zip.*;
+
+// Writes a bitmap as an 8-bit RGB PNG straight from its pixels. Unfiltered rows at the fastest deflate level write
+// generated level maps several times faster than ImageIO, which converts every pixel and tries every row filter.
+public class PngWriter
+{
+    private static final byte[] SIGNATURE = new byte[] { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    public static void Write(Bitmap bitmap, String fileName) throws IOException
+    {
+        int width  = bitmap.GetWidth();
+        int height = bitmap.GetHeight();
+
+        int[] pixels = bitmap.GetPixels();
+
+        try(OutputStream stream = new BufferedOutputStream(new FileOutputStream(fileName)))
+        {
+            stream.write(SIGNATURE);
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream      data   = new DataOutputStream(header);
+            data.writeInt(width);
+            data.writeInt(height);
+            data.writeByte(8);
+            data.writeByte(2);
+            data.writeByte(0);
+            data.writeByte(0);
+            data.writeByte(0);
+            WriteChunk(stream, "IHDR", header.toByteArray(), header.size());
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try(DeflaterOutputStream imageStream = new DeflaterOutputStream(new ChunkOutputStream(stream), deflater, CHUNK_SIZE))
+            {
+                byte[] row = new byte[1 + width * 3];
+                for(int y = 0; y < height; y++)
+                {
+                    for(int x = 0; x < width; x++)
+                    {
+                        int pixel = pixels[x + y * width];
+                        row[1 + x * 3    ] = (byte)(pixel >> 16);
+                        row[1 + x * 3 + 1] = (byte)(pixel >>  8);
+                        row[1 + x * 3 + 2] = (byte)(pixel      );
+                    }
+                    imageStream.write(row);
+                }
+            }
+            finally
+            {
+                deflater.end();
+            }
+        }
+    }
+
+    private static void WriteChunk(OutputStream stream, String type, byte[] data, int length) throws IOException
+    {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        DataOutputStream dataStream = new DataOutputStream(stream);
+        dataStream.writeInt(length);
+        dataStream.write(typeBytes);
+        dataStream.write(data, 0, length);
+        dataStream.writeInt((int)crc.getValue());
+    }
+
+    // Splits the compressed image into IDAT chunks and ends the file once the image stream is closed.
+    private static class ChunkOutputStream extends OutputStream
+    {
+        private final OutputStream m_stream;
+        private final byte[]       m_buffer;
+
+        private int m_length;
+
+        public ChunkOutputStream(OutputStream stream)
+        {
+            m_stream = stream;
+            m_buffer = new byte[CHUNK_SIZE];
+        }
+
+        @Override
+        public void write(int value) throws IOException
+        {
+            if(m_length == m_buffer.length)
+                Flush();
+
+            m_buffer[m_length++] = (byte)value;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException
+        {
+            while(length > 0)
+            {
+                if(m_length == m_buffer.length)
+                    Flush();
+
+                int count = Math.min(length, m_buffer.length - m_length);
+                System.arraycopy(data, offset, m_buffer, m_length, count);
+
+                m_length += count;
+                offset   += count;
+                length   -= count;
+            }
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            Flush();
+            WriteChunk(m_stream, "IEND", m_buffer, 0);
+        }
+
+        private void Flush() throws IOException
+        {
+            if(m_length == 0)
+                return;
+
+            WriteChunk(m_stream, "IDAT", m_buffer, m_length);
+            m_length = 0;
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package game;
+
+import jamJar.core.Console;
+import jamJar.core.fileManagement.FileSystem;
+import jamJar.core.math.*;
+import jamJar.core.math.vectors.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import static game.NightmareMaze.*;
+
+public class SaveJournal
+{
+    public static final String FILE_NAME     = FILE_PATH + "data.journal";
+    public static final String OLD_FILE_NAME = FILE_PATH + "data.journal.old";
+
+    public static final int COMPACT_RECORD_COUNT = 256;
+
+    private static final int MAGIC       = 0x4E4D4A31;
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+
+    private static final byte VISIT = 1;
+    private static final byte KEY   = 2;
+    private static final byte DOOR  = 3;
+    private static final byte POSE  = 4;
+
+    private static final int MAX_RECORD_SIZE = 1 + 8 * 4 + 4;
+    private static final int POSE_SIZE       = 8;
+
+    private static final double SLOW_WRITE_TIME = 0.1;
+
+    private static final FrameProfiler.Scope WRITE_SCOPE = FrameProfiler.AddScope("SaveJournal.Write");
+
+    // Snapshot writes, journal rotation and compaction all touch the same files, so they take turns on this lock.
+    static final Object s_lock = new Object();
+
+    private static final CopyOnWriteArrayList<SaveJournal> s_journals = new CopyOnWriteArrayList<>();
+
+    private static final ExecutorService s_writer    = Executors.newSingleThreadExecutor(CreateThreadFactory("SaveWriter"));
+    private static final ExecutorService s_compactor = Executors.newSingleThreadExecutor(CreateThreadFactory("SaveJournal"));
+
+    static
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread("SaveJournal shutdown")
+        {
+            @Override
+            public void run()
+            {
+                for(SaveJournal journal : s_journals)
+                    journal.Close();
+            }
+        });
+    }
+
+    private final int  m_index;
+    private final long m_generation;
+
+    private final Runnable m_drain;
+
+    // Filled by the game thread under this journal's monitor; the writer thread swaps it out and does the I/O outside it.
+    private final ByteBuffer m_record;
+    private final CRC32      m_checksum;
+    private final float[]    m_pose;
+    private       byte[]     m_pending;
+    private       int        m_pendingLength;
+    private       int        m_pendingCount;
+    private       boolean    m_hasPose;
+    private       boolean    m_isScheduled;
+    private       boolean    m_isClosed;
+    private       Future<?>  m_write;
+
+    // Owned by the writer thread.
+    private final ByteBuffer   m_poseRecord;
+    private final CRC32        m_poseChecksum;
+    private final float[]      m_writtenPose;
+    private       byte[]       m_writing;
+    private       OutputStream m_output;
+    private       int          m_recordCount;
+
+    private volatile Future<?> m_compaction;
+    private volatile double    m_lastWriteTime;
+    private volatile double    m_maxWriteTime;
+
+    public SaveJournal(int index, long generation)
+    {
+        m_index      = index;
+        m_generation = generation;
+
+        m_drain = new Runnable()
+        {
+            @Override
+            public void run() { Drain(); }
+        };
+
+        m_record   = ByteBuffer.allocate(MAX_RECORD_SIZE);
+        m_checksum = new CRC32();
+        m_pose     = new float[POSE_SIZE];
+        m_pending  = new byte[1024];
+
+        m_poseRecord   = ByteBuffer.allocate(MAX_RECORD_SIZE);
+        m_poseChecksum = new CRC32();
+        m_writtenPose  = new float[POSE_SIZE];
+        m_writing      = new byte[1024];
+
+        synchronized(s_lock)
+        {
+            m_recordCount = Open();
+        }
+
+        if(FileSystem.PathExists(OLD_FILE_NAME))
+            m_compaction = s_compactor.submit(new Compaction());
+
+        s_journals.add(this);
+    }
+
+    public synchronized void AppendVisit(int x, int z)
+    {
+        m_record.clear();
+        m_record.put(VISIT);
+        m_record.putInt(x);
+        m_record.putInt(z);
+        Append(m_record, m_checksum);
+    }
+
+    public synchronized void AppendKey(int color)
+    {
+        m_record.clear();
+        m_record.put(KEY);
+        m_record.putInt(color);
+        Append(m_record, m_checksum);
+    }
+
+    public synchronized void AppendDoor(int color)
+    {
+        m_record.clear();
+        m_record.put(DOOR);
+        m_record.putInt(color);
+        Append(m_record, m_checksum);
+    }
+
+    // Only the newest pose matters, so poses that arrive while a write is in flight replace each other instead of queueing.
+    public synchronized void AppendPose(Vector3f position, Quaternion rotation, float sludgeLevel)
+    {
+        m_pose[0] = position.GetX();
+        m_pose[1] = position.GetY();
+        m_pose[2] = position.GetZ();
+        m_pose[3] = rotation.GetX();
+        m_pose[4] = rotation.GetY();
+        m_pose[5] = rotation.GetZ();
+        m_pose[6] = rotation.GetW();
+        m_pose[7] = sludgeLevel;
+        m_hasPose = true;
+
+        Flush();
+    }
+
+    public synchronized void Flush()
+    {
+        if(m_isClosed || m_isScheduled || (m_pendingLength == 0 && !m_hasPose))
+            return;
+
+        m_isScheduled = true;
+        m_write       = s_writer.submit(m_drain);
+    }
+
+    public void Close()
+    {
+        Future<?> write;
+        synchronized(this)
+        {
+            Flush();
+            m_isClosed = true;
+            write      = m_write;
+        }
+
+        Await(write);
+        synchronized(this)
+        {
+            CloseOutput();
+        }
+        Await(m_compaction);
+
+        s_journals.remove(this);
+    }
+
+    public int GetRecordCount() { return m_recordCount; }
+
+    public double GetLastWriteTime() { return m_lastWriteTime; }
+    public double GetMaxWriteTime()  { return m_maxWriteTime;  }
+
+    protected OutputStream OpenOutput(File file) throws IOException { return new FileOutputStream(file, true); }
+
+    private void Append(ByteBuffer record, CRC32 checksum)
+    {
+        if(m_isClosed)
+            return;
+
+        Seal(record, checksum);
+
+        if(m_pendingLength + record.position() > m_pending.length)
+            m_pending = Arrays.copyOf(m_pending, m_pending.length * 2);
+
+        System.arraycopy(record.array(), 0, m_pending, m_pendingLength, record.position());
+        m_pendingLength += record.position();
+        ++m_pendingCount;
+    }
+
+    private static void Seal(ByteBuffer record, CRC32 checksum)
+    {
+        checksum.reset();
+        checksum.update(record.array(), 0, record.position());
+        record.putInt((int)checksum.getValue());
+    }
+
+    private void Drain()
+    {
+        while(true)
+        {
+            int     length;
+            int     count;
+            boolean hasPose;
+            synchronized(this)
+            {
+                if(m_pendingLength == 0 && !m_hasPose)
+                {
+                    m_isScheduled = false;
+                    return;
+                }
+
+                byte[] pending = m_pending;
+                m_pending = m_writing;
+                m_writing = pending;
+
+                length  = m_pendingLength;
+                count   = m_pendingCount;
+                hasPose = m_hasPose;
+                System.arraycopy(m_pose, 0, m_writtenPose, 0, POSE_SIZE);
+
+                m_pendingLength = 0;
+                m_pendingCount  = 0;
+                m_hasPose       = false;
+            }
+
+            long startTime = System.nanoTime();
+
+            WRITE_SCOPE.Start();
+            Write(length, count, hasPose);
+            WRITE_SCOPE.Stop();
+
+            m_lastWriteTime = (System.nanoTime() - startTime) / 1e9;
+            if(m_lastWriteTime > m_maxWriteTime)
+                m_maxWriteTime = m_lastWriteTime;
+            if(m_lastWriteTime > SLOW_WRITE_TIME)
+                Console.PrintWarning("Save journal write took " + (int)(m_lastWriteTime * 1000) + " ms.");
+
+            if(m_recordCount >= COMPACT_RECORD_COUNT && (m_compaction == null || m_compaction.isDone()))
+                Rotate();
+        }
+    }
+
+    private void Write(int length, int count, boolean hasPose)
+    {
+        if(m_output == null)
+            return;
+
+        try
+        {
+            m_output.write(m_writing, 0, length);
+            m_recordCount += count;
+
+            if(hasPose)
+            {
+                m_poseRecord.clear();
+                m_poseRecord.put(POSE);
+                for(float value : m_writtenPose)
+                    m_poseRecord.putFloat(value);
+
+                Seal(m_poseRecord, m_poseChecksum);
+                m_output.write(m_poseRecord.array(), 0, m_poseRecord.position());
+                ++m_recordCount;
+            }
+
+            m_output.flush();
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not write save journal: " + e.getMessage());
+        }
+    }
+
+    // Moves the full journal aside for the compactor and starts an empty one, so appending never waits for the snapshot.
+    // An old journal that is still there was not compacted yet, and is retried before this one may take its place.
+    private void Rotate()
+    {
+        synchronized(s_lock)
+        {
+            if(!FileSystem.PathExists(OLD_FILE_NAME))
+            {
+                CloseOutput();
+
+                try
+                {
+                    Files.move(Paths.get(FILE_NAME), Paths.get(OLD_FILE_NAME));
+                }
+                catch(IOException e)
+                {
+                    Console.PrintError("Could not rotate save journal: " + e.getMessage());
+                }
+
+                m_recordCount = Open();
+            }
+        }
+
+        m_compaction = s_compactor.submit(new Compaction());
+    }
+
+    private int Open()
+    {
+        Path path = Paths.get(FILE_NAME);
+        try
+        {
+            int count = 0;
+            if(Files.exists(path))
+            {
+                byte[]     data   = Files.readAllBytes(path);
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+
+                // A crash can leave half a record at the end; appending after it would hide every later record.
+                int validLength = 0;
+                if(ReadHeader(buffer, m_index, m_generation))
+                {
+                    validLength = buffer.position();
+                    while(ReadRecord(buffer, m_poseChecksum, null))
+                    {
+                        validLength = buffer.position();
+                        ++count;
+                    }
+                }
+
+                if(validLength < data.length)
+                {
+                    try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw"))
+                    {
+                        file.setLength(validLength);
+                    }
+                }
+            }
+
+            m_output = new BufferedOutputStream(OpenOutput(path.toFile()));
+
+            if(Files.size(path) == 0)
+            {
+                DataOutputStream header = new DataOutputStream(m_output);
+                header.writeInt(MAGIC);
+                header.writeInt(m_index);
+                header.writeLong(m_generation);
+                header.flush();
+            }
+            return count;
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not open save journal " + FILE_NAME + ": " + e.getMessage());
+            CloseOutput();
+            return 0;
+        }
+    }
+
+    private static void Await(Future<?> future)
+    {
+        if(future == null)
+            return;
+
+        try
+        {
+            future.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch(ExecutionException e)
+        {
+            Console.PrintError("Save journal task failed: " + e.getCause());
+        }
+    }
+
+    private static ThreadFactory CreateThreadFactory(final String name)
+    {
+        return new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread result = new Thread(runnable, name);
+                result.setDaemon(true);
+                return result;
+            }
+        };
+    }
+
+    private void CloseOutput()
+    {
+        if(m_output == null)
+            return;
+
+        try
+        {
+            m_output.close();
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not close save journal: " + e.getMessage());
+        }
+        m_output = null;
+    }
+
+    static void Delete()
+    {
+        try
+        {
+            Files.deleteIfExists(Paths.get(OLD_FILE_NAME));
+            Files.deleteIfExists(Paths.get(FILE_NAME));
+        }
+        catch(IOException e)
+        {
+            Console.PrintError("Could not delete save journal: " + e.getMessage());
+        }
+    }
+
+    static LevelSaveData Replay(LevelSaveData snapshot, String... fileNames)
+    {
+        State state = new State(snapshot);
+
+        CRC32 checksum = new CRC32();
+        for(String fileName : fileNames)
+        {
+            Path path = Paths.get(fileName);
+            if(!Files.exists(path))
+                continue;
+
+            ByteBuffer buffer;
+            try
+            {
+                buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            }
+            catch(IOException e)
+            {
+                Console.PrintError("Could not read save journal " + fileName + ": " + e.getMessage());
+                continue;
+            }
+
+            if(!ReadHeader(buffer, snapshot.GetIndex(), snapshot.GetGeneration()))
+                continue;
+
+            while(ReadRecord(buffer, checksum, state)) { }
+        }
+
+        return state.ToSaveData();
+    }
+
+    private static boolean ReadHeader(ByteBuffer buffer, int index, long generation)
+    {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getInt() == MAGIC && buffer.getInt() == index && buffer.getLong() == generation;
+    }
+
+    private static boolean ReadRecord(ByteBuffer buffer, CRC32 checksum, State state)
+    {
+        int start = buffer.position();
+        if(!buffer.hasRemaining())
+            return false;
+
+        int payloadSize;
+        switch(buffer.get(start))
+        {
+            case VISIT: payloadSize = 8;     break;
+            case KEY:   payloadSize = 4;     break;
+            case DOOR:  payloadSize = 4;     break;
+            case POSE:  payloadSize = 8 * 4; break;
+            default: return false;
+        }
+
+        if(buffer.remaining() < 1 + payloadSize + 4)
+            return false;
+
+        checksum.reset();
+        checksum.update(buffer.array(), start, 1 + payloadSize);
+        if(buffer.getInt(start + 1 + payloadSize) != (int)checksum.getValue())
+            return false;
+
+        byte type = buffer.get();
+        if(state != null)
+        {
+            switch(type)
+            {
+                case VISIT: state.Visit(buffer.getInt(), buffer.getInt()); break;
+                case KEY:   state.CollectKey(buffer.getInt());             break;
+                case DOOR:  state.OpenDoor(buffer.getInt());               break;
+                case POSE:
+                    state.SetPose(new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat()),
+                                  new Quaternion(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat()),
+                                  buffer.getFloat());
+                    break;
+            }
+        }
+
+        buffer.position(start + 1 + payloadSize + 4);
+        return true;
+    }
+
+    private static class Compaction implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            synchronized(s_lock)
+            {
+                if(!FileSystem.PathExists(OLD_FILE_NAME))
+                    return;
+
+                if(!Replay(LevelSaveData.ReadSnapshot(), OLD_FILE_NAME).WriteSnapshot())
+                    return;
+
+                try
+                {
+                    Files.deleteIfExists(Paths.get(OLD_FILE_NAME));
+                }
+                catch(IOException e)
+                {
+                    Console.PrintError("Could not delete save journal " + OLD_FILE_NAME + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static class State
+    {
+        private final int  m_index;
+        private final long m_generation;
+
+        private Vector3f   m_cameraPosition;
+        private Quaternion m_cameraRotation;
+        private float      m_sludgeLevel;
+
+        private final LinkedHashSet<Integer> m_collectedKeys;
+        private final LinkedHashSet<Integer> m_openedDoors;
+        private final LinkedHashSet<Long>    m_passedLocations;
+
+        public State(LevelSaveData snapshot)
+        {
+            m_index      = snapshot.GetIndex();
+            m_generation = snapshot.GetGeneration();
+
+            m_cameraPosition = snapshot.GetCameraPosition();
+            m_cameraRotation = snapshot.GetCameraRotation();
+            m_sludgeLevel    = snapshot.GetSludgeLevel();
+
+            m_collectedKeys   = new LinkedHashSet<>();
+            m_openedDoors     = new LinkedHashSet<>();
+            m_passedLocations = new LinkedHashSet<>();
+
+            for(Vector3f color : snapshot.GetCollectedKeys())
+                m_collectedKeys.add(ColorPalette.ToNumber(color));
+
+            for(Vector3f color : snapshot.GetOpenedDoors())
+                m_openedDoors.add(ColorPalette.ToNumber(color));
+
+            for(Vector2f location : snapshot.GetPassedLocations())
+                Visit((int)location.GetX(), (int)location.GetY());
+        }
+
+        public void Visit(int x, int z) { m_passedLocations.add((long)x << 32 | (z & 0xFFFFFFFFL)); }
+
+        public void CollectKey(int color) { m_collectedKeys.add(color); }
+
+        // A key is used up by the door it opens, as Level reports it when saving.
+        public void OpenDoor(int color)
+        {
+            m_openedDoors.add(color);
+            m_collectedKeys.remove(color);
+        }
+
+        public void SetPose(Vector3f cameraPosition, Quaternion cameraRotation, float sludgeLevel)
+        {
+            m_cameraPosition = cameraPosition;
+            m_cameraRotation = cameraRotation;
+            m_sludgeLevel    = sludgeLevel;
+        }
+
+        public LevelSaveData ToSaveData()
+        {
+            Vector2f[] passedLocations = new Vector2f[m_passedLocations.size()];
+
+            int index = 0;
+            for(long location : m_passedLocations)
+                passedLocations[index++] = new Vector2f((int)(location >> 32), (int)location);
+
+            return new LevelSaveData(m_index, m_generation, m_cameraPosition, m_cameraRotation, ToColors(m_collectedKeys), ToColors(m_openedDoors), passedLocations, m_sludgeLevel);
+        }
+
+        private static Vector3f[] ToColors(Collection<Integer> colors)
+        {
+            Vector3f[] result = new Vector3f[colors.size()];
+
+            int index = 0;
+            for(int color : colors)
+                result[index++] = Level.ToColor(color);
+
+            return result;
+        }
+    }
+}
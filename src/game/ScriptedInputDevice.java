@@ -0,0 +1,121 @@
+package game;
+
+import engine.core.*;
+import jamJar.core.math.vectors.*;
+
+public class ScriptedInputDevice extends InputDevice
+{
+    private final boolean[] m_keysDown;
+    private final boolean[] m_mouseButtonsDown;
+    private final boolean[] m_lastKeysDown;
+    private final boolean[] m_lastMouseButtonsDown;
+
+    private float   m_mouseX;
+    private float   m_mouseY;
+    private float   m_mouseDeltaX;
+    private float   m_mouseDeltaY;
+    private int     m_mouseScroll;
+    private boolean m_isMouseGrabbed;
+
+    public ScriptedInputDevice()
+    {
+        m_keysDown             = new boolean[Key.values().length];
+        m_mouseButtonsDown     = new boolean[MouseButton.values().length];
+        m_lastKeysDown         = new boolean[m_keysDown.length];
+        m_lastMouseButtonsDown = new boolean[m_mouseButtonsDown.length];
+        m_isMouseGrabbed       = true;
+    }
+
+    public void SetKeyDown(Key key, boolean isDown) { m_keysDown[key.ordinal()] = isDown; }
+
+    public void SetMouseDown(MouseButton button, boolean isDown) { m_mouseButtonsDown[button.ordinal()] = isDown; }
+
+    // Moves the mouse by the given amount, as the window would between two frames; the mouse look resets it to the centre.
+    public void MoveMouse(float x, float y)
+    {
+        m_mouseX     += x;
+        m_mouseY     += y;
+        m_mouseDeltaX = x;
+        m_mouseDeltaY = y;
+    }
+
+    public void SetMouseScroll(int scroll) { m_mouseScroll = scroll; }
+
+    public void ReleaseAll()
+    {
+        for(int i = 0; i < m_keysDown.length; i++)
+            m_keysDown[i] = false;
+
+        for(int i = 0; i < m_mouseButtonsDown.length; i++)
+            m_mouseButtonsDown[i] = false;
+    }
+
+    @Override
+    public boolean IsKeyDown(Key key) { return m_keysDown[key.ordinal()]; }
+
+    @Override
+    public boolean IsMouseDown(MouseButton button) { return m_mouseButtonsDown[button.ordinal()]; }
+
+    // The presses and releases InputDevice reports, once each like it does, but against this device's own copy of the
+    // last frame's keys: InputDevice.Update copies them through Key.values(), a new array every frame.
+    @Override
+    public boolean IsKeyPressed(Key key) { return ReportChange(m_keysDown, m_lastKeysDown, key.ordinal(), true); }
+
+    @Override
+    public boolean IsKeyReleased(Key key) { return ReportChange(m_keysDown, m_lastKeysDown, key.ordinal(), false); }
+
+    @Override
+    public boolean IsMousePressed(MouseButton button) { return ReportChange(m_mouseButtonsDown, m_lastMouseButtonsDown, button.ordinal(), true); }
+
+    @Override
+    public boolean IsMouseReleased(MouseButton button) { return ReportChange(m_mouseButtonsDown, m_lastMouseButtonsDown, button.ordinal(), false); }
+
+    private static boolean ReportChange(boolean[] down, boolean[] lastDown, int index, boolean isDown)
+    {
+        if(down[index] != isDown || lastDown[index] == isDown)
+            return false;
+
+        lastDown[index] = isDown;
+        return true;
+    }
+
+    @Override
+    public boolean IsMouseGrabbed() { return m_isMouseGrabbed; }
+
+    @Override
+    public float GetMouseX() { return m_mouseX; }
+
+    @Override
+    public float GetMouseY() { return m_mouseY; }
+
+    @Override
+    public float GetMouseDeltaX() { return m_mouseDeltaX; }
+
+    @Override
+    public float GetMouseDeltaY() { return m_mouseDeltaY; }
+
+    @Override
+    public int GetMouseScroll() { return m_mouseScroll; }
+
+    @Override
+    public void SetMousePosition(Vector2f position)
+    {
+        m_mouseX = position.GetX();
+        m_mouseY = position.GetY();
+    }
+
+    @Override
+    public void SetMouseGrabbed(boolean isGrabbed) { m_isMouseGrabbed = isGrabbed; }
+
+    // Ends the frame: remembers which keys are down for the next frame's IsKeyPressed and clears the movement.
+    @Override
+    public void Update()
+    {
+        System.arraycopy(m_keysDown, 0, m_lastKeysDown, 0, m_keysDown.length);
+        System.arraycopy(m_mouseButtonsDown, 0, m_lastMouseButtonsDown, 0, m_mouseButtonsDown.length);
+
+        m_mouseDeltaX = 0;
+        m_mouseDeltaY = 0;
+        m_mouseScroll = 0;
+    }
+}
@@ -0,0 +1,37 @@
+package game;
+
+import jamJar.rendering.*;
+
+public class TextureAtlas
+{
+    private final Bitmap m_atlas;
+
+    private final int m_tileSize;
+    private final int m_tilesPerRow;
+
+    public TextureAtlas(Bitmap atlas, int tileSize)
+    {
+        m_atlas       = atlas;
+        m_tileSize    = tileSize;
+        m_tilesPerRow = atlas.GetWidth() / tileSize;
+    }
+
+    public int GetTileSize()  { return m_tileSize; }
+    public int GetTileCount() { return m_tilesPerRow * m_tilesPerRow; }
+
+    public Bitmap GetTile(int index)
+    {
+        int startX = (index % m_tilesPerRow) * m_tileSize;
+        int startY = (index / m_tilesPerRow) * m_tileSize;
+
+        Bitmap result = new Bitmap(m_tileSize, m_tileSize);
+
+        int[] source      = m_atlas.GetPixels();
+        int[] destination = result.GetPixels();
+
+        for(int y = 0; y < m_tileSize; y++)
+            System.arraycopy(source, startX + (startY + y) * m_atlas.GetWidth(), destination, y * m_tileSize, m_tileSize);
+
+        return result;
+    }
+}
@@ -24,17 +24,19 @@ public class WinScene extends Scene
 
         AddToFilePath("nightmareMaze/");
 
+        AssetCache.Release(this);
+
         Material ceilingMaterial = new Material();
         Material wallMaterial    = new Material();
         Material floorMaterial   = new Material();
 
-        ceilingMaterial.SetProperty("Texture", LoadTexture("winTexture.png"));
-        wallMaterial.SetProperty("Texture", LoadTexture("winTexture.png"));
-        floorMaterial.SetProperty("Texture", LoadTexture("winTexture.png"));
+        ceilingMaterial.SetProperty("Texture", AssetCache.AcquireTexture(this, "winTexture.png"));
+        wallMaterial.SetProperty("Texture", AssetCache.AcquireTexture(this, "winTexture.png"));
+        floorMaterial.SetProperty("Texture", AssetCache.AcquireTexture(this, "winTexture.png"));
 
-        ceilingMaterial.SetProperty("NormalMap", LoadTexture("winNormal.png"));
-        wallMaterial.SetProperty("NormalMap", LoadTexture("winNormal.png"));
-        floorMaterial.SetProperty("NormalMap", LoadTexture("winNormal.png"));
+        ceilingMaterial.SetProperty("NormalMap", AssetCache.AcquireTexture(this, "winNormal.png"));
+        wallMaterial.SetProperty("NormalMap", AssetCache.AcquireTexture(this, "winNormal.png"));
+        floorMaterial.SetProperty("NormalMap", AssetCache.AcquireTexture(this, "winNormal.png"));
 
         ceilingMaterial.SetProperty("Reflectivity", 4f);
         wallMaterial.SetProperty("Reflectivity", 4f);
@@ -57,17 +59,17 @@ public class WinScene extends Scene
         keyMaterial.SetProperty("Reflectivity", 4f);
         keyMaterial.SetProperty("Damping", 32f);
 
-        CreateEntity(new Transformation(new Vector3f(0.0f, -0.2f, 1.0f), new Quaternion(), new Vector3f(0.002f)), new MeshComponent(LoadMesh("trophie.obj")), keyMaterial, new RotaterComponent(new Vector3f(0, 1, 0.5f), 80f));
+        CreateEntity(new Transformation(new Vector3f(0.0f, -0.2f, 1.0f), new Quaternion(), new Vector3f(0.002f)), new MeshComponent(AssetCache.AcquireMesh(this, "trophie.obj")), keyMaterial, new RotaterComponent(new Vector3f(0, 1, 0.5f), 80f));
 
         GetCamera().GetTransformation().Move(0, -0.2f, 0);
 
         CreateEntity(new PointLight(new Vector3f(1), 0.2f, new Attenuation(0f, 0f, 0.1f), new Vector3f(0.0f, -0.5f, 0.2f)));
 
-        CreateEntity(new TextComponent("YOU WON!", LoadFont(NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.TOP_CENTER, new Vector2f(), new Vector2f(2)));
+        CreateEntity(new TextComponent("YOU WON!", AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), TextComponent.TextAlignment.TOP_CENTER, new Vector2f(), new Vector2f(2)));
 
         SetSetting("AmbientLight", new Vector3f());
 
-        m_menu = new Menu(this, LoadFont(NightmareMaze.FONT_ATLAS), "Play Again", "Main Menu", "Exit");
+        m_menu = new Menu(this, AssetCache.AcquireFont(this, NightmareMaze.FONT_ATLAS), "Play Again", "Main Menu", "Exit");
     }
 
     @Override
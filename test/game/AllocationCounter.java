@@ -0,0 +1,55 @@
+package game;
+
+import org.junit.*;
+
+import java.lang.management.*;
+
+// The bytes the calling thread has allocated, read from the JVM's per-thread counter. A test creating one is skipped on
+// a JVM without that counter.
+public class AllocationCounter
+{
+    private static final int WINDOW_COUNT = 5;
+
+    private final com.sun.management.ThreadMXBean m_threads;
+
+    public AllocationCounter()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+
+        m_threads = (com.sun.management.ThreadMXBean)threads;
+        Assume.assumeTrue(m_threads.isThreadAllocatedMemorySupported());
+        m_threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public long GetAllocatedBytes() { return m_threads.getThreadAllocatedBytes(Thread.currentThread().getId()); }
+
+    // The bytes a run of frames allocates. The JIT may still deoptimize a method now and then, putting the objects it
+    // had kept off the heap back on it, but a frame that does allocate allocates in every run, so runs are measured
+    // until one allocates nothing.
+    public long Measure(Window window, int frameCount)
+    {
+        long allocatedBytes = 0;
+        for(int w = 0; w < WINDOW_COUNT; w++)
+        {
+            window.Start();
+
+            long startBytes = GetAllocatedBytes();
+            for(int frame = 0; frame < frameCount; frame++)
+                window.Frame(frame);
+            allocatedBytes = GetAllocatedBytes() - startBytes;
+
+            if(allocatedBytes == 0)
+                break;
+        }
+        return allocatedBytes;
+    }
+
+    // A run of measured frames, after whatever unmeasured frames set it up.
+    public abstract static class Window
+    {
+        public void Start() { }
+
+        public abstract void Frame(int frame);
+    }
+}
@@ -0,0 +1,78 @@
+package game;
+
+import engine.ecs.*;
+import engine.rendering.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+// References held per scene class, and eviction that frees the device texture once no scene class holds it.
+public class AssetCacheTest
+{
+    private static final String TEXTURE_NAME = "door.png";
+
+    private Scene                m_menuScene;
+    private Scene                m_levelScene;
+    private HeadlessRenderDevice m_device;
+
+    @Before
+    public void CreateScenes()
+    {
+        m_menuScene  = new HeadlessScene();
+        m_levelScene = new HeadlessScene() { };
+        m_device     = HeadlessRenderDevice.Attach(m_menuScene, m_levelScene);
+    }
+
+    @After
+    public void ReleaseScenes()
+    {
+        AssetCache.Release(m_menuScene);
+        AssetCache.Release(m_levelScene);
+        AssetCache.SetBudget(AssetCache.DEFAULT_BUDGET);
+    }
+
+    @Test
+    public void ReleasedAssetStaysWhileReferenced()
+    {
+        int  residentCount = AssetCache.GetResidentCount();
+        long hitCount      = AssetCache.GetHitCount();
+        long missCount     = AssetCache.GetMissCount();
+
+        Texture texture = AssetCache.AcquireTexture(m_menuScene, TEXTURE_NAME);
+        assertSame(texture, AssetCache.AcquireTexture(m_levelScene, TEXTURE_NAME));
+
+        assertEquals(residentCount + 1, AssetCache.GetResidentCount());
+        assertEquals(hitCount + 1, AssetCache.GetHitCount());
+        assertEquals(missCount + 1, AssetCache.GetMissCount());
+        assertEquals(1, m_device.GetTextureCount());
+
+        AssetCache.Release(m_menuScene);
+        AssetCache.SetBudget(0);
+        assertEquals(residentCount + 1, AssetCache.GetResidentCount());
+        assertEquals(1, m_device.GetTextureCount());
+    }
+
+    @Test
+    public void UnreferencedAssetIsEvictedAndFreed()
+    {
+        long residentBytes = AssetCache.GetResidentBytes();
+
+        AssetCache.AcquireTexture(m_menuScene, TEXTURE_NAME);
+        AssetCache.AcquireTexture(m_levelScene, TEXTURE_NAME);
+        assertTrue(AssetCache.GetResidentBytes() > residentBytes);
+
+        AssetCache.Release(m_menuScene);
+        AssetCache.Release(m_levelScene);
+        assertEquals(1, m_device.GetTextureCount());
+
+        AssetCache.SetBudget(0);
+        assertEquals(0, AssetCache.GetResidentCount());
+        assertEquals(0, AssetCache.GetResidentBytes());
+        assertEquals(0, m_device.GetTextureCount());
+
+        long missCount = AssetCache.GetMissCount();
+        AssetCache.AcquireTexture(m_levelScene, TEXTURE_NAME);
+        assertEquals(missCount + 1, AssetCache.GetMissCount());
+        assertEquals(1, m_device.GetTextureCount());
+    }
+}
@@ -0,0 +1,46 @@
+package game;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+// Colours found again by index through every growth of the palette's slots, whichever bits they share.
+public class ColorPaletteTest
+{
+    private static final int COLOR_COUNT = 2000;
+    private static final int COLOR_STEP  = 7919;
+
+    @Test
+    public void FindsEveryAddedColor()
+    {
+        ColorPalette palette = new ColorPalette();
+        for(int c = 0; c < COLOR_COUNT; c++)
+            assertEquals(c, palette.Add(c * COLOR_STEP));
+
+        assertEquals(COLOR_COUNT, palette.Count());
+        for(int c = 0; c < COLOR_COUNT; c++)
+        {
+            assertEquals(c, palette.IndexOf(c * COLOR_STEP));
+            assertEquals(c, palette.IndexOf(0xFF000000 | c * COLOR_STEP));
+            assertEquals(c, palette.Add(c * COLOR_STEP));
+            assertEquals(c * COLOR_STEP, palette.GetColor(c));
+        }
+
+        assertEquals(COLOR_COUNT, palette.Count());
+        assertEquals(-1, palette.IndexOf(COLOR_STEP + 1));
+    }
+
+    @Test
+    public void FindsColorsDifferingInOneChannel()
+    {
+        ColorPalette palette = new ColorPalette();
+        for(int red = 0; red < 256; red++)
+            palette.Add(red << 16);
+
+        for(int red = 0; red < 256; red++)
+        {
+            assertEquals(red, palette.IndexOf(red << 16));
+            assertEquals(-1, palette.IndexOf(red << 16 | 1));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package game;
+
+import jamJar.core.math.Quaternion;
+import jamJar.core.math.matrices.*;
+import jamJar.core.math.vectors.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+// Chunk bounds culled against view-projection matrices built the way the engine's Camera builds them.
+public class FrustumTest
+{
+    private static final Vector3f YAW_AXIS = new Vector3f(0, 1, 0);
+
+    private static final float CAMERA_X = 40.5f;
+    private static final float CAMERA_Z = 40.5f;
+
+    private static final LevelChunk CURRENT = new LevelChunk(32, 32,  48, 48);
+    private static final LevelChunk FRONT   = new LevelChunk(32, 64,  48, 80);
+    private static final LevelChunk BEHIND  = new LevelChunk(32,  0,  48, 16);
+    private static final LevelChunk LEFT    = new LevelChunk( 0, 48,  16, 64);
+    private static final LevelChunk RIGHT   = new LevelChunk(64, 48,  80, 64);
+    private static final LevelChunk FAR     = new LevelChunk(32, 1056, 48, 1072);
+
+    @Test
+    public void CullsChunksOutsideView()
+    {
+        Frustum frustum = CreateFrustum(new Quaternion());
+        assertTrue(new Quaternion().GetFront().GetZ() > 0.99f);
+
+        assertTrue(CURRENT.IsInside(frustum));
+        assertTrue(FRONT.IsInside(frustum));
+        assertFalse(BEHIND.IsInside(frustum));
+        assertFalse(LEFT.IsInside(frustum));
+        assertFalse(RIGHT.IsInside(frustum));
+        assertFalse(FAR.IsInside(frustum));
+    }
+
+    @Test
+    public void CullsChunksOutsideTurnedView()
+    {
+        Frustum backFrustum = CreateFrustum(new Quaternion(YAW_AXIS, 180.0f));
+        assertTrue(CURRENT.IsInside(backFrustum));
+        assertTrue(BEHIND.IsInside(backFrustum));
+        assertFalse(FRONT.IsInside(backFrustum));
+
+        Quaternion rightRotation = new Quaternion(YAW_AXIS, 90.0f);
+        LevelChunk rightChunk    = rightRotation.GetFront().GetX() > 0 ? RIGHT : LEFT;
+        LevelChunk leftChunk     = rightChunk == RIGHT ? LEFT : RIGHT;
+
+        Frustum sideFrustum = CreateFrustum(rightRotation);
+        assertTrue(rightChunk.IsInside(sideFrustum));
+        assertFalse(leftChunk.IsInside(sideFrustum));
+        assertFalse(FRONT.IsInside(sideFrustum));
+        assertFalse(BEHIND.IsInside(sideFrustum));
+    }
+
+    @Test
+    public void CameraUpdateMatchesViewProjection()
+    {
+        Quaternion[] rotations = { new Quaternion(), new Quaternion(YAW_AXIS, 37.0f), new Quaternion(YAW_AXIS, 200.0f).Multiply(new Quaternion(new Vector3f(1, 0, 0), 25.0f)) };
+        for(Quaternion rotation : rotations)
+        {
+            Frustum cameraFrustum = new Frustum();
+            cameraFrustum.Update(new Matrix4f().InitPerspective(70.0f, 4.0f / 3.0f, 0.1f, 1000.0f), new Vector3f(CAMERA_X, 0.5f, CAMERA_Z), rotation);
+
+            Frustum matrixFrustum = CreateFrustum(rotation);
+            for(int x = 0; x < 96; x += 3)
+            {
+                for(int y = -8; y <= 8; y += 2)
+                {
+                    for(int z = 0; z < 96; z += 3)
+                        assertEquals(matrixFrustum.Intersects(x, y, z, x, y, z), cameraFrustum.Intersects(x, y, z, x, y, z));
+                }
+            }
+        }
+    }
+
+    // Camera.GetViewProjection: the projection times the inverse camera rotation times the inverse camera position.
+    private static Frustum CreateFrustum(Quaternion rotation)
+    {
+        Matrix4f projection = new Matrix4f().InitPerspective(70.0f, 4.0f / 3.0f, 0.1f, 1000.0f);
+        Matrix4f view       = rotation.Conjugate().ToRotationMatrix().Multiply(new Vector3f(CAMERA_X, 0.5f, CAMERA_Z).Invert().ToPositionMatrix());
+
+        Frustum result = new Frustum();
+        result.Update(projection.Multiply(view));
+        return result;
+    }
+}
@@ -0,0 +1,56 @@
+package game;
+
+import engine.audio.*;
+import executing.components.*;
+import jamJar.core.math.vectors.*;
+
+// An audio device that plays nothing, so levels can create their sounds and sources in tests without OpenAL.
+public class HeadlessAudioDevice extends AudioDevice
+{
+    private int m_sourceCount;
+
+    @Override
+    public void SetListenerPosition(Vector3f position) { }
+
+    @Override
+    public void SetListenerVelocity(Vector3f velocity) { }
+
+    @Override
+    public SoundData CreateSound(WaveData waveData, boolean positional) { return null; }
+
+    @Override
+    public void DeleteSound(SoundData sound) { }
+
+    @Override
+    public AudioSource CreateSource(Sound sound) { return new AudioSource(++m_sourceCount, sound); }
+
+    @Override
+    public void DeleteSource(AudioSource source) { }
+
+    @Override
+    public void PlaySound(AudioSource source) { }
+
+    @Override
+    public void PauseSound(AudioSource source) { }
+
+    @Override
+    public void StopSound(AudioSource source) { }
+
+    @Override
+    public boolean IsSourcePlaying(AudioSource source) { return false; }
+
+    @Override
+    public void SetSourcePosition(AudioSource source, Vector3f position) { }
+
+    @Override
+    public void SetSourceVelocity(AudioSource source, Vector3f velocity) { }
+
+    @Override
+    public void SetSourcePitch(AudioSource source, float pitch) { }
+
+    @Override
+    public void SetSourceVolume(AudioSource source, float volume) { }
+
+    @Override
+    public void SetSourceLooping(AudioSource source, boolean looping) { }
+}
@@ -0,0 +1,142 @@
+package game;
+
+import engine.audio.*;
+import engine.core.*;
+import engine.ecs.*;
+import engine.rendering.*;
+import engine.rendering.shaderManagement.*;
+import jamJar.core.math.vectors.*;
+
+// A render device that draws nothing, so scenes can create and delete meshes in tests without a window.
+public class HeadlessRenderDevice extends RenderDevice
+{
+    private int        m_meshCount;
+    private int        m_textureCount;
+    private VertexList m_lastVertices;
+
+    public int GetMeshCount()    { return m_meshCount;    }
+    public int GetTextureCount() { return m_textureCount; }
+
+    public VertexList GetLastVertices() { return m_lastVertices; }
+
+    // Installs a new device and hands it to the scenes through a game that has no window either. The game's audio device
+    // is whichever was created last, such as a HeadlessAudioDevice.
+    public static HeadlessRenderDevice Attach(Scene... scenes)
+    {
+        final HeadlessRenderDevice result = new HeadlessRenderDevice();
+        RenderDevice.s_instance = result;
+
+        Game game = new Game(null, 60.0)
+        {
+            @Override
+            protected void OnGameStart() { }
+
+            @Override
+            protected void OnGameUpdate() { }
+
+            @Override
+            protected void OnGameExit() { }
+
+            @Override
+            public RenderDevice GetRenderDevice() { return result; }
+
+            @Override
+            public AudioDevice GetAudioDevice() { return AudioDevice.CurrentDevice(); }
+
+            @Override
+            public float GraphicsAspectRatio() { return 1.0f; }
+        };
+
+        for(Scene scene : scenes)
+            scene.SetGame(game);
+        return result;
+    }
+
+    @Override
+    public MeshData CreateMesh(VertexList vertices, int... indices)
+    {
+        ++m_meshCount;
+        m_lastVertices = vertices;
+        return new MeshData(0, null, 0, indices.length, null);
+    }
+
+    @Override
+    public void DeleteMesh(MeshData mesh) { --m_meshCount; }
+
+    @Override
+    public void RenderMesh(MeshData mesh) { }
+
+    @Override
+    public TextureData CreateTexture(int width, int height, byte[] data, TextureType type, InternalPixelFormat internalFormat, PixelFormat format,
+                                     SamplingMode samplingMode, WrappingMode wrappingMode)
+    {
+        ++m_textureCount;
+        return null;
+    }
+
+    @Override
+    public void DeleteTexture(TextureData texture) { --m_textureCount; }
+
+    @Override
+    public FrameBufferData CreateFrameBuffer(int width, int height, TextureType type, AttachmentData... attachments) { return null; }
+
+    @Override
+    public void BindFrameBuffer(FrameBufferData frameBuffer) { }
+
+    @Override
+    public void UnbindFrameBuffers() { }
+
+    @Override
+    public void DeleteFrameBuffer(FrameBufferData frameBuffer) { }
+
+    @Override
+    public Shader UseShader(Class<? extends Shader> shaderClass) { return null; }
+
+    @Override
+    public void SetClearColor(Vector4f color) { }
+
+    @Override
+    public void ClearBuffer(Buffer buffer) { }
+
+    @Override
+    public void SetFaceCullingMode(FaceCullingMode mode) { }
+
+    @Override
+    public void SetFrontFaceMode(FrontFaceMode mode) { }
+
+    @Override
+    public void EnableDepthTesting() { }
+
+    @Override
+    public void DisableDepthTesting() { }
+
+    @Override
+    public void EnableDepthWriting() { }
+
+    @Override
+    public void DisableDepthWriting() { }
+
+    @Override
+    public void EnableDepthClamping() { }
+
+    @Override
+    public void DisableDepthClamping() { }
+
+    @Override
+    public void EnableTexturing() { }
+
+    @Override
+    public void DisableTexturing() { }
+
+    @Override
+    public void EnableBlending() { }
+
+    @Override
+    public void DisableBlending() { }
+
+    @Override
+    public void SetDepthFunction(DepthFunction function) { }
+
+    @Override
+    public void SetBlendFunction(BlendFactor source, BlendFactor destination) { }
+}
@@ -0,0 +1,17 @@
+package game;
+
+import engine.core.*;
+import engine.ecs.*;
+
+// A scene that is never started, so tests can create entities and components without a window.
+public class HeadlessScene extends Scene
+{
+    @Override
+    protected void OnSceneStart() { }
+
+    @Override
+    protected void OnSceneUpdate(InputDevice inputDevice, float delta) { }
+
+    @Override
+    protected void OnSceneExit() { }
+}
@@ -0,0 +1,185 @@
+package game;
+
+import engine.core.*;
+import jamJar.core.math.Quaternion;
+import jamJar.core.math.vectors.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// Recordings read back frame by frame, whole and cut off the way a crash leaves them, and a generated level recorded
+// through LevelSimulation and replayed from its recording.
+public class InputRecordingTest
+{
+    private static final int FRAME_COUNT = 500;
+    private static final int KEY_COUNT   = 300;
+
+    private static final int  MAZE_SIZE      = 33;
+    private static final long MAZE_SEED      = 5;
+    private static final int  MAZE_KEY_COUNT = 4;
+    private static final int  NUM_TEXTURES   = 16;
+    private static final int  REPLAY_COUNT   = 2;
+    private static final int  MUTATED_FRAME  = 200;
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private String m_fileName;
+
+    @Before
+    public void Record() throws IOException
+    {
+        Vector3f[] collectedKeys = new Vector3f[KEY_COUNT];
+        for(int k = 0; k < KEY_COUNT; k++)
+            collectedKeys[k] = Level.ToColor(MazeGenerator.GetKeyColor(k));
+
+        LevelSaveData       saveData = new LevelSaveData(2, new Vector3f(1.5f, 0.3f, 1.5f), new Quaternion(), collectedKeys, null, null, 0.0f);
+        ScriptedInputDevice window   = new ScriptedInputDevice();
+
+        m_fileName = new File(m_folder.getRoot(), "level.rec").getPath();
+        try(InputRecording.Recorder recorder = new InputRecording.Recorder(m_fileName, 2, 7, saveData, window))
+        {
+            for(int frame = 0; frame < FRAME_COUNT; frame++)
+            {
+                window.SetKeyDown(InputDevice.Key.W, frame % 10 < 5);
+                window.MoveMouse(0.5f, 0.0f);
+
+                recorder.Capture(window, LevelSimulation.FRAME_TIME);
+                recorder.EndFrame(window, true, frame);
+                window.Update();
+            }
+        }
+    }
+
+    @Test
+    public void ReadsWholeRecording() throws IOException
+    {
+        try(InputRecording.Player player = new InputRecording.Player(m_fileName))
+        {
+            assertEquals(KEY_COUNT, player.GetSaveData().GetCollectedKeys().length);
+            assertEquals(FRAME_COUNT, ReadFrames(player));
+            assertTrue(player.IsFinished());
+        }
+    }
+
+    @Test
+    public void TruncatedRecordingEndsAtLastWholeFrame() throws IOException
+    {
+        byte[] data = Files.readAllBytes(Paths.get(m_fileName));
+
+        int lastFrameCount = -1;
+        for(int length = data.length - 1; length > data.length / 2; length -= 7)
+        {
+            Files.write(Paths.get(m_fileName), Arrays.copyOf(data, length));
+            try(InputRecording.Player player = new InputRecording.Player(m_fileName))
+            {
+                int frameCount = ReadFrames(player);
+                assertTrue(player.IsFinished());
+                assertTrue(frameCount <= FRAME_COUNT);
+                assertTrue(lastFrameCount < 0 || frameCount <= lastFrameCount);
+                lastFrameCount = frameCount;
+            }
+        }
+    }
+
+    @Test
+    public void ReplayedLevelMatchesRecording() throws IOException
+    {
+        LevelData levelData = new MazeGenerator(MAZE_SIZE, MAZE_SEED, NUM_TEXTURES, MAZE_KEY_COUNT).Decode();
+        String    fileName  = new File(m_folder.getRoot(), "maze.rec").getPath();
+
+        int checksum = RecordLevel(fileName, levelData, -1);
+        for(int run = 0; run < REPLAY_COUNT; run++)
+            assertEquals(checksum, ReplayLevel(fileName, levelData, -1));
+    }
+
+    @Test
+    public void MutatedRecordingDiverges() throws IOException
+    {
+        LevelData levelData = new MazeGenerator(MAZE_SIZE, MAZE_SEED, NUM_TEXTURES, MAZE_KEY_COUNT).Decode();
+        String    fileName  = new File(m_folder.getRoot(), "mutated.rec").getPath();
+
+        assertNotEquals(RecordLevel(fileName, levelData, MUTATED_FRAME), ReplayLevel(fileName, levelData, MUTATED_FRAME));
+    }
+
+    // Plays the level from its first open cell on scripted input, recording every frame with the simulation's checksum,
+    // and returns the final one. The mutated frame is recorded as taking twice the time the simulation was given.
+    private static int RecordLevel(String fileName, LevelData levelData, int mutatedFrame) throws IOException
+    {
+        LevelSaveData       saveData   = CreateSaveData(levelData);
+        LevelSimulation     simulation = new LevelSimulation(levelData, saveData);
+        ScriptedInputDevice window     = new ScriptedInputDevice();
+
+        try(InputRecording.Recorder recorder = new InputRecording.Recorder(fileName, 0, 7, saveData, window))
+        {
+            for(int frame = 0; frame < FRAME_COUNT; frame++)
+            {
+                window.SetKeyDown(InputDevice.Key.W, frame % 90 < 70);
+                window.SetKeyDown(InputDevice.Key.O, frame % 30 == 0);
+                if(frame % 90 >= 70)
+                    window.MoveMouse(4.0f, 0.0f);
+
+                recorder.Capture(window, frame == mutatedFrame ? LevelSimulation.FRAME_TIME * 2 : LevelSimulation.FRAME_TIME);
+                simulation.Look(recorder.GetInputDevice());
+                simulation.Play(recorder.GetInputDevice(), LevelSimulation.FRAME_TIME);
+
+                recorder.EndFrame(window, true, simulation.GetChecksum());
+                window.Update();
+            }
+        }
+
+        assertFalse(simulation.IsFinished());
+        assertTrue(simulation.GetEnteredCellCount() > 0);
+        return simulation.GetChecksum();
+    }
+
+    // Replays the recording the way InputReplay does, checking it first diverges at the given frame, or never for -1,
+    // and returns the final checksum.
+    private static int ReplayLevel(String fileName, LevelData levelData, int divergedFrame) throws IOException
+    {
+        try(InputRecording.Player player = new InputRecording.Player(fileName))
+        {
+            LevelSimulation simulation = new LevelSimulation(levelData, player.GetSaveData());
+            while(player.NextFrame())
+            {
+                simulation.Look(player.GetInputDevice());
+                simulation.Play(player.GetInputDevice(), player.GetDelta());
+                player.EndFrame(true, simulation.GetChecksum());
+            }
+
+            assertEquals(FRAME_COUNT, player.GetFrameCount());
+            assertEquals(divergedFrame, player.GetDivergedFrame());
+            return simulation.GetChecksum();
+        }
+    }
+
+    private static LevelSaveData CreateSaveData(LevelData levelData)
+    {
+        for(int cell = 0; cell < levelData.GetWidth() * levelData.GetHeight(); cell++)
+        {
+            int x = cell % levelData.GetWidth();
+            int z = cell / levelData.GetWidth();
+            if(!levelData.IsWall(x, z))
+                return new LevelSaveData(0, new Vector3f(x + 0.5f, 0.3f, z + 0.5f), new Quaternion(), null, null, null, 0.0f);
+        }
+        throw new IllegalStateException("The maze has no open cell.");
+    }
+
+    // Reads every frame, checking each one's checksum is the frame number it was recorded with.
+    private static int ReadFrames(InputRecording.Player player) throws IOException
+    {
+        int frameCount = 0;
+        while(player.NextFrame())
+        {
+            assertEquals(frameCount, player.GetChecksum());
+            assertTrue(player.EndFrame(true, frameCount));
+            ++frameCount;
+        }
+        return frameCount;
+    }
+}
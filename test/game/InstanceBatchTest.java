@@ -0,0 +1,140 @@
+package game;
+
+import engine.ecs.*;
+import engine.rendering.*;
+import executing.components.*;
+import jamJar.core.math.Quaternion;
+import jamJar.core.math.vectors.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+// Bytes the game thread allocates in InstanceBatch.Update, read from the thread's allocation counter. A batch whose
+// instances keep turning rebuilds every frame but must reuse its merged arrays; a batch that stands still must not
+// allocate at all.
+public class InstanceBatchTest
+{
+    private static final int INSTANCE_COUNT = 64;
+    private static final int WARMUP_FRAMES  = 2000;
+    private static final int FRAME_COUNT    = 1000;
+
+    // A rebuild still creates a new engine Mesh and MeshComponent; everything else must come from the reused arrays.
+    private static final int MAX_REBUILD_BYTES = 1024;
+
+    private static final int[] QUAD_INDICES = new int[] { 0, 1, 2, 2, 3, 0 };
+
+    private static final int NORMAL = 8;
+
+    private AllocationCounter m_counter;
+
+    private Scene                m_scene;
+    private HeadlessRenderDevice m_device;
+    private InstanceBatch        m_batch;
+    private Entity[]             m_instances;
+    private int                  m_mergedBytes;
+
+    @Before
+    public void CreateBatch()
+    {
+        m_counter = new AllocationCounter();
+
+        m_scene  = new HeadlessScene();
+        m_device = HeadlessRenderDevice.Attach(m_scene);
+
+        VertexList quad = new VertexList();
+        quad.AddVertex(new Vertex(new Vector3f(-1, -1, 0), new Vector3f(1), new Vector2f(0, 1), new Vector3f(0, 0, -1), new Vector3f(1, 0, 0)));
+        quad.AddVertex(new Vertex(new Vector3f( 1, -1, 0), new Vector3f(1), new Vector2f(1, 1), new Vector3f(0, 0, -1), new Vector3f(1, 0, 0)));
+        quad.AddVertex(new Vertex(new Vector3f( 1,  1, 0), new Vector3f(1), new Vector2f(1, 0), new Vector3f(0, 0, -1), new Vector3f(1, 0, 0)));
+        quad.AddVertex(new Vertex(new Vector3f(-1,  1, 0), new Vector3f(1), new Vector2f(0, 0), new Vector3f(0, 0, -1), new Vector3f(1, 0, 0)));
+
+        m_batch       = new InstanceBatch(m_scene, quad, QUAD_INDICES, new Material());
+        m_instances   = new Entity[INSTANCE_COUNT];
+        m_mergedBytes = INSTANCE_COUNT * quad.ToFloatArray().length * 4;
+        for(int i = 0; i < INSTANCE_COUNT; i++)
+        {
+            m_instances[i] = m_scene.CreateEntity(new Transformation(new Vector3f(i, 0, 0)), new InstanceComponent(new Vector3f(1, 0.5f, 0.25f)));
+            m_batch.Add(m_instances[i]);
+        }
+    }
+
+    @Test
+    public void StandingBatchDoesNotAllocate()
+    {
+        for(int frame = 0; frame < WARMUP_FRAMES; frame++)
+            m_batch.Update();
+
+        assertEquals(0, m_counter.Measure(new AllocationCounter.Window()
+        {
+            @Override
+            public void Frame(int frame) { m_batch.Update(); }
+        }, FRAME_COUNT));
+        assertEquals(1, m_device.GetMeshCount());
+    }
+
+    @Test
+    public void TurningBatchReusesMergedArrays()
+    {
+        Transformation[] transformations = new Transformation[INSTANCE_COUNT];
+        for(int i = 0; i < INSTANCE_COUNT; i++)
+            transformations[i] = m_instances[i].GetComponent(Transformation.class);
+
+        long allocatedBytes = 0;
+        for(int frame = 0; frame < WARMUP_FRAMES + FRAME_COUNT; frame++)
+        {
+            for(Transformation transformation : transformations)
+                transformation.SetRotation(0, frame * 0.01f, 0);
+
+            long startBytes = m_counter.GetAllocatedBytes();
+            m_batch.Update();
+            if(frame >= WARMUP_FRAMES)
+                allocatedBytes += m_counter.GetAllocatedBytes() - startBytes;
+        }
+
+        assertTrue(allocatedBytes / FRAME_COUNT < Math.min(MAX_REBUILD_BYTES, m_mergedBytes));
+        assertEquals(1, m_device.GetMeshCount());
+    }
+
+    // A slanted quad scaled like a door: its merged normals must stay perpendicular to its merged edges.
+    @Test
+    public void ScaledNormalsStayPerpendicular()
+    {
+        Vector3f normal  = new Vector3f(1, 0, -1).Normalize();
+        Vector3f tangent = new Vector3f(1, 0,  1).Normalize();
+
+        VertexList quad = new VertexList();
+        quad.AddVertex(new Vertex(new Vector3f(-1, -1, -1), new Vector3f(1), new Vector2f(0, 1), normal, tangent));
+        quad.AddVertex(new Vertex(new Vector3f( 1, -1,  1), new Vector3f(1), new Vector2f(1, 1), normal, tangent));
+        quad.AddVertex(new Vertex(new Vector3f( 1,  1,  1), new Vector3f(1), new Vector2f(1, 0), normal, tangent));
+        quad.AddVertex(new Vertex(new Vector3f(-1,  1, -1), new Vector3f(1), new Vector2f(0, 0), normal, tangent));
+
+        InstanceBatch batch = new InstanceBatch(m_scene, quad, QUAD_INDICES, new Material());
+        batch.Add(m_scene.CreateEntity(new Transformation(new Vector3f(3, 0.5f, 7), new Quaternion(new Vector3f(0, 1, 0), 30.0f), new Vector3f(0.5f, 0.5f, 0.05f)),
+                                       new InstanceComponent(new Vector3f(1))));
+        batch.Update();
+
+        float[] vertices   = m_device.GetLastVertices().ToFloatArray();
+        int     vertexSize = vertices.length / 4;
+
+        for(int vertex = 0; vertex < 4; vertex++)
+        {
+            int index = vertex * vertexSize;
+            assertEquals(1.0f, Length(vertices, index + NORMAL), 1e-5f);
+
+            for(int other = 1; other < 4; other += 2)
+            {
+                int otherIndex = ((vertex + other) % 4) * vertexSize;
+
+                float dot = 0;
+                for(int axis = 0; axis < 3; axis++)
+                    dot += (vertices[otherIndex + axis] - vertices[index + axis]) * vertices[index + NORMAL + axis];
+
+                assertEquals(0.0f, dot, 1e-5f);
+            }
+        }
+    }
+
+    private static float Length(float[] vertices, int index)
+    {
+        return (float)Math.sqrt(vertices[index] * vertices[index] + vertices[index + 1] * vertices[index + 1] + vertices[index + 2] * vertices[index + 2]);
+    }
+}
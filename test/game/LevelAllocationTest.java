@@ -0,0 +1,216 @@
+package game;
+
+import engine.core.*;
+import engine.ecs.*;
+import jamJar.core.math.Quaternion;
+import jamJar.core.math.vectors.*;
+import org.junit.*;
+import org.junit.rules.*;
+
+import java.io.*;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+
+// Steady-state frames of level 0 counted by the JVM's per-thread allocation counter after a warm-up, with the player
+// walking to and from a locked door and then watching it flash.
+public class LevelAllocationTest
+{
+    private static final int LEVEL_INDEX = 0;
+
+    private static final int WARMUP_FRAMES   = 4000;
+    private static final int MEASURED_FRAMES = 600;
+    private static final int WALK_FRAMES     = 20;
+
+    private static final int   FLASH_WARMUP_COUNT = 100;
+    private static final int   FLASH_FRAMES       = 200;
+    private static final float FLASH_FRAME_TIME   = LevelSimulation.FRAME_TIME / 10.0f;
+
+    // Above zero, so the sludge sounds are adjusted every frame, and far enough below the player not to drown them.
+    private static final float SLUDGE_LEVEL = 0.05f;
+
+    private static final Vector3f YAW_AXIS = new Vector3f(0, 1, 0);
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private AllocationCounter   m_counter;
+    private Scene               m_scene;
+    private LevelLoader         m_loader;
+    private LevelSaveData       m_saveData;
+    private ScriptedInputDevice m_input;
+    private Level               m_level;
+
+    @Before
+    public void CreateLevel() throws IOException
+    {
+        m_counter = new AllocationCounter();
+
+        new HeadlessAudioDevice();
+
+        m_scene = new HeadlessScene();
+        m_scene.AddToFilePath("nightmareMaze/");
+        HeadlessRenderDevice.Attach(m_scene);
+
+        m_loader = new LevelLoader(m_scene, LEVEL_INDEX, CopyLevel());
+        m_loader.Finish(m_scene);
+
+        m_saveData = CreateSaveData(m_loader.GetLevelData());
+
+        m_input = new ScriptedInputDevice();
+        m_input.SetMouseGrabbed(true);
+    }
+
+    @After
+    public void FreeLevel()
+    {
+        if(m_level != null)
+            m_level.Free();
+
+        // Evicts the level's assets too, so later tests start from an empty cache.
+        AssetCache.Release(m_scene);
+        AssetCache.SetBudget(0);
+        AssetCache.SetBudget(AssetCache.DEFAULT_BUDGET);
+    }
+
+    @Test
+    public void SimulationStepAllocatesNothing()
+    {
+        final LevelSimulation simulation = new LevelSimulation(m_loader.GetLevelData(), m_saveData);
+
+        for(int frame = 0; frame < WARMUP_FRAMES; frame++)
+        {
+            Walk(frame);
+            simulation.Step(m_input);
+        }
+        assertFalse(simulation.IsFinished());
+
+        assertEquals(0, m_counter.Measure(new AllocationCounter.Window()
+        {
+            @Override
+            public void Frame(int frame)
+            {
+                Walk(frame);
+                simulation.Step(m_input);
+            }
+        }, MEASURED_FRAMES));
+
+        assertTrue(simulation.GetEnteredCellCount() > 0);
+    }
+
+    @Test
+    public void LevelUpdateAllocatesNothing()
+    {
+        m_level = new Level(m_scene, m_loader, m_saveData, 0, false);
+
+        for(int frame = 0; frame < WARMUP_FRAMES; frame++)
+        {
+            Walk(frame);
+            Update(LevelSimulation.FRAME_TIME);
+        }
+
+        assertEquals(0, m_counter.Measure(new AllocationCounter.Window()
+        {
+            @Override
+            public void Frame(int frame)
+            {
+                Walk(frame);
+                Update(LevelSimulation.FRAME_TIME);
+            }
+        }, MEASURED_FRAMES));
+    }
+
+    @Test
+    public void FlashingDoorAllocatesNothing()
+    {
+        m_level = new Level(m_scene, m_loader, m_saveData, 0, false);
+
+        m_input.SetKeyDown(InputDevice.Key.W, true);
+        for(int frame = 0; frame < WALK_FRAMES; frame++)
+            Update(LevelSimulation.FRAME_TIME);
+        m_input.SetKeyDown(InputDevice.Key.W, false);
+
+        assertTrue(m_level.GetRules().GetTouchedDoor() >= 0);
+
+        for(int flash = 0; flash < FLASH_WARMUP_COUNT; flash++)
+        {
+            TryDoor();
+            while(m_level.GetRules().IsDoorFlashing())
+                Update(LevelSimulation.FRAME_TIME);
+            Update(LevelSimulation.FRAME_TIME);
+        }
+
+        assertEquals(0, m_counter.Measure(new AllocationCounter.Window()
+        {
+            // Tries the door again once the last flash is over. The door batch lets go of the flashing door on the
+            // frame after the try, rebuilding its mesh once.
+            @Override
+            public void Start()
+            {
+                while(m_level.GetRules().IsDoorFlashing())
+                    Update(LevelSimulation.FRAME_TIME);
+
+                TryDoor();
+                Update(FLASH_FRAME_TIME);
+                assertTrue(m_level.GetRules().IsDoorFlashing());
+            }
+
+            @Override
+            public void Frame(int frame) { Update(FLASH_FRAME_TIME); }
+        }, FLASH_FRAMES));
+
+        assertTrue(m_level.GetRules().IsDoorFlashing());
+    }
+
+    // The shipped level with its normal map renamed to the NormalMaps.png LevelLoader opens, which only a
+    // case-insensitive file system finds under its committed name.
+    private String CopyLevel() throws IOException
+    {
+        File folder = m_folder.newFolder("level");
+        for(File file : new File(NightmareMaze.LEVELS_PATH + LEVEL_INDEX).listFiles())
+        {
+            String name = file.getName().equals("normalMaps.png") ? "NormalMaps.png" : file.getName();
+            Files.copy(file.toPath(), new File(folder, name).toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        return folder.getPath() + File.separator;
+    }
+
+    // Starts at the first door of the level that has open floor on either side, between the door and the floor
+    // before it and facing the door.
+    private static LevelSaveData CreateSaveData(LevelData levelData)
+    {
+        for(int d = 0; d < levelData.GetDoorCount(); d++)
+        {
+            int x = levelData.GetDoorCell(d) % levelData.GetWidth();
+            int z = levelData.GetDoorCell(d) / levelData.GetWidth();
+
+            if(!levelData.IsWall(x - 1, z) && !levelData.IsWall(x + 1, z))
+                return new LevelSaveData(LEVEL_INDEX, new Vector3f(x + 0.25f, 0.3f, z + 0.5f), new Quaternion(YAW_AXIS, 90.0f), null, null, null, SLUDGE_LEVEL);
+
+            if(!levelData.IsWall(x, z - 1) && !levelData.IsWall(x, z + 1))
+                return new LevelSaveData(LEVEL_INDEX, new Vector3f(x + 0.5f, 0.3f, z + 0.25f), new Quaternion(), null, null, null, SLUDGE_LEVEL);
+        }
+        throw new IllegalStateException("Level " + LEVEL_INDEX + " has no door to walk to.");
+    }
+
+    // Walks up to the door and back out of its cell again.
+    private void Walk(int frame)
+    {
+        boolean isForward = frame % (WALK_FRAMES * 2) < WALK_FRAMES;
+        m_input.SetKeyDown(InputDevice.Key.W, isForward);
+        m_input.SetKeyDown(InputDevice.Key.S, !isForward);
+    }
+
+    private void TryDoor()
+    {
+        m_input.SetKeyDown(InputDevice.Key.O, true);
+        Update(LevelSimulation.FRAME_TIME);
+        m_input.SetKeyDown(InputDevice.Key.O, false);
+    }
+
+    private void Update(float delta)
+    {
+        assertEquals(LevelScene.LevelEvent.NONE, m_level.Update(m_input, delta));
+        m_input.Update();
+    }
+}
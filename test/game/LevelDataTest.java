@@ -0,0 +1,59 @@
+package game;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+// Level folders without a current level.dat, which load from a cache under the player's files and are never written.
+public class LevelDataTest
+{
+    private static final int SIZE         = 33;
+    private static final int NUM_TEXTURES = 8;
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private String m_levelFolder;
+
+    @Before
+    public void WriteMaps() throws IOException
+    {
+        m_levelFolder = m_folder.getRoot().getPath() + File.separator;
+        new MazeGenerator(SIZE, 1, NUM_TEXTURES, 4).Write(m_levelFolder);
+
+        new File(LevelData.GetCacheName(m_levelFolder)).delete();
+    }
+
+    @Test
+    public void MissingLevelFileIsCachedOutsideFolder()
+    {
+        LevelData levelData = LevelData.Load(m_levelFolder, NUM_TEXTURES);
+        assertEquals(SIZE, levelData.GetWidth());
+        assertFalse(new File(m_levelFolder + LevelData.FILE_NAME).exists());
+
+        File cacheFile = new File(LevelData.GetCacheName(m_levelFolder));
+        assertTrue(cacheFile.isFile());
+
+        long cacheTime = cacheFile.lastModified();
+        assertEquals(SIZE, LevelData.Load(m_levelFolder, NUM_TEXTURES).GetHeight());
+        assertEquals(cacheTime, cacheFile.lastModified());
+    }
+
+    @Test
+    public void StaleLevelFileIsLeftAlone() throws IOException
+    {
+        File levelFile = new File(m_levelFolder + LevelData.FILE_NAME);
+        LevelData.Decode(m_levelFolder, NUM_TEXTURES).Write(levelFile.getPath());
+        assertTrue(levelFile.setLastModified(0));
+
+        long length = levelFile.length();
+        assertEquals(SIZE, LevelData.Load(m_levelFolder, NUM_TEXTURES).GetWidth());
+
+        assertEquals(0, levelFile.lastModified());
+        assertEquals(length, levelFile.length());
+        assertTrue(new File(LevelData.GetCacheName(m_levelFolder)).isFile());
+    }
+}
@@ -0,0 +1,112 @@
+package game;
+
+import org.junit.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// The greedy mesher against the naive mesh of one quad per floor, ceiling and wall face: the merged quads must cover
+// exactly the naive faces, each once, with the naive face's tile.
+public class LevelMesherTest
+{
+    private static final int FACE_COUNT = 6;
+
+    @Test
+    public void CoversNaiveMesh()
+    {
+        for(int size : new int[] { 33, 64, 200 })
+        {
+            for(long seed = 1; seed <= 3; seed++)
+                AssertCoversNaiveMesh(new MazeGenerator(size, seed, 16, 8).Decode(), false);
+        }
+    }
+
+    @Test
+    public void CoversNaiveMeshInChunks()
+    {
+        AssertCoversNaiveMesh(new MazeGenerator(200, 4, 16, 8).Decode(), true);
+    }
+
+    private static void AssertCoversNaiveMesh(LevelData levelData, boolean inChunks)
+    {
+        final int width  = levelData.GetWidth();
+        final int height = levelData.GetHeight();
+
+        LevelMesher mesher = new LevelMesher(levelData);
+
+        int[] naive     = new int[FACE_COUNT * width * height];
+        long  naiveArea = 0;
+        Arrays.fill(naive, -1);
+
+        for(int z = 1; z < height - 1; z++)
+        {
+            for(int x = 1; x < width - 1; x++)
+            {
+                if(levelData.IsWall(x, z))
+                    continue;
+
+                int cell = x + z * width;
+                naive[cell]                  = mesher.GetTile(x, z, 1);
+                naive[cell + width * height] = mesher.GetTile(x, z, 2);
+                naiveArea += 2;
+
+                int[][] walls = { { 0, -1 }, { 0, 1 }, { -1, 0 }, { 1, 0 } };
+                for(int wall = 0; wall < walls.length; wall++)
+                {
+                    if(!levelData.IsWall(x + walls[wall][0], z + walls[wall][1]))
+                        continue;
+
+                    naive[cell + (2 + wall) * width * height] = mesher.GetTile(x, z, 0);
+                    ++naiveArea;
+                }
+            }
+        }
+
+        final int[]  merged     = new int[naive.length];
+        final long[] mergedArea = new long[1];
+        final int[]  overlaps   = new int[1];
+        Arrays.fill(merged, -1);
+
+        LevelMesher.QuadHandler handler = new LevelMesher.QuadHandler()
+        {
+            @Override
+            public void OnQuad(int tile, int axis, boolean direction, int x, int z, int sizeX, int sizeZ)
+            {
+                int face = axis == 1 ? (direction ? 1 : 0) : axis == 2 ? (direction ? 3 : 2) : (direction ? 5 : 4);
+                for(int row = z; row < z + sizeZ; row++)
+                {
+                    for(int column = x; column < x + sizeX; column++)
+                    {
+                        int index = column + row * width + face * width * height;
+                        if(merged[index] >= 0)
+                            ++overlaps[0];
+
+                        merged[index] = tile;
+                        ++mergedArea[0];
+                    }
+                }
+            }
+        };
+
+        if(inChunks)
+        {
+            for(int startZ = 0; startZ < height; startZ += LevelChunk.SIZE)
+            {
+                for(int startX = 0; startX < width; startX += LevelChunk.SIZE)
+                {
+                    mesher.Build(Math.max(startX, 1), Math.max(startZ, 1),
+                                 Math.min(startX + LevelChunk.SIZE, width - 1), Math.min(startZ + LevelChunk.SIZE, height - 1), handler);
+                }
+            }
+        }
+        else
+        {
+            mesher.Build(handler);
+        }
+
+        assertEquals(0, overlaps[0]);
+        assertEquals(naiveArea, mergedArea[0]);
+        assertArrayEquals(naive, merged);
+    }
+}
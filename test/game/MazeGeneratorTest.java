@@ -0,0 +1,84 @@
+package game;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+// Generated level folders loaded the way the game loads them: a small one with every baked file in place, and one over
+// the visibility cap that loads unoccluded without building anything.
+public class MazeGeneratorTest
+{
+    private static final long LOAD_TIMEOUT = 120000;
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    @Test
+    public void SmallLevelLoadsGeneratedFiles() throws IOException, InterruptedException
+    {
+        String folder = Generate(65);
+
+        File visibilityFile = new File(folder + LevelVisibility.FILE_NAME);
+        File lightmapFile   = new File(folder + LevelLightmap.FILE_NAME);
+        assertTrue(visibilityFile.isFile());
+        assertTrue(lightmapFile.isFile());
+
+        long visibilityTime = visibilityFile.lastModified();
+        long lightmapTime   = lightmapFile.lastModified();
+
+        LevelLoader loader = Load(folder, 65);
+        assertTrue(loader.GetVisibility().IsOccluded());
+        assertNotNull(loader.GetLightmap());
+
+        assertEquals(visibilityTime, visibilityFile.lastModified());
+        assertEquals(lightmapTime, lightmapFile.lastModified());
+    }
+
+    @Test
+    public void LargeLevelLoadsUnoccluded() throws IOException, InterruptedException
+    {
+        int size = 1101;
+        assertTrue(size * size > LevelVisibility.MAX_BUILD_CELLS);
+
+        String folder = Generate(size);
+        assertFalse(new File(folder + LevelVisibility.FILE_NAME).exists());
+        assertTrue(new File(folder + LevelLightmap.FILE_NAME).isFile());
+
+        LevelLoader loader = Load(folder, size);
+        assertFalse(loader.GetVisibility().IsOccluded());
+        assertNotNull(loader.GetLightmap());
+        assertTrue(loader.GetChunks().Count() > 0);
+
+        long[] visibleCells = new long[(size * size + 63) >> 6];
+        loader.GetVisibility().AddVisibleCells(size / 2 + size / 2 * size, visibleCells);
+        assertTrue(LevelVisibility.IsCellVisible(visibleCells, size / 2 + LevelVisibility.MAX_DISTANCE + size / 2 * size));
+        assertFalse(LevelVisibility.IsCellVisible(visibleCells, size / 2 + LevelVisibility.MAX_DISTANCE + 1 + size / 2 * size));
+    }
+
+    private String Generate(int size) throws IOException
+    {
+        String folder = m_folder.getRoot().getPath() + File.separator + size + File.separator;
+        MazeGenerator.Generate(folder, NightmareMaze.LEVELS_PATH + "0/", size, 1, 8);
+        return folder;
+    }
+
+    private static LevelLoader Load(String folder, int size) throws InterruptedException
+    {
+        LevelLoader loader = new LevelLoader(new HeadlessScene(), 0, folder);
+
+        long startTime = System.currentTimeMillis();
+        while(!loader.IsLoaded())
+        {
+            assertTrue(System.currentTimeMillis() - startTime < LOAD_TIMEOUT);
+            Thread.sleep(10);
+        }
+
+        assertNotNull(loader.GetLevelData());
+        assertEquals(size, loader.GetLevelData().GetWidth());
+        assertEquals(size, loader.GetLevelData().GetHeight());
+        return loader;
+    }
+}
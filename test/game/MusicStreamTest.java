@@ -0,0 +1,126 @@
+package game;
+
+import org.junit.*;
+import org.junit.rules.*;
+
+import javax.sound.sampled.*;
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+// MusicStream driven by its feeder thread against NullStreamBackend, which consumes queued buffers in real time.
+public class MusicStreamTest
+{
+    private static final float SAMPLE_RATE = 22050.0f;
+    private static final int   TRACK_BYTES = 11025 * 2;
+    private static final long  TIMEOUT     = 5000;
+
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    private String m_fileName;
+
+    @Before
+    public void WriteTrack() throws IOException
+    {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        byte[]      data   = new byte[TRACK_BYTES];
+
+        m_fileName = new File(m_folder.getRoot(), "track.wav").getPath();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(data), format, TRACK_BYTES / format.getFrameSize()),
+                          AudioFileFormat.Type.WAVE, new File(m_fileName));
+    }
+
+    @Test
+    public void PlaysTrackOnceAndStops() throws InterruptedException
+    {
+        NullStreamBackend backend = new NullStreamBackend();
+        MusicStream       stream  = new MusicStream(m_fileName, backend);
+
+        stream.Play();
+        assertTrue(AwaitStopped(stream));
+        assertEquals(TRACK_BYTES, backend.GetTotalQueuedBytes());
+
+        stream.Close();
+    }
+
+    @Test
+    public void PlaysAgainAfterTrackEnded() throws InterruptedException
+    {
+        NullStreamBackend backend = new NullStreamBackend();
+        MusicStream       stream  = new MusicStream(m_fileName, backend);
+
+        stream.Play();
+        assertTrue(AwaitStopped(stream));
+
+        stream.Play();
+        assertTrue(stream.IsPlaying());
+        assertTrue(AwaitStopped(stream));
+        assertEquals(2 * TRACK_BYTES, backend.GetTotalQueuedBytes());
+
+        stream.Close();
+    }
+
+    @Test
+    public void LoopsUntilStopped() throws InterruptedException
+    {
+        NullStreamBackend backend = new NullStreamBackend();
+        MusicStream       stream  = new MusicStream(m_fileName, backend);
+
+        stream.SetLooping(true);
+        stream.Play();
+
+        Thread.sleep(1500);
+        assertTrue(stream.IsPlaying());
+        assertTrue(backend.GetTotalQueuedBytes() > TRACK_BYTES);
+
+        stream.Stop();
+        assertFalse(stream.IsPlaying());
+        assertEquals(0, backend.GetQueuedCount());
+
+        stream.Close();
+    }
+
+    @Test
+    public void PausedStreamQueuesNothing() throws InterruptedException
+    {
+        NullStreamBackend backend = new NullStreamBackend();
+        MusicStream       stream  = new MusicStream(m_fileName, backend);
+
+        stream.SetLooping(true);
+        stream.Play();
+        stream.Pause();
+
+        long queuedBytes = backend.GetTotalQueuedBytes();
+        Thread.sleep(200);
+        assertFalse(stream.IsPlaying());
+        assertEquals(queuedBytes, backend.GetTotalQueuedBytes());
+
+        stream.Close();
+    }
+
+    @Test
+    public void CloseIsIdempotent()
+    {
+        NullStreamBackend backend = new NullStreamBackend();
+        MusicStream       stream  = new MusicStream(m_fileName, backend);
+
+        stream.Close();
+        stream.Close();
+        stream.Play();
+        assertEquals(0, backend.GetTotalQueuedBytes());
+    }
+
+    private static boolean AwaitStopped(MusicStream stream) throws InterruptedException
+    {
+        long startTime = System.currentTimeMillis();
+        while(stream.IsPlaying())
+        {
+            if(System.currentTimeMillis() - startTime > TIMEOUT)
+                return false;
+
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,235 @@
+package game;
+
+import jamJar.core.math.Quaternion;
+import jamJar.core.math.vectors.*;
+import org.junit.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+// A crash can cut the journal anywhere. Whatever length survives, replaying it must give the state after exactly the
+// records that survived whole, and a journal reopened after the cut must keep every record appended to it.
+public class SaveJournalTest
+{
+    private static final int  INDEX      = 3;
+    private static final long GENERATION = 0x5EEDL;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final int VISIT_SIZE  = 1 + 8 + 4;
+    private static final int COLOR_SIZE  = 1 + 4 + 4;
+    private static final int POSE_SIZE   = 1 + 8 * 4 + 4;
+
+    private static final int VISIT_COUNT    = 60;
+    private static final int KEY_COUNT      = 4;
+    private static final int DOOR_COUNT     = 2;
+    private static final int TRUNCATE_COUNT = 300;
+
+    private static final int  SLOW_FRAME_COUNT  = 600;
+    private static final long SLOW_WRITE_MILLIS = 100;
+    private static final long MAX_APPEND_NANOS  = 20000000;
+
+    private static final Vector3f POSE_POSITION = new Vector3f(7.5f, 0.3f, 9.5f);
+
+    private final ArrayList<int[]> m_records = new ArrayList<>();
+
+    private byte[] m_journal;
+
+    @Before
+    public void WriteJournal() throws IOException
+    {
+        Files.createDirectories(Paths.get(NightmareMaze.FILE_PATH));
+        SaveJournal.Delete();
+
+        // Records are only handed to the writer by the pose's flush, so they reach the file in exactly this order.
+        SaveJournal journal = new SaveJournal(INDEX, GENERATION);
+        for(int r = 0; r < VISIT_COUNT + KEY_COUNT + DOOR_COUNT; r++)
+        {
+            if(r < VISIT_COUNT)
+            {
+                journal.AppendVisit(r % 13, r / 13);
+                m_records.add(new int[] { VISIT_SIZE, r % 13, r / 13 });
+            }
+            else if(r < VISIT_COUNT + KEY_COUNT)
+            {
+                journal.AppendKey(GetColor(r - VISIT_COUNT));
+                m_records.add(new int[] { COLOR_SIZE, GetColor(r - VISIT_COUNT), 0 });
+            }
+            else
+            {
+                journal.AppendDoor(GetColor(r - VISIT_COUNT - KEY_COUNT));
+                m_records.add(new int[] { COLOR_SIZE, GetColor(r - VISIT_COUNT - KEY_COUNT), 1 });
+            }
+        }
+        journal.AppendPose(POSE_POSITION, new Quaternion(), 0.5f);
+        m_records.add(new int[] { POSE_SIZE, 0, 0 });
+        journal.Close();
+
+        m_journal = Files.readAllBytes(Paths.get(SaveJournal.FILE_NAME));
+        assertEquals(HEADER_SIZE + VISIT_COUNT * VISIT_SIZE + (KEY_COUNT + DOOR_COUNT) * COLOR_SIZE + POSE_SIZE, m_journal.length);
+    }
+
+    @After
+    public void DeleteJournal() { SaveJournal.Delete(); }
+
+    @Test
+    public void ReplaysWholeRecordsAtEveryCut() throws IOException
+    {
+        for(int length = 0; length <= m_journal.length; length++)
+        {
+            Truncate(length);
+            AssertState(CountWholeRecords(length), SaveJournal.Replay(CreateSnapshot(), SaveJournal.FILE_NAME), 0);
+        }
+    }
+
+    @Test
+    public void ReopenedJournalKeepsAppending() throws IOException
+    {
+        Random random = new Random(1);
+        for(int t = 0; t < TRUNCATE_COUNT; t++)
+        {
+            int length = random.nextInt(m_journal.length + 1);
+            Truncate(length);
+
+            SaveJournal journal = new SaveJournal(INDEX, GENERATION);
+            assertEquals(CountWholeRecords(length), journal.GetRecordCount());
+
+            journal.AppendVisit(-1, -1);
+            journal.Close();
+
+            AssertState(CountWholeRecords(length), SaveJournal.Replay(CreateSnapshot(), SaveJournal.FILE_NAME), 1);
+        }
+    }
+
+    @Test
+    public void SlowDiskDoesNotBlockGameThread() throws InterruptedException
+    {
+        SaveJournal.Delete();
+
+        SaveJournal journal = new SaveJournal(INDEX, GENERATION)
+        {
+            @Override
+            protected OutputStream OpenOutput(File file) throws IOException
+            {
+                Sleep();
+                return new FilterOutputStream(super.OpenOutput(file))
+                {
+                    @Override
+                    public void write(byte[] data, int offset, int length) throws IOException
+                    {
+                        Sleep();
+                        out.write(data, offset, length);
+                    }
+
+                    @Override
+                    public void flush() throws IOException
+                    {
+                        Sleep();
+                        out.flush();
+                    }
+                };
+            }
+        };
+
+        // Enough frames to fill the journal past COMPACT_RECORD_COUNT, so the writer also reopens it while the game appends.
+        long maxAppendTime = 0;
+        for(int frame = 0; frame < SLOW_FRAME_COUNT; frame++)
+        {
+            long startTime = System.nanoTime();
+            journal.AppendVisit(frame, 0);
+            journal.AppendPose(POSE_POSITION, new Quaternion(), 0.5f);
+            maxAppendTime = Math.max(maxAppendTime, System.nanoTime() - startTime);
+
+            Thread.sleep(2);
+        }
+        journal.Close();
+
+        assertTrue(journal.GetRecordCount() < SLOW_FRAME_COUNT);
+        assertTrue(journal.GetMaxWriteTime() * 1e3 >= SLOW_WRITE_MILLIS);
+        assertTrue("game thread waited " + maxAppendTime / 1000000 + " ms", maxAppendTime < MAX_APPEND_NANOS);
+    }
+
+    private void Truncate(int length) throws IOException { Files.write(Paths.get(SaveJournal.FILE_NAME), Arrays.copyOf(m_journal, length)); }
+
+    private int CountWholeRecords(int length)
+    {
+        if(length < HEADER_SIZE)
+            return 0;
+
+        int result = 0;
+        int end    = HEADER_SIZE;
+        while(result < m_records.size() && end + m_records.get(result)[0] <= length)
+            end += m_records.get(result++)[0];
+
+        return result;
+    }
+
+    private void AssertState(int recordCount, LevelSaveData state, int appendedCount)
+    {
+        HashSet<Long>    visits = new HashSet<>();
+        HashSet<Integer> keys   = new HashSet<>();
+        HashSet<Integer> doors  = new HashSet<>();
+        boolean          pose   = false;
+
+        for(int r = 0; r < recordCount; r++)
+        {
+            int[] record = m_records.get(r);
+            if(record[0] == VISIT_SIZE)
+                visits.add((long)record[1] << 32 | record[2]);
+            else if(record[0] == POSE_SIZE)
+                pose = true;
+            else if(record[2] == 0)
+                keys.add(record[1]);
+            else
+            {
+                doors.add(record[1]);
+                keys.remove(record[1]);
+            }
+        }
+
+        HashSet<Long> replayedVisits = new HashSet<>();
+        for(Vector2f location : state.GetPassedLocations())
+        {
+            if(location.GetX() >= 0)
+                replayedVisits.add((long)location.GetX() << 32 | (int)location.GetY());
+        }
+
+        assertEquals(visits.size() + appendedCount, state.GetPassedLocations().length);
+        assertEquals(visits, replayedVisits);
+        assertEquals(keys, ToNumbers(state.GetCollectedKeys()));
+        assertEquals(doors, ToNumbers(state.GetOpenedDoors()));
+        assertEquals(pose ? POSE_POSITION.GetX() : 1.5f, state.GetCameraPosition().GetX(), 0.0f);
+    }
+
+    private static HashSet<Integer> ToNumbers(Vector3f[] colors)
+    {
+        HashSet<Integer> result = new HashSet<>();
+        for(Vector3f color : colors)
+            result.add(ColorPalette.ToNumber(color));
+
+        return result;
+    }
+
+    // Only the writer thread sees the slow disk; the journal opens its file on the game thread once, at level start.
+    private static void Sleep()
+    {
+        if(!Thread.currentThread().getName().equals("SaveWriter"))
+            return;
+
+        try
+        {
+            Thread.sleep(SLOW_WRITE_MILLIS);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The palette colour without its alpha, as Level journals it.
+    private static int GetColor(int index) { return MazeGenerator.GetKeyColor(index) & 0xFFFFFF; }
+
+    private static LevelSaveData CreateSnapshot() { return new LevelSaveData(INDEX, GENERATION, new Vector3f(1.5f, 0.3f, 1.5f), new Quaternion(), null, null, null, 0.0f); }
+}